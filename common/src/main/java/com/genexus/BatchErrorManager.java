@@ -1,8 +1,13 @@
 
 package com.genexus;
 
+import com.genexus.diagnostics.core.ILogger;
+import com.genexus.diagnostics.core.LogManager;
+
 public class BatchErrorManager implements ErrorManager
 {
+	private static final ILogger logger = LogManager.getLogger(BatchErrorManager.class);
+
 	private int retries = 0;
 	
 	public void reset()
@@ -24,4 +29,9 @@ public class BatchErrorManager implements ErrorManager
 
 		return QUIT;
 	}
+
+	public void batchRecordError(String cursorId, int record, Throwable e)
+	{
+		logger.error("Batch Error Cursor: " + cursorId + " Record: " + record, e);
+	}
 }
\ No newline at end of file
@@ -561,18 +561,7 @@ public final class CommonUtil
 	public static Date resetDate(Date date)
 	{
 		Date nd = newNullDate();
-                Calendar cal = getCalendar();
-                synchronized (cal)
-                {
-                  Calendar cal2 = new GregorianCalendar(CommonUtil.defaultTimeZone, CommonUtil.defaultLocale);
-                  cal2.setTime(date);
-                  cal.setTime(nd);
-                  cal.set(Calendar.HOUR_OF_DAY, cal2.get(Calendar.HOUR_OF_DAY));
-                  cal.set(Calendar.MINUTE, cal2.get(Calendar.MINUTE));
-                  cal.set(Calendar.SECOND, cal2.get(Calendar.SECOND));
-			cal.set(Calendar.MILLISECOND, cal2.get(Calendar.MILLISECOND));
-                  return cal.getTime();
-                }
+		return nullDateWithTime(nd, GXDateFields.millisOfDay(defaultTimeZone, date.getTime()));
 	}
 
 	public static Date ymdhmsToT_noYL(int year, int month, int day , int hour , int minute , int second)
@@ -584,6 +573,8 @@ public final class CommonUtil
 		if	(year == 0 && month == 0 && day == 0 && (hour != 0 || minute != 0 || second != 0 || millisecond !=0))
 		{
 			Date nd = newNullDate();
+			if (getCalendar().isLenient())
+				return nullDateWithTime(nd, hour * 3600000L + minute * 60000L + second * 1000L + millisecond);
                         Calendar cal = getCalendar();
                         synchronized (cal)
                         {
@@ -596,6 +587,21 @@ public final class CommonUtil
                         }
 		}
 
+		long time = GXDateFields.toTime(defaultTimeZone, year, month, day, hour, minute, second);
+		if (time == GXDateFields.INVALID && hour == 0)
+		{ // La medianoche no existe ese dia por el cambio de horario, se toma la primera hora que exista
+			for (int h = 1; h < 24 && time == GXDateFields.INVALID; h++)
+			{
+				time = GXDateFields.toTime(defaultTimeZone, year, month, day, h, minute, second);
+				if (time != GXDateFields.INVALID)
+					hour = h;
+			}
+		}
+		if (time == GXDateFields.INVALID)
+			return nullDate();
+		if (time != GXDateFields.NOT_RESOLVED)
+			return new Date(millisecond > 0 ? time + millisecond : time);
+
 		Calendar cal = getCalendar();
 		boolean lenient = cal.isLenient();
 		try
@@ -651,6 +657,17 @@ public final class CommonUtil
 	}
 
 
+	/**
+	 * El nulo con la hora dada. En el anio 1 los timezones no tienen cambios de horario,
+	 * por lo que alcanza con sumar la hora al comienzo del dia nulo
+	 */
+	private static Date nullDateWithTime(Date nd, long millisOfDay)
+	{
+		long start = nd.getTime() - GXDateFields.millisOfDay(defaultTimeZone, nd.getTime());
+		nd.setTime(start + millisOfDay);
+		return nd;
+	}
+
 	public static Date newNullDate()
 	{
 		if(nullDate != null)
@@ -1627,39 +1644,37 @@ public final class CommonUtil
 		return (age(dateStart, new Date()));
 	}
 
+	// Los campos se calculan con GXDateFields, sin crear formatters; solo las fechas julianas
+	// (anteriores a 1582) se siguen resolviendo con SimpleDateFormat
+
 	public static int hour(Date date )
 	{
-		SimpleDateFormat format = new java.text.SimpleDateFormat("H");
-		format.setTimeZone(defaultTimeZone);
-		return  Integer.parseInt(format.format(date));
+		return GXDateFields.hour(defaultTimeZone, date.getTime());
 	}
 
 	public static int minute(Date date )
 	{
-		SimpleDateFormat format = new java.text.SimpleDateFormat("m");
-		format.setTimeZone(defaultTimeZone);
-		return  Integer.parseInt(format.format(date));
+		return GXDateFields.minute(defaultTimeZone, date.getTime());
 	}
 
 	public static int second(Date date )
 	{
-		SimpleDateFormat format = new java.text.SimpleDateFormat("s");
-		format.setTimeZone(defaultTimeZone);
-		return  Integer.parseInt(format.format(date));
+		return GXDateFields.second(defaultTimeZone, date.getTime());
 	}
 
 	public static int millisecond(Date date )
 	{
-		SimpleDateFormat format = new java.text.SimpleDateFormat(SpecificImplementation.MillisecondMask);
-		format.setTimeZone(defaultTimeZone);
-		return  Integer.parseInt(format.format(date));
+		return GXDateFields.millisecond(defaultTimeZone, date.getTime());
 	}
 
 	public static int day(Date date)
 	{
-		if	(date == null || date.equals(nullDate()))
+		if	(date == null || isNullDate(date))
 			return 0;
 
+		int day = GXDateFields.day(defaultTimeZone, date.getTime());
+		if (day != GXDateFields.UNSUPPORTED)
+			return day;
 		SimpleDateFormat dayFormat = new java.text.SimpleDateFormat("d");
 		dayFormat.setTimeZone(defaultTimeZone);
 		return  Integer.parseInt(dayFormat.format(date));
@@ -1667,9 +1682,12 @@ public final class CommonUtil
 
 	public static int month(Date date)
 	{
-		if	(date == null || date.equals(nullDate()))
+		if	(date == null || isNullDate(date))
 			return 0;
 
+		int month = GXDateFields.month(defaultTimeZone, date.getTime());
+		if (month != GXDateFields.UNSUPPORTED)
+			return month;
 		SimpleDateFormat monthFormat = new java.text.SimpleDateFormat("M");
 		monthFormat.setTimeZone(defaultTimeZone);
 		return  Integer.parseInt(monthFormat.format(date));
@@ -1677,15 +1695,28 @@ public final class CommonUtil
 
 	public static int  year(Date date)
 	{
-		if	(date == null || date.equals(nullDate()))
+		if	(date == null || isNullDate(date))
 			return 0;
 
+		int year = GXDateFields.year(defaultTimeZone, date.getTime());
+		if (year != GXDateFields.UNSUPPORTED)
+			return year;
 		SimpleDateFormat yearFormat = new java.text.SimpleDateFormat("yyyy");
 		yearFormat.setTimeZone(defaultTimeZone);
 
 		return  Integer.parseInt(yearFormat.format(date));
 	}
 
+	/** Igual que date.equals(nullDate()) pero sin crear un Date */
+	private static boolean isNullDate(Date date)
+	{
+		if (date.getClass() != Date.class)
+			return date.equals(nullDate());
+		if (nullDate == null)
+			nullDate = newNullDate();
+		return date.getTime() == nullDate.getTime();
+	}
+
 	public static String getYYYYMMDD(Date date)
 	{
 		SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("yyyyMMdd");
@@ -0,0 +1,151 @@
+package com.genexus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Copia de los parametros de un submit, para que el caller pueda seguir modificandolos sin afectar
+ * al procedimiento que se ejecuta despues.
+ * <p>
+ * Es equivalente a escribirlos con {@link GXParameterPacker#writeObject(Object)} y leerlos con
+ * {@link GXParameterUnpacker#readObject()}, pero los valores inmutables (strings, numeros, booleanos)
+ * se pasan tal cual, las fechas y los arrays de primitivos se clonan, y solo los SDTs, colecciones y
+ * demas objetos mutables se copian serializandolos, todos juntos en un mismo stream para que si dos
+ * parametros referencian al mismo objeto tambien lo hagan en la copia. El buffer de serializacion se
+ * reutiliza por thread y no se comprime.
+ */
+public final class GXParameterSnapshot
+{
+	/** Los buffers que crecen mas que esto no se reutilizan, para no retener memoria */
+	private static final int MAX_POOLED_BUFFER = 1024 * 1024;
+
+	private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>();
+
+	private GXParameterSnapshot()
+	{
+	}
+
+	public static Object[] copy(Object[] parms)
+	{
+		if (parms == null)
+			return null;
+		Object[] copy = parms.clone();
+		ArrayList<Integer> mutable = null;
+		for (int i = 0; i < copy.length; i++)
+		{
+			Object parm = copy[i];
+			if (isImmutable(parm))
+				continue;
+			if (parm instanceof Date)
+				copy[i] = ((Date) parm).clone();
+			else if (parm.getClass().isArray() && parm.getClass().getComponentType().isPrimitive())
+				copy[i] = clonePrimitiveArray(parm);
+			else
+			{
+				if (mutable == null)
+					mutable = new ArrayList<Integer>();
+				mutable.add(i);
+			}
+		}
+		if (mutable != null)
+		{
+			Object[] values = new Object[mutable.size()];
+			for (int i = 0; i < values.length; i++)
+			{
+				values[i] = copy[mutable.get(i)];
+			}
+			values = (Object[]) deepCopy(values);
+			for (int i = 0; i < values.length; i++)
+			{
+				copy[mutable.get(i)] = values[i];
+			}
+		}
+		return copy;
+	}
+
+	static boolean isImmutable(Object parm)
+	{
+		return parm == null
+			|| parm instanceof String
+			|| parm instanceof Integer
+			|| parm instanceof Long
+			|| parm instanceof Short
+			|| parm instanceof Byte
+			|| parm instanceof Double
+			|| parm instanceof Float
+			|| parm instanceof Boolean
+			|| parm instanceof Character
+			|| parm instanceof BigDecimal && parm.getClass() == BigDecimal.class
+			|| parm instanceof BigInteger && parm.getClass() == BigInteger.class
+			|| parm instanceof UUID
+			|| parm instanceof Enum;
+	}
+
+	private static Object clonePrimitiveArray(Object array)
+	{
+		int length = Array.getLength(array);
+		Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+
+	private static Object deepCopy(Object obj)
+	{
+		Buffer buffer = buffers.get();
+		if (buffer == null)
+			buffer = new Buffer();
+		else
+			buffers.set(null);
+		try
+		{
+			ObjectOutputStream out = new ObjectOutputStream(buffer);
+			out.writeObject(obj);
+			out.close();
+			ObjectInputStream in = new ObjectInputStream(buffer.toInputStream());
+			Object ret = in.readObject();
+			in.close();
+			return ret;
+		}catch(IOException e)
+		{
+			throw new RuntimeException("Error copying object " + obj.toString() + " --> " + e.toString());
+		}catch(ClassNotFoundException e)
+		{
+			throw new RuntimeException("Error copying object --> " + e.getMessage());
+		}
+		finally
+		{
+			if (buffer.capacity() <= MAX_POOLED_BUFFER)
+			{
+				buffer.reset();
+				buffers.set(buffer);
+			}
+		}
+	}
+
+	private static final class Buffer extends ByteArrayOutputStream
+	{
+		Buffer()
+		{
+			super(4096);
+		}
+
+		int capacity()
+		{
+			return buf.length;
+		}
+
+		ByteArrayInputStream toInputStream()
+		{
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
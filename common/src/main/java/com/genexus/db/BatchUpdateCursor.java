@@ -1,7 +1,13 @@
 package com.genexus.db;
 
+import java.sql.BatchUpdateException;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
 
+import com.genexus.ApplicationContext;
+import com.genexus.BatchErrorManager;
+import com.genexus.ErrorManager;
 import com.genexus.common.classes.AbstractDataSource;
 import com.genexus.common.classes.AbstractDataStoreProviderBase;
 import com.genexus.common.classes.IGXPreparedStatement;
@@ -14,6 +20,10 @@ import java.lang.reflect.InvocationTargetException;
 public class BatchUpdateCursor extends UpdateCursor {
 	Object[] errorRecords;
 	int errorRecordIndex;
+	// Registros que fallaron en el ultimo executeBatch, null si hay que reprocesar todos
+	private int[] errorRows;
+	private int errorRowIndex;
+	private long pendingBytes;
 
 	public BatchUpdateCursor(String cursorId, String sqlSentence, int errMask, String tableName) {
 		super(cursorId, sqlSentence, errMask);
@@ -43,6 +53,8 @@ public class BatchUpdateCursor extends UpdateCursor {
 
 	void postExecute(AbstractDataStoreProviderBase connectionProvider, AbstractDataSource ds) throws SQLException {
 		errorRecordIndex = -1;
+		errorRows = null;
+		errorRowIndex = -1;
 		int[] res = null;
 		Object savepoint = null;
 		try {
@@ -63,6 +75,9 @@ public class BatchUpdateCursor extends UpdateCursor {
 
 					throw ex1;
 				}
+			} else if (ex instanceof BatchUpdateException) {
+				// Sin rollback al savepoint los registros que no fallaron quedaron aplicados
+				errorRows = failedRecords((BatchUpdateException) ex);
 			}
 			throw ex;
 		}
@@ -71,6 +86,30 @@ public class BatchUpdateCursor extends UpdateCursor {
 		}
 	}
 
+	private int[] failedRecords(BatchUpdateException ex) {
+		int[] counts = ex.getUpdateCounts();
+		int recordCount = getRecordCount();
+		if (counts == null)
+			return null;
+		int[] failed = new int[recordCount];
+		int failedCount = 0;
+		for (int i = 0; i < recordCount; i++) {
+			// Los que estan despues del ultimo count no se llegaron a ejecutar
+			if (i >= counts.length || counts[i] == Statement.EXECUTE_FAILED)
+				failed[failedCount++] = i;
+		}
+		if (failedCount == 0)
+			return null;
+		ErrorManager errorManager = ApplicationContext.getInstance().getErrorManager();
+		if (errorManager instanceof BatchErrorManager) {
+			for (int i = 0; i < failedCount; i++)
+				((BatchErrorManager) errorManager).batchRecordError(mCursorId, failed[i], ex);
+		}
+		int[] result = new int[failedCount];
+		System.arraycopy(failed, 0, result, 0, failedCount);
+		return result;
+	}
+
 	private Object setSavePoint(IGXPreparedStatement stmt, String savepointName) throws SQLException {
 
 		Class<?> parmTypes[] = new Class[1];
@@ -165,6 +204,35 @@ public class BatchUpdateCursor extends UpdateCursor {
 
 	void addBatch(Object[] parms) throws SQLException {
 		mPreparedStatement.addBatch(parms);
+		pendingBytes += estimateSize(parms);
+	}
+
+	/** Cantidad aproximada de bytes de los parametros de un registro */
+	static long estimateSize(Object[] parms) {
+		long size = 0;
+		if (parms == null)
+			return size;
+		for (Object parm : parms) {
+			if (parm instanceof String)
+				size += 2 * ((String) parm).length();
+			else if (parm instanceof byte[])
+				size += ((byte[]) parm).length;
+			else if (parm instanceof Object[])
+				size += estimateSize((Object[]) parm);
+			else if (parm instanceof Date || parm instanceof java.math.BigDecimal)
+				size += 16;
+			else
+				size += 8;
+		}
+		return size;
+	}
+
+	public long getPendingBytes() {
+		return pendingBytes;
+	}
+
+	public int getPendingRecordCount() {
+		return getRecordCount();
 	}
 
 	int getBatchSize() {
@@ -188,6 +256,14 @@ public class BatchUpdateCursor extends UpdateCursor {
 	}
 
 	int readNextErrorRecord() {
+		if (errorRows != null) {
+			if (errorRowIndex < errorRows.length - 1) {
+				errorRowIndex++;
+				errorRecordIndex = errorRows[errorRowIndex];
+				return 1;
+			}
+			return 0;
+		}
 		if (errorRecordIndex < mPreparedStatement.getRecordCount() - 1) {
 			errorRecordIndex++;
 			return 1;
@@ -198,6 +274,7 @@ public class BatchUpdateCursor extends UpdateCursor {
 
 	protected void close() {
 		mPreparedStatement.resetRecordCount();
+		pendingBytes = 0;
 	}
 
 	public boolean pendingRecords() {
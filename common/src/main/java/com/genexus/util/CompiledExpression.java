@@ -0,0 +1,1038 @@
+package com.genexus.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.genexus.ModelContext;
+import com.genexus.common.interfaces.SpecificImplementation;
+import com.genexus.db.DynamicExecute;
+
+/** Expresiones de ExpressionEvaluator ya parseadas, para no volver a tokenizarlas en cada evaluacion
+ *
+ *  El arbol se arma recorriendo la expresion exactamente como lo hace ExpressionEvaluator y cada nodo
+ *  evalua en el mismo orden que el interprete y con las mismas operaciones de EvalValue, asi que los
+ *  resultados y los codigos de error son los mismos. Un error de parseo se guarda en el nodo donde
+ *  hubiera ocurrido y se lanza recien cuando se evalua ese nodo.
+ *  Las subexpresiones numericas constantes se calculan al compilar, y las funciones externas se invocan
+ *  con MethodHandles resueltos una sola vez por funcion y tipos de parametros.
+ */
+final class CompiledExpression
+{
+	private static final int MAX_CACHED_EXPRESSIONS = 1000;
+	private static final int MAX_CACHED_FUNCTIONS = 1000;
+
+	// Los mismos codigos de error de ExpressionEvaluator
+	private static final short EXPRESSION_ERROR = 3;
+	private static final short EVALUATION_ERROR = 4;
+	private static final short EXTERNAL_FUNCTION_ERROR = 5;
+
+	private static final char GE = ExpressionEvaluator.GE;
+	private static final char LE = ExpressionEvaluator.LE;
+	private static final char AND = ExpressionEvaluator.AND;
+	private static final char OR = ExpressionEvaluator.OR;
+	private static final char NE = ExpressionEvaluator.NE;
+
+	private static final Lru<String, Node> expressions = new Lru<String, Node>(MAX_CACHED_EXPRESSIONS);
+	private static final Lru<String, Node> iifExpressions = new Lru<String, Node>(MAX_CACHED_EXPRESSIONS);
+	private static final Lru<FunctionKey, ExternalFunction> functions = new Lru<FunctionKey, ExternalFunction>(MAX_CACHED_FUNCTIONS);
+
+	private CompiledExpression()
+	{
+	}
+
+	/** Evalua la expresion como ExpressionEvaluator.eval(String), compilandola la primera vez */
+	static EvalValue eval(ExpressionEvaluator evaluator, String expression)
+	{
+		Lru<String, Node> cache = evaluator.iifContext ? iifExpressions : expressions;
+		Node node = cache.get(expression);
+		if (node == null)
+		{
+			node = compile(expression, evaluator.iifContext);
+			cache.put(expression, node);
+		}
+		return node.eval(evaluator);
+	}
+
+	static void clear()
+	{
+		expressions.clear();
+		iifExpressions.clear();
+		functions.clear();
+	}
+
+	/** Misma excepcion que la guardada al compilar, nueva en cada evaluacion para que cada una tenga su stack trace */
+	private static RuntimeException copyOf(RuntimeException exception)
+	{
+		RuntimeException copy;
+		try
+		{
+			copy = exception.getClass().getConstructor(String.class).newInstance(exception.getMessage());
+		}
+		catch (Exception e)
+		{
+			return new RuntimeException(exception.getMessage(), exception);
+		}
+		try
+		{
+			copy.initCause(exception);
+		}
+		catch (IllegalStateException e)
+		{ // El constructor ya le puso una causa
+		}
+		return copy;
+	}
+
+	// Compilacion, sigue la misma estructura que ExpressionEvaluator
+
+	/** Equivalente a ExpressionEvaluator.eval(String) */
+	private static Node compile(String expression, boolean iifContext)
+	{
+		try
+		{
+			if (expression == "")
+				return new ErrorNode(EXPRESSION_ERROR, "Empty expression");
+
+			if (!ExpressionEvaluator.matchParentesis(expression))
+			{
+				return new ErrorNode(EXPRESSION_ERROR, "The expression '" + expression + "' has unbalanced parenthesis");
+			}
+			String delim = "'!+-/*><=" + GE + LE + AND + OR + NE;
+			boolean useParentheses = false;
+			if (iifContext && dependsOnIifContext(expression))
+			{
+				delim = "" + AND + OR;
+				useParentheses = true;
+			}
+			Tokenizer tokenizer = new Tokenizer(ExpressionEvaluator.getTokenizerExpression(expression), delim, true, useParentheses);
+			return compileEvaluate(expression, tokenizer, false, iifContext);
+		}
+		catch (RuntimeException e)
+		{
+			return new Failure(e);
+		}
+	}
+
+	private static boolean dependsOnIifContext(String expression)
+	{
+		return expression.indexOf(AND) != -1 || expression.indexOf(OR) != -1;
+	}
+
+	/** Subexpresion que el interprete evalua con eval(String), con el iifContext que tendra al evaluarla */
+	private static Node compileSubexpression(String expression, boolean iifContext)
+	{
+		Node node = compile(expression, iifContext);
+		if (dependsOnIifContext(expression))
+			return new Subexpression(expression, iifContext, node);
+		return node;
+	}
+
+	/** Equivalente a ExpressionEvaluator.evaluate(String, Tokenizer, boolean) */
+	private static Node compileEvaluate(String fullExpression, Tokenizer tokenizer, boolean stopOnLowPrecedence, boolean iifContext)
+	{
+		Node retVal;
+		try
+		{
+			retVal = compileTerm(tokenizer, iifContext);
+		}
+		catch (RuntimeException e)
+		{
+			return new Failure(e);
+		}
+		ArrayList<Step> steps = new ArrayList<Step>();
+		while (tokenizer.hasMoreTokens())
+		{
+			if (stopOnLowPrecedence)
+			{
+				String[] nextOp = new String[1];
+				if (tokenizer.peek(nextOp) && nextOp[0].length() >= 1 && (nextOp[0].charAt(0) == '+' || nextOp[0].charAt(0) == '-'))
+					break;
+			}
+
+			String soperador = tokenizer.nextToken();
+			char operador = soperador.charAt(0);
+			switch (operador)
+			{
+			case '+':
+			case '-':
+				retVal = addStep(retVal, steps, new Step(operador, compileEvaluate(fullExpression, tokenizer, true, iifContext)));
+				break;
+			case '*':
+			case '/':
+				Node termino;
+				try
+				{
+					termino = compileTerm(tokenizer, iifContext);
+				}
+				catch (RuntimeException e)
+				{ // El interprete termina aqui, lo que sigue nunca se evalua
+					steps.add(new Step(Step.EFFECT, new Failure(e)));
+					return new Sequence(retVal, steps);
+				}
+				retVal = addStep(retVal, steps, new Step(operador, termino));
+				break;
+			case '>':
+			case '<':
+			case '=':
+			case GE:
+			case LE:
+			case AND:
+			case OR:
+			case NE:
+				retVal = addStep(retVal, steps, new Step(operador, compileEvaluate(fullExpression, tokenizer, false, iifContext)));
+				return steps.isEmpty() ? retVal : new Sequence(retVal, steps);
+			default:
+				steps.add(new Step(Step.EFFECT, new ErrorNode(EVALUATION_ERROR, "Unknown operator '" + soperador + "' found in expression '" + fullExpression + "'")));
+				break;
+			}
+		}
+		return steps.isEmpty() ? retVal : new Sequence(retVal, steps);
+	}
+
+	/** Agrega la operacion, o la calcula si la expresion hasta aqui y el operando son constantes */
+	private static Node addStep(Node retVal, ArrayList<Step> steps, Step step)
+	{
+		if (steps.isEmpty() && retVal instanceof Constant && step.operand instanceof Constant && step.operator != '/')
+		{
+			try
+			{
+				return new Constant(step.apply(((Constant) retVal).value, null));
+			}
+			catch (RuntimeException e)
+			{ // Si falla se deja para que falle al evaluarla
+			}
+		}
+		steps.add(step);
+		return retVal;
+	}
+
+	/** Equivalente a ExpressionEvaluator.eval(Tokenizer) */
+	private static Node compileTerm(Tokenizer tokenizer, boolean iifContext)
+	{
+		String token = ExpressionEvaluator.getNextToken(tokenizer);
+
+		if (token.equalsIgnoreCase("!"))
+		{
+			return fold(new Not(compileTerm(tokenizer, iifContext)));
+		}
+		if (token.equalsIgnoreCase("-"))
+		{
+			return fold(new Negate(compileTerm(tokenizer, iifContext)));
+		}
+		if (token.equalsIgnoreCase("+"))
+		{
+			return compileTerm(tokenizer, iifContext);
+		}
+
+		if (token.startsWith("(") && token.endsWith(")"))
+		{
+			return compileSubexpression(token.substring(1, token.length() - 1).trim(), iifContext);
+		}
+		if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.')
+		{
+			try
+			{
+				return new Constant(new EvalValue(new BigDecimal(token)));
+			}
+			catch(Exception e)
+			{
+				return new ErrorNode(EVALUATION_ERROR, "Invalid variable reference: " + token);
+			}
+		}
+		if (token.startsWith("'"))
+		{
+			String s = "";
+			String tk = tokenizer.nextToken();
+			while (! tk.equals("'"))
+			{
+				s += tk;
+				tk = tokenizer.nextToken();
+			}
+			return new Constant(new EvalValue(s));
+		}
+		if (token.equalsIgnoreCase("PI"))
+		{
+			return new Constant(new EvalValue(new BigDecimal(Math.PI)));
+		}
+
+		// Las variables se resuelven al evaluar, pues pueden cambiar entre una evaluacion y otra
+		Node function;
+		int indexLeftParen = token.indexOf('(');
+		int indexRightParen = token.lastIndexOf(')');
+		if(indexLeftParen == -1 || indexRightParen == -1)
+		{
+			function = new ErrorNode(EVALUATION_ERROR, "Invalid variable reference: " + token);
+		}
+		else
+		{
+			try
+			{
+				function = compileFuncCall(token.substring(0, indexLeftParen), token.substring(indexLeftParen + 1, indexRightParen), iifContext);
+			}
+			catch (RuntimeException e)
+			{
+				function = new Failure(e);
+			}
+		}
+		return new Variable(token, function);
+	}
+
+	/** Equivalente a ExpressionEvaluator.evalFuncCall */
+	private static Node compileFuncCall(String funcName, String expr, boolean iifContext)
+	{
+		for (int i = 0; i < Function.NAMES.length; i++)
+		{
+			if (funcName.equalsIgnoreCase(Function.NAMES[i]))
+				return fold(new Function(i, expr, i == Function.RND ? new Node[0] : new Node[] { compileSubexpression(expr, iifContext) }));
+		}
+
+		if(funcName.equalsIgnoreCase("pow") ||
+				funcName.equalsIgnoreCase("max") ||
+				funcName.equalsIgnoreCase("min"))
+		{
+			Tokenizer paramTokenizer = new Tokenizer(expr, ",", true);
+			String sarg1, sarg2;
+			try
+			{
+				sarg1 = ExpressionEvaluator.getNextToken(paramTokenizer);
+				paramTokenizer.nextToken();
+				sarg2 = ExpressionEvaluator.getNextToken(paramTokenizer);
+			}
+			catch (NoSuchElementException e)
+			{
+				return new FunctionError(new ErrorNode(EVALUATION_ERROR, "The function " + funcName + " needs 2 arguments"));
+			}
+			int function = funcName.equalsIgnoreCase("pow") ? Function.POW : funcName.equalsIgnoreCase("max") ? Function.MAX : Function.MIN;
+			return fold(new Function(function, expr, new Node[] { compileSubexpression(sarg1, iifContext), compileSubexpression(sarg2, iifContext) }));
+		}
+
+		if(funcName.equalsIgnoreCase("iif"))
+		{
+			Tokenizer paramTokenizer = new Tokenizer(expr, ",", true);
+			String sarg1, sarg2, sarg3;
+			try
+			{
+				sarg1 = ExpressionEvaluator.getNextToken(paramTokenizer);
+				paramTokenizer.nextToken();
+				sarg2 = ExpressionEvaluator.getNextToken(paramTokenizer);
+				paramTokenizer.nextToken();
+				sarg3 = ExpressionEvaluator.getNextToken(paramTokenizer);
+			}
+			catch (NoSuchElementException e)
+			{
+				return new FunctionError(new ErrorNode(EVALUATION_ERROR, "The function " + funcName + " needs 3 arguments"));
+			}
+			// La condicion se evalua con iifContext en true y las ramas con iifContext en false
+			return new Iif(compileSubexpression(sarg1, true), compileSubexpression(sarg2, false), compileSubexpression(sarg3, false));
+		}
+
+		return compileExternalFunctionCall(funcName, expr, iifContext);
+	}
+
+	/** Equivalente a ExpressionEvaluator.evalExternalFunctionCall */
+	private static Node compileExternalFunctionCall(String funcName, String expr, boolean iifContext)
+	{
+		Tokenizer paramTokenizer = new Tokenizer(expr.trim(), ",", true);
+		ArrayList<Object> args = new ArrayList<Object>();
+		RuntimeException failure = null;
+		try
+		{
+			while(paramTokenizer.hasMoreTokens())
+			{
+				String arg = ExpressionEvaluator.getNextToken(paramTokenizer).trim();
+				if((arg.startsWith("\"") || arg.startsWith("'")) &&
+						(arg.endsWith("\"") || arg.endsWith("'")))
+				{ // Los strings se pasan como String, el resto como Node
+					args.add(arg.substring(1, arg.length()-1));
+				}
+				else
+				{
+					args.add(compileSubexpression(arg, iifContext));
+				}
+
+				if(paramTokenizer.hasMoreTokens())
+				{
+					paramTokenizer.nextToken();
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{ // Se lanza despues de evaluar los parametros anteriores, como en el interprete
+			failure = e;
+		}
+		return new ExternalCall(funcName.toLowerCase(), args.toArray(), failure);
+	}
+
+	/** Si el nodo solo depende de constantes lo calcula */
+	private static Node fold(Node node)
+	{
+		if (node.isConstant())
+		{
+			try
+			{
+				return new Constant(node.eval(null));
+			}
+			catch (RuntimeException e)
+			{ // Si falla (o necesita el evaluador para reportar un error) se deja para que falle al evaluarla
+			}
+		}
+		return node;
+	}
+
+	// Nodos
+
+	private static abstract class Node
+	{
+		abstract EvalValue eval(ExpressionEvaluator e);
+
+		/** True si el resultado solo depende de constantes y se puede calcular al compilar */
+		boolean isConstant()
+		{
+			return false;
+		}
+	}
+
+	private static final class Constant extends Node
+	{
+		final EvalValue value;
+
+		Constant(EvalValue value)
+		{
+			this.value = value;
+		}
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			return value;
+		}
+
+		boolean isConstant()
+		{
+			return true;
+		}
+	}
+
+	/** Error que el interprete reporta con throwException */
+	private static final class ErrorNode extends Node
+	{
+		private final short errCode;
+		private final String error;
+
+		ErrorNode(short errCode, String error)
+		{
+			this.errCode = errCode;
+			this.error = error;
+		}
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			return e.throwException(errCode, error);
+		}
+	}
+
+	/** Excepcion que el interprete lanza al parsear la expresion */
+	private static final class Failure extends Node
+	{
+		private final RuntimeException exception;
+
+		Failure(RuntimeException exception)
+		{
+			this.exception = exception;
+		}
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			throw copyOf(exception);
+		}
+	}
+
+	/**
+	 * Subexpresion con operadores and/or, que el interprete tokeniza distinto si esta dentro de la
+	 * condicion de un iif. Si al evaluarla el iifContext no es con el que se compilo (un iif anidado
+	 * en la condicion de otro lo deja en false) se evalua con el que tenga.
+	 */
+	private static final class Subexpression extends Node
+	{
+		private final String expression;
+		private final boolean iifContext;
+		private final Node node;
+
+		Subexpression(String expression, boolean iifContext, Node node)
+		{
+			this.expression = expression;
+			this.iifContext = iifContext;
+			this.node = node;
+		}
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			if (e.iifContext == iifContext)
+				return node.eval(e);
+			return e.eval(expression);
+		}
+	}
+
+	private static final class Step
+	{
+		static final char EFFECT = 0;
+
+		final char operator;
+		final Node operand;
+
+		Step(char operator, Node operand)
+		{
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		/** Igual que el switch de ExpressionEvaluator.evaluate */
+		EvalValue apply(EvalValue retVal, ExpressionEvaluator e)
+		{
+			switch (operator)
+			{
+			case '+': return EvalValue.add(retVal, operand.eval(e));
+			case '-': return EvalValue.subtract(retVal, operand.eval(e));
+			case '*': return EvalValue.multiply(retVal, operand.eval(e));
+			case '/':
+				EvalValue termino = operand.eval(e);
+				if(termino.isFalse() && e.errCode == 0)
+					e.throwException(EVALUATION_ERROR, "Division by zero");
+				if (e.errCode == 0)
+					retVal = EvalValue.divide(retVal, termino);
+				return retVal;
+			case '>': return EvalValue.greater(retVal, operand.eval(e)) ? EvalValue.trueValue() : EvalValue.falseValue();
+			case '<': return EvalValue.less(retVal, operand.eval(e)) ? EvalValue.trueValue() : EvalValue.falseValue();
+			case '=': return EvalValue.equal(retVal, operand.eval(e)) ? EvalValue.trueValue() : EvalValue.falseValue();
+			case GE: return EvalValue.greaterOrEqual(retVal, operand.eval(e)) ? EvalValue.trueValue() : EvalValue.falseValue();
+			case LE: return EvalValue.lessOrEqual(retVal, operand.eval(e)) ? EvalValue.trueValue() : EvalValue.falseValue();
+			case AND: return (retVal.isTrue()) && (operand.eval(e).isTrue()) ? EvalValue.trueValue() : EvalValue.falseValue();
+			case OR: return (retVal.isTrue()) || (operand.eval(e).isTrue()) ? EvalValue.trueValue() : EvalValue.falseValue();
+			case NE: return EvalValue.notEqual(retVal, operand.eval(e)) ? EvalValue.trueValue() : EvalValue.falseValue();
+			default:
+				operand.eval(e);
+				return retVal;
+			}
+		}
+	}
+
+	/** Primer termino seguido de las operaciones, en el orden en que el interprete las evalua */
+	private static final class Sequence extends Node
+	{
+		private final Node first;
+		private final Step[] steps;
+
+		Sequence(Node first, ArrayList<Step> steps)
+		{
+			this.first = first;
+			this.steps = steps.toArray(new Step[steps.size()]);
+		}
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			EvalValue retVal = first.eval(e);
+			for (int i = 0; i < steps.length; i++)
+			{
+				retVal = steps[i].apply(retVal, e);
+			}
+			return retVal;
+		}
+	}
+
+	private static final class Not extends Node
+	{
+		private final Node node;
+
+		Not(Node node)
+		{
+			this.node = node;
+		}
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			return node.eval(e).isFalse() ? EvalValue.trueValue() : EvalValue.falseValue();
+		}
+
+		boolean isConstant()
+		{
+			return node.isConstant();
+		}
+	}
+
+	private static final class Negate extends Node
+	{
+		private final Node node;
+
+		Negate(Node node)
+		{
+			this.node = node;
+		}
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			return EvalValue.multiply( new EvalValue(new BigDecimal(-1)), node.eval(e));
+		}
+
+		boolean isConstant()
+		{
+			return node.isConstant();
+		}
+	}
+
+	/** Variable del evaluador o, si no lo es, la funcion o el error que corresponde al token */
+	private static final class Variable extends Node
+	{
+		private final String token;
+		private final Node function;
+
+		Variable(String token, Node function)
+		{
+			this.token = token;
+			this.function = function;
+		}
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			if(e.parms.containsKey( token))
+			{
+				return e.eval(e.parms.get(token));
+			}
+			return function.eval(e);
+		}
+	}
+
+	/** Funcion que retorna un double, el resultado se convierte igual que en ExpressionEvaluator.eval(Tokenizer) */
+	private static abstract class FunctionCall extends Node
+	{
+		abstract double call(ExpressionEvaluator e);
+
+		EvalValue eval(ExpressionEvaluator e)
+		{
+			double result = call(e);
+			if (Double.isInfinite(result) || Double.isNaN(result))
+			{
+				return new EvalValue(new BigDecimal(0));
+			}
+			else
+			{
+				return new EvalValue(new BigDecimal(result));
+			}
+		}
+	}
+
+	private static final class FunctionError extends FunctionCall
+	{
+		private final Node error;
+
+		FunctionError(Node error)
+		{
+			this.error = error;
+		}
+
+		double call(ExpressionEvaluator e)
+		{
+			return error.eval(e).getDecimal().doubleValue();
+		}
+	}
+
+	/** Funciones internas salvo iif */
+	private static final class Function extends FunctionCall
+	{
+		static final String[] NAMES = { "rnd", "abs", "int", "frac", "sin", "asin", "cos", "acos", "tan", "atan", "floor", "round", "trunc", "ln", "log", "exp", "sqrt" };
+		static final int RND = 0, ABS = 1, INT = 2, FRAC = 3, SIN = 4, ASIN = 5, COS = 6, ACOS = 7, TAN = 8, ATAN = 9,
+			FLOOR = 10, ROUND = 11, TRUNC = 12, LN = 13, LOG = 14, EXP = 15, SQRT = 16, POW = 17, MAX = 18, MIN = 19;
+
+		private final int function;
+		private final String expr;
+		private final Node[] args;
+
+		Function(int function, String expr, Node[] args)
+		{
+			this.function = function;
+			this.expr = expr;
+			this.args = args;
+		}
+
+		double call(ExpressionEvaluator e)
+		{
+			switch (function)
+			{
+			case RND: return Math.random();
+			case ABS: return Math.abs(args[0].eval(e).getDecimal().doubleValue());
+			case INT: return (double)(args[0].eval(e).getDecimal().longValue());
+			case FRAC:
+				double value = args[0].eval(e).getDecimal().doubleValue() ;
+				return value - (double) ( (long) value);
+			case SIN: return Math.sin(args[0].eval(e).getDecimal().doubleValue());
+			case ASIN: return Math.asin(args[0].eval(e).getDecimal().doubleValue());
+			case COS: return Math.cos(args[0].eval(e).getDecimal().doubleValue());
+			case ACOS:
+				double x = args[0].eval(e).getDecimal().doubleValue() ;
+				if (x > 1 || x < -1)
+					e.throwException(EVALUATION_ERROR, "Invalid range");
+				return Math.acos(x);
+			case TAN: return Math.tan(args[0].eval(e).getDecimal().doubleValue());
+			case ATAN: return Math.atan(args[0].eval(e).getDecimal().doubleValue());
+			case FLOOR:
+			case TRUNC:
+				return Math.floor(args[0].eval(e).getDecimal().doubleValue() );
+			case ROUND: return Math.round(args[0].eval(e).getDecimal().doubleValue() );
+			case LN:
+			case LOG:
+				double val = args[0].eval(e).getDecimal().doubleValue() ;
+				if (val <= 0)
+				{
+					return e.throwException(EVALUATION_ERROR, "Illegal argument (" + val + ") to function log(" + expr + ")").getDecimal().doubleValue() ;
+				}
+				return Math.log(val);
+			case EXP: return Math.exp(args[0].eval(e).getDecimal().doubleValue() );
+			case SQRT: return Math.sqrt(args[0].eval(e).getDecimal().doubleValue() );
+			default:
+				double arg1 = args[0].eval(e).getDecimal().doubleValue() ;
+				double arg2 = args[1].eval(e).getDecimal().doubleValue() ;
+				if (function == POW)
+					return Math.pow(arg1, arg2);
+				if (function == MAX)
+					return Math.max(arg1, arg2);
+				return Math.min(arg1, arg2);
+			}
+		}
+
+		boolean isConstant()
+		{
+			if (function == RND)
+				return false;
+			for (int i = 0; i < args.length; i++)
+			{
+				if (!args[i].isConstant())
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private static final class Iif extends FunctionCall
+	{
+		private final Node condition;
+		private final Node whenTrue;
+		private final Node whenFalse;
+
+		Iif(Node condition, Node whenTrue, Node whenFalse)
+		{
+			this.condition = condition;
+			this.whenTrue = whenTrue;
+			this.whenFalse = whenFalse;
+		}
+
+		double call(ExpressionEvaluator e)
+		{
+			e.iifContext = true;
+			Boolean iif_result = condition.eval(e).isTrue();
+			e.iifContext = false;
+			if (e.errCode != 0)
+				return 0;
+
+			double result;
+			if(iif_result)
+				result = whenTrue.eval(e).getDecimal().doubleValue() ;
+			else
+				result = whenFalse.eval(e).getDecimal().doubleValue() ;
+			return result;
+		}
+	}
+
+	/** Llamada a un procedimiento externo, los parametros son Strings constantes o Nodes */
+	private static final class ExternalCall extends FunctionCall
+	{
+		private final String className;
+		private final Object[] args;
+		private final RuntimeException failure;
+
+		ExternalCall(String className, Object[] args, RuntimeException failure)
+		{
+			this.className = className;
+			this.args = args;
+			this.failure = failure;
+		}
+
+		double call(ExpressionEvaluator e)
+		{
+			Object [] callParms = new Object[args.length + 1];
+			StringBuilder signature = new StringBuilder(className).append(':');
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i] instanceof String)
+				{
+					callParms[i] = args[i];
+				}
+				else
+				{
+					EvalValue eValue = ((Node) args[i]).eval(e);
+					if (eValue.getString() == null)
+						callParms[i] = new Double(eValue.getDecimal().doubleValue() );
+					else
+						callParms[i] = new String(eValue.getString());
+				}
+				signature.append(callParms[i] instanceof String ? 'S' : 'D');
+			}
+			if (failure != null)
+				throw copyOf(failure);
+			callParms[args.length] = new Double(0);
+
+			try
+			{
+				getFunction(signature.toString(), callParms).execute(e, callParms);
+			}catch(Exception ex)
+			{
+				return e.throwException(EXTERNAL_FUNCTION_ERROR, ex.toString()).getDecimal().doubleValue() ;
+			}
+
+			return ((Double)callParms[callParms.length - 1]).doubleValue();
+		}
+
+		private ExternalFunction getFunction(String signature, Object[] callParms)
+		{
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			if (loader == null)
+				loader = ExpressionEvaluator.class.getClassLoader();
+			FunctionKey key = new FunctionKey(loader, signature);
+			ExternalFunction function = functions.get(key);
+			if (function == null)
+			{
+				function = ExternalFunction.resolve(loader, className, callParms);
+				functions.put(key, function);
+			}
+			return function;
+		}
+	}
+
+	/** Una misma clase puede estar en mas de un ClassLoader, por ejemplo en dos aplicaciones del mismo servidor */
+	private static final class FunctionKey
+	{
+		private final ClassLoader loader;
+		private final String signature;
+
+		FunctionKey(ClassLoader loader, String signature)
+		{
+			this.loader = loader;
+			this.signature = signature;
+		}
+
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof FunctionKey))
+				return false;
+			FunctionKey other = (FunctionKey) o;
+			return loader == other.loader && signature.equals(other.signature);
+		}
+
+		public int hashCode()
+		{
+			return 31 * System.identityHashCode(loader) + signature.hashCode();
+		}
+	}
+
+	/** Cache acotado que descarta lo usado hace mas tiempo */
+	private static final class Lru<K, V>
+	{
+		private final LinkedHashMap<K, V> map;
+
+		Lru(final int maxSize)
+		{
+			map = new LinkedHashMap<K, V>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+				{
+					return size() > maxSize;
+				}
+			};
+		}
+
+		synchronized V get(K key)
+		{
+			return map.get(key);
+		}
+
+		synchronized void put(K key, V value)
+		{
+			map.put(key, value);
+		}
+
+		synchronized void clear()
+		{
+			map.clear();
+		}
+	}
+
+	/**
+	 * Metodo execute de un procedimiento externo, resuelto para unos tipos de parametros.
+	 * <p>
+	 * Se elige el mismo metodo que elegiria DynamicExecute.dynamicExecute y se le pasan los parametros
+	 * con las mismas conversiones. Si el metodo necesita conversiones que no estan aqui, o no se puede
+	 * invocar con un MethodHandle, se sigue llamando a DynamicExecute.
+	 */
+	private static final class ExternalFunction
+	{
+		private static final int REJECTED = -1;
+		private static final int NOT_SUPPORTED = -2;
+		private static final int DIRECT = 0;
+		private static final int WRAP = 1;
+		private static final int DOUBLE = 2;
+		private static final int INTEGER = 3;
+		private static final int LONG = 4;
+		private static final int BIG_DECIMAL = 5;
+		private static final int DOUBLE_ARRAY = 6;
+		private static final int INTEGER_ARRAY = 7;
+		private static final int LONG_ARRAY = 8;
+		private static final int BIG_DECIMAL_ARRAY = 9;
+
+		private final String className;
+		private final MethodHandle constructor;
+		private final MethodHandle execute;
+		private final int[] conversions;
+
+		private ExternalFunction(String className, MethodHandle constructor, MethodHandle execute, int[] conversions)
+		{
+			this.className = className;
+			this.constructor = constructor;
+			this.execute = execute;
+			this.conversions = conversions;
+		}
+
+		static ExternalFunction resolve(ClassLoader loader, String className, Object[] params)
+		{
+			try
+			{
+				Class<?> myClass = loader == null ? Class.forName(className) : loader.loadClass(className);
+				if (!Modifier.isPublic(myClass.getModifiers()) || Modifier.isAbstract(myClass.getModifiers()))
+					return new ExternalFunction(className, null, null, null);
+				Method [] methods = myClass.getMethods();
+				nextMethod:
+				for(int i = 0; i < methods.length; i++)
+				{
+					Method method = methods[i];
+					if(!method.getName().equalsIgnoreCase("execute"))continue;
+					Class<?> [] parameters = method.getParameterTypes();
+					if(parameters.length != params.length)continue;
+
+					int[] conversions = new int[params.length];
+					boolean supported = !Modifier.isStatic(method.getModifiers());
+					for(int j = 0; j < parameters.length ; j++)
+					{
+						conversions[j] = getConversion(parameters[j], params[j].getClass());
+						if (conversions[j] == REJECTED)
+							continue nextMethod;
+						if (conversions[j] == NOT_SUPPORTED)
+							supported = false;
+					}
+					if (!supported)
+						break;
+
+					Constructor<?> myConstructor = myClass.getConstructor(int.class, SpecificImplementation.Application.getModelContextClass());
+					MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+					MethodHandle constructor = lookup.unreflectConstructor(myConstructor)
+						.asType(MethodType.methodType(Object.class, int.class, ModelContext.class));
+					MethodHandle execute = lookup.unreflect(method)
+						.asType(MethodType.genericMethodType(params.length + 1).changeReturnType(void.class))
+						.asSpreader(Object[].class, params.length);
+					return new ExternalFunction(className, constructor, execute, conversions);
+				}
+			}
+			catch (Exception e)
+			{
+			}
+			catch (LinkageError e)
+			{
+			}
+			return new ExternalFunction(className, null, null, null);
+		}
+
+		/** Conversion que haria DynamicExecute de un parametro Double o String al tipo del metodo */
+		private static int getConversion(Class<?> parameter, Class<?> sourceClass)
+		{
+			if (parameter.equals(sourceClass) || parameter.isAssignableFrom(sourceClass))
+				return DIRECT;
+			boolean destIsArray = parameter.isArray();
+			Class<?> destClass = destIsArray ? parameter.getComponentType() : parameter;
+			if (destClass.equals(sourceClass))
+				return WRAP;
+			if (!destClass.isPrimitive() && !destClass.isAssignableFrom(BigDecimal.class))
+				return REJECTED;
+			if (sourceClass != Double.class)
+				return REJECTED;
+			if (destClass == double.class)
+				return destIsArray ? DOUBLE_ARRAY : DOUBLE;
+			if (destClass == int.class)
+				return destIsArray ? INTEGER_ARRAY : INTEGER;
+			if (destClass == long.class)
+				return destIsArray ? LONG_ARRAY : LONG;
+			if (destClass == BigDecimal.class)
+				return destIsArray ? BIG_DECIMAL_ARRAY : BIG_DECIMAL;
+			return NOT_SUPPORTED;
+		}
+
+		void execute(ExpressionEvaluator e, Object[] params)
+		{
+			if (execute == null)
+			{
+				DynamicExecute.dynamicExecute(e.context, e.handle, ExpressionEvaluator.class, className, params);
+				return;
+			}
+			Object [] callingParams = new Object[params.length];
+			for (int j = 0; j < params.length; j++)
+			{
+				Object param = params[j];
+				switch (conversions[j])
+				{
+				case WRAP:
+					Object[] array = (Object[]) Array.newInstance(param.getClass(), 1);
+					array[0] = param;
+					callingParams[j] = array;
+					break;
+				case INTEGER: callingParams[j] = new Integer((int) ((Double) param).doubleValue()); break;
+				case LONG: callingParams[j] = new Long((long) ((Double) param).doubleValue()); break;
+				case BIG_DECIMAL: callingParams[j] = new BigDecimal(((Double) param).doubleValue()); break;
+				case DOUBLE_ARRAY: callingParams[j] = new double[] { ((Double) param).doubleValue() }; break;
+				case INTEGER_ARRAY: callingParams[j] = new int[] { (int) ((Double) param).doubleValue() }; break;
+				case LONG_ARRAY: callingParams[j] = new long[] { (long) ((Double) param).doubleValue() }; break;
+				case BIG_DECIMAL_ARRAY: callingParams[j] = new BigDecimal[] { new BigDecimal(((Double) param).doubleValue()) }; break;
+				default: callingParams[j] = param; break;
+				}
+			}
+
+			try
+			{
+				Object instance = (Object) constructor.invokeExact(e.handle, e.context);
+				execute.invokeExact(instance, callingParams);
+			}
+			catch (Throwable t)
+			{ // Mismo error que DynamicExecute cuando falla el procedimiento
+				throw new RuntimeException("java.lang.reflect.InvocationTargetException Can't execute dynamic call " + className + " - " + t.getMessage());
+			}
+
+			// Los parametros array se copian de vuelta, como en DynamicExecute
+			for (int j = 0; j < params.length; j++)
+			{
+				switch (conversions[j])
+				{
+				case WRAP: params[j] = ((Object[]) callingParams[j])[0]; break;
+				case DOUBLE_ARRAY: params[j] = new Double(((double[]) callingParams[j])[0]); break;
+				case INTEGER_ARRAY: params[j] = new Double(((int[]) callingParams[j])[0]); break;
+				case LONG_ARRAY: params[j] = new Double(((long[]) callingParams[j])[0]); break;
+				case BIG_DECIMAL_ARRAY: params[j] = new Double(((BigDecimal[]) callingParams[j])[0].doubleValue()); break;
+				default: break;
+				}
+			}
+		}
+	}
+}
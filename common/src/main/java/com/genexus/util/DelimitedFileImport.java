@@ -0,0 +1,405 @@
+package com.genexus.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.genexus.CommonUtil;
+import com.genexus.RunnableThrows;
+import com.genexus.common.interfaces.SpecificImplementation;
+import com.genexus.db.IDataStoreProvider;
+import com.genexus.platform.INativeFunctions;
+
+/** Importacion en paralelo de un archivo delimitado
+ *
+ *  El archivo se lee por bloques que se cortan en el ultimo fin de linea que no este dentro de un texto
+ *  delimitado, de modo que un registro con saltos de linea entre delimitadores de texto queda en un solo bloque.
+ *  Cada bloque se lee en un pool fork-join con su propio DelimitedFilesSafe, asi que el RecordParser usa las
+ *  mismas funciones dfrgnum, dfrgtxt y dfrgdate que un programa que lee el archivo con dfrnext, y obtiene los
+ *  mismos resultados. Los registros se entregan al RecordConsumer siempre desde el thread que llamo a run,
+ *  en el orden del archivo o, si no se pide orden, a medida que se terminan de leer los bloques.
+ *
+ *  Los bloques se cortan buscando los fines de linea en los bytes, lo que solo es posible si el encoding
+ *  representa los caracteres ASCII con un byte (UTF-8 y los encodings de un byte). Con otros encodings, como
+ *  UTF-16, el archivo se lee en un solo thread.
+ */
+public final class DelimitedFileImport
+{
+	private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+	/** Un bloque sin fines de linea fuera de texto delimitado se corta igual al llegar a este multiplo del tamanio */
+	private static final int MAX_CHUNK_FACTOR = 4;
+
+	/** Lee un registro, llamando a las funciones dfrg* del DelimitedFilesSafe posicionado en el.
+	 *  Se ejecuta en paralelo para registros de distintos bloques. Retorna null para saltear el registro. */
+	public interface RecordParser<T>
+	{
+		T parse(DelimitedFilesSafe record) throws Exception;
+	}
+
+	/** Recibe los registros leidos, de a uno y desde el thread que llamo a run */
+	public interface RecordConsumer<T>
+	{
+		void accept(T record) throws Exception;
+	}
+
+	private final String filename;
+	private final int len;
+	private final String fdel;
+	private final String sdel;
+	private final String enc;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private boolean ordered = true;
+
+	public DelimitedFileImport(String filename, int len, String fdel, String sdel, String enc)
+	{
+		this.filename = filename;
+		this.len = len;
+		this.fdel = fdel;
+		this.sdel = sdel;
+		this.enc = enc;
+	}
+
+	public DelimitedFileImport(String filename, String fdel, String sdel, String enc)
+	{
+		this(filename, 1024, fdel, sdel, enc);
+	}
+
+	public DelimitedFileImport setParallelism(int parallelism)
+	{
+		this.parallelism = Math.max(1, parallelism);
+		return this;
+	}
+
+	/** Tamanio en bytes de los bloques que se leen en paralelo */
+	public DelimitedFileImport setChunkSize(int chunkSize)
+	{
+		this.chunkSize = Math.max(1, chunkSize);
+		return this;
+	}
+
+	/** Si es false los registros de cada bloque se entregan apenas se leen, sin esperar a los bloques anteriores */
+	public DelimitedFileImport setOrdered(boolean ordered)
+	{
+		this.ordered = ordered;
+		return this;
+	}
+
+	/** Agrega cada registro leido al BatchUpdateCursor del data store provider, como addRecord
+	 *  @return la cantidad de registros agregados */
+	public long run(RecordParser<Object[]> parser, final IDataStoreProvider provider, final int cursor) throws Exception
+	{
+		return run(parser, new RecordConsumer<Object[]>()
+		{
+			public void accept(Object[] record)
+			{
+				provider.addRecord(cursor, record);
+			}
+		});
+	}
+
+	/** Lee el archivo y entrega cada registro al consumer
+	 *  @return la cantidad de registros entregados */
+	public <T> long run(RecordParser<T> parser, RecordConsumer<T> consumer) throws Exception
+	{
+		String encoding = enc == null ? null : enc.trim();
+		String bom = null;
+		Charset charset = Charset.defaultCharset();
+		if (encoding != null)
+		{
+			if (encoding.equals(""))
+				encoding = "UTF8";
+			bom = DelimitedFilesSafe.getByteOrderMark(encoding);
+			encoding = CommonUtil.normalizeEncodingName(encoding);
+			try
+			{
+				charset = DelimitedFilesSafe.charsetForName(encoding);
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				return runSequential(parser, consumer);
+			}
+		}
+		if (parallelism == 1 || !isAsciiCompatible(charset))
+			return runSequential(parser, consumer);
+		return runParallel(parser, consumer, charset, encoding, bom);
+	}
+
+	private static boolean isAsciiCompatible(Charset charset)
+	{
+		if (charset.name().equals("UTF-8"))
+			return true;
+		try
+		{
+			String ascii = "\r\n\"',;|\t";
+			return charset.newEncoder().maxBytesPerChar() == 1 && Arrays.equals(ascii.getBytes(charset), ascii.getBytes("US-ASCII"));
+		}
+		catch (UnsupportedOperationException e)
+		{ // Charset que solo decodifica
+			return false;
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			return false;
+		}
+	}
+
+	private <T> long runSequential(RecordParser<T> parser, RecordConsumer<T> consumer) throws Exception
+	{
+		DelimitedFilesSafe file = new DelimitedFilesSafe();
+		if (file.dfropen(filename, len, fdel, sdel, enc) != 0)
+			throw new IOException("Can't open " + filename);
+		try
+		{
+			long count = 0;
+			while (file.dfrnext() == 0)
+			{
+				T record = parser.parse(file);
+				if (record != null)
+				{
+					consumer.accept(record);
+					count++;
+				}
+			}
+			return count;
+		}
+		finally
+		{
+			file.dfrclose();
+		}
+	}
+
+	private <T> long runParallel(RecordParser<T> parser, RecordConsumer<T> consumer, Charset charset, String encoding, String bom) throws Exception
+	{
+		InputStream input = open();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		CompletionService<List<T>> completion = new ExecutorCompletionService<List<T>>(pool);
+		ArrayDeque<Future<List<T>>> pending = new ArrayDeque<Future<List<T>>>();
+		int maxPending = parallelism * 2;
+		long count = 0;
+		try
+		{
+			ChunkSplitter splitter = new ChunkSplitter(input, chunkSize, quoteByte());
+			byte[] chunk;
+			boolean first = true;
+			while ((chunk = splitter.next()) != null)
+			{
+				ChunkReader<T> reader = new ChunkReader<T>(parser, chunk, splitter.length(), charset, encoding, first ? bom : null);
+				// En orden no se usa el CompletionService, que guardaria todos los bloques terminados
+				pending.add(ordered ? pool.submit(reader) : completion.submit(reader));
+				first = false;
+				if (pending.size() >= maxPending)
+					count += deliver(next(pending, completion), consumer);
+			}
+			while (!pending.isEmpty())
+				count += deliver(next(pending, completion), consumer);
+			return count;
+		}
+		finally
+		{
+			for (Future<List<T>> future : pending)
+				future.cancel(true);
+			pool.shutdownNow();
+			input.close();
+		}
+	}
+
+	private <T> List<T> next(ArrayDeque<Future<List<T>>> pending, CompletionService<List<T>> completion) throws Exception
+	{
+		Future<List<T>> future;
+		if (ordered)
+			future = pending.peek();
+		else
+			future = completion.take();
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw e;
+		}
+		finally
+		{
+			pending.remove(future);
+		}
+	}
+
+	private static <T> long deliver(List<T> records, RecordConsumer<T> consumer) throws Exception
+	{
+		for (T record : records)
+			consumer.accept(record);
+		return records.size();
+	}
+
+	private InputStream open() throws Exception
+	{
+		return (InputStream) SpecificImplementation.NativeFunctions.getInstance().executeWithPermissions(
+			new RunnableThrows()
+			{
+				public Object run() throws Exception
+				{
+					return new FileInputStream(new File(filename));
+				}
+			}, INativeFunctions.FILE_ALL);
+	}
+
+	/** Caracter que delimita los textos con saltos de linea; con sdel vacio dfwptxt igual usa comillas */
+	private int quoteByte()
+	{
+		if (sdel.length() == 0)
+			return '"';
+		if (sdel.length() == 1 && sdel.charAt(0) < 128)
+			return sdel.charAt(0);
+		return -1;
+	}
+
+	/** Lee el archivo en bloques que terminan en un fin de registro */
+	static final class ChunkSplitter
+	{
+		private final InputStream input;
+		private final int chunkSize;
+		private final int quote;
+		private byte[] carry = new byte[0];
+		private int carryLength;
+		private int length;
+		private boolean eof;
+
+		ChunkSplitter(InputStream input, int chunkSize, int quote)
+		{
+			this.input = input;
+			this.chunkSize = chunkSize;
+			this.quote = quote;
+		}
+
+		/** Largo del ultimo bloque retornado por next */
+		int length()
+		{
+			return length;
+		}
+
+		/** Proximo bloque, null al final del archivo. Lo que sigue al ultimo fin de registro pasa al proximo bloque */
+		byte[] next() throws IOException
+		{
+			if (eof && carryLength == 0)
+				return null;
+			byte[] buf = Arrays.copyOf(carry, Math.max(carryLength + chunkSize, carry.length));
+			int count = carryLength;
+			int end = -1;
+			while (end == -1)
+			{
+				if (count == buf.length)
+					buf = Arrays.copyOf(buf, buf.length + chunkSize);
+				while (!eof && count < buf.length)
+				{
+					int read = input.read(buf, count, buf.length - count);
+					if (read == -1)
+						eof = true;
+					else
+						count += read;
+				}
+				if (eof)
+					end = count;
+				else
+				{
+					end = recordEnd(buf, count, true);
+					if (end == -1 && count >= chunkSize * MAX_CHUNK_FACTOR)
+						end = recordEnd(buf, count, false);
+				}
+			}
+			carryLength = count - end;
+			if (carry.length < carryLength)
+				carry = new byte[Math.max(carryLength, chunkSize)];
+			System.arraycopy(buf, end, carry, 0, carryLength);
+			length = end;
+			return length == 0 ? null : buf;
+		}
+
+		/** Posicion siguiente al ultimo fin de linea, -1 si no hay ninguno. Las lineas terminan en \n, \r o \r\n,
+		 *  y un \r al final del buffer se deja para el proximo bloque porque puede ser seguido de \n */
+		private int recordEnd(byte[] buf, int count, boolean checkQuotes)
+		{
+			int end = -1;
+			boolean quoted = false;
+			for (int i = 0; i < count; i++)
+			{
+				byte b = buf[i];
+				if (b == quote && checkQuotes)
+					quoted = !quoted;
+				else if (!quoted)
+				{
+					if (b == '\n')
+						end = i + 1;
+					else if (b == '\r' && i + 1 < count && buf[i + 1] != '\n')
+						end = i + 1;
+				}
+			}
+			return end;
+		}
+	}
+
+	private final class ChunkReader<T> implements Callable<List<T>>
+	{
+		private final RecordParser<T> parser;
+		private final byte[] chunk;
+		private final int length;
+		private final Charset charset;
+		private final String encoding;
+		private final String bom;
+
+		ChunkReader(RecordParser<T> parser, byte[] chunk, int length, Charset charset, String encoding, String bom)
+		{
+			this.parser = parser;
+			this.chunk = chunk;
+			this.length = length;
+			this.charset = charset;
+			this.encoding = encoding;
+			this.bom = bom;
+		}
+
+		public List<T> call() throws Exception
+		{
+			Reader reader = new InputStreamReader(new ByteArrayInputStream(chunk, 0, length), charset);
+			if (bom != null)
+				reader.read(new char[bom.length()]);
+			DelimitedFilesSafe file = new DelimitedFilesSafe();
+			file.dfropen(reader, len, fdel, sdel, encoding);
+			try
+			{
+				List<T> records = new ArrayList<T>();
+				while (file.dfrnext() == 0)
+				{
+					T record = parser.parse(file);
+					if (record != null)
+						records.add(record);
+				}
+				return records;
+			}
+			finally
+			{
+				file.dfrclose();
+			}
+		}
+	}
+}
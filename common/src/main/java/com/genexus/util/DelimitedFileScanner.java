@@ -0,0 +1,281 @@
+package com.genexus.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** Lector de lineas y campos de DelimitedFilesSafe
+ *
+ *  Lee el archivo en un buffer de caracteres y busca los fines de linea y los delimitadores en el,
+ *  sin crear un String por linea ni un StringTokenizer por registro. Los tokens son los mismos que los
+ *  de StringTokenizer(linea, fdel, true): cada caracter de fdel es un token y los demas caracteres se
+ *  agrupan hasta el proximo delimitador. Las lineas terminan en \n, \r o \r\n, como en BufferedReader.readLine.
+ *  Los numeros se parsean directamente del buffer cuando tienen la forma simple [+-]digitos[.digitos].
+ */
+final class DelimitedFileScanner
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** Hasta 15 digitos la mantisa y la potencia de 10 son doubles exactos y la division redondea igual que Double.parseDouble */
+	private static final int MAX_FAST_DOUBLE_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
+
+	private final Reader reader;
+	private final String delimiters;
+	private char[] buf = new char[BUFFER_SIZE];
+	private int count;
+	private int next;
+	private boolean eof;
+	private boolean skipLF;
+
+	private boolean hasLine;
+	private int lineStart;
+	private int lineEnd;
+	private int pos;
+	private int tokenStart;
+	private int tokenEnd;
+	private int partPos;
+
+	DelimitedFileScanner(Reader reader, String delimiters)
+	{
+		this.reader = reader;
+		this.delimiters = delimiters;
+	}
+
+	/** Avanza a la proxima linea, false si no hay mas */
+	boolean nextLine() throws IOException
+	{
+		if (skipLF)
+		{
+			if (next == count && !eof)
+				fill();
+			if (next < count && buf[next] == '\n')
+				next++;
+			skipLF = false;
+		}
+		int i = next;
+		for (;;)
+		{
+			for (; i < count; i++)
+			{
+				char c = buf[i];
+				if (c == '\n' || c == '\r')
+				{
+					setLine(next, i);
+					next = i + 1;
+					skipLF = c == '\r';
+					return true;
+				}
+			}
+			if (eof)
+				break;
+			int shift = next;
+			fill();
+			i -= shift;
+		}
+		if (next == count)
+		{ // Como con StringTokenizer, quedan los tokens no leidos de la ultima linea
+			hasLine = false;
+			return false;
+		}
+		setLine(next, count);
+		next = count;
+		return true;
+	}
+
+	private void setLine(int start, int end)
+	{
+		hasLine = true;
+		lineStart = start;
+		lineEnd = end;
+		pos = start;
+	}
+
+	/** Agrega caracteres al buffer, descartando las lineas ya leidas */
+	private void fill() throws IOException
+	{
+		if (next > 0)
+		{
+			System.arraycopy(buf, next, buf, 0, count - next);
+			count -= next;
+			next = 0;
+		}
+		if (count == buf.length)
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		int read = reader.read(buf, count, buf.length - count);
+		if (read == -1)
+			eof = true;
+		else
+			count += read;
+	}
+
+	boolean lineEndsWith(String s)
+	{
+		int length = s.length();
+		if (!hasLine || lineEnd - lineStart < length)
+			return false;
+		for (int i = 0; i < length; i++)
+		{
+			if (buf[lineEnd - length + i] != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	boolean hasMoreTokens()
+	{
+		return pos < lineEnd;
+	}
+
+	/** Avanza al proximo token, como StringTokenizer.nextToken */
+	void advance()
+	{
+		if (pos >= lineEnd)
+			throw new NoSuchElementException();
+		tokenStart = pos;
+		if (isDelimiter(buf[pos]))
+			pos++;
+		else
+		{
+			while (pos < lineEnd && !isDelimiter(buf[pos]))
+				pos++;
+		}
+		tokenEnd = pos;
+	}
+
+	String nextToken()
+	{
+		advance();
+		return token();
+	}
+
+	/** Saltea el proximo token si lo hay */
+	void skipToken()
+	{
+		if (pos < lineEnd)
+			advance();
+	}
+
+	String token()
+	{
+		return new String(buf, tokenStart, tokenEnd - tokenStart);
+	}
+
+	/** True si el token es el delimitador de campos (el campo esta vacio) */
+	boolean tokenIsFieldDelimiter()
+	{
+		return tokenEnd - tokenStart == 1 && delimiters.length() == 1 && buf[tokenStart] == delimiters.charAt(0);
+	}
+
+	/** Deja el token vacio, para tratar el delimitador como un campo vacio */
+	void clearToken()
+	{
+		tokenEnd = tokenStart;
+	}
+
+	private boolean isDelimiter(char c)
+	{
+		if (delimiters.length() == 1)
+			return c == delimiters.charAt(0);
+		return delimiters.indexOf(c) != -1;
+	}
+
+	/** El token como double, igual que new Double(token()) */
+	double tokenAsDouble()
+	{
+		int i = tokenStart;
+		boolean negative = false;
+		if (i < tokenEnd && (buf[i] == '-' || buf[i] == '+'))
+		{
+			negative = buf[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (; i < tokenEnd; i++)
+		{
+			char c = buf[i];
+			if (c >= '0' && c <= '9')
+			{
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (decimals >= 0)
+					decimals++;
+			}
+			else if (c == '.' && decimals < 0)
+				decimals = 0;
+			else
+				break;
+		}
+		if (i < tokenEnd || digits == 0 || digits > MAX_FAST_DOUBLE_DIGITS)
+			return Double.valueOf(token()).doubleValue();
+		double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/** El token como BigDecimal si tiene la forma simple, null si no */
+	BigDecimal tokenAsSimpleDecimal()
+	{
+		int i = tokenStart;
+		if (i < tokenEnd && (buf[i] == '-' || buf[i] == '+'))
+			i++;
+		int digits = 0;
+		boolean point = false;
+		for (; i < tokenEnd; i++)
+		{
+			char c = buf[i];
+			if (c >= '0' && c <= '9')
+				digits++;
+			else if (c == '.' && !point)
+				point = true;
+			else
+				return null;
+		}
+		if (digits == 0)
+			return null;
+		return new BigDecimal(buf, tokenStart, tokenEnd - tokenStart);
+	}
+
+	/** Empieza a recorrer las partes del token separadas por los caracteres de sep, ver nextIntPart */
+	void startParts()
+	{
+		partPos = tokenStart;
+	}
+
+	/** Proxima parte del token como entero, como new Integer(new StringTokenizer(token(), sep).nextToken()) */
+	int nextIntPart(String sep)
+	{
+		while (partPos < tokenEnd && sep.indexOf(buf[partPos]) != -1)
+			partPos++;
+		if (partPos >= tokenEnd)
+			throw new NoSuchElementException();
+		int start = partPos;
+		while (partPos < tokenEnd && sep.indexOf(buf[partPos]) == -1)
+			partPos++;
+		int i = start;
+		boolean negative = false;
+		if (buf[i] == '-' || buf[i] == '+')
+		{
+			negative = buf[i] == '-';
+			i++;
+		}
+		if (i == partPos || partPos - i > 9)
+			return Integer.parseInt(new String(buf, start, partPos - start));
+		int value = 0;
+		for (; i < partPos; i++)
+		{
+			char c = buf[i];
+			if (c < '0' || c > '9')
+				return Integer.parseInt(new String(buf, start, partPos - start));
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	void close() throws IOException
+	{
+		reader.close();
+	}
+}
@@ -2,9 +2,10 @@ package com.genexus.util;
 
 import java.util.Calendar;
 import java.util.GregorianCalendar;
-import java.util.StringTokenizer;
 import java.util.Date;
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 
 import com.genexus.*;
 import com.genexus.platform.INativeFunctions;
@@ -27,6 +28,9 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 	private static final byte GX_ASCDEL_NOTENOUGHMEMORY	= -8;
 	private static final byte GX_ASCDEL_WRITEERROR		= -9;
 	private static final byte GX_ASCDEL_BADFMTSTR		= -10;
+
+	/** Tamanio a partir del cual los archivos se leen mapeados en memoria */
+	private static final long MAPPED_INPUT_MIN_SIZE = 64L * 1024 * 1024;
 	
 	public static final String CRLF = "\r\n";
 
@@ -39,8 +43,10 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 	protected boolean trace_on = DebugFlag.DEBUG;
 	protected BufferedReader bufread;
 	protected BufferedWriter bufwrite;
-	private StringTokenizer actline;
-	private String toWrite;
+	private DelimitedFileScanner scanner;
+	private final StringBuilder toWrite = new StringBuilder();
+	private boolean hasFieldsToWrite = false;
+	private char[] writeBuffer = new char[256];
 	private String encoding = "";
 	private String newLineBehavior = null;
 	
@@ -48,7 +54,6 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 	private boolean readingString = false;
 	protected boolean lengthInBytes = false;
 	
-	private String lastLineRead;
 	private boolean lastFieldRead;
 
 	public String getEncoding()
@@ -123,16 +128,18 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 									lengthInBytes = true;
 									String bom = getByteOrderMark(encoding);
 									encoding = CommonUtil.normalizeEncodingName(encoding);
-									bufread = new BufferedReader( new InputStreamReader( new FileInputStream( new File(filename)), encoding ));
+									bufread = openReader(new File(filename), encoding);
 									if (bom!=null)
 									{
 										char bombuffer[] = new char[bom.length()];
 										bufread.read(bombuffer);
 									}
+									scanner = new DelimitedFileScanner(bufread, fdel);
 									return null;
 								}catch(UnsupportedEncodingException e){ System.err.println(e.toString()); }
 							}
-							bufread = new BufferedReader( (new FileReader( (new File(filename)) )) );
+							bufread = openReader(new File(filename), null);
+							scanner = new DelimitedFileScanner(bufread, fdel);
 							return null;
 						}
 					}, INativeFunctions.FILE_ALL);
@@ -156,6 +163,47 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		return retval;
 	}
 
+	/** Abre para leer un fragmento de un archivo ya decodificado, ver DelimitedFileImport.
+	 *  El encoding ya esta normalizado y se usa solo para medir los largos en bytes. */
+	byte dfropen(Reader reader, int plen, String pfdel, String psdel, String enc)
+	{
+		if (dfropen_in_use)
+			return GX_ASCDEL_INVALIDSEQUENCE;
+		dfropen_in_use = true;
+		encoding = enc;
+		lengthInBytes = enc != null;
+		len = plen;
+		fdel = pfdel.equals("\\t") ? "\t" : pfdel;
+		sdel = psdel;
+		bufread = new BufferedReader(reader);
+		scanner = new DelimitedFileScanner(bufread, fdel);
+		return GX_ASCDEL_SUCCESS;
+	}
+
+	/** Abre el archivo a leer; los archivos grandes se mapean en memoria, salvo en Windows donde el
+	 *  archivo quedaria bloqueado hasta que se libere el mapeo */
+	private static BufferedReader openReader(File file, String encoding) throws IOException
+	{
+		if (!CommonUtil.isWindows() && file.length() >= MAPPED_INPUT_MIN_SIZE)
+			return new BufferedReader(new MappedFileReader(file, encoding == null ? Charset.defaultCharset() : charsetForName(encoding)));
+		if (encoding == null)
+			return new BufferedReader(new FileReader(file));
+		return new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding));
+	}
+
+	static Charset charsetForName(String encoding) throws UnsupportedEncodingException
+	{
+		try
+		{
+			if (Charset.isSupported(encoding))
+				return Charset.forName(encoding);
+		}
+		catch (IllegalCharsetNameException e)
+		{
+		}
+		throw new UnsupportedEncodingException(encoding);
+	}
+
 // dfrnext
 
 	public byte dfrnext()
@@ -168,13 +216,9 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		{
 			try
 			{
-				String line = bufread.readLine();
-				lastLineRead = line;
 				lastFieldRead = false;
-				if (line == null)
+				if (!scanner.nextLine())
 					retval = GX_ASCDEL_ENDOFDATA;
-				else
-					actline = new StringTokenizer(line, fdel, true);
 			}
 			catch (IOException e)
 			{
@@ -196,18 +240,18 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 	{
 		byte retval = GX_ASCDEL_SUCCESS;
 
-		Double retnum = new Double(0);
+		double retnum = 0;
 
 		if (dfropen_in_use)
 		{
 			try
             {
-				String stringDelimitedField = actline.nextToken(fdel);
-				if(fdel.equals(stringDelimitedField) || stringDelimitedField.equals(""))
+				scanner.advance();
+				if(scanner.tokenIsFieldDelimiter())
 				{ // Si el token debe estar vac�o...
-				    stringDelimitedField = "";
+				    throw new NumberFormatException("empty String");
 				}
-				retnum = new Double(stringDelimitedField);
+				retnum = scanner.tokenAsDouble();
 			}
 			catch (Exception e)
 			{
@@ -223,10 +267,10 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 				System.err.println("Error ADF0004 o ADF0006");
 		}
 
-		num[0] = retnum.doubleValue();
+		num[0] = retnum;
 		try 
 		{
-			String stringDelimitedField = actline.nextToken(fdel);
+			scanner.skipToken();
 		}
 		catch(Exception e)
 		{//Se sabe que se puede leer un token que no existe al final de la linea
@@ -244,14 +288,21 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		{
 			try
 			{
-                String stringDelimitedField = actline.nextToken(fdel);
-                if(fdel.equals(stringDelimitedField) || stringDelimitedField.equals(""))
-                { // Si el token debe estar vac�o...
-                    stringDelimitedField = "";
+                scanner.advance();
+                BigDecimal simpleDecimal = scanner.tokenAsSimpleDecimal();
+                if (simpleDecimal != null)
+                	retnum = simpleDecimal;
+                else
+                {
+                	String stringDelimitedField = scanner.token();
+                	if(scanner.tokenIsFieldDelimiter())
+                	{ // Si el token debe estar vac�o...
+                		stringDelimitedField = "";
+                	}
+                	if (!stringDelimitedField.equals(""))
+                		new BigDecimal(stringDelimitedField);
+                	retnum = DecimalUtil.stringToDec(stringDelimitedField);
                 }
-                if (!stringDelimitedField.equals(""))
-                	new BigDecimal(stringDelimitedField);                
-                retnum = DecimalUtil.stringToDec(stringDelimitedField);
 			}
 			catch (Exception e)
 			{
@@ -270,7 +321,7 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		num[0] = retnum;
 		try 
 		{
-			String stringDelimitedField = actline.nextToken(fdel);
+			scanner.skipToken();
 		}
 		catch(Exception e)
 		{//Se sabe que se puede leer un token que no existe al final de la linea
@@ -290,7 +341,7 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
         {
                 byte retval = GX_ASCDEL_SUCCESS;
                 
-            	if (!fdel.equals("") && !actline.hasMoreTokens() && lastLineRead.endsWith(fdel) && !lastFieldRead)
+            	if (!fdel.equals("") && !scanner.hasMoreTokens() && scanner.lineEndsWith(fdel) && !lastFieldRead)
             	{
             		lastFieldRead = true;
             		str[0] = "";
@@ -305,11 +356,11 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
                         {
 							if(!readingString)
 							{//Si no estoy leyendo una linea sin delimitador de campo
-							    String stringDelimitedField = actline.nextToken(fdel);
+							    String stringDelimitedField = scanner.nextToken();
                                 if (fdel.equals(sdel))
                                 {
                                         if(fdel.equals(stringDelimitedField))
-                                          retstr = new String(actline.nextToken(fdel));
+                                          retstr = new String(scanner.nextToken());
                                         else
                                           retstr = stringDelimitedField;
                                 }
@@ -333,11 +384,11 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 														
 														//pongo eso para considerar el caso ",texto"
 														if (stringDelimitedField.trim().endsWith(sdel) && stringDelimitedField.length()==1)
-															stringDelimitedField = stringDelimitedField + actline.nextToken(fdel);
+															stringDelimitedField = stringDelimitedField + scanner.nextToken();
 														
                                                         while (!stringDelimitedField.trim().endsWith(sdel))
                                                         {
-                                                           stringDelimitedField = stringDelimitedField + actline.nextToken(fdel);
+                                                           stringDelimitedField = stringDelimitedField + scanner.nextToken();
                                                         }
                                                         rIndex = stringDelimitedField.lastIndexOf(sdel);
                                                 }
@@ -381,7 +432,7 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
                 str[0] = retstr;
 				try 
 				{
-					String stringDelimitedField = actline.nextToken(fdel);
+					scanner.skipToken();
 				}
 				catch(Exception e)
 				{//Se sabe que se puede leer un token que no existe al final de la linea
@@ -488,7 +539,6 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 	{
 		byte retval = GX_ASCDEL_SUCCESS;
 
-		String retstr;
 		Date retdate = CommonUtil.nullDate();
 		int year = 0, month = 0, day = 0;
 
@@ -496,19 +546,17 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		{
 			try
 			{
-                          String stringDelimitedField = actline.nextToken(fdel);
-                          if(fdel.equals(stringDelimitedField) || stringDelimitedField.equals(""))
+                          scanner.advance();
+                          if(scanner.tokenIsFieldDelimiter())
                           { // Si el token debe estar vac�o...
-                              stringDelimitedField = "";
+                              scanner.clearToken();
                           }
 
-				retstr = stringDelimitedField;
-
-				StringTokenizer stok = new StringTokenizer(retstr, sep);
+				scanner.startParts();
 
 				for (int i = 0; i < 3; i++)
 				{
-					int value = (new Integer(stok.nextToken())).intValue();
+					int value = scanner.nextIntPart(sep);
 					switch (fmt.charAt(i))
 					{
 						case 'y':
@@ -558,7 +606,7 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		date[0] = retdate;
 		try 
 		{
-			String stringDelimitedField = actline.nextToken(fdel);
+			scanner.skipToken();
 		}
 		catch(Exception e)
 		{//Se sabe que se puede leer un token que no existe al final de la linea
@@ -678,7 +726,7 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		return retval;
 	}
 	
-	private String getByteOrderMark(String enc) throws UnsupportedEncodingException 
+	static String getByteOrderMark(String enc) throws UnsupportedEncodingException 
 	{  
 		if (enc!=null && enc.toUpperCase().equals("UTF-8 BOM")) { 
 			byte[] bom = new byte[3];  
@@ -715,9 +763,13 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		{
 			try
 			{
-				if	(toWrite != null)
+				if	(hasFieldsToWrite)
 				{
-					bufwrite.write(toWrite);
+					int length = toWrite.length();
+					if (writeBuffer.length < length)
+						writeBuffer = new char[Math.max(length, writeBuffer.length * 2)];
+					toWrite.getChars(0, length, writeBuffer, 0);
+					bufwrite.write(writeBuffer, 0, length);
 				}
 
 				if (newLineBehavior == null)
@@ -728,7 +780,8 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 				{
 					bufwrite.write(newLineBehavior);
 				}
-				toWrite = null;
+				toWrite.setLength(0);
+				hasFieldsToWrite = false;
 
 			}
 			catch (IOException e)
@@ -758,36 +811,16 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		byte retval = GX_ASCDEL_SUCCESS;
 		if (dfwopen_in_use)
 		{
-			String doubnum = CommonUtil.ltrim(CommonUtil.str(num, 20 + dec, dec));
-			int k = doubnum.indexOf(".");
-			if (dec == 0)
-			{
-				if	(k >= 0)
-					doubnum = doubnum.substring(0, k);
+			String doubnum;
+			if (dec == 0 && num == (long) num && Math.abs(num) < 1e15)
+			{ // Entero exacto, str() daria el mismo resultado
+				doubnum = Long.toString((long) num);
 			}
 			else
-			{
-				String left;
-				String right;
+				doubnum = formatNumberToWrite(num, dec);
 
-				if	(k != -1)
-				{
-					left  = doubnum.substring(0, k);
-					right = doubnum.substring(k, doubnum.length());
-				}
-				else
-				{
-					left  = doubnum;
-					right = ".";
-				}
-
-				doubnum = left + CommonUtil.padr(right, dec + 1, "0");
-			}
-
-			if (toWrite == null)
-				toWrite = doubnum;
-			else
-				toWrite = toWrite + fdel + doubnum;
+			startFieldToWrite();
+			toWrite.append(doubnum);
 		}
 		else
 		{
@@ -798,6 +831,36 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		return retval;
 	}
 
+	private static String formatNumberToWrite(double num, int dec)
+	{
+		String doubnum = CommonUtil.ltrim(CommonUtil.str(num, 20 + dec, dec));
+		int k = doubnum.indexOf(".");
+		if (dec == 0)
+		{
+			if	(k >= 0)
+				doubnum = doubnum.substring(0, k);
+		}
+		else
+		{
+			String left;
+			String right;
+
+			if	(k != -1)
+			{
+				left  = doubnum.substring(0, k);
+				right = doubnum.substring(k, doubnum.length());
+			}
+			else
+			{
+				left  = doubnum;
+				right = ".";
+			}
+
+			doubnum = left + CommonUtil.padr(right, dec + 1, "0");
+		}
+		return doubnum;
+	}
+
 	// dfwptxt
 	public byte dfwptxt(String txt, int len)
 	{
@@ -818,10 +881,8 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 				len = strlen;
 			}
 			
-			if (toWrite == null)
-				toWrite = sdel + processStringToWrite(txt, len) + sdel ;
-			else
-				toWrite = toWrite + fdel + sdel + processStringToWrite(txt, len) + sdel ;
+			startFieldToWrite();
+			toWrite.append(sdel).append(processStringToWrite(txt, len)).append(sdel);
 		}
 		else
 		{
@@ -866,23 +927,20 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 				year  =  CommonUtil.padl(Integer.toString(calendar.get(Calendar.YEAR) + 1900), 4, "0");
 			}
 
-			if	(toWrite == null)
-				toWrite = "";
-			else
-			 	toWrite += fdel;
+			startFieldToWrite();
 
 			for (int i = 0; i < 3; i++)
 			{
 				switch (fmt.charAt(i))
 				{
 					case 'y':
-						toWrite += year + (i == 2?"":sep);
+						toWrite.append(year).append(i == 2?"":sep);
 						break;
 					case 'm':
-						toWrite += month + (i == 2?"":sep);
+						toWrite.append(month).append(i == 2?"":sep);
 						break;
 					case 'd':
-						toWrite += day   + (i == 2?"":sep);
+						toWrite.append(day  ).append(i == 2?"":sep);
 						break;
 					default:
 						 if (trace_on)
@@ -901,6 +959,14 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 		return retval;
 	}
 
+	/** Agrega el delimitador de campos si no es el primer campo del registro */
+	private void startFieldToWrite()
+	{
+		if (hasFieldsToWrite)
+			toWrite.append(fdel);
+		hasFieldsToWrite = true;
+	}
+
 	// dfwclose
 	public byte dfwclose()
 	{
@@ -954,8 +1020,13 @@ public class DelimitedFilesSafe implements IDelimitedFilesSafe
 					
 			}catch(UnsupportedEncodingException e){ System.err.println(e.toString()); }
 		}
-		for(int i = 0; i < lenDiff; i++)
-			currToken = currToken.concat(" ");
+		if (lenDiff > 0)
+		{
+			StringBuilder padded = new StringBuilder(currToken.length() + lenDiff).append(currToken);
+			for(int i = 0; i < lenDiff; i++)
+				padded.append(' ');
+			currToken = padded.toString();
+		}
 
 		if ((sdel.equals("") || sdel.equals("\"")) && (currToken.contains("\"") || (!fdel.equals("") && currToken.contains(fdel)) || currToken.contains(CRLF)))
 		{
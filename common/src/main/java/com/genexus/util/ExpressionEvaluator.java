@@ -33,6 +33,8 @@ public class ExpressionEvaluator
 	short EVALUATION_ERROR = 4;
 	short EXTERNAL_FUNCTION_ERROR = 5;
 	boolean iifContext = false;
+	/** false para evaluar con el interprete en lugar de compilar la expresion */
+	boolean useCompiledExpressions = true;
 
 	public ExpressionEvaluator(ModelContext context, int handle, String varParms)
 	{
@@ -184,6 +186,13 @@ public class ExpressionEvaluator
 		if (expression == "")
 			return throwException(EXPRESSION_ERROR, "Empty expression");
 
+		if (useCompiledExpressions)
+			return CompiledExpression.eval(this, expression);
+		return interpret(expression);
+	}
+
+	private EvalValue interpret(String expression)
+	{
 		if (!matchParentesis(expression))
 		{
 			return throwException(EXPRESSION_ERROR, "The expression '" + expression + "' has unbalanced parenthesis");
@@ -199,7 +208,7 @@ public class ExpressionEvaluator
 		return evaluate(expression, tokenizer);
 	}
 
-	private EvalValue throwException(short errCod, String error)
+	EvalValue throwException(short errCod, String error)
 	{
 		if(throwExceptions)
 		{
@@ -213,12 +222,12 @@ public class ExpressionEvaluator
 		}	
 	}
 
-	private static final char GE = 0x01;
-	private static final char LE = 0x02;
-	private static final char AND = (char)(0x03);
-	private static final char OR = (char)(0x04);
-	private static final char NE = (char)(0x05);
-	private String getTokenizerExpression(String expression)
+	static final char GE = 0x01;
+	static final char LE = 0x02;
+	static final char AND = (char)(0x03);
+	static final char OR = (char)(0x04);
+	static final char NE = (char)(0x05);
+	static String getTokenizerExpression(String expression)
 	{
 		int index;
 		while((index = expression.indexOf("==")) != -1)
@@ -242,7 +251,7 @@ public class ExpressionEvaluator
 		return expression;
 	}
 
-	private int indexOfKeyword(String expression, String keyw, int nextIndex)
+	private static int indexOfKeyword(String expression, String keyw, int nextIndex)
 	{
 		String exp = expression.toLowerCase();
 		int index = exp.indexOf(keyw.toLowerCase(), nextIndex + 1);
@@ -254,7 +263,7 @@ public class ExpressionEvaluator
 		}
 		return index;
 	}
-	private Boolean validKeyword( String expression, int index, String keyw)
+	private static Boolean validKeyword( String expression, int index, String keyw)
 	{
 		if (index-1 >= 0)
 			if (Character.isLetterOrDigit(expression.charAt(index - 1)) || "()!".indexOf(expression.charAt(index-1)) != -1)
@@ -601,7 +610,7 @@ public class ExpressionEvaluator
 		return ((Double)callParms[callParms.length - 1]).doubleValue();	   
 	}
 
-	private String getNextToken(Tokenizer tokenizer)
+	static String getNextToken(Tokenizer tokenizer)
 	{
 		String token = "";
 		do
@@ -616,7 +625,7 @@ public class ExpressionEvaluator
 		return token.trim();
 	}
 
-	private boolean matchParentesis(String token)
+	static boolean matchParentesis(String token)
 	{
 		int cantLeft = 0, cantRight = 0;
 		char [] cars = new char[token.length()];
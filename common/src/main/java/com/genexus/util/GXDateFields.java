@@ -0,0 +1,250 @@
+package com.genexus.util;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Campos de fechas calculados aritmeticamente, sin SimpleDateFormat, Calendar ni locks.
+ * <p>
+ * Los offsets del timezone se toman de una tabla con las transiciones de sus ZoneRules, que se arma
+ * una vez por timezone. Los resultados son los mismos que los de un GregorianCalendar con ese timezone;
+ * las fechas anteriores al 15/10/1582, donde GregorianCalendar usa el calendario juliano, no se calculan
+ * aqui y quien llama debe resolverlas como antes.
+ */
+public final class GXDateFields
+{
+	/** El campo no se puede calcular aqui (fecha juliana) */
+	public static final int UNSUPPORTED = -1;
+
+	/** Los campos no forman una fecha valida, o la hora no existe por un cambio de horario */
+	public static final long INVALID = Long.MIN_VALUE;
+	/** La hora se repite por un cambio de horario, o la fecha es juliana */
+	public static final long NOT_RESOLVED = Long.MIN_VALUE + 1;
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+	/** 15/10/1582, primer dia del calendario gregoriano */
+	private static final long GREGORIAN_START_DAY = -141427;
+	private static final int FIRST_GREGORIAN_YEAR = 1583;
+	/** TimeZone tiene las transiciones hasta 2037, despues aplica la ultima regla a su manera */
+	private static final int LAST_TABLE_YEAR = 2037;
+	private static final long MAX_OFFSET = 18 * 3600000L;
+
+	private static volatile OffsetTable table;
+
+	private GXDateFields()
+	{
+	}
+
+	public static int year(TimeZone tz, long time)
+	{
+		long day = Math.floorDiv(time + offset(tz, time), MILLIS_PER_DAY);
+		if (day < GREGORIAN_START_DAY)
+			return UNSUPPORTED;
+		return (int) (yearOfEra(day) + (monthOfYear(day) <= 2 ? 1 : 0));
+	}
+
+	public static int month(TimeZone tz, long time)
+	{
+		long day = Math.floorDiv(time + offset(tz, time), MILLIS_PER_DAY);
+		if (day < GREGORIAN_START_DAY)
+			return UNSUPPORTED;
+		return monthOfYear(day);
+	}
+
+	public static int day(TimeZone tz, long time)
+	{
+		long day = Math.floorDiv(time + offset(tz, time), MILLIS_PER_DAY);
+		if (day < GREGORIAN_START_DAY)
+			return UNSUPPORTED;
+		long doy = dayOfYearFromMarch(day);
+		int mp = (int) ((5 * doy + 2) / 153);
+		return (int) (doy - (153 * mp + 2) / 5 + 1);
+	}
+
+	public static int hour(TimeZone tz, long time)
+	{
+		return (int) (millisOfDay(tz, time) / 3600000);
+	}
+
+	public static int minute(TimeZone tz, long time)
+	{
+		return (int) (millisOfDay(tz, time) / 60000 % 60);
+	}
+
+	public static int second(TimeZone tz, long time)
+	{
+		return (int) (millisOfDay(tz, time) / 1000 % 60);
+	}
+
+	public static int millisecond(TimeZone tz, long time)
+	{
+		return (int) Math.floorMod(time, 1000L);
+	}
+
+	public static long millisOfDay(TimeZone tz, long time)
+	{
+		return Math.floorMod(time + offset(tz, time), MILLIS_PER_DAY);
+	}
+
+	/**
+	 * Instante de la fecha y hora local dadas, validando los campos como un GregorianCalendar no lenient.
+	 * @return el instante, {@link #INVALID} o {@link #NOT_RESOLVED}
+	 */
+	public static long toTime(TimeZone tz, int year, int month, int day, int hour, int minute, int second)
+	{
+		if (year < FIRST_GREGORIAN_YEAR)
+			return NOT_RESOLVED;
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+			|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+			return INVALID;
+		long local = epochDay(year, month, day) * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L;
+		int before = offset(tz, local - MAX_OFFSET);
+		int after = offset(tz, local + MAX_OFFSET);
+		boolean beforeValid = offset(tz, local - before) == before;
+		boolean afterValid = offset(tz, local - after) == after;
+		if (beforeValid && afterValid && before != after)
+			return NOT_RESOLVED;
+		if (beforeValid)
+			return local - before;
+		if (afterValid)
+			return local - after;
+		return INVALID;
+	}
+
+	/** Offset en milisegundos del timezone en el instante dado */
+	public static int offset(TimeZone tz, long time)
+	{
+		OffsetTable current = table;
+		if (current == null || current.tz != tz)
+		{
+			current = OffsetTable.create(tz);
+			table = current;
+		}
+		return current.offset(time);
+	}
+
+	private static long epochDay(long year, int month, int day)
+	{
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yoe = y - era * 400;
+		long mp = month > 2 ? month - 3 : month + 9;
+		long doy = (153 * mp + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	private static int daysInMonth(int year, int month)
+	{
+		if (month == 2)
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+	}
+
+	// Algoritmo de dias a fecha civil de H. Hinnant, con los anios empezando el 1 de marzo
+
+	private static long dayOfEra(long day)
+	{
+		long z = day + 719468;
+		return z - Math.floorDiv(z, 146097) * 146097;
+	}
+
+	private static long yearOfEra(long day)
+	{
+		long z = day + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long doe = z - era * 146097;
+		return (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365 + era * 400;
+	}
+
+	private static long dayOfYearFromMarch(long day)
+	{
+		long doe = dayOfEra(day);
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		return doe - (365 * yoe + yoe / 4 - yoe / 100);
+	}
+
+	private static int monthOfYear(long day)
+	{
+		int mp = (int) ((5 * dayOfYearFromMarch(day) + 2) / 153);
+		return mp < 10 ? mp + 3 : mp - 9;
+	}
+
+	/**
+	 * Transiciones del timezone entre 1900 y {@link #LAST_TABLE_YEAR}, con el offset vigente desde cada una.
+	 * Fuera de ese rango, o si el timezone no es uno de los de la base de timezones, se usa TimeZone.getOffset.
+	 * La tabla empieza en 1900 porque TimeZone no tiene las transiciones anteriores que si tienen las ZoneRules.
+	 */
+	private static final class OffsetTable
+	{
+		private static final long START = epochDayOfYear(1900) * MILLIS_PER_DAY;
+		private static final long END = (epochDayOfYear(LAST_TABLE_YEAR)) * MILLIS_PER_DAY;
+
+		final TimeZone tz;
+		private final long[] transitions;
+		private final int[] offsets;
+
+		private OffsetTable(TimeZone tz, long[] transitions, int[] offsets)
+		{
+			this.tz = tz;
+			this.transitions = transitions;
+			this.offsets = offsets;
+		}
+
+		private static long epochDayOfYear(int year)
+		{
+			return epochDay(year, 1, 1);
+		}
+
+		static OffsetTable create(TimeZone tz)
+		{
+			try
+			{
+				if (!TimeZone.getTimeZone(tz.getID()).hasSameRules(tz))
+					return new OffsetTable(tz, null, null);
+				ZoneRules rules = ZoneId.of(tz.getID(), ZoneId.SHORT_IDS).getRules();
+				ArrayList<Long> times = new ArrayList<Long>();
+				ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(START));
+				while (transition != null && transition.toEpochSecond() * 1000 < END)
+				{
+					times.add(transition.toEpochSecond() * 1000);
+					transition = rules.nextTransition(transition.getInstant());
+				}
+				long[] transitions = new long[times.size()];
+				int[] offsets = new int[transitions.length + 1];
+				offsets[0] = tz.getOffset(START);
+				for (int i = 0; i < transitions.length; i++)
+				{
+					transitions[i] = times.get(i);
+					offsets[i + 1] = tz.getOffset(transitions[i]);
+					// La tabla solo se usa si coincide con el TimeZone en cada transicion y entre ellas
+					long previous = i == 0 ? START : transitions[i - 1];
+					if (tz.getOffset(transitions[i] - 1) != offsets[i] || tz.getOffset(previous + (transitions[i] - previous) / 2) != offsets[i])
+						return new OffsetTable(tz, null, null);
+				}
+				return new OffsetTable(tz, transitions, offsets);
+			}
+			catch (RuntimeException e)
+			{
+				return new OffsetTable(tz, null, null);
+			}
+			catch (LinkageError e)
+			{ // Sin java.time
+				return new OffsetTable(tz, null, null);
+			}
+		}
+
+		int offset(long time)
+		{
+			if (transitions == null || time < START || time >= END)
+				return tz.getOffset(time);
+			int index = Arrays.binarySearch(transitions, time);
+			return offsets[index >= 0 ? index + 1 : -index - 1];
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package com.genexus.util;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Vector;
 import com.genexus.CommonUtil;
 import com.genexus.common.interfaces.SpecificImplementation;
@@ -11,6 +14,8 @@ import java.util.Date;
 
 public class GXFileInfo implements IGXFileInfo {
 
+	private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
 	private File fileSource;
 	private boolean isDirectory;
 
@@ -53,8 +58,17 @@ public class GXFileInfo implements IGXFileInfo {
 	public boolean createNewFile() throws IOException{
 		return fileSource.createNewFile();
 	}
+    /** Copia el stream al archivo por partes, sin cargarlo entero en memoria */
     public boolean createNewFile(InputStream input) throws IOException{
-    	fromBytes(SpecificImplementation.GXutil.toByteArray(input));
+		try (FileOutputStream destination = new FileOutputStream(fileSource))
+		{
+			FileChannel channel = destination.getChannel();
+			ReadableByteChannel source = Channels.newChannel(input);
+			long position = 0;
+			long transferred;
+			while ((transferred = channel.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0)
+				position += transferred;
+		}
 		return true;
 	}
 	public boolean delete(){
@@ -0,0 +1,91 @@
+package com.genexus.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/** Reader de un archivo mapeado en memoria
+ *
+ *  El archivo se mapea por ventanas y se decodifica directamente de ellas, sin copiarlo a buffers
+ *  intermedios. Las secuencias invalidas se reemplazan, igual que en InputStreamReader.
+ *  Las ventanas se liberan cuando las recolecta el garbage collector, por lo que mientras tanto
+ *  el archivo puede quedar bloqueado en los sistemas que no permiten borrar archivos mapeados.
+ */
+final class MappedFileReader extends Reader
+{
+	private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+	private final FileInputStream input;
+	private final FileChannel channel;
+	private final long size;
+	private final CharsetDecoder decoder;
+	private long windowStart;
+	private MappedByteBuffer window;
+	private boolean eof;
+	private boolean flushed;
+
+	MappedFileReader(File file, Charset charset) throws IOException
+	{
+		input = new FileInputStream(file);
+		try
+		{
+			channel = input.getChannel();
+			size = channel.size();
+			decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			map(0);
+		}
+		catch (IOException e)
+		{
+			input.close();
+			throw e;
+		}
+	}
+
+	private void map(long position) throws IOException
+	{
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+	}
+
+	public int read(char[] cbuf, int off, int len) throws IOException
+	{
+		if (len == 0)
+			return 0;
+		CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+		while (!flushed)
+		{
+			CoderResult result = decoder.decode(window, out, eof);
+			if (result.isOverflow())
+				break;
+			if (eof)
+			{
+				if (decoder.flush(out).isUnderflow())
+					flushed = true;
+				break;
+			}
+			if (windowStart + window.limit() >= size)
+				eof = true;
+			else if (out.position() > off)
+				break;
+			else
+				map(windowStart + window.position());
+		}
+		int read = out.position() - off;
+		return read == 0 && flushed ? -1 : read;
+	}
+
+	public void close() throws IOException
+	{
+		input.close();
+	}
+}
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -365,72 +366,44 @@ public class ExternalProviderAzureStorage extends ExternalProviderBase implement
 	}
 
 	public void deleteDirectory(String directoryName) {
-		ResourceAccessControlList acl = null;
 		directoryName = StorageUtils.normalizeDirectoryName(directoryName);
-		try {
-			CloudBlobDirectory directory = publicContainer.getDirectoryReference(directoryName);
-			for (ListBlobItem item : directory.listBlobs()) {
-				String itemName = "";
-				if (isFile(item)) {
-					if (item instanceof CloudPageBlob) {
-						itemName = ((CloudPageBlob) item).getName();
-					} else if (item instanceof CloudBlockBlob) {
-						itemName = ((CloudBlockBlob) item).getName();
-					}
-					delete(itemName, acl);
-				}
-				if (isDirectory(item)) {
-					if (item instanceof CloudBlobDirectory) {
-						itemName = ((CloudBlobDirectory) item).getPrefix();
-					} else if (item instanceof CloudBlockBlob) {
-						itemName = ((CloudBlockBlob) item).getName();
-					}
-					if (!itemName.equals(directoryName)) {
-						deleteDirectory(itemName);
-					}
-				}
+		ExternalProviderHelper.DirectoryProgress progress = ExternalProviderHelper.startProgress("Delete directory", directoryName);
+		ExternalProviderHelper.forEachConcurrently(listObjects(directoryName), directoryParallelism, new ExternalProviderHelper.ObjectAction() {
+			public void run(String name) {
+				delete(name, null);
 			}
-		} catch (URISyntaxException ex) {
-			logger.error("Invalid URI ", ex.getMessage());
-		} catch (StorageException ex) {
-			throw new RuntimeException(ex.getMessage(), ex);
-		}
+		}, progress);
+		progress.finish();
 	}
 
 	public void renameDirectory(String directoryName, String newDirectoryName) {
-		ResourceAccessControlList acl = null;
 		if (!existsDirectory(newDirectoryName)) {
 			createDirectory(newDirectoryName);
 		}
-		directoryName = StorageUtils.normalizeDirectoryName(directoryName);
-		newDirectoryName = StorageUtils.normalizeDirectoryName(newDirectoryName);
-		try {
-			CloudBlobDirectory directory = publicContainer.getDirectoryReference(directoryName);
-			for (ListBlobItem item : directory.listBlobs()) {
-				String itemName = "";
-				if (isFile(item)) {
-					if (item instanceof CloudPageBlob) {
-						itemName = ((CloudPageBlob) item).getName();
-					} else if (item instanceof CloudBlockBlob) {
-						itemName = ((CloudBlockBlob) item).getName();
-					}
-					rename(itemName, itemName.replace(directoryName, newDirectoryName), acl);
-				}
-				if (isDirectory(item)) {
-					if (item instanceof CloudBlobDirectory) {
-						itemName = ((CloudBlobDirectory) item).getPrefix();
-					} else if (item instanceof CloudBlockBlob) {
-						itemName = ((CloudBlockBlob) item).getName();
-					}
-					renameDirectory(directoryName + StorageUtils.DELIMITER + itemName, newDirectoryName + StorageUtils.DELIMITER + itemName);
-				}
+		final String sourceDirectory = StorageUtils.normalizeDirectoryName(directoryName);
+		final String targetDirectory = StorageUtils.normalizeDirectoryName(newDirectoryName);
+		ExternalProviderHelper.DirectoryProgress progress = ExternalProviderHelper.startProgress("Rename directory", sourceDirectory);
+		ExternalProviderHelper.forEachConcurrently(listObjects(sourceDirectory), directoryParallelism, new ExternalProviderHelper.ObjectAction() {
+			public void run(String name) {
+				rename(name, targetDirectory + name.substring(sourceDirectory.length()), null);
 			}
-			deleteDirectory(directoryName);
-		} catch (URISyntaxException ex) {
-			logger.error("Invalid URI ", ex.getMessage());
-		} catch (StorageException ex) {
-			throw new RuntimeException(ex.getMessage(), ex);
-		}
+		}, progress);
+		progress.finish();
+		deleteDirectory(sourceDirectory);
+	}
+
+	/** Iterates the blob names under the prefix with a flat listing, the SDK requests the next page when needed */
+	public Iterator<String> listObjects(String prefix) {
+		final Iterator<ListBlobItem> items = publicContainer.listBlobs(prefix, true).iterator();
+		return new Iterator<String>() {
+			public boolean hasNext() {
+				return items.hasNext();
+			}
+
+			public String next() {
+				return ((CloudBlob) items.next()).getName();
+			}
+		};
 	}
 
 	public List<String> getFiles(String directoryName, String filter) {
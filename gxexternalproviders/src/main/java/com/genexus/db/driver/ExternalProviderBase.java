@@ -1,19 +1,29 @@
 package com.genexus.db.driver;
 
+import com.genexus.cache.StorageUrlCache;
 import com.genexus.util.Encryption;
 import com.genexus.util.GXService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Iterator;
+
 public abstract class ExternalProviderBase {
 	private static Logger logger = LogManager.getLogger(ExternalProviderBase.class);
 	private GXService service;
 
 	abstract String getName();
 
+	/** Names of the objects under the prefix, the directory operations are built on it */
+	public abstract Iterator<String> listObjects(String prefix);
+
 	static final String DEFAULT_ACL = "DEFAULT_ACL";
 	static final String DEFAULT_EXPIRATION = "DEFAULT_EXPIRATION";
 	static final String FOLDER = "FOLDER_NAME";
+	static final String DIRECTORY_PARALLELISM = "DIRECTORY_PARALLELISM";
+	static final String URL_CACHE_TTL = "URL_CACHE_TTL";
+	static final String URL_CACHE_NEGATIVE_TTL = "URL_CACHE_NEGATIVE_TTL";
+	static final String URL_CACHE_SIZE = "URL_CACHE_SIZE";
 
 	@Deprecated
 	static final String DEFAULT_ACL_DEPRECATED = "STORAGE_PROVIDER_DEFAULT_ACL";
@@ -22,6 +32,8 @@ public abstract class ExternalProviderBase {
 
 	static final int DEFAULT_EXPIRATION_MINUTES = 24 * 60;
 	 ResourceAccessControlList defaultAcl = ResourceAccessControlList.PublicRead;
+	int directoryParallelism = ExternalProviderHelper.DEFAULT_DIRECTORY_PARALLELISM;
+	StorageUrlCache urlCache;
 
 	public ExternalProviderBase() {
 		init();
@@ -38,6 +50,22 @@ public abstract class ExternalProviderBase {
 		if (aclS.length() > 0) {
 			this.defaultAcl = ResourceAccessControlList.parse(aclS);
 		}
+		try {
+			directoryParallelism = Math.max(1, Integer.parseInt(getPropertyValue(DIRECTORY_PARALLELISM, DIRECTORY_PARALLELISM, Integer.toString(directoryParallelism))));
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid " + resolvePropertyName(DIRECTORY_PARALLELISM) + ", using " + directoryParallelism);
+		}
+		int urlCacheTtl = StorageUrlCache.DEFAULT_TTL;
+		int urlCacheNegativeTtl = 0;
+		int urlCacheSize = StorageUrlCache.DEFAULT_MAX_OBJECTS;
+		try {
+			urlCacheTtl = Integer.parseInt(getPropertyValue(URL_CACHE_TTL, URL_CACHE_TTL, Integer.toString(urlCacheTtl)));
+			urlCacheNegativeTtl = Integer.parseInt(getPropertyValue(URL_CACHE_NEGATIVE_TTL, URL_CACHE_NEGATIVE_TTL, Integer.toString(urlCacheNegativeTtl)));
+			urlCacheSize = Integer.parseInt(getPropertyValue(URL_CACHE_SIZE, URL_CACHE_SIZE, Integer.toString(urlCacheSize)));
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid URL cache configuration, using defaults");
+		}
+		urlCache = new StorageUrlCache(urlCacheTtl, urlCacheNegativeTtl, urlCacheSize);
 	}
 
 	public String getEncryptedPropertyValue(String propertyName, String alternativePropertyName) throws Exception {
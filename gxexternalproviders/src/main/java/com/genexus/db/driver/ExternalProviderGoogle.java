@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -53,6 +54,8 @@ public class ExternalProviderGoogle extends ExternalProviderBase implements Exte
 	static final String REGION = "REGION";
 
 	private static final int OBJECT_NOT_FOUND = 404;
+	/** Maximum requests the storage service accepts in a single batch */
+	static final int DELETE_BATCH_SIZE = 100;
 
 	private com.google.api.services.storage.Storage legacyClient;
 	private com.google.cloud.storage.Storage storageClient;
@@ -341,64 +344,50 @@ public class ExternalProviderGoogle extends ExternalProviderBase implements Exte
 
 	public void deleteDirectory(String directoryName) {
 		directoryName = StorageUtils.normalizeDirectoryName(directoryName);
-		try {
-			com.google.api.services.storage.Storage.Objects.List listObjects = legacyClient.objects().list(bucket);
-			listObjects.setPrefix(directoryName);
-			Objects objects;
-			do {
-				objects = listObjects.execute();
-				if (objects.getItems() != null) {
-					for (StorageObject object : objects.getItems()) {
-						if (isFile(object.getName(), "")) {
-							delete(object.getName(), null);
-						}
-					}
-				}
-				listObjects.setPageToken(objects.getNextPageToken());
-			} while (null != objects.getNextPageToken());
-			for (String subdir : getSubDirectories(directoryName)) {
-				deleteDirectory(subdir);
+		ExternalProviderHelper.DirectoryProgress progress = ExternalProviderHelper.startProgress("Delete directory", directoryName);
+		Iterator<List<String>> batches = ExternalProviderHelper.batches(listObjects(directoryName), DELETE_BATCH_SIZE);
+		while (batches.hasNext()) {
+			List<String> names = batches.next();
+			List<BlobId> blobIds = new ArrayList<BlobId>(names.size());
+			for (String name : names) {
+				blobIds.add(BlobId.of(this.bucket, name));
 			}
-			if (exists(directoryName, null)) {
-				delete(directoryName, null);
+			List<Boolean> deleted = storageClient.delete(blobIds);
+			for (int i = 0; i < deleted.size(); i++) {
+				if (!deleted.get(i)) {
+					logger.warn("Could not delete resource: " + names.get(i));
+				}
 			}
-		} catch (IOException ex) {
-			handleIOException(ex);
+			progress.add(names.size());
 		}
+		progress.finish();
 	}
 
 	public void renameDirectory(String directoryName, String newDirectoryName) {
-		ResourceAccessControlList acl = null;
-		directoryName = StorageUtils.normalizeDirectoryName(directoryName);
-		newDirectoryName = StorageUtils.normalizeDirectoryName(newDirectoryName);
-		try {
-			com.google.api.services.storage.Storage.Objects.List listObjects = legacyClient.objects().list(bucket);
-			listObjects.setPrefix(directoryName);
-			Objects objects;
-			do {
-				objects = listObjects.execute();
-				if (objects.isEmpty()) {
-					copy(directoryName, newDirectoryName, acl);
-					delete(directoryName, acl);
-				}
-				if (objects.getItems() != null) {
-					for (StorageObject object : objects.getItems()) {
-						copy(object.getName(), object.getName().replace(directoryName, newDirectoryName), acl);
-						delete(object.getName(), acl);
-					}
-				}
-				listObjects.setPageToken(objects.getNextPageToken());
-			} while (null != objects.getNextPageToken());
-			for (String subdir : getSubDirectories(directoryName)) {
-				renameDirectory(subdir, subdir.replace(directoryName, newDirectoryName));
-				deleteDirectory(subdir);
+		final String sourceDirectory = StorageUtils.normalizeDirectoryName(directoryName);
+		final String targetDirectory = StorageUtils.normalizeDirectoryName(newDirectoryName);
+		ExternalProviderHelper.DirectoryProgress progress = ExternalProviderHelper.startProgress("Rename directory", sourceDirectory);
+		ExternalProviderHelper.forEachConcurrently(listObjects(sourceDirectory), directoryParallelism, new ExternalProviderHelper.ObjectAction() {
+			public void run(String name) {
+				copy(name, targetDirectory + name.substring(sourceDirectory.length()), null);
 			}
-			if (exists(directoryName, acl)) {
-				delete(directoryName, acl);
+		}, progress);
+		progress.finish();
+		deleteDirectory(sourceDirectory);
+	}
+
+	/** Iterates the object names under the prefix, the client requests the next listing page when needed */
+	public Iterator<String> listObjects(String prefix) {
+		final Iterator<Blob> blobs = storageClient.list(this.bucket, Storage.BlobListOption.prefix(prefix)).iterateAll().iterator();
+		return new Iterator<String>() {
+			public boolean hasNext() {
+				return blobs.hasNext();
 			}
-		} catch (IOException ex) {
-			handleIOException(ex);
-		}
+
+			public String next() {
+				return blobs.next().getName();
+			}
+		};
 	}
 
 	public List<String> getFiles(String directoryName, String filter) {
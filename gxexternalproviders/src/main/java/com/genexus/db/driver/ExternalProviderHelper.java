@@ -2,8 +2,30 @@ package com.genexus.db.driver;
 
 import com.genexus.util.Encryption;
 import com.genexus.util.GXService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ExternalProviderHelper {
+	private static Logger logger = LogManager.getLogger(ExternalProviderHelper.class);
+
+	static final int DEFAULT_DIRECTORY_PARALLELISM = 8;
+	static final int PROGRESS_LOG_INTERVAL = 1000;
+
+	/** One pool per DIRECTORY_PARALLELISM value, with that many threads at most */
+	private static final ConcurrentHashMap<Integer, ExecutorService> directoryExecutors = new ConcurrentHashMap<Integer, ExecutorService>();
 
 	public static String getServicePropertyValue(GXService s, String propName, boolean isSecure){
 		String value = s.getProperties().get(propName);
@@ -23,4 +45,122 @@ public class ExternalProviderHelper {
 		}
 		return value;
 	}
+
+	/** Operation applied to each object of a directory */
+	public interface ObjectAction {
+		void run(String objectName) throws Exception;
+	}
+
+	/** Objects processed by a directory operation, logged every PROGRESS_LOG_INTERVAL objects and when it finishes */
+	public static class DirectoryProgress {
+		private final String operation;
+		private final String directoryName;
+		private final long start = System.currentTimeMillis();
+		private final AtomicLong objects = new AtomicLong();
+
+		DirectoryProgress(String operation, String directoryName) {
+			this.operation = operation;
+			this.directoryName = directoryName;
+		}
+
+		public void add(long count) {
+			long total = objects.addAndGet(count);
+			if (total / PROGRESS_LOG_INTERVAL != (total - count) / PROGRESS_LOG_INTERVAL) {
+				log();
+			}
+		}
+
+		public long getObjects() {
+			return objects.get();
+		}
+
+		public double getObjectsPerSecond() {
+			long elapsed = Math.max(1, System.currentTimeMillis() - start);
+			return objects.get() * 1000d / elapsed;
+		}
+
+		public void finish() {
+			log();
+		}
+
+		private void log() {
+			if (logger.isDebugEnabled()) {
+				logger.debug(String.format("%s %s: %d objects, %.1f objects/s", operation, directoryName, getObjects(), getObjectsPerSecond()));
+			}
+		}
+	}
+
+	public static DirectoryProgress startProgress(String operation, String directoryName) {
+		return new DirectoryProgress(operation, directoryName);
+	}
+
+	/** Groups the names in lists of at most batchSize, for the bulk delete calls */
+	public static Iterator<List<String>> batches(final Iterator<String> objectNames, final int batchSize) {
+		return new Iterator<List<String>>() {
+			public boolean hasNext() {
+				return objectNames.hasNext();
+			}
+
+			public List<String> next() {
+				List<String> batch = new ArrayList<String>(batchSize);
+				while (batch.size() < batchSize && objectNames.hasNext()) {
+					batch.add(objectNames.next());
+				}
+				return batch;
+			}
+		};
+	}
+
+	/**
+	 * Runs the action on every object with at most parallelism of them at the same time.
+	 * Stops taking new objects after the first failure, which is rethrown once the running ones end.
+	 */
+	public static void forEachConcurrently(Iterator<String> objectNames, int parallelism, final ObjectAction action, final DirectoryProgress progress) {
+		final Semaphore slots = new Semaphore(parallelism);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		ExecutorService executor = getDirectoryExecutor(parallelism);
+		while (objectNames.hasNext() && failure.get() == null) {
+			final String objectName = objectNames.next();
+			slots.acquireUninterruptibly();
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						action.run(objectName);
+						progress.add(1);
+					} catch (Exception e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						slots.release();
+					}
+				}
+			});
+		}
+		slots.acquireUninterruptibly(parallelism);
+		slots.release(parallelism);
+		Exception e = failure.get();
+		if (e != null) {
+			throw (e instanceof RuntimeException)? (RuntimeException) e: new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	private static ExecutorService getDirectoryExecutor(int parallelism) {
+		ExecutorService executor = directoryExecutors.get(parallelism);
+		if (executor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "GXStorageDirectory");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			pool.allowCoreThreadTimeOut(true);
+			executor = directoryExecutors.putIfAbsent(parallelism, pool);
+			if (executor == null) {
+				executor = pool;
+			} else {
+				pool.shutdown();
+			}
+		}
+		return executor;
+	}
 }
@@ -2,7 +2,9 @@ package com.genexus.db.driver;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import com.genexus.util.GXServices;
 import com.ibm.cloud.objectstorage.ClientConfiguration;
@@ -39,6 +41,8 @@ public class ExternalProviderIBM extends ExternalProviderBase implements Externa
 	static final String STORAGE_ENDPOINT =  "ENDPOINT";
 	static final String REGION = "REGION";
 	static final String BUCKET = "BUCKET_NAME";
+	/** Maximum keys accepted by a single DeleteObjects call */
+	static final int DELETE_BATCH_SIZE = 1000;
 
 	@Deprecated
     static final String ACCESS_KEY_ID_DEPRECATED = "STORAGE_PROVIDER_ACCESS_KEY";
@@ -136,7 +140,11 @@ public class ExternalProviderIBM extends ExternalProviderBase implements Externa
     }
 
     public String upload(String localFile, String externalFileName, ResourceAccessControlList acl) {
-        client.putObject(new PutObjectRequest(bucket, externalFileName, new File(localFile)).withCannedAcl(internalToAWSACL(acl)));
+        try {
+            client.putObject(new PutObjectRequest(bucket, externalFileName, new File(localFile)).withCannedAcl(internalToAWSACL(acl)));
+        } finally {
+            urlCache.invalidate(externalFileName);
+        }
         return getResourceUrl(externalFileName, acl, defaultExpirationMinutes);
     }
 
@@ -176,12 +184,37 @@ public class ExternalProviderIBM extends ExternalProviderBase implements Externa
         } catch (IOException ex) {
             logger.error("Error while uploading file to the external provider.", ex);
             return "";
+        } finally {
+            urlCache.invalidate(externalFileName);
         }
     }
 
     public String get(String externalFileName, ResourceAccessControlList acl, int expirationMinutes) {
-        client.getObjectMetadata(bucket, externalFileName);
-		return getResourceUrl(externalFileName, acl, expirationMinutes);
+        String aclName = String.valueOf(acl);
+        String url = urlCache.get(externalFileName, aclName, expirationMinutes);
+        if (url != null) {
+            return url;
+        }
+        long version = urlCache.version(externalFileName);
+        RuntimeException missing = urlCache.getMissing(externalFileName);
+        if (missing != null) {
+            throw missing;
+        }
+        try {
+            client.getObjectMetadata(bucket, externalFileName);
+        } catch (AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404) {
+                urlCache.putMissing(externalFileName, ex, version);
+            }
+            throw ex;
+        }
+		url = getResourceUrl(externalFileName, acl, expirationMinutes);
+		int urlLifetime = 0;
+		if (internalToAWSACL(acl) == CannedAccessControlList.Private) {
+			urlLifetime = expirationMinutes > 0 ? expirationMinutes: defaultExpirationMinutes;
+		}
+		urlCache.put(externalFileName, aclName, expirationMinutes, url, urlLifetime, version);
+		return url;
 	}
 
 	private String getResourceUrl(String externalFileName, ResourceAccessControlList acl, int expirationMinutes) {
@@ -202,7 +235,11 @@ public class ExternalProviderIBM extends ExternalProviderBase implements Externa
 	}
 
 	public void delete(String objectName, ResourceAccessControlList acl) {
-        client.deleteObject(bucket, objectName);
+        try {
+            client.deleteObject(bucket, objectName);
+        } finally {
+            urlCache.invalidate(objectName);
+        }
     }
 
     public String rename(String objectName, String newName, ResourceAccessControlList acl) {
@@ -214,7 +251,11 @@ public class ExternalProviderIBM extends ExternalProviderBase implements Externa
     public String copy(String objectName, String newName, ResourceAccessControlList acl) {
         CopyObjectRequest request = new CopyObjectRequest(bucket, objectName, bucket, newName);
         request.setCannedAccessControlList(internalToAWSACL(acl));
-        client.copyObject(request);
+        try {
+            client.copyObject(request);
+        } finally {
+            urlCache.invalidate(newName);
+        }
         return ((AmazonS3Client) client).getResourceUrl(bucket, newName);
     }
 
@@ -231,7 +272,11 @@ public class ExternalProviderIBM extends ExternalProviderBase implements Externa
         CopyObjectRequest request = new CopyObjectRequest(bucket, objectUrl, bucket, resourceKey);
         request.setNewObjectMetadata(metadata);
         request.setCannedAccessControlList(internalToAWSACL(acl));
-        client.copyObject(request);
+        try {
+            client.copyObject(request);
+        } finally {
+            urlCache.invalidate(resourceKey);
+        }
 
         return ((AmazonS3Client) client).getResourceUrl(bucket, resourceKey);
     }
@@ -288,34 +333,57 @@ public class ExternalProviderIBM extends ExternalProviderBase implements Externa
     }
 
     public void deleteDirectory(String directoryName) {
-        for (S3ObjectSummary file : client.listObjects(bucket, directoryName).getObjectSummaries()) {
-            client.deleteObject(bucket, file.getKey());
-        }
-        ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
-            .withBucketName(bucket).withDelimiter(StorageUtils.DELIMITER);
-        ObjectListing list = client.listObjects(listObjectsRequest);
-        List<String> toRemove = new ArrayList<String>();
-        List<String> prefixes = list.getCommonPrefixes();
-        for (String prefix : prefixes) {
-            if (prefix.startsWith(directoryName)) {
-                toRemove.add(prefix);
+        directoryName = StorageUtils.normalizeDirectoryName(directoryName);
+        ExternalProviderHelper.DirectoryProgress progress = ExternalProviderHelper.startProgress("Delete directory", directoryName);
+        try {
+            Iterator<List<String>> batches = ExternalProviderHelper.batches(listObjects(directoryName), DELETE_BATCH_SIZE);
+            while (batches.hasNext()) {
+                List<String> keys = batches.next();
+                client.deleteObjects(new DeleteObjectsRequest(bucket).withKeys(keys.toArray(new String[0])).withQuiet(true));
+                progress.add(keys.size());
             }
+        } finally {
+            urlCache.clear();
         }
-        prefixes.removeAll(toRemove);
-        list.setCommonPrefixes(prefixes);
+        progress.finish();
     }
 
     public void renameDirectory(String directoryName, String newDirectoryName) {
-        directoryName = StorageUtils.normalizeDirectoryName(directoryName);
-        newDirectoryName = StorageUtils.normalizeDirectoryName(newDirectoryName);
-        ensureFolder(newDirectoryName);
-        ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
-            .withBucketName(bucket).withPrefix(directoryName);
-        for (S3ObjectSummary file : client.listObjects(listObjectsRequest).getObjectSummaries()) {
-            String newKey = file.getKey().replace(directoryName, newDirectoryName);
-            rename(file.getKey(), newKey, null);
-        }
-        deleteDirectory(directoryName);
+        final String sourceDirectory = StorageUtils.normalizeDirectoryName(directoryName);
+        final String targetDirectory = StorageUtils.normalizeDirectoryName(newDirectoryName);
+        ensureFolder(targetDirectory);
+        ExternalProviderHelper.DirectoryProgress progress = ExternalProviderHelper.startProgress("Rename directory", sourceDirectory);
+        ExternalProviderHelper.forEachConcurrently(listObjects(sourceDirectory), directoryParallelism, new ExternalProviderHelper.ObjectAction() {
+            public void run(String key) {
+                copy(key, targetDirectory + key.substring(sourceDirectory.length()), null);
+            }
+        }, progress);
+        progress.finish();
+        deleteDirectory(sourceDirectory);
+    }
+
+    /** Iterates the keys under the prefix, requesting the next listing page when the current one is consumed */
+    public Iterator<String> listObjects(String prefix) {
+        final ObjectListing firstPage = client.listObjects(new ListObjectsRequest().withBucketName(bucket).withPrefix(prefix));
+        return new Iterator<String>() {
+            private ObjectListing listing = firstPage;
+            private Iterator<S3ObjectSummary> page = firstPage.getObjectSummaries().iterator();
+
+            public boolean hasNext() {
+                while (!page.hasNext() && listing.isTruncated()) {
+                    listing = client.listNextBatchOfObjects(listing);
+                    page = listing.getObjectSummaries().iterator();
+                }
+                return page.hasNext();
+            }
+
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next().getKey();
+            }
+        };
     }
 
     public List<String> getFiles(String directoryName, String filter) {
@@ -19,16 +19,15 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.util.IOUtils;
 
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 
 public class ExternalProviderS3 extends ExternalProviderBase implements ExternalProvider  {
@@ -41,6 +40,9 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
 	static final String STORAGE_ENDPOINT = "ENDPOINT";
 	static final String BUCKET = "BUCKET_NAME";
 	static final String REGION = "REGION";
+	static final String MULTIPART_PART_SIZE = "MULTIPART_PART_SIZE";
+	static final String MULTIPART_THREADS = "MULTIPART_THREADS";
+	static final String MULTIPART_RETRIES = "MULTIPART_RETRIES";
 
 	//Keep it for compatibility reasons
 	@Deprecated
@@ -62,12 +64,15 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
     static final String ACCELERATED = "s3-accelerate.amazonaws.com";
     static final String DUALSTACK = "s3-accelerate.dualstack.amazonaws.com";
 	static final String DEFAULT_REGION = "us-east-1";
+	/** Maximum keys accepted by a single DeleteObjects call */
+	static final int DELETE_BATCH_SIZE = 1000;
 
     private AmazonS3 client;
     private String bucket;
     private String folder;
     private String endpointUrl = ".s3.amazonaws.com/";
 	private int defaultExpirationMinutes = DEFAULT_EXPIRATION_MINUTES;
+	private S3MultipartTransfer transfer;
 
 	private Boolean pathStyleUrls = false;
 
@@ -105,6 +110,23 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
 		} catch (Exception e) {
 		}
 
+		int partSizeMB = S3MultipartTransfer.DEFAULT_PART_SIZE / (1024 * 1024);
+		int threads = S3MultipartTransfer.DEFAULT_PARALLELISM;
+		int retries = S3MultipartTransfer.DEFAULT_RETRIES;
+		try {
+			partSizeMB = Integer.parseInt(getPropertyValue(MULTIPART_PART_SIZE, MULTIPART_PART_SIZE, Integer.toString(partSizeMB)));
+			threads = Integer.parseInt(getPropertyValue(MULTIPART_THREADS, MULTIPART_THREADS, Integer.toString(threads)));
+			retries = Integer.parseInt(getPropertyValue(MULTIPART_RETRIES, MULTIPART_RETRIES, Integer.toString(retries)));
+		} catch (Exception e) {
+			logger.warn("Invalid multipart transfer configuration, using defaults", e);
+		}
+		long partSize = (long) partSizeMB * 1024 * 1024;
+		if (partSize < S3MultipartTransfer.MIN_PART_SIZE || partSize > S3MultipartTransfer.MAX_PART_SIZE) {
+			long validSize = Math.min(S3MultipartTransfer.MAX_PART_SIZE, Math.max(S3MultipartTransfer.MIN_PART_SIZE, partSize));
+			logger.warn(String.format("%s %d MB is out of range, using %d MB", MULTIPART_PART_SIZE, partSizeMB, validSize / (1024 * 1024)));
+			partSize = validSize;
+		}
+
 		if (this.client == null) {
 			if (region.length() == 0) {
 				region = DEFAULT_REGION;
@@ -112,6 +134,7 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
 			this.bucket = bucket;
 			this.folder = folder;
 			this.client = buildS3Client(accessKey, secretKey, endpointValue, region);
+			this.transfer = new S3MultipartTransfer(client, bucket, (int) partSize, threads, retries);
 
 			bucketExists();
 			ensureFolder(folder);
@@ -166,16 +189,7 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
 
     public void download(String externalFileName, String localFile, ResourceAccessControlList acl) {
         try {
-            S3Object object = client.getObject(new GetObjectRequest(bucket, externalFileName));
-            try (InputStream objectData = object.getObjectContent()) {
-				try (OutputStream outputStream = new FileOutputStream(new File(localFile))){
-					int read;
-					byte[] bytes = new byte[1024];
-					while ((read = objectData.read(bytes)) != -1) {
-						outputStream.write(bytes, 0, read);
-					}
-				}
-			}
+			transfer.download(externalFileName, localFile);
         } catch (FileNotFoundException ex) {
             logger.error("Error while downloading file to the external provider", ex);
         } catch (IOException ex) {
@@ -184,7 +198,11 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
     }
 
     public String upload(String localFile, String externalFileName, ResourceAccessControlList acl) {
-        client.putObject(new PutObjectRequest(bucket, externalFileName, new File(localFile)).withCannedAcl(internalToAWSACL(acl)));
+        try {
+            client.putObject(new PutObjectRequest(bucket, externalFileName, new File(localFile)).withCannedAcl(internalToAWSACL(acl)));
+        } finally {
+            urlCache.invalidate(externalFileName);
+        }
         return getResourceUrl(externalFileName, acl, defaultExpirationMinutes);
     }
 
@@ -207,29 +225,47 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
     }
 
     public String upload(String externalFileName, InputStream input, ResourceAccessControlList acl) {
-        byte[] bytes;
         try {
-            bytes = IOUtils.toByteArray(input);
             ObjectMetadata metadata = new ObjectMetadata();
-            metadata.setContentLength(bytes.length);
             if (externalFileName.endsWith(".tmp")) {
                 metadata.setContentType("image/jpeg");
             }
-            String upload = "";
-            try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes)) {
-				client.putObject(new PutObjectRequest(bucket, externalFileName, byteArrayInputStream, metadata).withCannedAcl(internalToAWSACL(acl)));
-				upload = getResourceUrl(externalFileName, acl, defaultExpirationMinutes);
-			}
-			return upload;
+			transfer.upload(externalFileName, input, metadata, internalToAWSACL(acl));
+			return getResourceUrl(externalFileName, acl, defaultExpirationMinutes);
         } catch (IOException ex) {
             logger.error("Error while uploading file to the external provider.", ex);
             return "";
+        } finally {
+            urlCache.invalidate(externalFileName);
         }
     }
 
     public String get(String externalFileName, ResourceAccessControlList acl, int expirationMinutes) {
-        client.getObjectMetadata(bucket, externalFileName);
-		return getResourceUrl(externalFileName, acl, expirationMinutes);
+        String aclName = String.valueOf(acl);
+        String url = urlCache.get(externalFileName, aclName, expirationMinutes);
+        if (url != null) {
+            return url;
+        }
+        long version = urlCache.version(externalFileName);
+        RuntimeException missing = urlCache.getMissing(externalFileName);
+        if (missing != null) {
+            throw missing;
+        }
+        try {
+            client.getObjectMetadata(bucket, externalFileName);
+        } catch (AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404) {
+                urlCache.putMissing(externalFileName, ex, version);
+            }
+            throw ex;
+        }
+		url = getResourceUrl(externalFileName, acl, expirationMinutes);
+		int urlLifetime = 0;
+		if (internalToAWSACL(acl) == CannedAccessControlList.Private) {
+			urlLifetime = expirationMinutes > 0 ? expirationMinutes: defaultExpirationMinutes;
+		}
+		urlCache.put(externalFileName, aclName, expirationMinutes, url, urlLifetime, version);
+		return url;
 	}
 
 	private String getResourceUrl(String externalFileName, ResourceAccessControlList acl, int expirationMinutes) {
@@ -250,7 +286,11 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
 	}
 
 	public void delete(String objectName, ResourceAccessControlList acl) {
-        client.deleteObject(bucket, objectName);
+        try {
+            client.deleteObject(bucket, objectName);
+        } finally {
+            urlCache.invalidate(objectName);
+        }
     }
 
     public String rename(String objectName, String newName, ResourceAccessControlList acl) {
@@ -262,7 +302,11 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
     public String copy(String objectName, String newName, ResourceAccessControlList acl) {
         CopyObjectRequest request = new CopyObjectRequest(bucket, objectName, bucket, newName);
         request.setCannedAccessControlList(internalToAWSACL(acl));
-        client.copyObject(request);
+        try {
+            client.copyObject(request);
+        } finally {
+            urlCache.invalidate(newName);
+        }
         return getResourceUrl(newName, acl, defaultExpirationMinutes);
     }
 
@@ -285,7 +329,11 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
         CopyObjectRequest request = new CopyObjectRequest(bucket, objectUrl, bucket, resourceKey);
         request.setNewObjectMetadata(metadata);
         request.setCannedAccessControlList(internalToAWSACL(acl));
-        client.copyObject(request);
+        try {
+            client.copyObject(request);
+        } finally {
+            urlCache.invalidate(resourceKey);
+        }
 
 		return getResourceUrl(resourceKey, acl, defaultExpirationMinutes);
     }
@@ -342,34 +390,57 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
     }
 
     public void deleteDirectory(String directoryName) {
-        for (S3ObjectSummary file : client.listObjects(bucket, directoryName).getObjectSummaries()) {
-            client.deleteObject(bucket, file.getKey());
-        }
-        ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
-            .withBucketName(bucket).withDelimiter(StorageUtils.DELIMITER);
-        ObjectListing list = client.listObjects(listObjectsRequest);
-        List<String> toRemove = new ArrayList<String>();
-        List<String> prefixes = list.getCommonPrefixes();
-        for (String prefix : prefixes) {
-            if (prefix.startsWith(directoryName)) {
-                toRemove.add(prefix);
+        directoryName = StorageUtils.normalizeDirectoryName(directoryName);
+        ExternalProviderHelper.DirectoryProgress progress = ExternalProviderHelper.startProgress("Delete directory", directoryName);
+        try {
+            Iterator<List<String>> batches = ExternalProviderHelper.batches(listObjects(directoryName), DELETE_BATCH_SIZE);
+            while (batches.hasNext()) {
+                List<String> keys = batches.next();
+                client.deleteObjects(new DeleteObjectsRequest(bucket).withKeys(keys.toArray(new String[0])).withQuiet(true));
+                progress.add(keys.size());
             }
+        } finally {
+            urlCache.clear();
         }
-        prefixes.removeAll(toRemove);
-        list.setCommonPrefixes(prefixes);
+        progress.finish();
     }
 
     public void renameDirectory(String directoryName, String newDirectoryName) {
-        directoryName = StorageUtils.normalizeDirectoryName(directoryName);
-        newDirectoryName = StorageUtils.normalizeDirectoryName(newDirectoryName);
-        ensureFolder(newDirectoryName);
-        ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
-            .withBucketName(bucket).withPrefix(directoryName);
-        for (S3ObjectSummary file : client.listObjects(listObjectsRequest).getObjectSummaries()) {
-            String newKey = file.getKey().replace(directoryName, newDirectoryName);
-            rename(file.getKey(), newKey, null);
-        }
-        deleteDirectory(directoryName);
+        final String sourceDirectory = StorageUtils.normalizeDirectoryName(directoryName);
+        final String targetDirectory = StorageUtils.normalizeDirectoryName(newDirectoryName);
+        ensureFolder(targetDirectory);
+        ExternalProviderHelper.DirectoryProgress progress = ExternalProviderHelper.startProgress("Rename directory", sourceDirectory);
+        ExternalProviderHelper.forEachConcurrently(listObjects(sourceDirectory), directoryParallelism, new ExternalProviderHelper.ObjectAction() {
+            public void run(String key) {
+                copy(key, targetDirectory + key.substring(sourceDirectory.length()), null);
+            }
+        }, progress);
+        progress.finish();
+        deleteDirectory(sourceDirectory);
+    }
+
+    /** Iterates the keys under the prefix, requesting the next listing page when the current one is consumed */
+    public Iterator<String> listObjects(String prefix) {
+        final ObjectListing firstPage = client.listObjects(new ListObjectsRequest().withBucketName(bucket).withPrefix(prefix));
+        return new Iterator<String>() {
+            private ObjectListing listing = firstPage;
+            private Iterator<S3ObjectSummary> page = firstPage.getObjectSummaries().iterator();
+
+            public boolean hasNext() {
+                while (!page.hasNext() && listing.isTruncated()) {
+                    listing = client.listNextBatchOfObjects(listing);
+                    page = listing.getObjectSummaries().iterator();
+                }
+                return page.hasNext();
+            }
+
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next().getKey();
+            }
+        };
     }
 
     public List<String> getFiles(String directoryName, String filter) {
@@ -405,8 +476,11 @@ public class ExternalProviderS3 extends ExternalProviderBase implements External
     }
 
     public InputStream getStream(String objectName, ResourceAccessControlList acl) {
-        S3Object object = client.getObject(new GetObjectRequest(bucket, objectName));
-        return object.getObjectContent();
+		try {
+			return transfer.getStream(objectName);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
     }
 
     public boolean getMessageFromException(Exception ex, StructSdtMessages_Message msg) {
@@ -0,0 +1,378 @@
+package com.genexus.db.driver;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming multipart uploads and parallel ranged downloads for S3 compatible storages.
+ * <p>
+ * An upload reads the stream one part at a time and sends the parts on a bounded executor,
+ * so at most {@code parallelism + 1} parts are held in memory whatever the object size.
+ * Streams that fit in a single part are sent with a plain PUT. Each part or range is retried
+ * on its own before the whole transfer is abandoned; the first part that fails for good stops
+ * the upload and cancels the parts still in flight.
+ * <p>
+ * Downloads start with a ranged GET of the first part, which also returns the object size,
+ * so no extra HEAD request is needed.
+ */
+final class S3MultipartTransfer {
+	private static Logger logger = LogManager.getLogger(S3MultipartTransfer.class);
+
+	/** S3 does not accept parts smaller than 5 MB, except for the last one */
+	static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+	/** Parts are buffered in memory, {@code parallelism + 1} at a time */
+	static final int MAX_PART_SIZE = 512 * 1024 * 1024;
+	static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+	static final int DEFAULT_PARALLELISM = 4;
+	static final int DEFAULT_RETRIES = 3;
+
+	private final AmazonS3 client;
+	private final String bucket;
+	private final int partSize;
+	private final int parallelism;
+	private final int retries;
+	private final ExecutorService executor;
+
+	S3MultipartTransfer(AmazonS3 client, String bucket, int partSize, int parallelism, int retries) {
+		this.client = client;
+		this.bucket = bucket;
+		this.partSize = Math.min(MAX_PART_SIZE, Math.max(MIN_PART_SIZE, partSize));
+		this.parallelism = Math.max(1, parallelism);
+		this.retries = Math.max(0, retries);
+		this.executor = createExecutor(this.parallelism);
+	}
+
+	private static ExecutorService createExecutor(int threads) {
+		final AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "GXS3Transfer-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	int getPartSize() {
+		return partSize;
+	}
+
+	void upload(String key, InputStream input, ObjectMetadata metadata, CannedAccessControlList acl) throws IOException {
+		byte[] first = new byte[partSize];
+		int firstLength = readFully(input, first);
+		if (firstLength < partSize) {
+			metadata.setContentLength(firstLength);
+			client.putObject(new PutObjectRequest(bucket, key, new ByteArrayInputStream(first, 0, firstLength), metadata).withCannedAcl(acl));
+			return;
+		}
+
+		String uploadId = client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata).withCannedACL(acl)).getUploadId();
+		List<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+		try {
+			Semaphore inFlight = new Semaphore(parallelism);
+			AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			byte[] buffer = first;
+			int length = firstLength;
+			int partNumber = 1;
+			while (length > 0) {
+				acquire(inFlight);
+				if (failure.get() != null)
+					rethrow(failure.get());
+				parts.add(executor.submit(uploadPart(key, uploadId, partNumber++, buffer, length, inFlight, failure)));
+				if (length < partSize)
+					break;
+				buffer = new byte[partSize];
+				length = readFully(input, buffer);
+			}
+			List<PartETag> etags = new ArrayList<PartETag>(parts.size());
+			for (Future<PartETag> part : parts) {
+				etags.add(get(part));
+			}
+			client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+		}
+		catch (IOException | RuntimeException ex) {
+			for (Future<PartETag> part : parts) {
+				part.cancel(true);
+			}
+			abort(key, uploadId);
+			throw ex;
+		}
+	}
+
+	private Callable<PartETag> uploadPart(final String key, final String uploadId, final int partNumber, final byte[] buffer, final int length, final Semaphore inFlight, final AtomicReference<Throwable> failure) {
+		return new Callable<PartETag>() {
+			public PartETag call() {
+				try {
+					if (failure.get() != null)
+						return null;
+					for (int attempt = 0; ; attempt++) {
+						try {
+							UploadPartRequest request = new UploadPartRequest()
+								.withBucketName(bucket)
+								.withKey(key)
+								.withUploadId(uploadId)
+								.withPartNumber(partNumber)
+								.withPartSize(length)
+								.withInputStream(new ByteArrayInputStream(buffer, 0, length));
+							return client.uploadPart(request).getPartETag();
+						}
+						catch (RuntimeException ex) {
+							if (attempt >= retries || failure.get() != null) {
+								failure.compareAndSet(null, ex);
+								throw ex;
+							}
+							logger.warn(String.format("Retrying part %d of %s", partNumber, key), ex);
+						}
+					}
+				}
+				finally {
+					inFlight.release();
+				}
+			}
+		};
+	}
+
+	private void abort(String key, String uploadId) {
+		try {
+			client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+		}
+		catch (RuntimeException ex) {
+			logger.error("Could not abort multipart upload of " + key, ex);
+		}
+	}
+
+	/** Downloads the object with parallel ranged GETs straight into the local file */
+	void download(String key, String localFile) throws IOException {
+		long[] length = new long[1];
+		byte[] first = getRange(key, 0, partSize - 1, length);
+		try (RandomAccessFile file = new RandomAccessFile(localFile, "rw")) {
+			file.setLength(length[0]);
+			final FileChannel channel = file.getChannel();
+			ByteBuffer firstData = ByteBuffer.wrap(first);
+			while (firstData.hasRemaining()) {
+				channel.write(firstData, firstData.position());
+			}
+			List<Future<Void>> ranges = new ArrayList<Future<Void>>();
+			for (long start = first.length; start < length[0]; start += partSize) {
+				final long position = start;
+				final long end = Math.min(start + partSize, length[0]) - 1;
+				ranges.add(executor.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						ByteBuffer data = ByteBuffer.wrap(getRange(key, position, end, null));
+						long offset = position;
+						while (data.hasRemaining()) {
+							offset += channel.write(data, offset);
+						}
+						return null;
+					}
+				}));
+			}
+			try {
+				for (Future<Void> range : ranges) {
+					get(range);
+				}
+			}
+			finally {
+				for (Future<Void> range : ranges) {
+					range.cancel(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stream that reads the object in ranges, fetching up to {@code parallelism} ranges
+	 * ahead of the reader.
+	 */
+	InputStream getStream(String key) throws IOException {
+		long[] length = new long[1];
+		byte[] first = getRange(key, 0, partSize - 1, length);
+		if (first.length == length[0])
+			return new ByteArrayInputStream(first);
+		return new RangedInputStream(key, first, length[0]);
+	}
+
+	/**
+	 * Reads the range, cut at the end of the object. When {@code total} is not null it
+	 * receives the object size from the Content-Range of the response.
+	 */
+	private byte[] getRange(String key, long start, long end, long[] total) throws IOException {
+		for (int attempt = 0; ; attempt++) {
+			try (S3Object object = client.getObject(new GetObjectRequest(bucket, key).withRange(start, end))) {
+				ObjectMetadata metadata = object.getObjectMetadata();
+				if (total != null)
+					total[0] = metadata.getInstanceLength();
+				byte[] data = new byte[(int) metadata.getContentLength()];
+				InputStream content = object.getObjectContent();
+				if (readFully(content, data) != data.length)
+					throw new IOException(String.format("Range %d-%d of %s ended early", start, end, key));
+				return data;
+			}
+			catch (IOException | RuntimeException ex) {
+				if (start == 0 && ex instanceof AmazonS3Exception && ((AmazonS3Exception) ex).getStatusCode() == 416) {
+					// Objeto vacio, no tiene ningun byte en el rango
+					if (total != null)
+						total[0] = 0;
+					return new byte[0];
+				}
+				if (attempt >= retries || isClientError(ex))
+					throw ex;
+				logger.warn(String.format("Retrying range %d-%d of %s", start, end, key), ex);
+			}
+		}
+	}
+
+	/** Errores como 403 o 404 no se arreglan reintentando */
+	private static boolean isClientError(Exception ex) {
+		if (!(ex instanceof AmazonS3Exception))
+			return false;
+		int status = ((AmazonS3Exception) ex).getStatusCode();
+		return status >= 400 && status < 500;
+	}
+
+	private static int readFully(InputStream input, byte[] buffer) throws IOException {
+		int length = 0;
+		while (length < buffer.length) {
+			int read = input.read(buffer, length, buffer.length - length);
+			if (read == -1)
+				break;
+			length += read;
+		}
+		return length;
+	}
+
+	private static void acquire(Semaphore semaphore) throws IOException {
+		try {
+			semaphore.acquire();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a transfer slot", ex);
+		}
+	}
+
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a transfer", ex);
+		}
+		catch (ExecutionException ex) {
+			rethrow(ex.getCause());
+			return null;
+		}
+	}
+
+	private static void rethrow(Throwable cause) throws IOException {
+		if (cause instanceof IOException)
+			throw (IOException) cause;
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		throw new IOException(cause);
+	}
+
+	private class RangedInputStream extends InputStream {
+		private final String key;
+		private final long length;
+		private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+		private long nextRange;
+		private byte[] current;
+		private int position;
+
+		RangedInputStream(String key, byte[] first, long length) {
+			this.key = key;
+			this.length = length;
+			this.current = first;
+			this.nextRange = first.length;
+			fill();
+		}
+
+		private void fill() {
+			while (pending.size() < parallelism && nextRange < length) {
+				final long start = nextRange;
+				final long end = Math.min(start + partSize, length) - 1;
+				pending.add(executor.submit(new Callable<byte[]>() {
+					public byte[] call() throws IOException {
+						return getRange(key, start, end, null);
+					}
+				}));
+				nextRange = end + 1;
+			}
+		}
+
+		private boolean advance() throws IOException {
+			while (position >= current.length) {
+				Future<byte[]> next = pending.poll();
+				if (next == null)
+					return false;
+				current = get(next);
+				position = 0;
+				fill();
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!advance())
+				return -1;
+			return current[position++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!advance())
+				return -1;
+			int count = Math.min(len, current.length - position);
+			System.arraycopy(current, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return current.length - position;
+		}
+
+		@Override
+		public void close() {
+			for (Future<byte[]> range : pending) {
+				range.cancel(true);
+			}
+			pending.clear();
+			current = new byte[0];
+			position = 0;
+			nextRange = length;
+		}
+	}
+}
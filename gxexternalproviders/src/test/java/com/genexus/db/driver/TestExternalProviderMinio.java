@@ -3,9 +3,16 @@ package com.genexus.db.driver;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -42,6 +49,33 @@ public class TestExternalProviderMinio extends TestExternalProvider {
 		*/
 	}
 
+	@Test
+	public void testMultipartUploadAndRangedDownload() throws Exception {
+		byte[] content = new byte[S3MultipartTransfer.DEFAULT_PART_SIZE * 2 + 12345];
+		new Random(7).nextBytes(content);
+		String externalFileName = "multipart-" + new Random().nextInt(5000) + ".bin";
+
+		String url = provider.upload(externalFileName, new ByteArrayInputStream(content), ResourceAccessControlList.Private);
+		assertTrue(urlExists(url));
+
+		byte[] streamed = new byte[content.length];
+		try (InputStream stream = provider.getStream(externalFileName, ResourceAccessControlList.Private)) {
+			new DataInputStream(stream).readFully(streamed);
+			assertTrue(stream.read() == -1);
+		}
+		assertArrayEquals(content, streamed);
+
+		File localFile = File.createTempFile("multipart", ".bin");
+		try {
+			provider.download(externalFileName, localFile.getAbsolutePath(), ResourceAccessControlList.Private);
+			assertArrayEquals(content, Files.readAllBytes(localFile.toPath()));
+		}
+		finally {
+			localFile.delete();
+			provider.delete(externalFileName, ResourceAccessControlList.Private);
+		}
+	}
+
 	@Override
 	public boolean supportsObjectAcls() {
 		return false;
@@ -1,5 +1,6 @@
 package com.genexus.search;
 
+import java.util.List;
 import java.util.Vector;
 
 public class ActionBuffer {
@@ -34,6 +35,17 @@ public class ActionBuffer {
 		return null;
 	}
 
+	/** Pasa a actions hasta max acciones, en el orden en que se agregaron */
+	public int drain(List<Action> actions, int max) {
+		synchronized (m_lock) {
+			int count = Math.min(max, m_buff.size());
+			List<Action> first = m_buff.subList(0, count);
+			actions.addAll(first);
+			first.clear();
+			return count;
+		}
+	}
+
 	public int getCount() {
 		synchronized (m_lock) {
 			return m_buff.size();
@@ -24,6 +24,11 @@ public class DocumentHandler {
 	static HashMap<String, Query> queries = new HashMap<String, Query>();
 
 	public static String getText(String filename, String extension) {
+		return getText(filename, extension, 0);
+	}
+
+	/** Texto del archivo, con a lo sumo maxLength caracteres si maxLength es mayor que 0 */
+	public static String getText(String filename, String extension, int maxLength) {
 		try {
 			IDocumentHandler docHandler = null;
 			extension = extension.toLowerCase();
@@ -38,8 +43,14 @@ public class DocumentHandler {
 			}
 			if (docHandler == null)
 				return "";
+			String text;
+			if (maxLength > 0 && docHandler instanceof IBoundedDocumentHandler)
+				text = ((IBoundedDocumentHandler) docHandler).getText(filename, maxLength);
 			else
-				return docHandler.getText(filename);
+				text = docHandler.getText(filename);
+			if (maxLength > 0 && text.length() > maxLength)
+				text = text.substring(0, maxLength);
+			return text;
 		} catch (Exception ex) {
 			System.out.println("GetText Error " + ex.getMessage());
 			return "";
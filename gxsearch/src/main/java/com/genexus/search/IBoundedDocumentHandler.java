@@ -0,0 +1,8 @@
+package com.genexus.search;
+
+/** Handler que puede dejar de extraer texto al llegar a un largo maximo */
+interface IBoundedDocumentHandler extends IDocumentHandler
+{
+	/** Texto del archivo, con a lo sumo maxLength caracteres si maxLength es mayor que 0 */
+	String getText(String filename, int maxLength);
+}
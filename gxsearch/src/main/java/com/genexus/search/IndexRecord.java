@@ -1,6 +1,13 @@
 package com.genexus.search;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class IndexRecord
 {
@@ -15,6 +22,7 @@ public class IndexRecord
 	private String m_uri;
 	private String m_entity;
 	private String m_content;
+	private Future<String> m_extractedContent;
 	private String m_viewer;
 	private String m_title;
 	private String[] m_keys = new String[0];
@@ -59,13 +67,48 @@ public class IndexRecord
 		this.m_entity = value;
 	}
 
-	protected String getContent()
+	/** Contenido a indexar, espera a que termine la extraccion del texto si la hay y propaga su error */
+	protected String getContent() throws IOException
 	{
+		if (m_extractedContent != null)
+			return toLowerCase(getExtractedContent());
 		return this.m_content;
 	}
 	protected void setContent(String value)
 	{
 		this.m_content = value;
+		this.m_extractedContent = null;
+	}
+	/** Texto que se esta extrayendo de un archivo, se pasa a minusculas al indexarlo */
+	protected void setContent(Future<String> value)
+	{
+		this.m_content = null;
+		this.m_extractedContent = value;
+	}
+
+	/** Contenido a indexar, espera a que termine la extraccion del texto si la hay */
+	protected Reader getContentReader() throws IOException
+	{
+		if (m_extractedContent == null)
+			return new StringReader(m_content);
+		return new LowerCaseReader(new StringReader(getExtractedContent()));
+	}
+
+	private String getExtractedContent() throws IOException
+	{
+		try
+		{
+			return m_extractedContent.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(ex.toString());
+		}
+		catch (ExecutionException ex)
+		{
+			throw new IOException(ex.getCause());
+		}
 	}
 
 	protected String[] getKeys()
@@ -103,11 +146,43 @@ public class IndexRecord
     {
 		if (Settings.getInstance().getAnalyzer().equalsIgnoreCase(Settings.WhitespaceAnalyzer))
 		{
-			return content.toLowerCase();
+			return toLowerCase(content);
 		}
 		else
 			return content;
 
     }
 
+	/** Pasa a minusculas caracter a caracter con Character.toLowerCase, que no depende del locale, igual que
+	 *  LowerCaseReader, para que las consultas y el contenido extraido se comparen con las mismas minusculas */
+	static String toLowerCase(String content)
+	{
+		char[] chars = content.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(chars[i]);
+		return new String(chars);
+	}
+
+	/** Pasa a minusculas mientras se lee, sin copiar todo el texto, con la misma conversion que toLowerCase(String) */
+	private static class LowerCaseReader extends FilterReader
+	{
+		LowerCaseReader(Reader in)
+		{
+			super(in);
+		}
+
+		public int read() throws IOException
+		{
+			int c = super.read();
+			return c == -1 ? c : Character.toLowerCase((char) c);
+		}
+
+		public int read(char[] cbuf, int off, int len) throws IOException
+		{
+			int read = super.read(cbuf, off, len);
+			for (int i = off; i < off + read; i++)
+				cbuf[i] = Character.toLowerCase(cbuf[i]);
+			return read;
+		}
+	}
 }
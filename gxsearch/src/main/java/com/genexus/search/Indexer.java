@@ -2,8 +2,10 @@ package com.genexus.search;
 
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Date;
 import com.genexus.util.GXFile;
+import com.genexus.Application;
 import com.genexus.GxSilentTrnSdt;
 import com.genexus.IGxSilentTrn;
 
@@ -22,6 +24,8 @@ public class Indexer
 	private Thread m_workerThread;
 	private Object m_lock = new Object();
 	private IndexWorker worker;
+	private final IndexerStats stats = new IndexerStats(m_buffer);
+	private final TextExtractor m_extractor = new TextExtractor(stats);
 	
 	static
 	{
@@ -69,17 +73,19 @@ public class Indexer
 		worker = new IndexWorker(m_buffer);
 		m_workerThread = new Thread(worker);
 		m_workerThread.start();
+		if (Application.isJMXEnabled())
+			IndexerJMX.createIndexerJMX(stats);
 	}
 
 	public boolean insertContent(Object obj, GXContentInfo contentInfo)
 	{
-		addAction(new Action(Action.INSERT, getIndexRecord(obj, contentInfo)));
+		addAction(new Action(Action.INSERT, getIndexRecord(obj, contentInfo, true)));
 		return true;
 	}
 
 	public boolean updateContent(Object obj, GXContentInfo contentInfo)
 	{
-		addAction(new Action(Action.UPDATE, getIndexRecord(obj, contentInfo)));
+		addAction(new Action(Action.UPDATE, getIndexRecord(obj, contentInfo, true)));
 		return true;
 	}
 
@@ -89,7 +95,7 @@ public class Indexer
 		if (obj instanceof String)
 			addAction(new Action(Action.DELETE, new IndexRecord((String)obj)));
 		else
-			addAction(new Action(Action.DELETE, getIndexRecord(obj, new GXContentInfo())));
+			addAction(new Action(Action.DELETE, getIndexRecord(obj, new GXContentInfo(), false)));
 		return true;
 	}
 
@@ -112,7 +118,8 @@ public class Indexer
 		}
 	}
 
-        private IndexRecord getIndexRecord(Object obj, GXContentInfo contentInfo)
+        /** El texto de los archivos se extrae en segundo plano, y no se extrae si solo se va a borrar el documento */
+        private IndexRecord getIndexRecord(Object obj, GXContentInfo contentInfo, boolean withContent)
         {
 			if (contentInfo == null) contentInfo = new GXContentInfo();
             IndexRecord ir = new IndexRecord();
@@ -121,7 +128,10 @@ public class Indexer
                 GXFile file = (GXFile)obj;
                 ir.setUri(file.getAbsoluteName());
 
-                ir.setContent(DocumentHandler.getText(file.getAbsoluteName(), file.getExt()).toLowerCase());
+                if (withContent)
+                    ir.setContent(m_extractor.extract(file.getAbsoluteName(), file.getExt()));
+                else
+                    ir.setContent("");
                 ir.setEntity(contentInfo.getType() == null ? file.getClass().getName() : contentInfo.getType());
                 ir.setTitle(contentInfo.getTitle() == null ? file.getName() : contentInfo.getTitle());
                 ir.setViewer(contentInfo.getViewer() == null ? file.getName() : contentInfo.getViewer());
@@ -179,10 +189,22 @@ public class Indexer
         }
 
 
+	public IndexerStats getStats()
+	{
+		return stats;
+	}
+
+	/** Aplica las acciones con un IndexWriter que queda abierto mientras hay trabajo. Los cambios se
+	 *  hacen visibles de a grupos, al llegar a Settings.getCommitThreshold() cambios o a los
+	 *  Settings.getCommitInterval() milisegundos del primero, y el indice se optimiza cuando no hay acciones. */
 	class IndexWorker implements Runnable
 	{
 		private ActionBuffer m_buffer;
-		private int m_counter = 0;
+		private IndexWriter m_writer;
+		private int m_pending = 0;
+		private long m_firstPendingTime;
+		private int m_changesSinceOptimize = 0;
+		private long m_lastOptimizeTime = System.currentTimeMillis();
 
 		IndexWorker(ActionBuffer buffer)
 		{
@@ -191,120 +213,202 @@ public class Indexer
 
 		public void run()
 		{
+			ArrayList<Action> actions = new ArrayList<Action>();
 			int totsec = 0;
-			while(totsec<3)
+			try
 			{
-				try
+				while(totsec<3)
 				{
-					while(this.m_buffer.getCount() > 0)
+					try
+					{
+						Settings settings = Settings.getInstance();
+						if (this.m_buffer.drain(actions, Math.max(1, settings.getCommitThreshold())) > 0)
+						{
+							apply(actions);
+							actions.clear();
+							totsec = 0;
+							if (m_pending >= settings.getCommitThreshold() || System.currentTimeMillis() - m_firstPendingTime >= settings.getCommitInterval())
+								commit();
+						}
+						else if (m_pending > 0)
+						{
+							long wait = m_firstPendingTime + settings.getCommitInterval() - System.currentTimeMillis();
+							if (wait <= 0)
+								commit();
+							else
+								Thread.sleep(Math.min(wait, 50L));
+						}
+						else
+						{
+							optimizeIfNeeded(false);
+							Thread.sleep(1000L);
+							totsec=totsec+1;
+						}
+					}
+					catch(Exception ex)
 					{
-						index(this.m_buffer.getAction());
+						actions.clear();
+						System.err.println("IndexWorker error " +  ex.toString());
 					}
+				}
+				optimizeIfNeeded(true);
+			}
+			finally
+			{
+				closeWriter();
+			}
+		}
 
-					Thread.sleep(1000L);
-					totsec=totsec+1;
+		private void apply(ArrayList<Action> actions)
+		{
+			if (m_writer == null)
+			{
+				m_writer = Indexer.getInstance().getWriter();
+				if (m_writer == null)
+					return;
+				int buffered = Math.max(2, Settings.getInstance().getCommitThreshold());
+				m_writer.setMaxBufferedDocs(buffered);
+				m_writer.setMaxBufferedDeleteTerms(buffered);
+			}
+			long start = System.nanoTime();
+			for (Action action : actions)
+			{
+				try
+				{
+					index(action);
 				}
 				catch(Exception ex)
 				{
-					System.err.println("IndexWorker error " +  ex.toString());
+					stats.errors.incrementAndGet();
 				}
 			}
+			stats.indexTime.addAndGet(System.nanoTime() - start);
+			if (m_pending == 0)
+				m_firstPendingTime = System.currentTimeMillis();
+			m_pending += actions.size();
+			m_changesSinceOptimize += actions.size();
 		}
 
-		private void index(Action action)
+		private void index(Action action) throws IOException
 		{
+			IndexRecord record = action.getRecord();
 			switch(action.getActionType())
 			{
 				case Action.INSERT:
-					insert(action.getRecord());
+					m_writer.addDocument(createDocument(record));
+					stats.inserted.incrementAndGet();
 					break;
 				case Action.DELETE:
-					delete(action.getRecord());
+					m_writer.deleteDocuments(term(record));
+					stats.deleted.incrementAndGet();
 					break;
 				case Action.UPDATE:
-					delete(action.getRecord());
-					insert(action.getRecord());
+					if (record.getUri() != null)
+						m_writer.updateDocument(term(record), createDocument(record));
+					else
+					{
+						m_writer.deleteDocuments(term(record));
+						m_writer.addDocument(createDocument(record));
+					}
+					stats.updated.incrementAndGet();
 					break;
 			}
 		}
 
-		private void insert(IndexRecord record)
+		private Term term(IndexRecord record)
 		{
-			IndexWriter writer = Indexer.getInstance().getWriter();
-			if(writer == null)
-				return;
+			if (record.getUri() != null)
+				return new Term(IndexRecord.URIFIELD, record.getUri());
+			else
+				return new Term(IndexRecord.ENTITYFIELD, record.getEntity());
+		}
 
-			try
+		private Document createDocument(IndexRecord record) throws IOException
+		{
+			Document doc = new Document();
+			doc.add(new Field(IndexRecord.URIFIELD,record.getUri(),Field.Store.YES, Field.Index.UN_TOKENIZED));
+			doc.add(new Field(IndexRecord.ENTITYFIELD,record.getEntity(),Field.Store.YES, Field.Index.UN_TOKENIZED));
+			doc.add(new Field(IndexRecord.CONTENTFIELD,record.getContentReader()));
+			doc.add(new Field(IndexRecord.TIMESTAMPFIELD, DateTools.dateToString(new Date(), DateTools.Resolution.SECOND),Field.Store.YES,Field.Index.NO));
+			doc.add(new Field(IndexRecord.VIEWERFIELD, record.getViewer(), Field.Store.YES, Field.Index.UN_TOKENIZED));
+			doc.add(new Field(IndexRecord.TITLEFIELD, record.getTitle(), Field.Store.YES, Field.Index.UN_TOKENIZED));
+
+			String[] keys = record.getKeys();
+			for(int i=0;i<keys.length;i++)
 			{
-				Document doc = new Document();
-				doc.add(new Field(IndexRecord.URIFIELD,record.getUri(),Field.Store.YES, Field.Index.UN_TOKENIZED));
-				doc.add(new Field(IndexRecord.ENTITYFIELD,record.getEntity(),Field.Store.YES, Field.Index.UN_TOKENIZED));
-				doc.add(new Field(IndexRecord.CONTENTFIELD,new StringReader(record.getContent())));
-				doc.add(new Field(IndexRecord.TIMESTAMPFIELD, DateTools.dateToString(new Date(), DateTools.Resolution.SECOND),Field.Store.YES,Field.Index.NO));
-				doc.add(new Field(IndexRecord.VIEWERFIELD, record.getViewer(), Field.Store.YES, Field.Index.UN_TOKENIZED));
-				doc.add(new Field(IndexRecord.TITLEFIELD, record.getTitle(), Field.Store.YES, Field.Index.UN_TOKENIZED));
-
-				String[] keys = record.getKeys();
-				for(int i=0;i<keys.length;i++)
-				{
-					doc.add(new Field(IndexRecord.KEYFIELDPREFIX+(i+1),keys[i],Field.Store.YES,Field.Index.NO));
-				}
-				writer.addDocument(doc);
-				if(m_counter++ > Settings.getInstance().getOptimizeThreshold())
-				{
-					m_counter = 0;
-					writer.optimize();
-				}
+				doc.add(new Field(IndexRecord.KEYFIELDPREFIX+(i+1),keys[i],Field.Store.YES,Field.Index.NO));
+			}
+			return doc;
+		}
 
-			}catch(Exception ex)
+		/** Escribe los cambios pendientes; con autoCommit cada flush deja un nuevo segments visible para los readers */
+		private void commit() throws IOException
+		{
+			if (m_pending == 0)
+				return;
+			int pending = m_pending;
+			m_pending = 0;
+			if (m_writer == null)
+				return;
+			long start = System.nanoTime();
+			try
 			{
-
+				m_writer.flush();
 			}
-			finally
+			catch(IOException ex)
 			{
-				try
-				{
-					writer.close();
-					Searcher.getInstance().close();
-
-				}catch(IOException ex)
-				{
+				closeWriter();
+				throw ex;
+			}
+			stats.commitTime.addAndGet(System.nanoTime() - start);
+			stats.commits.incrementAndGet();
+			stats.committedChanges.addAndGet(pending);
+			Searcher.getInstance().refresh();
+		}
 
-				}
+		/** Optimiza en segundo plano, nunca mientras hay acciones en cola */
+		private void optimizeIfNeeded(boolean exiting)
+		{
+			Settings settings = Settings.getInstance();
+			if (m_writer == null || m_changesSinceOptimize <= settings.getOptimizeThreshold())
+				return;
+			if (!exiting && System.currentTimeMillis() - m_lastOptimizeTime < settings.getOptimizeInterval())
+				return;
+			try
+			{
+				long start = System.nanoTime();
+				m_writer.optimize();
+				stats.optimizeTime.addAndGet(System.nanoTime() - start);
+				stats.optimizations.incrementAndGet();
+				m_changesSinceOptimize = 0;
+				m_lastOptimizeTime = System.currentTimeMillis();
+				Searcher.getInstance().refresh();
+			}
+			catch(IOException ex)
+			{
+				System.err.println("IndexWorker optimize error " +  ex.toString());
 			}
 		}
 
-		private void delete(IndexRecord record)
+		private void closeWriter()
 		{
-			IndexReader reader = Indexer.getReader();
-			if(reader == null)
+			if (m_writer == null)
 				return;
 			try
 			{
-				if (record.getUri() != null)
-				{
-					reader.deleteDocuments(new Term(IndexRecord.URIFIELD, record.getUri()));
-				}
-				else
-				{
-					reader.deleteDocuments(new Term(IndexRecord.ENTITYFIELD, record.getEntity()));
-				}
+				m_writer.close();
+				stats.committedChanges.addAndGet(m_pending);
 			}
-			catch(Exception ex)
+			catch(IOException ex)
 			{
+				System.err.println("IndexWorker error " +  ex.toString());
 			}
 			finally
 			{
-				try
-				{
-				reader.close();
-				Searcher.getInstance().close();
-				}
-				catch(IOException ex)
-				{
-				}
+				m_writer = null;
+				m_pending = 0;
+				Searcher.getInstance().refresh();
 			}
 		}
-
 	}
 }
@@ -0,0 +1,90 @@
+package com.genexus.search;
+
+import com.genexus.management.MBeanUtils;
+
+public class IndexerJMX implements IndexerJMXMBean{
+
+	private IndexerStats stats;
+
+  public IndexerJMX(IndexerStats stats)
+  {
+    this.stats = stats;
+  }
+
+  static public void createIndexerJMX(IndexerStats stats)
+  {
+    try
+    {
+      MBeanUtils.createMBean(new IndexerJMX(stats), "com.genexus.management:type=Indexer");
+    }
+    catch(Exception e)
+    {
+      System.err.println("Cannot register Indexer MBean."+e.toString());
+    }
+  }
+
+  public int getQueueSize()
+  {
+	  return stats.getQueueSize();
+  }
+
+  public long getInsertedDocuments()
+  {
+	  return stats.getInsertedDocuments();
+  }
+
+  public long getUpdatedDocuments()
+  {
+	  return stats.getUpdatedDocuments();
+  }
+
+  public long getDeletes()
+  {
+	  return stats.getDeletes();
+  }
+
+  public long getErrors()
+  {
+	  return stats.getErrors();
+  }
+
+  public long getCommits()
+  {
+	  return stats.getCommits();
+  }
+
+  public float getAverageCommitSize()
+  {
+	  return stats.getAverageCommitSize();
+  }
+
+  public float getAverageCommitTime()
+  {
+	  return stats.getAverageCommitTime();
+  }
+
+  public long getOptimizations()
+  {
+	  return stats.getOptimizations();
+  }
+
+  public float getAverageOptimizeTime()
+  {
+	  return stats.getAverageOptimizeTime();
+  }
+
+  public float getThroughput()
+  {
+	  return stats.getThroughput();
+  }
+
+  public int getPendingExtractions()
+  {
+	  return stats.getPendingExtractions();
+  }
+
+  public float getAverageExtractionTime()
+  {
+	  return stats.getAverageExtractionTime();
+  }
+}
@@ -0,0 +1,18 @@
+package com.genexus.search;
+
+public interface IndexerJMXMBean
+{
+  int getQueueSize();
+  long getInsertedDocuments();
+  long getUpdatedDocuments();
+  long getDeletes();
+  long getErrors();
+  long getCommits();
+  float getAverageCommitSize();
+  float getAverageCommitTime();
+  long getOptimizations();
+  float getAverageOptimizeTime();
+  float getThroughput();
+  int getPendingExtractions();
+  float getAverageExtractionTime();
+}
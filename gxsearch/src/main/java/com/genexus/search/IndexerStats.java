@@ -0,0 +1,104 @@
+package com.genexus.search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Contadores del Indexer, los actualiza el IndexWorker */
+public class IndexerStats
+{
+	final AtomicLong inserted = new AtomicLong();
+	final AtomicLong updated = new AtomicLong();
+	final AtomicLong deleted = new AtomicLong();
+	final AtomicLong errors = new AtomicLong();
+	final AtomicLong commits = new AtomicLong();
+	final AtomicLong committedChanges = new AtomicLong();
+	final AtomicLong optimizations = new AtomicLong();
+	final AtomicLong indexTime = new AtomicLong();
+	final AtomicLong commitTime = new AtomicLong();
+	final AtomicLong optimizeTime = new AtomicLong();
+	final AtomicLong extractions = new AtomicLong();
+	final AtomicLong extractionTime = new AtomicLong();
+	final AtomicInteger pendingExtractions = new AtomicInteger();
+	private final ActionBuffer buffer;
+
+	IndexerStats(ActionBuffer buffer)
+	{
+		this.buffer = buffer;
+	}
+
+	public int getQueueSize()
+	{
+		return buffer.getCount();
+	}
+
+	public long getInsertedDocuments()
+	{
+		return inserted.get();
+	}
+
+	public long getUpdatedDocuments()
+	{
+		return updated.get();
+	}
+
+	public long getDeletes()
+	{
+		return deleted.get();
+	}
+
+	public long getErrors()
+	{
+		return errors.get();
+	}
+
+	public long getCommits()
+	{
+		return commits.get();
+	}
+
+	/** Promedio de cambios que se hicieron visibles en cada commit */
+	public float getAverageCommitSize()
+	{
+		long count = commits.get();
+		return count == 0 ? 0 : (float) committedChanges.get() / count;
+	}
+
+	/** Milisegundos promedio de cada commit */
+	public float getAverageCommitTime()
+	{
+		long count = commits.get();
+		return count == 0 ? 0 : commitTime.get() / 1000000f / count;
+	}
+
+	public long getOptimizations()
+	{
+		return optimizations.get();
+	}
+
+	/** Milisegundos promedio de cada optimizacion */
+	public float getAverageOptimizeTime()
+	{
+		long count = optimizations.get();
+		return count == 0 ? 0 : optimizeTime.get() / 1000000f / count;
+	}
+
+	/** Archivos cuyo texto todavia no se termino de extraer */
+	public int getPendingExtractions()
+	{
+		return pendingExtractions.get();
+	}
+
+	/** Milisegundos promedio de la extraccion del texto de cada archivo */
+	public float getAverageExtractionTime()
+	{
+		long count = extractions.get();
+		return count == 0 ? 0 : extractionTime.get() / 1000000f / count;
+	}
+
+	/** Acciones aplicadas por segundo de trabajo del IndexWorker, sin contar las esperas */
+	public float getThroughput()
+	{
+		long nanos = indexTime.get() + commitTime.get();
+		return nanos == 0 ? 0 : (inserted.get() + updated.get() + deleted.get()) * 1000000000f / nanos;
+	}
+}
@@ -6,15 +6,19 @@ import com.lowagie.text.pdf.PdfReader;
 import com.lowagie.text.pdf.parser.PdfTextExtractor;
 
 
-public class PdfHandler implements IDocumentHandler {
+public class PdfHandler implements IBoundedDocumentHandler {
     public String getText(String filename) {
+        return getText(filename, 0);
+    }
+
+    public String getText(String filename, int maxLength) {
         StringBuffer buffer = new StringBuffer();
         try {
             PdfReader reader = new PdfReader(filename);
             PdfTextExtractor parser = new PdfTextExtractor(reader);
             int totalPages = reader.getNumberOfPages();
 
-            for (int i = 1; i <= totalPages; i++) {
+            for (int i = 1; i <= totalPages && (maxLength <= 0 || buffer.length() < maxLength); i++) {
                 buffer.append(parser.getTextFromPage(i));
             }
         } catch (IOException e) {
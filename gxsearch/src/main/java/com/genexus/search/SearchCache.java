@@ -0,0 +1,74 @@
+package com.genexus.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Cache LRU acotado con contadores de aciertos, lo usan el Searcher y Spelling. El tamano se lee de
+ *  Settings en cada uso, con 0 no se guarda nada. */
+abstract class SearchCache<K, V>
+{
+	private final LinkedHashMap<K, V> m_map = new LinkedHashMap<K, V>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+		{
+			return size() > maxSize();
+		}
+	};
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	abstract int maxSize();
+
+	V get(K key)
+	{
+		if (maxSize() <= 0)
+			return null;
+		V value;
+		synchronized (m_map)
+		{
+			value = m_map.get(key);
+		}
+		if (value == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return value;
+	}
+
+	void put(K key, V value)
+	{
+		if (maxSize() <= 0)
+			return;
+		synchronized (m_map)
+		{
+			m_map.put(key, value);
+		}
+	}
+
+	void clear()
+	{
+		synchronized (m_map)
+		{
+			m_map.clear();
+		}
+	}
+
+	int size()
+	{
+		synchronized (m_map)
+		{
+			return m_map.size();
+		}
+	}
+
+	/** Fraccion de las busquedas en el cache que encontraron el valor */
+	float getHitRatio()
+	{
+		long found = hits.get();
+		long total = found + misses.get();
+		return total == 0 ? 0 : (float) found / total;
+	}
+}
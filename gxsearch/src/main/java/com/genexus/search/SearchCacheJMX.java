@@ -0,0 +1,47 @@
+package com.genexus.search;
+
+import com.genexus.management.MBeanUtils;
+
+public class SearchCacheJMX implements SearchCacheJMXMBean{
+
+	private SearchCache<?, ?> results;
+	private SearchCache<?, ?> suggestions;
+
+  SearchCacheJMX(SearchCache<?, ?> results, SearchCache<?, ?> suggestions)
+  {
+    this.results = results;
+    this.suggestions = suggestions;
+  }
+
+  static void createSearchCacheJMX(SearchCache<?, ?> results, SearchCache<?, ?> suggestions)
+  {
+    try
+    {
+      MBeanUtils.createMBean(new SearchCacheJMX(results, suggestions), "com.genexus.management:type=SearchCache");
+    }
+    catch(Exception e)
+    {
+      System.err.println("Cannot register SearchCache MBean."+e.toString());
+    }
+  }
+
+  public int getResultCacheSize()
+  {
+	  return results.size();
+  }
+
+  public float getResultCacheHitRatio()
+  {
+	  return results.getHitRatio();
+  }
+
+  public int getSpellingCacheSize()
+  {
+	  return suggestions.size();
+  }
+
+  public float getSpellingCacheHitRatio()
+  {
+	  return suggestions.getHitRatio();
+  }
+}
@@ -0,0 +1,9 @@
+package com.genexus.search;
+
+public interface SearchCacheJMXMBean
+{
+  int getResultCacheSize();
+  float getResultCacheHitRatio();
+  int getSpellingCacheSize();
+  float getSpellingCacheHitRatio();
+}
@@ -1,9 +1,11 @@
 package com.genexus.search;
 
+import java.util.List;
+
 import org.apache.lucene.search.Hits;
 
 public class SearchResult {
-	protected static SearchResultCollection m_items;
+	protected SearchResultCollection m_items;
 	private static SearchResult m_empty = null;
 	protected int m_maxresults;
 	protected double m_elapsedTime;
@@ -26,6 +28,18 @@ public class SearchResult {
 		m_maxresults = (hits != null) ? hits.length() : 0;
 	}
 
+	SearchResult(List<SearchResultItem> page, int totalHits, int itemsPerPage, int pageNumber, double elapsedTime) {
+		m_items = new SearchResultCollection(page);
+		m_itemsPerPage = itemsPerPage;
+		m_elapsedTime = elapsedTime;
+		if (pageNumber == 0 || pageNumber == 1) {
+			m_offset = 0;
+		} else {
+			m_offset = itemsPerPage * (pageNumber - 1);
+		}
+		m_maxresults = totalHits;
+	}
+
 	public int getMaxitems() {
 		return m_maxresults;
 	}
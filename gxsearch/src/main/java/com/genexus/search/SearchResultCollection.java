@@ -1,5 +1,7 @@
 package com.genexus.search;
 
+import java.util.List;
+
 import org.apache.lucene.search.Hits;
 
 import com.genexus.GXSimpleCollection;
@@ -10,6 +12,7 @@ public class SearchResultCollection extends GXSimpleCollection {
 	private int m_maxresults;
 	private int m_itemsPerPage;
 	private int m_offset;
+	private List<SearchResultItem> m_page;
 
 	protected SearchResultCollection(Hits hits, int itemsPerPage, int pageNumber) {
 		m_hits = hits;
@@ -22,6 +25,11 @@ public class SearchResultCollection extends GXSimpleCollection {
 		m_maxresults = (m_hits != null) ? hits.length() : 0;
 	}
 
+	/** Items of the page already loaded by the Searcher */
+	SearchResultCollection(List<SearchResultItem> page) {
+		m_page = page;
+	}
+
 	public SearchResultCollection() {
 	}
 
@@ -30,6 +38,8 @@ public class SearchResultCollection extends GXSimpleCollection {
 	}
 
 	public int size() {
+		if (m_page != null)
+			return m_page.size();
 		int count = 0;
 		if (m_itemsPerPage == -1) {
 			count = (m_hits != null) ? m_hits.length() : 0;
@@ -50,6 +60,11 @@ public class SearchResultCollection extends GXSimpleCollection {
 
 	public Object elementAt(int index) {
 		try {
+			if (m_page != null) {
+				if (index < m_page.size() && index >= 0)
+					return m_page.get(index);
+				throw new SearchException(SearchException.INDEXERROR);
+			}
 			index = m_offset + index;
 			if (index < m_maxresults && index >= 0) {
 				return new SearchResultItem(m_hits.doc(index), m_hits.score(index));
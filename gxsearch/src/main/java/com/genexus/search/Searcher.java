@@ -1,22 +1,51 @@
 package com.genexus.search;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.queryParser.QueryParser;
-import org.apache.lucene.search.Hits;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopFieldDocs;
 
+import com.genexus.Application;
 import com.genexus.ModelContext;
+import com.genexus.internet.HttpContext;
 
 public class Searcher {
 	private Analyzer m_analyzer = Indexer.CreateAnalyzer();
 	private static Searcher m_instance = new Searcher();
-	private IndexSearcher m_searcher;
+	private static final int ALL_RESULTS_FIRST_PASS = 100;
+
+	private final Object m_lock = new Object();
+	/** Held while a searcher is opened and warmed, so only one thread does it at a time */
+	private final Object m_refreshLock = new Object();
+	private final AtomicBoolean m_refreshScheduled = new AtomicBoolean();
+	private final ScheduledThreadPoolExecutor m_refresher = createRefresher();
+	private volatile Future<?> m_refreshTask;
+	private SearcherReference m_current;
+	private long m_lastRefreshCheck;
+	/** Pages already searched with the current searcher, cleared when it is replaced */
+	private final SearchCache<String, CachedPage> m_results = new SearchCache<String, CachedPage>() {
+		int maxSize() {
+			return Settings.getInstance().getResultCacheSize();
+		}
+	};
 
 	private Searcher() {
+		if (Application.isJMXEnabled())
+			SearchCacheJMX.createSearchCacheJMX(m_results, Spelling.getInstance().getSuggestionCache());
 	}
 
 	public static Searcher getInstance() {
@@ -46,50 +75,283 @@ public class Searcher {
 		if (query == null || query.length() == 0)
 			return SearchResult.getEmpty();
 
+		String language = "";
 		if (context != null) {
 			query = TranslateQuery(query, context);
+			if (context.getHttpContext() instanceof HttpContext)
+				language = ((HttpContext) context.getHttpContext()).getLanguage();
 		}
-		IndexSearcher searcher = getSearcher();
-		if (searcher == null)
+		SearcherReference reference = acquire();
+		if (reference == null)
 			return SearchResult.getEmpty();
 
-		QueryParser qp = new QueryParser(IndexRecord.CONTENTFIELD, m_analyzer);
-		qp.setAllowLeadingWildcard(true);
-		qp.setDefaultOperator(QueryParser.Operator.AND);
 		try {
-			Query q = qp.parse(IndexRecord.processContent(query));
+			String key = resultKey(query, itemsPerPage, pageNumber, language);
 			Date t1 = new Date();
-			Hits hits = searcher.search(q, Sort.RELEVANCE);
-			Date t2 = new Date();
-			// searcher.close();
-			// Closing the IndexSearcher is best only after a deleteDocuments with a reader
-			// or changes with a writer.
-			// For performance reasons, it is better to not close the IndexSearcher if not
-			// needed
-			return new SearchResult(hits, itemsPerPage, pageNumber, t2.getTime() - t1.getTime());
+			CachedPage page = m_results.get(key);
+			Date t2;
+			if (page == null) {
+				Query q = parse(query);
+				IndexSearcher searcher = reference.searcher;
+				TopFieldDocs top = searchTop(searcher, q, resultsNeeded(itemsPerPage, pageNumber));
+				t2 = new Date();
+				// The documents of the page are loaded before the searcher is released, it may be
+				// closed by a refresh as soon as the last search using it ends
+				page = loadPage(searcher, top, itemsPerPage, pageNumber);
+				synchronized (m_lock) {
+					if (reference == m_current)
+						m_results.put(key, page);
+				}
+			} else {
+				t2 = new Date();
+			}
+			return page.toSearchResult(itemsPerPage, pageNumber, t2.getTime() - t1.getTime());
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			return null;
+		} finally {
+			release(reference);
+		}
+	}
+
+	/**
+	 * Makes the changes committed by the Indexer visible to new searches. The new searcher is
+	 * opened and warmed here, on the caller thread, and the current one keeps serving searches
+	 * until it is replaced. Does nothing if the index did not change.
+	 */
+	public void refresh() {
+		synchronized (m_refreshLock) {
+			SearcherReference current;
+			synchronized (m_lock) {
+				current = m_current;
+				m_lastRefreshCheck = System.currentTimeMillis();
+				if (current == null)
+					return;
+				current.refCount++;
+			}
+			try {
+				if (current.searcher.getIndexReader().isCurrent())
+					return;
+				SearcherReference fresh = open();
+				boolean replaced;
+				synchronized (m_lock) {
+					// Not replaced if the searcher was closed meanwhile
+					replaced = m_current == current;
+					if (replaced) {
+						m_current = fresh;
+						m_results.clear();
+					}
+				}
+				if (!replaced) {
+					release(fresh);
+					return;
+				}
+				release(current);
+				Spelling.getInstance().indexChanged();
+			} catch (Exception ex) {
+				System.err.println("Searcher refresh error " + ex.toString());
+			} finally {
+				release(current);
+			}
 		}
 	}
 
+	/** Discards the current searcher, it is closed when the searches using it end */
 	public void close() {
-		if (m_searcher != null) {
+		Future<?> task = m_refreshTask;
+		if (task != null && task.cancel(false))
+			m_refreshScheduled.set(false);
+		SearcherReference old;
+		synchronized (m_lock) {
+			old = m_current;
+			m_current = null;
+			m_results.clear();
+		}
+		if (old != null)
+			release(old);
+	}
+
+	private SearcherReference acquire() {
+		SearcherReference reference;
+		boolean check;
+		synchronized (m_lock) {
+			reference = m_current;
+		}
+		if (reference == null && !openCurrent())
+			return null;
+		synchronized (m_lock) {
+			reference = m_current;
+			if (reference == null)
+				return null;
+			reference.refCount++;
+			long now = System.currentTimeMillis();
+			check = now - m_lastRefreshCheck >= Settings.getInstance().getSearcherRefreshInterval();
+			if (check)
+				m_lastRefreshCheck = now;
+		}
+		if (check)
+			scheduleRefresh();
+		return reference;
+	}
+
+	/**
+	 * Opens the first searcher outside m_lock, the warming queries can take long and releasing
+	 * or refreshing must not wait for them. Returns false if it could not be opened.
+	 */
+	private boolean openCurrent() {
+		synchronized (m_refreshLock) {
+			synchronized (m_lock) {
+				if (m_current != null)
+					return true;
+			}
 			try {
-				m_searcher.close();
-				m_searcher = null;
+				SearcherReference fresh = open();
+				synchronized (m_lock) {
+					m_current = fresh;
+					m_lastRefreshCheck = System.currentTimeMillis();
+				}
+				return true;
 			} catch (Exception ex) {
+				return false;
 			}
 		}
 	}
 
-	private IndexSearcher getSearcher() {
+	private void release(SearcherReference reference) {
+		synchronized (m_lock) {
+			if (--reference.refCount > 0)
+				return;
+		}
 		try {
-			if (m_searcher == null)
-				m_searcher = new IndexSearcher(Settings.getInstance().getIndexFolder());
-			return m_searcher;
-		} catch (Exception ex) {
-			return null;
+			reference.searcher.close();
+		} catch (IOException ex) {
+		}
+	}
+
+	/** Picks up changes made by other processes without blocking the search that noticed them */
+	private void scheduleRefresh() {
+		if (!m_refreshScheduled.compareAndSet(false, true))
+			return;
+		m_refreshTask = m_refresher.submit(new Runnable() {
+			public void run() {
+				try {
+					refresh();
+				} finally {
+					m_refreshScheduled.set(false);
+				}
+			}
+		});
+	}
+
+	private static ScheduledThreadPoolExecutor createRefresher() {
+		ScheduledThreadPoolExecutor refresher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SearcherRefresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		refresher.setKeepAliveTime(60, TimeUnit.SECONDS);
+		refresher.allowCoreThreadTimeOut(true);
+		return refresher;
+	}
+
+	private SearcherReference open() throws IOException {
+		IndexSearcher searcher = new IndexSearcher(Settings.getInstance().getIndexFolder());
+		warm(searcher);
+		return new SearcherReference(searcher);
+	}
+
+	/** Runs the configured warming queries so the first searches do not pay for loading the index */
+	private void warm(IndexSearcher searcher) {
+		String[] queries = Settings.getInstance().getWarmingQueries();
+		for (int i = 0; i < queries.length; i++) {
+			try {
+				searchTop(searcher, parse(queries[i]), ALL_RESULTS_FIRST_PASS);
+			} catch (Exception ex) {
+				System.err.println("Searcher warming error " + ex.toString());
+			}
+		}
+	}
+
+	private Query parse(String query) throws Exception {
+		QueryParser qp = new QueryParser(IndexRecord.CONTENTFIELD, m_analyzer);
+		qp.setAllowLeadingWildcard(true);
+		qp.setDefaultOperator(QueryParser.Operator.AND);
+		return qp.parse(IndexRecord.processContent(query));
+	}
+
+	/** Number of top results needed to show the page, -1 for all of them */
+	private static long resultsNeeded(int itemsPerPage, int pageNumber) {
+		if (itemsPerPage < 0)
+			return -1;
+		return (long) itemsPerPage * Math.max(pageNumber, 1);
+	}
+
+	/** Collects only the first n results instead of the growing Hits cache */
+	private static TopFieldDocs searchTop(IndexSearcher searcher, Query q, long needed) throws IOException {
+		int maxDoc = Math.max(searcher.maxDoc(), 1);
+		int n = needed < 0 ? Math.min(ALL_RESULTS_FIRST_PASS, maxDoc) : (int) Math.max(Math.min(needed, maxDoc), 1);
+		TopFieldDocs top = searcher.search(q, null, n, Sort.RELEVANCE);
+		if (needed < 0 && top.totalHits > n)
+			top = searcher.search(q, null, top.totalHits, Sort.RELEVANCE);
+		return top;
+	}
+
+	/** Same query with different spacing is the same entry */
+	private static String resultKey(String query, int itemsPerPage, int pageNumber, String language) {
+		String normalized = IndexRecord.processContent(query).trim().replaceAll("\\s+", " ");
+		return itemsPerPage + ":" + Math.max(pageNumber, 1) + ":" + language + ":" + normalized;
+	}
+
+	private static CachedPage loadPage(IndexSearcher searcher, TopFieldDocs top, int itemsPerPage, int pageNumber) throws IOException {
+		ScoreDoc[] scoreDocs = top.scoreDocs;
+		// Same normalization as Hits
+		float scoreNorm = 1.0f;
+		if (top.totalHits > 0 && top.getMaxScore() > 1.0f)
+			scoreNorm = 1.0f / top.getMaxScore();
+		int offset = 0;
+		int end = scoreDocs.length;
+		if (itemsPerPage >= 0) {
+			if (pageNumber > 1)
+				offset = (int) Math.min((long) itemsPerPage * (pageNumber - 1), end);
+			end = (int) Math.min((long) offset + itemsPerPage, end);
+		}
+		CachedPage page = new CachedPage(end - offset, top.totalHits);
+		for (int i = offset; i < end; i++) {
+			page.docs[i - offset] = searcher.doc(scoreDocs[i].doc);
+			page.scores[i - offset] = scoreDocs[i].score * scoreNorm;
+		}
+		return page;
+	}
+
+	/** Documents of a page, each search gets its own SearchResultItems since callers may modify them */
+	private static final class CachedPage {
+		final Document[] docs;
+		final float[] scores;
+		final int totalHits;
+
+		CachedPage(int size, int totalHits) {
+			this.docs = new Document[size];
+			this.scores = new float[size];
+			this.totalHits = totalHits;
+		}
+
+		SearchResult toSearchResult(int itemsPerPage, int pageNumber, double elapsedTime) {
+			List<SearchResultItem> items = new ArrayList<SearchResultItem>(docs.length);
+			for (int i = 0; i < docs.length; i++)
+				items.add(new SearchResultItem(docs[i], scores[i]));
+			return new SearchResult(items, totalHits, itemsPerPage, pageNumber, elapsedTime);
+		}
+	}
+
+	private static final class SearcherReference {
+		final IndexSearcher searcher;
+		/** The Searcher holds one reference while this is the current searcher, each search another one */
+		int refCount = 1;
+
+		SearcherReference(IndexSearcher searcher) {
+			this.searcher = searcher;
 		}
 	}
 }
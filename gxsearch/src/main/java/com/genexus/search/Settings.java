@@ -13,6 +13,16 @@ public class Settings
 	private String m_lockFolder;
 	private File m_stopWords;
 	private int m_optimizeThreshold = 500;
+	private long m_optimizeInterval = 10 * 60 * 1000L;
+	private int m_commitThreshold = 1000;
+	private long m_commitInterval = 1000L;
+	private long m_searcherRefreshInterval = 5000L;
+	private String[] m_warmingQueries = new String[0];
+	private int m_extractionThreads = Runtime.getRuntime().availableProcessors();
+	private int m_maxContentLength = 1024 * 1024;
+	private int m_resultCacheSize = 1000;
+	private int m_spellingCacheSize = 1000;
+	private long m_dictionaryRefreshInterval = 10 * 60 * 1000L;
 	private int m_maxQueueSize = 200;
 	private String m_analyzer;
 	
@@ -80,6 +90,56 @@ public class Settings
 	{
 		return this.m_optimizeThreshold;
 	}
+	/** Tiempo minimo en milisegundos entre dos optimizaciones del indice */
+	public long getOptimizeInterval()
+	{
+		return this.m_optimizeInterval;
+	}
+	/** Cantidad de cambios que se acumulan antes de hacerlos visibles en un solo commit */
+	public int getCommitThreshold()
+	{
+		return this.m_commitThreshold;
+	}
+	/** Tiempo maximo en milisegundos que un cambio espera a ser visible */
+	public long getCommitInterval()
+	{
+		return this.m_commitInterval;
+	}
+	/** Tiempo minimo en milisegundos entre dos controles de cambios hechos al indice por otros procesos */
+	public long getSearcherRefreshInterval()
+	{
+		return this.m_searcherRefreshInterval;
+	}
+	/** Consultas que se ejecutan sobre cada searcher nuevo antes de usarlo */
+	public String[] getWarmingQueries()
+	{
+		return this.m_warmingQueries;
+	}
+	/** Threads que extraen el texto de los archivos, con 0 se extrae al agregar el contenido */
+	public int getExtractionThreads()
+	{
+		return this.m_extractionThreads;
+	}
+	/** Largo maximo en caracteres del texto que se extrae de cada archivo, 0 para no limitarlo */
+	public int getMaxContentLength()
+	{
+		return this.m_maxContentLength;
+	}
+	/** Cantidad de paginas de resultados que guarda el Searcher, 0 para no guardarlas */
+	public int getResultCacheSize()
+	{
+		return this.m_resultCacheSize;
+	}
+	/** Cantidad de sugerencias que guarda Spelling, 0 para no guardarlas */
+	public int getSpellingCacheSize()
+	{
+		return this.m_spellingCacheSize;
+	}
+	/** Tiempo minimo en milisegundos entre dos actualizaciones del diccionario de Spelling por cambios en el indice */
+	public long getDictionaryRefreshInterval()
+	{
+		return this.m_dictionaryRefreshInterval;
+	}
 	public int getMaxQueueSize()
 	{
 		return this.m_maxQueueSize;
@@ -98,4 +158,54 @@ public class Settings
 	{
 		this.m_optimizeThreshold = threshold;
 	}
+
+	public void setOptimizeInterval(long interval)
+	{
+		this.m_optimizeInterval = interval;
+	}
+
+	public void setCommitThreshold(int threshold)
+	{
+		this.m_commitThreshold = threshold;
+	}
+
+	public void setCommitInterval(long interval)
+	{
+		this.m_commitInterval = interval;
+	}
+
+	public void setSearcherRefreshInterval(long interval)
+	{
+		this.m_searcherRefreshInterval = interval;
+	}
+
+	public void setWarmingQueries(String[] queries)
+	{
+		this.m_warmingQueries = queries == null ? new String[0] : queries;
+	}
+
+	public void setExtractionThreads(int threads)
+	{
+		this.m_extractionThreads = threads;
+	}
+
+	public void setMaxContentLength(int length)
+	{
+		this.m_maxContentLength = length;
+	}
+
+	public void setResultCacheSize(int size)
+	{
+		this.m_resultCacheSize = size;
+	}
+
+	public void setSpellingCacheSize(int size)
+	{
+		this.m_spellingCacheSize = size;
+	}
+
+	public void setDictionaryRefreshInterval(long interval)
+	{
+		this.m_dictionaryRefreshInterval = interval;
+	}
 }
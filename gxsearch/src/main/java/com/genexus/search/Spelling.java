@@ -3,6 +3,7 @@ package com.genexus.search;
 import java.io.File;
 import java.io.IOException;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.spell.LuceneDictionary;
@@ -11,6 +12,16 @@ import org.apache.lucene.store.FSDirectory;
 
 public class Spelling {
 	private static Spelling m_instance = new Spelling();
+	private final Object m_buildLock = new Object();
+	private final AtomicBoolean m_buildScheduled = new AtomicBoolean();
+	private volatile SpellChecker m_spellChecker;
+	private volatile long m_lastBuild = System.currentTimeMillis();
+	/** Sugerencias ya calculadas, se vacia cuando cambia el diccionario */
+	private final SearchCache<String, String> m_suggestions = new SearchCache<String, String>() {
+		int maxSize() {
+			return Settings.getInstance().getSpellingCacheSize();
+		}
+	};
 
 	private Spelling() {
 	}
@@ -19,21 +30,66 @@ public class Spelling {
 		return m_instance;
 	}
 
+	/** Agrega al diccionario las palabras del indice que todavia no estan en el */
 	public boolean buildDictionary() {
-		try {
-			IndexReader my_luceneReader = IndexReader.open(Settings.getInstance().getIndexFolder());
-			SpellChecker spell = getSpelling();
-			if (spell != null)
-				spell.indexDictionary(new LuceneDictionary(my_luceneReader, IndexRecord.CONTENTFIELD));
-			my_luceneReader.close();
-			return true;
-		} catch (IOException ex) {
-			System.out.println(ex.getMessage());
-			return false;
+		synchronized (m_buildLock) {
+			try {
+				IndexReader my_luceneReader = IndexReader.open(Settings.getInstance().getIndexFolder());
+				try {
+					SpellChecker spell = createSpelling();
+					if (spell != null)
+						spell.indexDictionary(new LuceneDictionary(my_luceneReader, IndexRecord.CONTENTFIELD));
+				} finally {
+					my_luceneReader.close();
+				}
+				m_spellChecker = null;
+				m_suggestions.clear();
+				return true;
+			} catch (IOException ex) {
+				System.out.println(ex.getMessage());
+				return false;
+			} finally {
+				m_lastBuild = System.currentTimeMillis();
+			}
 		}
 	}
 
+	/**
+	 * Lo llama el Searcher cuando hay cambios en el indice. Si ya hay diccionario se le agregan las
+	 * palabras nuevas en segundo plano, a lo sumo una vez cada Settings.getDictionaryRefreshInterval()
+	 */
+	void indexChanged() {
+		if (!IndexReader.indexExists(getDictionaryFolder()))
+			return;
+		if (!m_buildScheduled.compareAndSet(false, true))
+			return;
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					long wait = m_lastBuild + Settings.getInstance().getDictionaryRefreshInterval() - System.currentTimeMillis();
+					if (wait > 0)
+						Thread.sleep(wait);
+				} catch (InterruptedException ex) {
+					return;
+				} finally {
+					// Los cambios que lleguen mientras se arma el diccionario programan otra vez
+					m_buildScheduled.set(false);
+				}
+				buildDictionary();
+			}
+		}, "SpellingDictionary");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	SearchCache<String, String> getSuggestionCache() {
+		return m_suggestions;
+	}
+
 	public String suggest(String phrase) {
+		String cached = m_suggestions.get(phrase);
+		if (cached != null)
+			return cached;
 		try {
 			StringBuffer res = new StringBuffer();
 			StringTokenizer stok = new StringTokenizer(phrase, " ", false);
@@ -46,7 +102,10 @@ public class Spelling {
 						res.append(similar[0]);
 				}
 			}
-			return res.toString();
+			String suggestion = res.toString();
+			if (spell != null)
+				m_suggestions.put(phrase, suggestion);
+			return suggestion;
 		} catch (IOException ex) {
 			System.out.println(ex.getMessage());
 			return "";
@@ -54,8 +113,21 @@ public class Spelling {
 	}
 
 	private SpellChecker getSpelling() {
+		SpellChecker spell = m_spellChecker;
+		if (spell == null) {
+			spell = createSpelling();
+			m_spellChecker = spell;
+		}
+		return spell;
+	}
+
+	private static String getDictionaryFolder() {
+		return Settings.getInstance().getIndexFolder() + File.separator + "Dictionary";
+	}
+
+	private SpellChecker createSpelling() {
 		try {
-			String dictionaryFolder = Settings.getInstance().getIndexFolder() + File.separator + "Dictionary";
+			String dictionaryFolder = getDictionaryFolder();
 			File dic = new File(dictionaryFolder);
 			if (!dic.exists()) {
 				dic.mkdirs();
@@ -0,0 +1,107 @@
+package com.genexus.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Extrae el texto de los archivos en un pool acotado de threads, para que insertContent y updateContent
+ *  vuelvan sin esperar la extraccion. El IndexWorker espera el texto recien al indexar la accion, asi
+ *  que las acciones se siguen aplicando en el orden en que se agregaron.
+ *  Con Settings.getExtractionThreads() en 0 el texto se extrae en el thread que llama, como antes.
+ *  Cuando la cola de extracciones (Settings.getMaxQueueSize()) esta llena, el thread que llama extrae el
+ *  texto el mismo (CallerRunsPolicy): insertContent y updateContent demoran lo que la extraccion, y el
+ *  request queda bloqueado hasta que termina. Es el freno buscado, el mismo que aplica ActionBuffer cuando
+ *  esta lleno, en lugar de rechazar el documento y perderlo del indice.
+ *  Antes de encolar se copia el archivo a un temporal propio, porque el archivo original (por ejemplo un
+ *  upload) puede borrarse antes de que se lea; la copia se borra al terminar la extraccion. */
+final class TextExtractor
+{
+	private final ThreadPoolExecutor m_pool;
+	private final IndexerStats stats;
+
+	TextExtractor(IndexerStats stats)
+	{
+		this.stats = stats;
+		Settings settings = Settings.getInstance();
+		int threads = settings.getExtractionThreads();
+		if (threads <= 0)
+		{
+			m_pool = null;
+			return;
+		}
+		// Si la cola se llena el que agrega extrae el texto y se bloquea mientras tanto, igual que ActionBuffer lo frena cuando esta lleno
+		m_pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(Math.max(1, settings.getMaxQueueSize())),
+			new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "IndexerTextExtractor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			},
+			new ThreadPoolExecutor.CallerRunsPolicy());
+		m_pool.allowCoreThreadTimeOut(true);
+	}
+
+	Future<String> extract(String filename, final String extension)
+	{
+		File copy = m_pool == null ? null : copy(filename, extension);
+		final String source = copy == null ? filename : copy.getAbsolutePath();
+		final File tempFile = copy;
+		stats.pendingExtractions.incrementAndGet();
+		FutureTask<String> task = new FutureTask<String>(new Callable<String>()
+		{
+			public String call()
+			{
+				long start = System.nanoTime();
+				try
+				{
+					return DocumentHandler.getText(source, extension, Settings.getInstance().getMaxContentLength());
+				}
+				finally
+				{
+					if (tempFile != null)
+						tempFile.delete();
+					stats.extractionTime.addAndGet(System.nanoTime() - start);
+					stats.extractions.incrementAndGet();
+					stats.pendingExtractions.decrementAndGet();
+				}
+			}
+		});
+		if (copy == null)
+			task.run();
+		else
+			m_pool.execute(task);
+		return task;
+	}
+
+	/** Copia el archivo a extraer a un temporal, o devuelve null si no se puede copiar y hay que extraerlo en
+	 *  el thread que llama, mientras el archivo original todavia existe */
+	private static File copy(String filename, String extension)
+	{
+		File copy = null;
+		try
+		{
+			copy = File.createTempFile("gxsearch", extension == null || extension.isEmpty() ? null : "." + extension);
+			Files.copy(Paths.get(filename), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return copy;
+		}
+		catch (IOException | IllegalArgumentException | SecurityException ex)
+		{
+			if (copy != null)
+				copy.delete();
+			return null;
+		}
+	}
+}
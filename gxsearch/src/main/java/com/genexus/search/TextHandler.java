@@ -2,18 +2,29 @@ package com.genexus.search;
 
 import java.io.*;
 
-public class TextHandler implements IDocumentHandler
+public class TextHandler implements IBoundedDocumentHandler
 {
         public String getText(String filename)
+        {
+			return getText(filename, 0);
+        }
+
+        public String getText(String filename, int maxLength)
         {
 			try
 			{
 				File f = new File(filename);
 				FileReader rd = new FileReader(f);
-				char[] buf = new char[(int)f.length()];
-				rd.read(buf);
+				long length = f.length();
+				if (maxLength > 0)
+					length = Math.min(length, maxLength);
+				char[] buf = new char[(int)length];
+				int count = 0;
+				int read;
+				while (count < buf.length && (read = rd.read(buf, count, buf.length - count)) != -1)
+					count += read;
 				rd.close();
-				return new String(buf);
+				return new String(buf, 0, count);
 			}
 			catch (IOException ex)
 			{
@@ -50,6 +50,18 @@ public class GXWebSocket extends GXWebSocketCommon implements IGXWebSocketAsync
 		broadcastCommon(message);
 	}
 
+	public void broadcastToGroup(String group, String message) {
+		broadcastToGroupCommon(group, message);
+	}
+
+	public void subscribe(String clientId, String group) {
+		subscribeCommon(clientId, group);
+	}
+
+	public void unsubscribe(String clientId, String group) {
+		unsubscribeCommon(clientId, group);
+	}
+
 	public boolean start() {
 		return true;
 	}	
@@ -1,6 +1,8 @@
 package com.genexus.websocket;
 
 import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
 import java.io.IOException;
 
 public class Session implements ISession{
@@ -26,4 +28,16 @@ public class Session implements ISession{
 		RemoteEndpoint.Basic endPoint = session.getBasicRemote();
 		endPoint.sendText(message);
 	}
+
+	public void sendEndPointTextAsync(String message, final ISendHandler handler) {
+		session.getAsyncRemote().sendText(message, new SendHandler() {
+			public void onResult(SendResult result) {
+				handler.onResult(result.isOK() ? null : result.getException());
+			}
+		});
+	}
+
+	public void close() throws IOException {
+		session.close();
+	}
 }
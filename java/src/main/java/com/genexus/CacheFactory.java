@@ -1,9 +1,16 @@
 package com.genexus;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.genexus.cache.NearCache;
+import com.genexus.db.CacheKey;
 import com.genexus.db.CacheValue;
 import com.genexus.db.InProcessCache;
 import com.genexus.diagnostics.core.ILogger;
 import com.genexus.diagnostics.core.LogManager;
+import com.genexus.management.CacheJMX;
+import com.genexus.util.GXProperties;
 import com.genexus.util.GXService;
 import com.genexus.util.GXServices;
 
@@ -14,6 +21,11 @@ public class CacheFactory {
     private static Object syncRoot = new Object();
 	private static boolean forceHighestTimetoLive = false;
 	public static String FORCE_HIGHEST_TIME_TO_LIVE = "FORCE_HIGHEST_TIME_TO_LIVE";
+	public static String NEAR_CACHE = "NEAR_CACHE";
+	public static String NEAR_CACHE_SIZE = "NEAR_CACHE_SIZE";
+	public static String NEAR_CACHE_TTL = "NEAR_CACHE_TTL";
+	public static String NEAR_CACHE_IDS = "NEAR_CACHE_IDS";
+	public static String NEAR_CACHE_CHECK = "NEAR_CACHE_CHECK";
 	private static final boolean DEBUG = com.genexus.DebugFlag.DEBUG;
 
 	public static String CACHE_SD = "SD";
@@ -42,6 +54,7 @@ public class CacheFactory {
 											forceHighestTimetoLive = true;
 										}
 									}
+									instance = createNearCache(instance, providerService.getProperties());
 								} else {
 									logger.error(warnMsg);
 									System.err.println(warnMsg);
@@ -66,6 +79,49 @@ public class CacheFactory {
 		return instance;
 	}
 
+	/** Si el provider es remoto y NEAR_CACHE=1 se le antepone un cache local en memoria.
+	 *  NEAR_CACHE_SIZE en KB, NEAR_CACHE_TTL en segundos y NEAR_CACHE_IDS la lista de cacheids locales.
+	 *  NEAR_CACHE_CHECK son los milisegundos entre lecturas de las invalidaciones de los otros nodos,
+	 *  el tiempo maximo que un nodo puede leer de su cache local un dato actualizado en otro nodo
+	 */
+	private static ICacheService createNearCache(ICacheService remote, GXProperties properties) {
+		if (remote instanceof InProcessCache || !(remote instanceof ICacheService2) || !"1".equals(properties.get(NEAR_CACHE))) {
+			return remote;
+		}
+		long size = 10 * 1024;
+		int ttl = NearCache.DEFAULT_LOCAL_TTL;
+		int check = NearCache.DEFAULT_INVALIDATION_CHECK;
+		String ids = CACHE_DB;
+		try {
+			if (properties.containsKey(NEAR_CACHE_SIZE))
+				size = Long.parseLong(properties.get(NEAR_CACHE_SIZE).trim());
+			if (properties.containsKey(NEAR_CACHE_TTL))
+				ttl = Integer.parseInt(properties.get(NEAR_CACHE_TTL).trim());
+			if (properties.containsKey(NEAR_CACHE_CHECK))
+				check = Integer.parseInt(properties.get(NEAR_CACHE_CHECK).trim());
+		} catch (NumberFormatException ex) {
+			logger.error("Invalid near cache configuration", ex);
+		}
+		if (properties.containsKey(NEAR_CACHE_IDS))
+			ids = properties.get(NEAR_CACHE_IDS);
+		NearCache nearCache = new NearCache((ICacheService2) remote, size * 1024, ttl, ids.split(","), check);
+		logger.info("Using near cache for " + ids + " in front of " + remote.getClass().getName());
+		//JMX Enabled
+		if (Application.isJMXEnabled())
+			CacheJMX.CreateCacheJMX(nearCache);
+		return nearCache;
+	}
+
+	/** Notifica la actualizacion de tablas para invalidar el cache local de un NearCache.
+	 *  tables en null invalida todo el cache local
+	 */
+	public static void invalidateTables(String[] tables) {
+		ICacheService cache = instance;
+		if (cache instanceof NearCache) {
+			((NearCache) cache).invalidateTables(tables);
+		}
+	}
+
 	private static void LoadTTLFromPreferences() {
 		Preferences prefs = Preferences.getDefaultPreferences();
 		for (int i = 0; i < Preferences.CANT_CATS; i++) {
@@ -84,9 +140,57 @@ public class CacheFactory {
 		CacheValue cacheValue = new CacheValue(key, parms);
 		cacheValue.setExpiryTime(Preferences.TTL[cacheableLevel]);
 		cacheValue.setExpiryHits(Preferences.HTL[cacheableLevel]);
+		// Las filas por columnas solo se usan en memoria, los providers remotos serializan el CacheValue
+		if (getInstance() instanceof InProcessCache && Preferences.getDefaultPreferences().getCACHE_COLUMNAR_STORAGE()) {
+			cacheValue.setColumnarStorage(true);
+		}
 		return cacheValue;
 	}
 
+	/** Obtiene un valor cacheado por su CacheKey. Si el provider no soporta CacheKey
+	 *  se usa la forma string de la key.
+	 */
+	public static <T> T get(String cacheid, CacheKey key, Class<T> type) {
+		ICacheService cache = getInstance();
+		if (cache instanceof ICacheService3) {
+			return ((ICacheService3) cache).get(cacheid, key, type);
+		}
+		return cache.get(cacheid, key.toString(), type);
+	}
+
+	/** Obtiene varios valores cacheados en una sola llamada si el provider lo soporta
+	 */
+	public static <T> List<T> getAll(String cacheid, CacheKey[] keys, Class<T> type) {
+		return getAll(getInstance(), cacheid, keys, type);
+	}
+
+	public static <T> List<T> getAll(ICacheService cache, String cacheid, CacheKey[] keys, Class<T> type) {
+		if (cache instanceof ICacheService3) {
+			return ((ICacheService3) cache).getAll(cacheid, keys, type);
+		}
+		String[] stringKeys = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			stringKeys[i] = keys[i].toString();
+		}
+		if (cache instanceof ICacheService2) {
+			return ((ICacheService2) cache).getAll(cacheid, stringKeys, type);
+		}
+		List<T> values = new ArrayList<T>(keys.length);
+		for (String key : stringKeys) {
+			values.add(cache.get(cacheid, key, type));
+		}
+		return values;
+	}
+
+	public static <T> void set(String cacheid, CacheKey key, T value, int expirationSeconds) {
+		ICacheService cache = getInstance();
+		if (cache instanceof ICacheService3) {
+			((ICacheService3) cache).set(cacheid, key, value, expirationSeconds);
+		} else {
+			cache.set(cacheid, key.toString(), value, expirationSeconds);
+		}
+	}
+
 	public static void restartCache() {
 		if (instance != null) {
 			if (DEBUG) {
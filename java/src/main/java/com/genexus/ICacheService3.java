@@ -0,0 +1,17 @@
+package com.genexus;
+
+import java.util.List;
+
+import com.genexus.db.CacheKey;
+
+/**
+ * Cache providers that can work with the binary {@link CacheKey} of a cached query,
+ * avoiding the construction of {@link CacheKey#toString()} on every lookup.
+ */
+public interface ICacheService3 extends ICacheService2
+{
+	<T> T get(String cacheid, CacheKey key, Class<T> type);
+	<T> void set(String cacheid, CacheKey key, T value, int expirationSeconds);
+	/** Obtiene varios valores en una sola llamada al provider, con null para las keys que no estan */
+	<T> List<T> getAll(String cacheid, CacheKey[] keys, Class<T> type);
+}
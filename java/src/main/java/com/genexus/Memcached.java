@@ -3,8 +3,10 @@ package com.genexus;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import com.genexus.db.CacheKey;
 import com.genexus.util.GXService;
 import com.genexus.util.GXServices;
 
@@ -16,8 +18,10 @@ import net.spy.memcached.MemcachedClient;
 import net.spy.memcached.auth.AuthDescriptor;
 import net.spy.memcached.auth.PlainCallbackHandler;
 
-public class Memcached implements ICacheService2, Closeable {
+public class Memcached implements ICacheService3, Closeable {
+	private static int DEFAULT_BATCH_SIZE = 500;
 	MemcachedClient _cache;
+	int batchSize = DEFAULT_BATCH_SIZE;
 
 	public Memcached() throws IOException {
 		_cache = InitCache();
@@ -28,6 +32,18 @@ public class Memcached implements ICacheService2, Closeable {
 		String addresses = providerService.getProperties().get("CACHE_PROVIDER_ADDRESS");
 		String username = providerService.getProperties().get("CACHE_PROVIDER_USER");
 		String password = providerService.getProperties().get("CACHE_PROVIDER_PASSWORD");
+		String maxBatchSize = providerService.getProperties().get("CACHE_PROVIDER_BATCH_SIZE");
+		if (maxBatchSize != null && !maxBatchSize.trim().isEmpty())
+		{
+			try
+			{
+				batchSize = Math.max(1, Integer.parseInt(maxBatchSize.trim()));
+			}
+			catch (NumberFormatException ex)
+			{
+				System.err.println("Invalid CACHE_PROVIDER_BATCH_SIZE " + maxBatchSize);
+			}
+		}
 		if (addresses == null || addresses.isEmpty())
 			addresses = "127.0.0.1:11211";
 
@@ -76,13 +92,34 @@ public class Memcached implements ICacheService2, Closeable {
 		return get(getKey(cacheid, key), type);
 	}
 
+	public <T> T get(String cacheid, CacheKey key, Class<T> type) {
+		return get(getKey(cacheid, key), type);
+	}
+
 	@Override
 	public <T> List<T> getAll(String cacheid, String[] keys, Class<T> type) {
-		String[] prefixedKeys = getKey(cacheid, keys);
-		Map<String, T> value = (Map<String, T>) _cache.getBulk(prefixedKeys);
-		List<T> values = new ArrayList<T>();
-		for(String key:prefixedKeys ){
-			values.add(value.get(key));
+		return getBulk(getKey(cacheid, keys));
+	}
+
+	public <T> List<T> getAll(String cacheid, CacheKey[] keys, Class<T> type) {
+		Long prefix = getKeyPrefix(cacheid);
+		String[] prefixedKeys = new String[keys.length];
+		for (int idx = 0; idx < keys.length; idx++) {
+			prefixedKeys[idx] = cacheid + prefix + keys[idx].toHashString();
+		}
+		return getBulk(prefixedKeys);
+	}
+
+	/** Multi-get de a lo sumo batchSize keys por llamada */
+	@SuppressWarnings("unchecked")
+	private <T> List<T> getBulk(String[] prefixedKeys) {
+		List<T> values = new ArrayList<T>(prefixedKeys.length);
+		for (int from = 0; from < prefixedKeys.length; from += batchSize) {
+			List<String> batch = Arrays.asList(prefixedKeys).subList(from, Math.min(from + batchSize, prefixedKeys.length));
+			Map<String, Object> value = _cache.getBulk(batch);
+			for (String key : batch) {
+				values.add((T) value.get(key));
+			}
 		}
 		return values;
 	}
@@ -96,6 +133,10 @@ public class Memcached implements ICacheService2, Closeable {
 		set(getKey(cacheid, key), value, duration);
 	}
 
+	public <T> void set(String cacheid, CacheKey key, T value, int expirationSeconds) {
+		set(getKey(cacheid, key), value, expirationSeconds);
+	}
+
 	@Override
 	public <T> void setAll(String cacheid, String[] keys, T[] values, int expirationSeconds) {
 		if (keys!=null && values!=null && keys.length == values.length) {
@@ -134,6 +175,10 @@ public class Memcached implements ICacheService2, Closeable {
 	{
 		return formatKey(cacheid, key, getKeyPrefix(cacheid));
 	}
+	private String getKey(String cacheid, CacheKey key)
+	{
+		return cacheid + getKeyPrefix(cacheid) + key.toHashString();
+	}
 	private String[] getKey(String cacheid, String[] keys)
 	{
 		Long prefix = getKeyPrefix(cacheid);
@@ -97,6 +97,11 @@ public class Preferences implements IPreferences {
 		return (int) CommonUtil.val(getProperty("CONN_TIMEOUT", "300"));
 	}
 
+	/** Segundos que un usuario espera una conexion del pool antes de fallar, 0 espera sin limite */
+	public int getPOOL_CHECKOUT_TIMEOUT() {
+		return (int) CommonUtil.val(getProperty("POOL_CHECKOUT_TIMEOUT", "0"));
+	}
+
 	private Boolean cookie_httponly_default = null;
 
 	public boolean getcookie_httponly_default() {
@@ -177,10 +182,41 @@ public class Preferences implements IPreferences {
 		return getProperty("LUCENE_ANALYZER", "");
 	}
 
+	public int getWEBNOTIFICATIONS_MAX_QUEUE_SIZE() {
+		return (int) CommonUtil.val(getProperty("WEBNOTIFICATIONS_MAX_QUEUE_SIZE", "1000"));
+	}
+
+	public String getWEBNOTIFICATIONS_SLOW_CLIENT_POLICY() {
+		return getProperty("WEBNOTIFICATIONS_SLOW_CLIENT_POLICY", "DROP");
+	}
+
 	public int getSUBMIT_POOL_SIZE() {
 		return (int) CommonUtil.val(getProperty("SUBMIT_POOL_SIZE", "3"));
 	}
 
+	public int getSUBMIT_QUEUE_SIZE() {
+		return (int) CommonUtil.val(getProperty("SUBMIT_QUEUE_SIZE", "10000"));
+	}
+
+	public String getSUBMIT_REJECTION_POLICY() {
+		return getProperty("SUBMIT_REJECTION_POLICY", "BLOCK");
+	}
+
+	private Boolean SUBMIT_VIRTUAL_THREADS;
+
+	public boolean getSUBMIT_VIRTUAL_THREADS() {
+		return booleanPreference(SUBMIT_VIRTUAL_THREADS, "SUBMIT_VIRTUAL_THREADS", "0");
+	}
+
+	public int getSUBMIT_MAX_CONCURRENCY() {
+		return (int) CommonUtil.val(getProperty("SUBMIT_MAX_CONCURRENCY", "0"));
+	}
+
+	/** Maxima cantidad de submits del procedimiento que corren a la vez, 0 es sin limite */
+	public int getSUBMIT_MAX_CONCURRENCY(String procName, int defaultValue) {
+		return (int) CommonUtil.val(getProperty("SUBMIT_MAX_CONCURRENCY_" + procName, String.valueOf(defaultValue)));
+	}
+
 	public static Preferences getDefaultPreferences() {
 		return Application.getClientPreferences();
 	}
@@ -432,6 +468,42 @@ public class Preferences implements IPreferences {
 		return booleanPreference(CACHING, "CACHING", "0");
 	}
 
+	private Boolean CACHE_COLUMNAR_STORAGE;
+
+	public boolean getCACHE_COLUMNAR_STORAGE() {
+		return booleanPreference(CACHE_COLUMNAR_STORAGE, "CACHE_COLUMNAR_STORAGE", "0");
+	}
+
+	private Boolean ADAPTIVE_FETCH_SIZE;
+
+	public boolean getADAPTIVE_FETCH_SIZE() {
+		return booleanPreference(ADAPTIVE_FETCH_SIZE, "ADAPTIVE_FETCH_SIZE", "0");
+	}
+
+	public int getBATCH_FLUSH_RECORDS() {
+		return (int) CommonUtil.val(getProperty("BATCH_FLUSH_RECORDS", "0"));
+	}
+
+	public int getBATCH_FLUSH_KB() {
+		return (int) CommonUtil.val(getProperty("BATCH_FLUSH_KB", "0"));
+	}
+
+	private Boolean BATCH_MULTIROW_INSERT;
+
+	public boolean getBATCH_MULTIROW_INSERT() {
+		return booleanPreference(BATCH_MULTIROW_INSERT, "BATCH_MULTIROW_INSERT", "0");
+	}
+
+	private Boolean SENTENCE_METRICS;
+
+	public boolean getSENTENCE_METRICS() {
+		return booleanPreference(SENTENCE_METRICS, "SENTENCE_METRICS", "0");
+	}
+
+	public int getSENTENCE_METRICS_EXPORT_INTERVAL() {
+		return (int) CommonUtil.val(getProperty("SENTENCE_METRICS_EXPORT_INTERVAL", "60"));
+	}
+
 	private Boolean SMART_CACHING;
 
 	public boolean getSMART_CACHING() {
@@ -0,0 +1,461 @@
+package com.genexus.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.genexus.CacheFactory;
+import com.genexus.ICacheService2;
+import com.genexus.ICacheService3;
+import com.genexus.db.CacheKey;
+import com.genexus.db.CacheValue;
+import com.genexus.db.InProcessCache;
+
+/**
+ * Two level cache: a bounded in-process L1 ({@link InProcessCache}) in front of a remote
+ * provider such as RedisClient or Memcached.
+ * <p>
+ * Only the configured cache ids (by default the cursor result cache) are kept in L1; the
+ * rest go straight to the remote provider, so data shared between nodes like the smart cache
+ * table timestamps is never read stale. Writes go through to the remote and refresh L1.
+ * L1 entries live at most the L1 time to live and are dropped when
+ * {@link #invalidateTables(String[])} reports an update on a table their sentence reads.
+ * <p>
+ * Other nodes learn about the invalidation through a marker in the remote provider: every
+ * invalidation writes a new marker, and each node reads it at most once per check interval
+ * on an L1 lookup and drops its whole L1 when the marker changed. So an update made on
+ * another node may be read stale from L1 for up to the check interval
+ * ({@link #DEFAULT_INVALIDATION_CHECK} milliseconds by default), and never longer than the
+ * L1 time to live.
+ */
+public class NearCache implements ICacheService3
+{
+	public static final int DEFAULT_LOCAL_TTL = 60;
+	public static final int DEFAULT_INVALIDATION_CHECK = 1000;
+
+	static final String INVALIDATION_CACHEID = "NearCache";
+	static final String INVALIDATION_KEY = "Invalidation";
+
+	private final ICacheService2 remote;
+	private final InProcessCache local;
+	private final int localTtl;
+	private final Set<String> localCacheIds;
+	private final TierStats localStats = new TierStats();
+	private final TierStats remoteStats = new TierStats();
+	private final long invalidationCheckNanos;
+	private final AtomicLong nextInvalidationCheck;
+	private volatile String lastInvalidation;
+
+	/**
+	 * @param remote remote provider
+	 * @param localStorageSize maximum size of L1 in bytes
+	 * @param localTtl maximum seconds an entry stays in L1, 0 to keep the remote expiration
+	 * @param localCacheIds cache ids kept in L1
+	 */
+	public NearCache(ICacheService2 remote, long localStorageSize, int localTtl, String[] localCacheIds)
+	{
+		this(remote, localStorageSize, localTtl, localCacheIds, DEFAULT_INVALIDATION_CHECK);
+	}
+
+	/**
+	 * @param invalidationCheck milliseconds between reads of the invalidation marker written by other nodes
+	 */
+	public NearCache(ICacheService2 remote, long localStorageSize, int localTtl, String[] localCacheIds, int invalidationCheck)
+	{
+		this.remote = remote;
+		this.local = new InProcessCache(localStorageSize);
+		this.localTtl = localTtl;
+		this.invalidationCheckNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, invalidationCheck));
+		this.nextInvalidationCheck = new AtomicLong(System.nanoTime() + invalidationCheckNanos);
+		this.localCacheIds = new HashSet<String>();
+		for (String cacheid : localCacheIds)
+		{
+			this.localCacheIds.add(cacheid.trim());
+		}
+	}
+
+	public ICacheService2 getRemote()
+	{
+		return remote;
+	}
+
+	public InProcessCache getLocal()
+	{
+		return local;
+	}
+
+	public TierStats getLocalStats()
+	{
+		return localStats;
+	}
+
+	public TierStats getRemoteStats()
+	{
+		return remoteStats;
+	}
+
+	private boolean isLocal(String cacheid)
+	{
+		return localCacheIds.contains(cacheid);
+	}
+
+	/**
+	 * Drops the whole L1 when another node wrote a new invalidation marker since the last
+	 * check. Only one lookup per check interval reads the marker, the others go on with L1.
+	 * A marker that is not known yet also drops L1, an invalidation before the first check
+	 * is not lost.
+	 */
+	private void checkInvalidations()
+	{
+		long now = System.nanoTime();
+		long next = nextInvalidationCheck.get();
+		if (now - next < 0 || !nextInvalidationCheck.compareAndSet(next, now + invalidationCheckNanos))
+			return;
+		String marker = remote.get(INVALIDATION_CACHEID, INVALIDATION_KEY, String.class);
+		if (marker == null ? lastInvalidation != null : !marker.equals(lastInvalidation))
+		{
+			lastInvalidation = marker;
+			local.clearAllCaches();
+		}
+	}
+
+	/** Writes a new invalidation marker so the other nodes drop their L1 on their next check */
+	private void publishInvalidation()
+	{
+		String marker = UUID.randomUUID().toString();
+		remote.set(INVALIDATION_CACHEID, INVALIDATION_KEY, marker, 0);
+		lastInvalidation = marker;
+	}
+
+	private int localExpiration(int expirationSeconds)
+	{
+		if (localTtl <= 0)
+			return expirationSeconds;
+		if (expirationSeconds <= 0)
+			return localTtl;
+		return Math.min(localTtl, expirationSeconds);
+	}
+
+	/**
+	 * L1 keeps its own copy of a CacheValue with the L1 expiration, the caller's and the
+	 * remote tier's instance keep their expiration and timestamp.
+	 */
+	private Object localValue(Object value)
+	{
+		if (value instanceof CacheValue)
+		{
+			CacheValue cacheValue = (CacheValue) value;
+			return cacheValue.copyWithExpiryTime(localExpiration(cacheValue.getExpiryTimeSeconds()));
+		}
+		return value;
+	}
+
+	private <T> void setLocal(String cacheid, String key, T value, int expirationSeconds)
+	{
+		local.set(cacheid, key, localValue(value), localExpiration(expirationSeconds));
+	}
+
+	private <T> void setLocal(String cacheid, CacheKey key, T value, int expirationSeconds)
+	{
+		local.set(cacheid, key, localValue(value), localExpiration(expirationSeconds));
+	}
+
+	public <T> T get(String cacheid, String key, Class<T> type)
+	{
+		if (isLocal(cacheid))
+		{
+			checkInvalidations();
+			long start = System.nanoTime();
+			T value = local.get(cacheid, key, type);
+			localStats.record(value != null, start);
+			if (value != null)
+				return value;
+		}
+		long start = System.nanoTime();
+		T value = remote.get(cacheid, key, type);
+		remoteStats.record(value != null, start);
+		if (value != null && isLocal(cacheid))
+		{
+			setLocal(cacheid, key, value, 0);
+		}
+		return value;
+	}
+
+	public <T> T get(String cacheid, CacheKey key, Class<T> type)
+	{
+		if (isLocal(cacheid))
+		{
+			checkInvalidations();
+			long start = System.nanoTime();
+			T value = local.get(cacheid, key, type);
+			localStats.record(value != null, start);
+			if (value != null)
+				return value;
+		}
+		long start = System.nanoTime();
+		T value;
+		if (remote instanceof ICacheService3)
+			value = ((ICacheService3) remote).get(cacheid, key, type);
+		else
+			value = remote.get(cacheid, key.toString(), type);
+		remoteStats.record(value != null, start);
+		if (value != null && isLocal(cacheid))
+		{
+			setLocal(cacheid, key, value, 0);
+		}
+		return value;
+	}
+
+	public <T> List<T> getAll(String cacheid, String[] keys, Class<T> type)
+	{
+		if (!isLocal(cacheid))
+		{
+			long start = System.nanoTime();
+			List<T> values = remote.getAll(cacheid, keys, type);
+			remoteStats.record(values != null, start);
+			return values;
+		}
+		checkInvalidations();
+		List<T> values = new ArrayList<T>(keys.length);
+		List<Integer> missing = new ArrayList<Integer>();
+		for (int i = 0; i < keys.length; i++)
+		{
+			long start = System.nanoTime();
+			T value = local.get(cacheid, keys[i], type);
+			localStats.record(value != null, start);
+			values.add(value);
+			if (value == null)
+				missing.add(i);
+		}
+		if (!missing.isEmpty())
+		{
+			String[] missingKeys = new String[missing.size()];
+			for (int i = 0; i < missingKeys.length; i++)
+			{
+				missingKeys[i] = keys[missing.get(i)];
+			}
+			long start = System.nanoTime();
+			List<T> remoteValues = remote.getAll(cacheid, missingKeys, type);
+			remoteStats.record(remoteValues != null, start);
+			if (remoteValues != null)
+			{
+				for (int i = 0; i < missingKeys.length && i < remoteValues.size(); i++)
+				{
+					T value = remoteValues.get(i);
+					if (value != null)
+					{
+						values.set(missing.get(i), value);
+						setLocal(cacheid, missingKeys[i], value, 0);
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	public <T> List<T> getAll(String cacheid, CacheKey[] keys, Class<T> type)
+	{
+		if (isLocal(cacheid))
+			checkInvalidations();
+		List<T> values = new ArrayList<T>(keys.length);
+		List<Integer> missing = new ArrayList<Integer>();
+		for (int i = 0; i < keys.length; i++)
+		{
+			T value = null;
+			if (isLocal(cacheid))
+			{
+				long start = System.nanoTime();
+				value = local.get(cacheid, keys[i], type);
+				localStats.record(value != null, start);
+			}
+			values.add(value);
+			if (value == null)
+				missing.add(i);
+		}
+		if (!missing.isEmpty())
+		{
+			CacheKey[] missingKeys = new CacheKey[missing.size()];
+			for (int i = 0; i < missingKeys.length; i++)
+			{
+				missingKeys[i] = keys[missing.get(i)];
+			}
+			long start = System.nanoTime();
+			List<T> remoteValues = CacheFactory.getAll(remote, cacheid, missingKeys, type);
+			remoteStats.record(remoteValues != null, start);
+			if (remoteValues != null)
+			{
+				for (int i = 0; i < missingKeys.length && i < remoteValues.size(); i++)
+				{
+					T value = remoteValues.get(i);
+					if (value != null)
+					{
+						values.set(missing.get(i), value);
+						if (isLocal(cacheid))
+							setLocal(cacheid, missingKeys[i], value, 0);
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	public <T> void set(String cacheid, String key, T value)
+	{
+		set(cacheid, key, value, 0);
+	}
+
+	public <T> void set(String cacheid, String key, T value, int expirationSeconds)
+	{
+		remote.set(cacheid, key, value, expirationSeconds);
+		if (isLocal(cacheid))
+		{
+			setLocal(cacheid, key, value, expirationSeconds);
+		}
+	}
+
+	public <T> void set(String cacheid, CacheKey key, T value, int expirationSeconds)
+	{
+		if (remote instanceof ICacheService3)
+			((ICacheService3) remote).set(cacheid, key, value, expirationSeconds);
+		else
+			remote.set(cacheid, key.toString(), value, expirationSeconds);
+		if (isLocal(cacheid))
+		{
+			setLocal(cacheid, key, value, expirationSeconds);
+		}
+	}
+
+	public <T> void setAll(String cacheid, String[] keys, T[] values, int expirationSeconds)
+	{
+		remote.setAll(cacheid, keys, values, expirationSeconds);
+		if (isLocal(cacheid) && keys != null && values != null && keys.length == values.length)
+		{
+			for (int i = 0; i < keys.length; i++)
+			{
+				setLocal(cacheid, keys[i], values[i], expirationSeconds);
+			}
+		}
+	}
+
+	public boolean containtsKey(String cacheid, String key)
+	{
+		if (isLocal(cacheid))
+		{
+			checkInvalidations();
+			if (local.containtsKey(cacheid, key))
+				return true;
+		}
+		return remote.containtsKey(cacheid, key);
+	}
+
+	public void clear(String cacheid, String key)
+	{
+		local.clear(cacheid, key);
+		remote.clear(cacheid, key);
+		if (isLocal(cacheid))
+			publishInvalidation();
+	}
+
+	public void clearCache(String cacheid)
+	{
+		local.clearCache(cacheid);
+		remote.clearCache(cacheid);
+		if (isLocal(cacheid))
+			publishInvalidation();
+	}
+
+	public void clearKey(String key)
+	{
+		local.clearKey(key);
+		remote.clearKey(key);
+		publishInvalidation();
+	}
+
+	public void clearAllCaches()
+	{
+		local.clearAllCaches();
+		remote.clearAllCaches();
+		publishInvalidation();
+	}
+
+	/**
+	 * Drops the L1 entries whose sentence reads any of the updated tables. The match is a
+	 * case insensitive substring search, so it may drop more entries than needed but never
+	 * keeps a stale one. A null array drops every L1 entry.
+	 * The remote tier is not touched, it keeps its own expiration; the other nodes drop
+	 * their whole L1 on their next invalidation check.
+	 */
+	public void invalidateTables(String[] tables)
+	{
+		publishInvalidation();
+		if (tables == null)
+		{
+			local.clearAllCaches();
+			return;
+		}
+		String[] lowerTables = new String[tables.length];
+		for (int i = 0; i < tables.length; i++)
+		{
+			lowerTables[i] = tables[i].toLowerCase(Locale.ROOT);
+		}
+		for (Map.Entry<Object, CacheValue> entry : local.getCache().entrySet())
+		{
+			if (entry.getKey() instanceof CacheKey)
+			{
+				String sentence = ((CacheKey) entry.getKey()).getKey();
+				if (sentence == null)
+					continue;
+				sentence = sentence.toLowerCase(Locale.ROOT);
+				for (String table : lowerTables)
+				{
+					if (sentence.contains(table))
+					{
+						local.clearKey(entry.getKey(), entry.getValue());
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/** Hit, miss and latency counters of one tier */
+	public static class TierStats
+	{
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		void record(boolean hit, long startNanos)
+		{
+			nanos.add(System.nanoTime() - startNanos);
+			if (hit)
+				hits.increment();
+			else
+				misses.increment();
+		}
+
+		public long getHits()
+		{
+			return hits.sum();
+		}
+
+		public long getMisses()
+		{
+			return misses.sum();
+		}
+
+		/** Average lookup time in microseconds */
+		public double getAverageLatency()
+		{
+			long count = hits.sum() + misses.sum();
+			return count == 0 ? 0 : nanos.sum() / (count * 1000d);
+		}
+	}
+}
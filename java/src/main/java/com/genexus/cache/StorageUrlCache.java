@@ -0,0 +1,205 @@
+package com.genexus.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache of the URLs a storage provider returns for its objects, so rendering many private
+ * objects does not cost a metadata request and a new signature for each one.
+ * <p>
+ * A cached URL is handed out during at most half of its own lifetime, so callers always get a
+ * URL that is valid for at least half the time they asked for. Objects the storage reported as
+ * missing can optionally be remembered for a short time too.
+ * The provider must call {@link #invalidate(String)} when it writes or deletes an object, and
+ * read {@link #version(String)} before asking the storage for the object: put and putMissing
+ * ignore what was read before an invalidation of the same object.
+ */
+public class StorageUrlCache
+{
+	public static final int DEFAULT_TTL = 300;
+	public static final int DEFAULT_MAX_OBJECTS = 10000;
+	private static final int VERSION_STRIPES = 1024;
+
+	private static final NearCache.TierStats stats = new NearCache.TierStats();
+
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, Entry>> urls = new ConcurrentHashMap<String, ConcurrentHashMap<String, Entry>>();
+	private final ConcurrentHashMap<String, Missing> missing = new ConcurrentHashMap<String, Missing>();
+	// Versions by object name hash, an invalidation also discards the pending puts of the objects that share its stripe
+	private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+	private final long ttlMillis;
+	private final long negativeTtlMillis;
+	private final int maxObjects;
+
+	/**
+	 * @param ttl maximum seconds a URL stays in the cache
+	 * @param negativeTtl seconds a missing object is remembered, 0 to not remember them
+	 * @param maxObjects maximum objects kept, the cache is trimmed when it grows past it
+	 */
+	public StorageUrlCache(int ttl, int negativeTtl, int maxObjects)
+	{
+		this.ttlMillis = ttl * 1000L;
+		this.negativeTtlMillis = negativeTtl * 1000L;
+		this.maxObjects = maxObjects;
+	}
+
+	/** Hits and misses of every storage URL cache */
+	public static NearCache.TierStats getStats()
+	{
+		return stats;
+	}
+
+	/** Cached URL of the object for the given ACL and expiration, null if there is none */
+	public String get(String objectName, String acl, int expirationMinutes)
+	{
+		if (ttlMillis <= 0)
+			return null;
+		long start = System.nanoTime();
+		String url = null;
+		Map<String, Entry> objectUrls = urls.get(objectName);
+		if (objectUrls != null)
+		{
+			Entry entry = objectUrls.get(urlKey(acl, expirationMinutes));
+			if (entry != null && entry.validUntil > System.currentTimeMillis())
+				url = entry.url;
+		}
+		stats.record(url != null, start);
+		return url;
+	}
+
+	/** Version of the object, to read before asking the storage for it and pass to put or putMissing */
+	public long version(String objectName)
+	{
+		return versions.get(stripe(objectName));
+	}
+
+	/**
+	 * @param expirationMinutes expiration the URL was requested with
+	 * @param urlLifetimeMinutes minutes the URL is valid, 0 for URLs that do not expire
+	 * @param version {@link #version(String)} of the object before the URL was requested
+	 */
+	public void put(String objectName, String acl, int expirationMinutes, String url, int urlLifetimeMinutes, long version)
+	{
+		if (ttlMillis <= 0 || version(objectName) != version)
+			return;
+		long validFor = ttlMillis;
+		if (urlLifetimeMinutes > 0)
+			validFor = Math.min(validFor, urlLifetimeMinutes * 60000L / 2);
+		ConcurrentHashMap<String, Entry> objectUrls = urls.get(objectName);
+		if (objectUrls == null)
+		{
+			trim();
+			ConcurrentHashMap<String, Entry> newUrls = new ConcurrentHashMap<String, Entry>();
+			objectUrls = urls.putIfAbsent(objectName, newUrls);
+			if (objectUrls == null)
+				objectUrls = newUrls;
+		}
+		String key = urlKey(acl, expirationMinutes);
+		Entry entry = new Entry(url, System.currentTimeMillis() + validFor);
+		objectUrls.put(key, entry);
+		missing.remove(objectName);
+		// An invalidate that ran while storing may have removed the object before the entry was added
+		if (version(objectName) != version)
+			objectUrls.remove(key, entry);
+	}
+
+	/** Error the storage returned the last time the object was not found, null if it is not known to be missing */
+	public RuntimeException getMissing(String objectName)
+	{
+		Missing entry = missing.get(objectName);
+		if (entry == null)
+			return null;
+		if (entry.validUntil <= System.currentTimeMillis())
+		{
+			missing.remove(objectName, entry);
+			return null;
+		}
+		return entry.error;
+	}
+
+	/** @param version {@link #version(String)} of the object before the storage was asked for it */
+	public void putMissing(String objectName, RuntimeException error, long version)
+	{
+		if (negativeTtlMillis <= 0 || version(objectName) != version)
+			return;
+		if (missing.size() >= maxObjects)
+			missing.clear();
+		Missing entry = new Missing(error, System.currentTimeMillis() + negativeTtlMillis);
+		missing.put(objectName, entry);
+		if (version(objectName) != version)
+			missing.remove(objectName, entry);
+	}
+
+	public void invalidate(String objectName)
+	{
+		versions.incrementAndGet(stripe(objectName));
+		urls.remove(objectName);
+		missing.remove(objectName);
+	}
+
+	public void clear()
+	{
+		for (int i = 0; i < VERSION_STRIPES; i++)
+			versions.incrementAndGet(i);
+		urls.clear();
+		missing.clear();
+	}
+
+	private void trim()
+	{
+		if (urls.size() < maxObjects)
+			return;
+		long now = System.currentTimeMillis();
+		for (Iterator<ConcurrentHashMap<String, Entry>> it = urls.values().iterator(); it.hasNext(); )
+		{
+			boolean expired = true;
+			for (Entry entry : it.next().values())
+			{
+				if (entry.validUntil > now)
+				{
+					expired = false;
+					break;
+				}
+			}
+			if (expired)
+				it.remove();
+		}
+		if (urls.size() >= maxObjects)
+			urls.clear();
+	}
+
+	private static int stripe(String objectName)
+	{
+		return objectName.hashCode() & (VERSION_STRIPES - 1);
+	}
+
+	private static String urlKey(String acl, int expirationMinutes)
+	{
+		return acl + "/" + expirationMinutes;
+	}
+
+	private static class Entry
+	{
+		final String url;
+		final long validUntil;
+
+		Entry(String url, long validUntil)
+		{
+			this.url = url;
+			this.validUntil = validUntil;
+		}
+	}
+
+	private static class Missing
+	{
+		final RuntimeException error;
+		final long validUntil;
+
+		Missing(RuntimeException error, long validUntil)
+		{
+			this.error = error;
+			this.validUntil = validUntil;
+		}
+	}
+}
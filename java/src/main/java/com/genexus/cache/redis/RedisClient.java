@@ -4,6 +4,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
@@ -14,7 +15,8 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.genexus.Application;
-import com.genexus.ICacheService2;
+import com.genexus.ICacheService3;
+import com.genexus.db.CacheKey;
 import com.genexus.diagnostics.core.ILogger;
 import com.genexus.diagnostics.core.LogManager;
 import com.genexus.util.GXService;
@@ -26,11 +28,13 @@ import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.Pipeline;
 
 
-public class RedisClient implements ICacheService2, Closeable{
+public class RedisClient implements ICacheService3, Closeable{
 	public static final ILogger logger = LogManager.getLogger(RedisClient.class);
 	private String keyPattern = "%s_%s_%s"; //Namespace_KEY
 	private static int UNDEFINED_PORT = -1;
 	private static int REDIS_DEFAULT_PORT = 6379;
+	private static int DEFAULT_BATCH_SIZE = 500;
+	private int batchSize = DEFAULT_BATCH_SIZE;
 	private JedisPool pool;
 	private ObjectMapper objMapper; 	
 	public RedisClient() throws IOException {
@@ -47,10 +51,19 @@ public class RedisClient implements ICacheService2, Closeable{
 		String addresses = providerService.getProperties().get("CACHE_PROVIDER_ADDRESS");
 		String cacheKeyPattern = providerService.getProperties().get("CACHE_PROVIDER_KEYPATTERN");
 		String password = providerService.getProperties().get("CACHE_PROVIDER_PASSWORD");
+		String maxBatchSize = providerService.getProperties().get("CACHE_PROVIDER_BATCH_SIZE");
 
 		if (!isNullOrEmpty(cacheKeyPattern))
 			keyPattern = cacheKeyPattern;
 
+		if (!isNullOrEmpty(maxBatchSize)) {
+			try {
+				batchSize = Math.max(1, Integer.parseInt(maxBatchSize.trim()));
+			} catch (NumberFormatException ex) {
+				logger.error("Invalid CACHE_PROVIDER_BATCH_SIZE " + maxBatchSize, ex);
+			}
+		}
+
 		if (!isNullOrEmpty(addresses)){
 
 			if (!isNullOrEmpty(password)) {
@@ -134,6 +147,8 @@ public class RedisClient implements ICacheService2, Closeable{
 					else
 						p.set(key, valueJSON);
 					idx++;
+					if (idx % batchSize == 0)
+						p.sync(); // Limita la cantidad de comandos pendientes en el pipeline
 				}
 				p.sync();
 			}
@@ -167,18 +182,33 @@ public class RedisClient implements ICacheService2, Closeable{
 		return null;
 	}
 	public <T> List<T> getAll(String cacheid, String[] keys, Class<T> type){
-		List<T> result = null;
+		return getAll(getKey(cacheid, keys), type);
+	}
+
+	public <T> List<T> getAll(String cacheid, CacheKey[] keys, Class<T> type){
+		Long prefix = getKeyPrefix(cacheid);
+		String[] prefixedKeys = new String[keys.length];
+		for (int idx = 0; idx < keys.length; idx++) {
+			prefixedKeys[idx] = String.format(keyPattern, cacheid, prefix, keys[idx].toHashString());
+		}
+		return getAll(prefixedKeys, type);
+	}
+
+	/** MGET de a lo sumo batchSize keys por round trip */
+	private <T> List<T> getAll(String[] prefixedKeys, Class<T> type){
 		Jedis jedis = null;
 		try {
-			String[] prefixedKeys = getKey(cacheid, keys);
 			jedis = pool.getResource();	
-			List<String> json = jedis.mget(prefixedKeys);
-			result = new ArrayList<T>();
-			for (String val: json) {
-				if (val != null)
-					result.add(objMapper.readValue(val, type)); 
-				else
-					result.add(null);
+			List<T> result = new ArrayList<T>(prefixedKeys.length);
+			for (int from = 0; from < prefixedKeys.length; from += batchSize) {
+				String[] batch = prefixedKeys.length <= batchSize ? prefixedKeys : Arrays.copyOfRange(prefixedKeys, from, Math.min(from + batchSize, prefixedKeys.length));
+				List<String> json = jedis.mget(batch);
+				for (String val: json) {
+					if (val != null)
+						result.add(objMapper.readValue(val, type)); 
+					else
+						result.add(null);
+				}
 			}
 			return result;
 		} catch (Exception e) {
@@ -200,6 +230,14 @@ public class RedisClient implements ICacheService2, Closeable{
 	}
 	
 
+	public <T> T get(String cacheid, CacheKey key, Class<T> type) {
+		return get(getKey(cacheid, key), type);
+	}
+
+	public <T> void set(String cacheid, CacheKey key, T value, int expirationSeconds) {
+		set(getKey(cacheid, key), value, expirationSeconds);
+	}
+
 	public <T> void set(String cacheid, String key, T value) {
 		set(getKey(cacheid, key), value);
 	}
@@ -264,6 +302,10 @@ public class RedisClient implements ICacheService2, Closeable{
 		return String.format(keyPattern, cacheid, getKeyPrefix(cacheid), com.genexus.CommonUtil.getHash(key));
 	}
 
+	private String getKey(String cacheid, CacheKey key) {
+		return String.format(keyPattern, cacheid, getKeyPrefix(cacheid), key.toHashString());
+	}
+
 	private String[] getKey(String cacheid, String[] keys)
 	{
 		Long prefix = getKeyPrefix(cacheid);
@@ -0,0 +1,418 @@
+package com.genexus.db;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.genexus.util.FrequencySketch;
+
+/**
+ * Size bounded W-TinyLFU eviction policy used by {@link InProcessCache}.
+ * <p>
+ * Cache hits are recorded in striped, lossy read buffers so readers never block; inserts and
+ * removals go through a write queue. Both are replayed against the policy by whichever thread
+ * gets the drain lock. New entries land in a small LRU window (1% of the budget), then move to a
+ * segmented LRU (probation and protected). When the budget is exceeded the window victim is only
+ * admitted over the probation victim if the frequency sketch says it was used more often.
+ */
+public class CacheEvictionPolicy
+{
+	public interface EvictionListener
+	{
+		void onEviction(Object key, CacheValue value);
+
+		/**
+		 * True if the value is still the one mapped to the key. Two puts of the same key can queue
+		 * their inserts in the opposite order, so an insert is only applied while its value is live.
+		 */
+		boolean isMapped(Object key, CacheValue value);
+	}
+
+	private static final int NCPU = Runtime.getRuntime().availableProcessors();
+	private static final int READ_STRIPES = ceilingPowerOfTwo(Math.min(4 * NCPU, 64));
+	private static final int READ_BUFFER_SIZE = 32;
+	private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+	private static final int WRITE_DRAIN_THRESHOLD = 64;
+
+	private static final double WINDOW_PERCENT = 0.01d;
+	private static final double PROTECTED_PERCENT = 0.80d;
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final ReadBuffer[] readBuffers;
+	private final ConcurrentLinkedQueue<WriteTask> writeBuffer = new ConcurrentLinkedQueue<WriteTask>();
+	private final EvictionListener listener;
+
+	// Guarded by evictionLock
+	private final HashMap<Object, Node> data = new HashMap<Object, Node>();
+	private final FrequencySketch sketch = new FrequencySketch(64);
+	private final Node[] queues = new Node[]{ new Node(), new Node(), new Node() };
+	private final long[] queueWeights = new long[3];
+	private long maximum;
+	private long windowMaximum;
+	private long protectedMaximum;
+	private volatile long weightedSize;
+
+	public CacheEvictionPolicy(long maximum, EvictionListener listener)
+	{
+		this.listener = listener;
+		readBuffers = new ReadBuffer[READ_STRIPES];
+		for (int i = 0; i < READ_STRIPES; i++)
+		{
+			readBuffers[i] = new ReadBuffer();
+		}
+		for (Node sentinel : queues)
+		{
+			sentinel.prev = sentinel.next = sentinel;
+		}
+		setMaximum(maximum);
+	}
+
+	public void setMaximum(long maximum)
+	{
+		evictionLock.lock();
+		try
+		{
+			this.maximum = maximum;
+			windowMaximum = Math.max(1, (long) (maximum * WINDOW_PERCENT));
+			protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED_PERCENT);
+			evict();
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+		drainIfNeeded();
+	}
+
+	public long getMaximum()
+	{
+		return maximum;
+	}
+
+	/** Weight of the entries tracked by the policy after the last drain */
+	public long getWeightedSize()
+	{
+		return weightedSize;
+	}
+
+	/** Records a cache hit. Never blocks: if the buffer is full the hit may be dropped. */
+	public void recordAccess(Object key)
+	{
+		ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (READ_STRIPES - 1)];
+		if (!buffer.offer(key))
+		{
+			tryDrain();
+		}
+	}
+
+	public void recordInsert(Object key, CacheValue value)
+	{
+		writeBuffer.add(new WriteTask(key, value, true));
+		drainIfNeeded();
+	}
+
+	public void recordRemoval(Object key, CacheValue value)
+	{
+		writeBuffer.add(new WriteTask(key, value, false));
+		drainIfNeeded();
+	}
+
+	/** Forgets every tracked entry, used when the whole cache is cleared */
+	public void clear()
+	{
+		evictionLock.lock();
+		try
+		{
+			drainBuffers();
+			data.clear();
+			for (int i = 0; i < queues.length; i++)
+			{
+				queues[i].prev = queues[i].next = queues[i];
+				queueWeights[i] = 0;
+			}
+			weightedSize = 0;
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	private void drainIfNeeded()
+	{
+		do
+		{
+			if (!evictionLock.tryLock())
+			{ // The thread holding the lock will see our task when it checks the queue again
+				return;
+			}
+			try
+			{
+				drainBuffers();
+				evict();
+			}
+			finally
+			{
+				evictionLock.unlock();
+			}
+		}
+		while (!writeBuffer.isEmpty());
+	}
+
+	private void tryDrain()
+	{
+		if (evictionLock.tryLock())
+		{
+			try
+			{
+				drainBuffers();
+				evict();
+			}
+			finally
+			{
+				evictionLock.unlock();
+			}
+		}
+		if (writeBuffer.size() > WRITE_DRAIN_THRESHOLD)
+		{
+			drainIfNeeded();
+		}
+	}
+
+	private void drainBuffers()
+	{
+		for (ReadBuffer buffer : readBuffers)
+		{
+			buffer.drainTo(this);
+		}
+		WriteTask task;
+		while ((task = writeBuffer.poll()) != null)
+		{
+			if (task.insert)
+			{
+				onInsert(task.key, task.value);
+			}
+			else
+			{
+				onRemoval(task.key, task.value);
+			}
+		}
+	}
+
+	private void onAccess(Object key)
+	{
+		Node node = data.get(key);
+		if (node == null)
+		{
+			return;
+		}
+		sketch.increment(key);
+		switch (node.queue)
+		{
+			case WINDOW:
+				moveToTail(node);
+				break;
+			case PROBATION:
+				unlink(node);
+				link(node, PROTECTED);
+				while (queueWeights[PROTECTED] > protectedMaximum)
+				{ // Demote the least recently used protected entries back to probation
+					Node demoted = queues[PROTECTED].next;
+					unlink(demoted);
+					link(demoted, PROBATION);
+				}
+				break;
+			default:
+				moveToTail(node);
+		}
+	}
+
+	private void onInsert(Object key, CacheValue value)
+	{
+		if (!listener.isMapped(key, value))
+		{ // Replaced or removed before the drain, the task of the live value will follow
+			return;
+		}
+		Node node = data.get(key);
+		if (node != null)
+		{ // Value replaced under the same key
+			unlink(node);
+			weightedSize -= node.weight;
+		}
+		else
+		{
+			node = new Node();
+			node.key = key;
+			data.put(key, node);
+			sketch.ensureCapacity(data.size());
+		}
+		node.value = value;
+		node.weight = value.getSize();
+		weightedSize += node.weight;
+		sketch.increment(key);
+		link(node, node.queue == PROTECTED ? PROTECTED : WINDOW);
+	}
+
+	private void onRemoval(Object key, CacheValue value)
+	{
+		Node node = data.get(key);
+		if (node != null && node.value == value)
+		{
+			data.remove(key);
+			unlink(node);
+			weightedSize -= node.weight;
+		}
+	}
+
+	private void evict()
+	{
+		while (weightedSize > maximum)
+		{
+			Node candidate = first(WINDOW);
+			Node victim = first(PROBATION);
+			if (victim == null)
+			{
+				victim = first(PROTECTED);
+			}
+			Node evicted;
+			if (candidate == null && victim == null)
+			{
+				break;
+			}
+			else if (candidate == null)
+			{
+				evicted = victim;
+			}
+			else if (victim == null)
+			{
+				evicted = candidate;
+			}
+			else
+			{ // TinyLFU admission, the window victim only survives if it is more popular
+				evicted = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+			}
+			data.remove(evicted.key);
+			unlink(evicted);
+			weightedSize -= evicted.weight;
+			listener.onEviction(evicted.key, evicted.value);
+		}
+		while (queueWeights[WINDOW] > windowMaximum)
+		{
+			Node node = queues[WINDOW].next;
+			unlink(node);
+			link(node, PROBATION);
+		}
+	}
+
+	private Node first(int queue)
+	{
+		Node sentinel = queues[queue];
+		return sentinel.next == sentinel ? null : sentinel.next;
+	}
+
+	private void link(Node node, int queue)
+	{
+		Node sentinel = queues[queue];
+		node.queue = queue;
+		node.prev = sentinel.prev;
+		node.next = sentinel;
+		sentinel.prev.next = node;
+		sentinel.prev = node;
+		queueWeights[queue] += node.weight;
+	}
+
+	private void unlink(Node node)
+	{
+		if (node.prev == null)
+		{
+			return;
+		}
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = node.next = null;
+		queueWeights[node.queue] -= node.weight;
+	}
+
+	private void moveToTail(Node node)
+	{
+		int queue = node.queue;
+		unlink(node);
+		link(node, queue);
+	}
+
+	private static int ceilingPowerOfTwo(int x)
+	{
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+
+	static class Node
+	{
+		Node prev;
+		Node next;
+		Object key;
+		CacheValue value;
+		long weight;
+		int queue = WINDOW;
+	}
+
+	static class WriteTask
+	{
+		final Object key;
+		final CacheValue value;
+		final boolean insert;
+
+		WriteTask(Object key, CacheValue value, boolean insert)
+		{
+			this.key = key;
+			this.value = value;
+			this.insert = insert;
+		}
+	}
+
+	/** Bounded multi producer, single consumer ring buffer. Offers fail when it is full. */
+	static class ReadBuffer
+	{
+		private final AtomicReferenceArray<Object> buffer = new AtomicReferenceArray<Object>(READ_BUFFER_SIZE);
+		private final AtomicLong writeCounter = new AtomicLong();
+		private volatile long readCounter;
+
+		boolean offer(Object key)
+		{
+			long tail = writeCounter.get();
+			if (tail - readCounter >= READ_BUFFER_SIZE)
+			{
+				return false;
+			}
+			if (writeCounter.compareAndSet(tail, tail + 1))
+			{
+				buffer.lazySet((int) tail & READ_BUFFER_MASK, key);
+			}
+			return true;
+		}
+
+		// Called with the eviction lock held
+		void drainTo(CacheEvictionPolicy policy)
+		{
+			long head = readCounter;
+			long tail = writeCounter.get();
+			for (; head < tail; head++)
+			{
+				int index = (int) head & READ_BUFFER_MASK;
+				Object key = buffer.get(index);
+				if (key == null)
+				{ // Slot claimed but not yet published
+					break;
+				}
+				buffer.lazySet(index, null);
+				policy.onAccess(key);
+			}
+			readCounter = head;
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package com.genexus.db;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.UUID;
 
 import com.genexus.GXutil;
 
@@ -33,44 +36,182 @@ public class CacheKey implements Serializable
 	
 	public int hashCode()
 	{
-		return key.hashCode();
+		ensureHash();
+		return (int) (hash1 ^ (hash1 >>> 32));
 	}
-	
-	/** Este método retorna un hash sobre los parametros
-	 * Sirve para que en el equals cuando se utiliza un
-	 * DataStoreProvider remoto no se deba comparar todos
-	 * los bytes del parametro, primero comparamos el hash y si 
-	 * ya son distintos salimos.
+
+	/** Hash de 128 bits calculado directamente sobre la sentencia y los parametros tipados,
+	 *  sin construir el string de la key. Los valores enteros se normalizan a long y las fechas
+	 *  a milisegundos para que una key deserializada desde un cache remoto (donde un Short vuelve
+	 *  como Integer o un Date como Long) tenga el mismo hash que la original.
+	 *  La sentencia se compara sin distinguir mayusculas, como siempre, y el hash la normaliza igual.
 	 */
-	private Integer paramsHash = null;
-	protected int paramsHashCode()
+	private transient volatile boolean hashed;
+	private transient long hash1;
+	private transient long hash2;
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private void ensureHash()
 	{
-		if(paramsHash == null)
-		{ // Si es la primera vez que se llama a paramsHash, calculo el hash
-			int hash = 0;
-			if(parms != null)
+		if(!hashed)
+		{
+			computeHash();
+		}
+	}
+
+	/** Calcula el hash sobre los campos hash1 y hash2, sin reservar memoria. Es synchronized
+	 *  para que dos threads no mezclen sus calculos; hashed se publica al final.
+	 */
+	private synchronized void computeHash()
+	{
+		if(hashed)
+		{
+			return;
+		}
+		hash1 = 0x9368e53c2f6af274L;
+		hash2 = 0x586dcd208f7cd3fdL;
+		mixString(key, true);
+		if(parms != null)
+		{
+			for(int i = 0; i < parms.length; i++)
 			{
-				for(int i = 0; i < parms.length; i++)
+				mixParameter(parms[i]);
+			}
+		}
+		long len = parms == null ? 0 : parms.length;
+		hash1 ^= len;
+		hash2 ^= len;
+		hash1 += hash2;
+		hash2 += hash1;
+		hash1 = fmix64(hash1);
+		hash2 = fmix64(hash2);
+		hash1 += hash2;
+		hash2 += hash1;
+		hashed = true;
+	}
+
+	private void mixParameter(Object parm)
+	{
+		if(parm == null)
+		{
+			mix(0, 0);
+		}
+		else if(parm instanceof byte[])
+		{
+			byte[] bytes = (byte[])parm;
+			mix(1, bytes.length);
+			for(int i = 0; i < bytes.length; i += 8)
+			{
+				long word = 0;
+				for(int j = i; j < Math.min(i + 8, bytes.length); j++)
 				{
-					if(parms[i] instanceof byte[])
-					{
-						int len = ((byte[])parms[i]).length;
-						byte [] temp = (byte[])parms[i];
-						for(int j = 0; j < len; j++)
-						{ 
-							hash ^= temp[j];
-							hash <<= 1;
-						}
-					}
-					else
-					{
-						hash ^= parms[i].hashCode();
-					}
+					word = (word << 8) | (bytes[j] & 0xff);
+				}
+				mix(1, word);
+			}
+		}
+		else if(parm instanceof String)
+		{
+			mixString((String)parm, false);
+		}
+		else if(parm instanceof Long || parm instanceof Integer || parm instanceof Short || parm instanceof Byte)
+		{
+			mix(3, ((Number)parm).longValue());
+		}
+		else if(parm instanceof Date)
+		{
+			mix(3, ((Date)parm).getTime());
+		}
+		else if(parm instanceof Double || parm instanceof Float)
+		{
+			mix(4, Double.doubleToLongBits(((Number)parm).doubleValue()));
+		}
+		else if(parm instanceof BigDecimal)
+		{ // Valores iguales con distinta escala dan el mismo double, y doubleValue no crea objetos para los habituales
+			double value = ((BigDecimal)parm).doubleValue();
+			mix(5, value == 0 ? 0 : Double.doubleToLongBits(value));
+		}
+		else if(parm instanceof Boolean)
+		{
+			mix(6, ((Boolean)parm).booleanValue() ? 1 : 0);
+		}
+		else if(parm instanceof UUID)
+		{
+			mix(7, ((UUID)parm).getMostSignificantBits());
+			mix(7, ((UUID)parm).getLeastSignificantBits());
+		}
+		else
+		{
+			mixString(parm.toString(), false);
+		}
+	}
+
+	/** Con ignoreCase cada caracter se normaliza igual que en String.equalsIgnoreCase */
+	private void mixString(String s, boolean ignoreCase)
+	{
+		int len = s.length();
+		mix(2, len);
+		for(int i = 0; i < len; i += 4)
+		{
+			long word = 0;
+			for(int j = i; j < Math.min(i + 4, len); j++)
+			{
+				char c = s.charAt(j);
+				if(ignoreCase)
+				{
+					c = Character.toLowerCase(Character.toUpperCase(c));
 				}
+				word = (word << 16) | c;
 			}
-			paramsHash = new Integer(hash);
+			mix(2, word);
+		}
+	}
+
+	private void mix(int tag, long value)
+	{
+		long k1 = value * C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		hash1 ^= k1;
+		hash1 = Long.rotateLeft(hash1, 27);
+		hash1 += hash2;
+		hash1 = hash1 * 5 + 0x52dce729;
+
+		long k2 = (value ^ ((long)tag << 56)) * C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		hash2 ^= k2;
+		hash2 = Long.rotateLeft(hash2, 31);
+		hash2 += hash1;
+		hash2 = hash2 * 5 + 0x38495ab5;
+	}
+
+	private static long fmix64(long k)
+	{
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	/** Forma string del hash de 128 bits (32 digitos hexadecimales), para los caches
+	 *  remotos que necesitan una key de tipo String
+	 */
+	public String toHashString()
+	{
+		ensureHash();
+		char[] chars = new char[32];
+		for(int i = 0; i < 16; i++)
+		{
+			chars[15 - i] = HEX_DIGITS[(int)(hash1 >>> (i * 4)) & 0xf];
+			chars[31 - i] = HEX_DIGITS[(int)(hash2 >>> (i * 4)) & 0xf];
 		}
-		return paramsHash.intValue();
+		return new String(chars);
 	}
 	
 	private String stringKey = null;
@@ -124,29 +265,69 @@ public class CacheKey implements Serializable
 		}
 		CacheKey comp = (CacheKey)o;
 		
-		// Primero que nada comparamos con la key
-		if(!key.equalsIgnoreCase(comp.key))
+		if(this == comp)
+		{
+			return true;
+		}
+		ensureHash();
+		comp.ensureHash();
+		// Primero comparamos los hashes de 128 bits
+		if(hash1 != comp.hash1 || hash2 != comp.hash2)
 		{
 			return false;
 		}
 		
-		if(paramsHashCode() != comp.paramsHashCode())
-		{ // Si el hash code de los parametros tampoco coincide
+		// Ok, el hash coincidio, ahora debo ver si la sentencia y los parms son iguales
+		if(!key.equalsIgnoreCase(comp.key))
+		{
 			return false;
 		}
-		
-		// Ok, el hashcode coincidio, ahora debo ver si los parms son iguales
-		if(parms == null)
+		if(parms == null || comp.parms == null)
 		{ // Si la key no tiene parametros...
-			return (comp.parms == null);
+			return parms == comp.parms;
 		}
-		else
-		{ // Si la key tiene parametros
-			if(comp.parms == null || parms.length != comp.parms.length)
-			{ // Chequeo que la cantidad de parametros sea la misma
+		if(parms.length != comp.parms.length)
+		{ // Chequeo que la cantidad de parametros sea la misma
+			return false;
+		}
+		for(int i = 0; i < parms.length; i++)
+		{
+			if(!parameterEquals(parms[i], comp.parms[i]))
+			{
 				return false;
 			}
 		}
-		return toString().equals(comp.toString());
-	}		
+		return true;
+	}
+
+	private static boolean parameterEquals(Object a, Object b)
+	{
+		if(a == null || b == null)
+		{
+			return a == b;
+		}
+		if(a instanceof byte[] && b instanceof byte[])
+		{
+			return Arrays.equals((byte[])a, (byte[])b);
+		}
+		if(isIntegral(a) && isIntegral(b))
+		{
+			return integralValue(a) == integralValue(b);
+		}
+		if(a instanceof BigDecimal && b instanceof BigDecimal)
+		{
+			return ((BigDecimal)a).compareTo((BigDecimal)b) == 0;
+		}
+		return a.equals(b);
+	}
+
+	private static boolean isIntegral(Object o)
+	{
+		return o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte || o instanceof Date;
+	}
+
+	private static long integralValue(Object o)
+	{
+		return o instanceof Date ? ((Date)o).getTime() : ((Number)o).longValue();
+	}
 }
@@ -1,14 +1,17 @@
 package com.genexus.db;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Enumeration;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
 
 
 public class CacheValue implements Serializable
 {
 	private static final long serialVersionUID = 1L;
-	private int hits;
+	private transient LongAdder hits = new LongAdder();
 	private Vector<CachedIFieldGetter> items;
 	private long timestamp;
 	private java.util.Date timeCreated;
@@ -16,10 +19,13 @@ public class CacheValue implements Serializable
 	private TimeZone mTimeZone;
 
 	private CacheKey key;
+	private transient String cacheId;
 
 	private int expiryTime = 0;
 	private int expiryHits = 0;
 	private long cachedSize = 0;
+	private boolean columnarStorage = false;
+	private ColumnarResultSet columnar;
 
 	public CacheValue()
 	{
@@ -45,6 +51,16 @@ public class CacheValue implements Serializable
 	{
 		return key;
 	}
+
+	String getCacheId()
+	{
+		return cacheId;
+	}
+
+	void setCacheId(String cacheId)
+	{
+		this.cacheId = cacheId;
+	}
 	
 	/** Setea el tiempo de expiración (en segundos)
 	 *  o 0 para indicar que no expira por tiempo
@@ -63,6 +79,28 @@ public class CacheValue implements Serializable
 		return expiryTime;
 	}
 	
+	/** Copia que comparte las filas con este CacheValue pero tiene su propia expiracion,
+	 *  hits y timestamp, asi se puede guardar en otro cache sin modificar este
+	 */
+	public CacheValue copyWithExpiryTime(int expiryTimeSeconds)
+	{
+		CacheValue copy = new CacheValue();
+		copy.items = items;
+		copy.timestamp = timestamp;
+		copy.timeCreated = timeCreated;
+		copy.isRemote = isRemote;
+		copy.mTimeZone = mTimeZone;
+		copy.key = key;
+		copy.cacheId = cacheId;
+		copy.expiryTime = expiryTimeSeconds;
+		copy.expiryHits = expiryHits;
+		copy.cachedSize = cachedSize;
+		copy.columnarStorage = columnarStorage;
+		copy.columnar = columnar;
+		copy.resultSetTypes = resultSetTypes;
+		return copy;
+	}
+	
 	/** Setea la cantidad de hits para expirar, o 0 si no
 	 * expira por cantidad de hits
 	 */	
@@ -80,7 +118,7 @@ public class CacheValue implements Serializable
 	 */
 	public boolean hasExpired()
 	{
-            return (expiryHits > 0 && hits >= expiryHits) || 
+            return (expiryHits > 0 && hits.sum() >= expiryHits) || 
 			   (expiryTime > 0 && (timestamp + (getExpiryTimeMilliseconds())) < System.currentTimeMillis());
 	}
 	
@@ -99,6 +137,23 @@ public class CacheValue implements Serializable
 	public void setTimeZone(TimeZone cachedValueTimeZone) 
 	{
 		mTimeZone = cachedValueTimeZone;
+		if (columnar != null)
+		{
+			columnar.setTimeZone(cachedValueTimeZone);
+		}
+	}
+
+	/** Indica si las filas se guardan por columnas en arrays de tipos primitivos
+	 *  en lugar de un CachedIFieldGetter por fila
+	 */
+	public void setColumnarStorage(boolean columnarStorage)
+	{
+		this.columnarStorage = columnarStorage;
+	}
+
+	public boolean isColumnarStorage()
+	{
+		return columnarStorage;
 	}
 	
 	protected void setIsRemote(boolean isRemote)
@@ -130,6 +185,16 @@ public class CacheValue implements Serializable
 	
 	public void addItem(Object [] resultSet, long thisSize)
 	{
+		if (columnarStorage)
+		{
+			if (columnar == null)
+			{
+				columnar = new ColumnarResultSet(resultSet);
+				columnar.setTimeZone(mTimeZone);
+			}
+			columnar.addRow(resultSet);
+			return;
+		}
 		cachedSize += thisSize + 8 * resultSet.length;
 		
 		// @HACK
@@ -177,21 +242,45 @@ public class CacheValue implements Serializable
 	//IFieldGetter iterator
 	public Enumeration getIterator()
 	{
+		if (columnar != null)
+		{
+			return columnar.rows();
+		}
 		return items.elements();
 	}
+
+	/** Libera la capacidad sobrante una vez que no se agregan mas filas
+	 */
+	protected void trimToSize()
+	{
+		if (columnar != null)
+		{
+			columnar.trimToSize();
+		}
+	}
 	
 	protected void incHits()
 	{
-		hits++;
+		hits.increment();
 	}
 	
 	public int getHitCount()
 	{
-		return hits;
+		return hits.intValue();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		hits = new LongAdder();
 	}
 	
 	protected int getCantItems()
 	{
+		if (columnar != null)
+		{
+			return columnar.getRowCount() + items.size();
+		}
 		return items.size();
 	}
 	
@@ -199,9 +288,14 @@ public class CacheValue implements Serializable
 	 *  En 2 capas, el tamaño del CacheValue lo contamos como la cantidad de filas
 	 *  multiplicado por la cantidad de columnas
 	 *  En 3 capas, lo contamos como un decimo de la cantidad de bytes que ocupa
+	 *  Con almacenamiento por columnas es la cantidad de bytes que ocupan las filas
 	 */
 	public long getSize()
 	{
+		if (columnar != null)
+		{
+			return cachedSize + columnar.getSize();
+		}
 		return cachedSize;
 	}
 	
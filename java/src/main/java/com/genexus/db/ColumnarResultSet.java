@@ -0,0 +1,617 @@
+package com.genexus.db;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+
+import com.genexus.CommonUtil;
+import com.genexus.common.interfaces.SpecificImplementation;
+
+/**
+ * Column-wise storage for the rows of a cached result set.
+ * <p>
+ * Each output buffer of the cursor (a one element array: int[], long[], String[], Date[], ...) is
+ * stored as one column backed by a primitive array. Null indicators (boolean[] buffers) are kept
+ * in bitmaps, strings are dictionary encoded and dates are kept as milliseconds, so no value is
+ * boxed. Rows are read back through {@link IFieldGetter} views that map column indexes to buffers
+ * exactly like {@link CachedIFieldGetter} does.
+ */
+public class ColumnarResultSet implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int OBJECT_HEADER = 16;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+
+	private final Column[] columns;
+	private int rowCount;
+	private TimeZone timeZone;
+
+	public ColumnarResultSet(Object[] resultSet)
+	{
+		columns = new Column[resultSet.length];
+		for (int i = 0; i < resultSet.length; i++)
+		{
+			columns[i] = createColumn(resultSet[i]);
+		}
+	}
+
+	private static Column createColumn(Object buffer)
+	{
+		Class<?> componentType = buffer.getClass().getComponentType();
+		if (componentType == byte.class) return new ByteColumn();
+		if (componentType == char.class) return new CharColumn();
+		if (componentType == short.class) return new ShortColumn();
+		if (componentType == int.class) return new IntColumn();
+		if (componentType == long.class) return new LongColumn();
+		if (componentType == float.class) return new FloatColumn();
+		if (componentType == double.class) return new DoubleColumn();
+		if (componentType == boolean.class) return new BooleanColumn();
+		if (componentType == String.class) return new StringColumn();
+		if (componentType == java.util.Date.class) return new DateColumn();
+		return new ObjectColumn();
+	}
+
+	public void setTimeZone(TimeZone timeZone)
+	{
+		this.timeZone = timeZone;
+	}
+
+	public void addRow(Object[] resultSet)
+	{
+		for (int i = 0; i < columns.length; i++)
+		{
+			columns[i].add(rowCount, resultSet[i]);
+		}
+		rowCount++;
+	}
+
+	public int getRowCount()
+	{
+		return rowCount;
+	}
+
+	/** Releases the spare capacity of the columns once no more rows will be added */
+	public void trimToSize()
+	{
+		for (Column column : columns)
+		{
+			column.trimToSize(rowCount);
+		}
+	}
+
+	/** Retained size in bytes of the stored rows */
+	public long getSize()
+	{
+		long size = OBJECT_HEADER + ARRAY_HEADER + (long) REFERENCE * columns.length;
+		for (Column column : columns)
+		{
+			size += column.getSize();
+		}
+		return size;
+	}
+
+	public Enumeration<IFieldGetter> rows()
+	{
+		return new RowEnumeration();
+	}
+
+	class RowEnumeration implements Enumeration<IFieldGetter>
+	{
+		private final RowFieldGetter row = new RowFieldGetter();
+
+		public boolean hasMoreElements()
+		{
+			return row.row + 1 < rowCount;
+		}
+
+		public IFieldGetter nextElement()
+		{
+			if (!hasMoreElements())
+			{
+				throw new NoSuchElementException();
+			}
+			row.moveNext();
+			return row;
+		}
+	}
+
+	/** Vista de una fila. Es reutilizada por la enumeracion al avanzar a la siguiente fila. */
+	class RowFieldGetter implements IFieldGetter
+	{
+		private int row = -1;
+		private int wasNullHits;
+		private int lastIndex;
+		private final int[] realColIdx = new int[columns.length + 1];
+
+		void moveNext()
+		{
+			row++;
+			wasNullHits = 0;
+			Arrays.fill(realColIdx, -1);
+		}
+
+		private int getColumnIndex(int colIdx)
+		{
+			int index;
+			if (colIdx < realColIdx.length && realColIdx[colIdx] != -1)
+			{
+				index = realColIdx[colIdx];
+			}
+			else
+			{
+				index = colIdx + wasNullHits - 1;
+				if (colIdx < realColIdx.length)
+				{
+					realColIdx[colIdx] = index;
+				}
+			}
+			lastIndex = index + 1;
+			return index;
+		}
+
+		private Column column(int columnIndex)
+		{
+			return columns[getColumnIndex(columnIndex)];
+		}
+
+		public boolean wasNull() throws SQLException
+		{
+			boolean result = ((BooleanColumn) columns[lastIndex]).getBoolean(row);
+			wasNullHits++;
+			return result;
+		}
+
+		public void resetWasNullHits()
+		{
+			wasNullHits = 0;
+		}
+
+		public String getLongVarchar(int columnIndex) throws SQLException
+		{
+			return getVarchar(columnIndex);
+		}
+
+		public String getVarchar(int columnIndex) throws SQLException
+		{
+			Object result = column(columnIndex).getObject(row);
+			return (result == null || result instanceof String) ? (String) result : result.toString();
+		}
+
+		public String getString(int columnIndex, int length) throws SQLException
+		{
+			return getVarchar(columnIndex);
+		}
+
+		public byte getByte(int columnIndex) throws SQLException
+		{
+			return (byte) column(columnIndex).getLong(row);
+		}
+
+		public short getShort(int columnIndex) throws SQLException
+		{
+			return (short) column(columnIndex).getLong(row);
+		}
+
+		public int getInt(int columnIndex) throws SQLException
+		{
+			return (int) column(columnIndex).getLong(row);
+		}
+
+		public long getLong(int columnIndex) throws SQLException
+		{
+			return column(columnIndex).getLong(row);
+		}
+
+		public float getFloat(int columnIndex) throws SQLException
+		{
+			return (float) column(columnIndex).getDouble(row);
+		}
+
+		public double getDouble(int columnIndex) throws SQLException
+		{
+			return column(columnIndex).getDouble(row);
+		}
+
+		public java.util.Date getGXDateTime(int columnIndex) throws SQLException
+		{
+			return getGXDateTime(columnIndex, false);
+		}
+
+		public java.util.Date getGXDateTime(int columnIndex, boolean hasMilliSeconds) throws SQLException
+		{
+			// Igual que en CachedIFieldGetter, el valor se cacheo con el timezone de un cliente y se convierte al del cliente actual
+			java.util.Date val = getGXDate(columnIndex);
+			if (!CommonUtil.nullDate().equals(val))
+			{
+				if (SpecificImplementation.Application.getModelContext() != null && SpecificImplementation.Application.getModelContext().getClientTimeZone() != null && timeZone != null && !CommonUtil.resetTime(val).equals(CommonUtil.nullDate()))
+					val = CommonUtil.ConvertDateTime(val, timeZone, SpecificImplementation.Application.getModelContext().getClientTimeZone());
+			}
+			return val;
+		}
+
+		public java.util.Date getGXDate(int columnIndex) throws SQLException
+		{
+			Object value = column(columnIndex).getObject(row);
+			if (value instanceof Long)
+				return new java.util.Date((Long) value);
+			return (java.util.Date) value;
+		}
+
+		public String getString(int columnIndex) throws SQLException
+		{
+			return getVarchar(columnIndex);
+		}
+
+		public boolean getBoolean(int columnIndex) throws SQLException
+		{
+			return column(columnIndex).getLong(row) != 0;
+		}
+
+		public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException
+		{
+			Object value = column(columnIndex).getObject(row);
+			if (value instanceof Double)
+				return new BigDecimal((Double) value);
+			return (BigDecimal) value;
+		}
+
+		public byte[] getBytes(int columnIndex) throws SQLException
+		{
+			return (byte[]) column(columnIndex).getObject(row);
+		}
+
+		public java.sql.Date getDate(int columnIndex) throws SQLException
+		{
+			return (java.sql.Date) column(columnIndex).getObject(row);
+		}
+
+		public java.sql.Time getTime(int columnIndex) throws SQLException
+		{
+			return (java.sql.Time) column(columnIndex).getObject(row);
+		}
+
+		public java.sql.Timestamp getTimestamp(int columnIndex) throws SQLException
+		{
+			return (java.sql.Timestamp) column(columnIndex).getObject(row);
+		}
+
+		public String getBLOBFile(int columnIndex) throws SQLException
+		{
+			return getString(columnIndex);
+		}
+
+		public String getBLOBFile(int columnIndex, String extension) throws SQLException
+		{
+			return getString(columnIndex);
+		}
+
+		public String getBLOBFile(int columnIndex, String extension, String name) throws SQLException
+		{
+			return getString(columnIndex);
+		}
+
+		public String getMultimediaFile(int columnIndex, String name) throws SQLException
+		{
+			return getString(columnIndex);
+		}
+
+		public String getMultimediaUri(int columnIndex) throws SQLException
+		{
+			return getMultimediaUri(columnIndex, true);
+		}
+
+		public String getMultimediaUri(int columnIndex, boolean absPath) throws SQLException
+		{
+			return getString(columnIndex);
+		}
+
+		public java.util.UUID getGUID(int columnIndex) throws SQLException
+		{
+			Object value = column(columnIndex).getObject(row);
+			if (value instanceof java.util.UUID)
+				return (java.util.UUID) value;
+			return (java.util.UUID) CommonUtil.convertObjectTo(value, com.genexus.TypeConstants.UUID);
+		}
+	}
+
+	static int grow(int capacity, int row)
+	{
+		int newCapacity = Math.max(capacity, INITIAL_CAPACITY);
+		while (newCapacity <= row)
+		{
+			newCapacity += newCapacity >> 1;
+		}
+		return newCapacity;
+	}
+
+	static long stringSize(String s)
+	{
+		return s == null ? 0 : OBJECT_HEADER + 8 + ARRAY_HEADER + 2L * s.length();
+	}
+
+	abstract static class Column implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		abstract void add(int row, Object buffer);
+		abstract void trimToSize(int rows);
+		abstract long getSize();
+
+		long getLong(int row)
+		{
+			throw new ClassCastException(getClass().getSimpleName() + " is not an integral column");
+		}
+
+		double getDouble(int row)
+		{
+			return getLong(row);
+		}
+
+		abstract Object getObject(int row);
+	}
+
+	static class ByteColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private byte[] values = new byte[0];
+
+		void add(int row, Object buffer)
+		{
+			if (row >= values.length) values = Arrays.copyOf(values, grow(values.length, row));
+			values[row] = ((byte[]) buffer)[0];
+		}
+		void trimToSize(int rows) { values = Arrays.copyOf(values, rows); }
+		long getSize() { return ARRAY_HEADER + values.length; }
+		long getLong(int row) { return values[row]; }
+		Object getObject(int row) { return values[row]; }
+	}
+
+	static class CharColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private char[] values = new char[0];
+
+		void add(int row, Object buffer)
+		{
+			if (row >= values.length) values = Arrays.copyOf(values, grow(values.length, row));
+			values[row] = ((char[]) buffer)[0];
+		}
+		void trimToSize(int rows) { values = Arrays.copyOf(values, rows); }
+		long getSize() { return ARRAY_HEADER + 2L * values.length; }
+		long getLong(int row) { return values[row]; }
+		Object getObject(int row) { return values[row]; }
+	}
+
+	static class ShortColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private short[] values = new short[0];
+
+		void add(int row, Object buffer)
+		{
+			if (row >= values.length) values = Arrays.copyOf(values, grow(values.length, row));
+			values[row] = ((short[]) buffer)[0];
+		}
+		void trimToSize(int rows) { values = Arrays.copyOf(values, rows); }
+		long getSize() { return ARRAY_HEADER + 2L * values.length; }
+		long getLong(int row) { return values[row]; }
+		Object getObject(int row) { return values[row]; }
+	}
+
+	static class IntColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private int[] values = new int[0];
+
+		void add(int row, Object buffer)
+		{
+			if (row >= values.length) values = Arrays.copyOf(values, grow(values.length, row));
+			values[row] = ((int[]) buffer)[0];
+		}
+		void trimToSize(int rows) { values = Arrays.copyOf(values, rows); }
+		long getSize() { return ARRAY_HEADER + 4L * values.length; }
+		long getLong(int row) { return values[row]; }
+		Object getObject(int row) { return values[row]; }
+	}
+
+	static class LongColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private long[] values = new long[0];
+
+		void add(int row, Object buffer)
+		{
+			if (row >= values.length) values = Arrays.copyOf(values, grow(values.length, row));
+			values[row] = ((long[]) buffer)[0];
+		}
+		void trimToSize(int rows) { values = Arrays.copyOf(values, rows); }
+		long getSize() { return ARRAY_HEADER + 8L * values.length; }
+		long getLong(int row) { return values[row]; }
+		Object getObject(int row) { return values[row]; }
+	}
+
+	static class FloatColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private float[] values = new float[0];
+
+		void add(int row, Object buffer)
+		{
+			if (row >= values.length) values = Arrays.copyOf(values, grow(values.length, row));
+			values[row] = ((float[]) buffer)[0];
+		}
+		void trimToSize(int rows) { values = Arrays.copyOf(values, rows); }
+		long getSize() { return ARRAY_HEADER + 4L * values.length; }
+		long getLong(int row) { return (long) values[row]; }
+		double getDouble(int row) { return values[row]; }
+		Object getObject(int row) { return values[row]; }
+	}
+
+	static class DoubleColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private double[] values = new double[0];
+
+		void add(int row, Object buffer)
+		{
+			if (row >= values.length) values = Arrays.copyOf(values, grow(values.length, row));
+			values[row] = ((double[]) buffer)[0];
+		}
+		void trimToSize(int rows) { values = Arrays.copyOf(values, rows); }
+		long getSize() { return ARRAY_HEADER + 8L * values.length; }
+		long getLong(int row) { return (long) values[row]; }
+		double getDouble(int row) { return values[row]; }
+		Object getObject(int row) { return values[row]; }
+	}
+
+	/** Bitmap, used for boolean buffers and null indicators */
+	static class BooleanColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private long[] bits = new long[0];
+
+		void add(int row, Object buffer)
+		{
+			if ((row >> 6) >= bits.length) bits = Arrays.copyOf(bits, grow(bits.length, row >> 6));
+			if (((boolean[]) buffer)[0])
+				bits[row >> 6] |= 1L << row;
+		}
+		void trimToSize(int rows) { bits = Arrays.copyOf(bits, (rows + 63) >> 6); }
+		long getSize() { return ARRAY_HEADER + 8L * bits.length; }
+		boolean getBoolean(int row) { return (bits[row >> 6] & (1L << row)) != 0; }
+		long getLong(int row) { return getBoolean(row) ? 1 : 0; }
+		Object getObject(int row) { return getBoolean(row); }
+	}
+
+	/** Dictionary encoded strings, repeated values are stored once */
+	static class StringColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private int[] codes = new int[0];
+		private ArrayList<String> dictionary = new ArrayList<String>();
+		private transient HashMap<String, Integer> lookup = new HashMap<String, Integer>();
+		private long dictionarySize;
+
+		void add(int row, Object buffer)
+		{
+			if (row >= codes.length) codes = Arrays.copyOf(codes, grow(codes.length, row));
+			String value = ((String[]) buffer)[0];
+			if (lookup == null)
+			{ // Rows added after trimToSize or deserialization
+				lookup = new HashMap<String, Integer>();
+				for (int i = 0; i < dictionary.size(); i++)
+				{
+					lookup.put(dictionary.get(i), i);
+				}
+			}
+			Integer code = lookup.get(value);
+			if (code == null)
+			{
+				code = dictionary.size();
+				dictionary.add(value);
+				lookup.put(value, code);
+				dictionarySize += REFERENCE + stringSize(value);
+			}
+			codes[row] = code;
+		}
+		void trimToSize(int rows)
+		{
+			codes = Arrays.copyOf(codes, rows);
+			dictionary.trimToSize();
+			lookup = null;
+		}
+		long getSize()
+		{
+			long size = ARRAY_HEADER + 4L * codes.length + OBJECT_HEADER + ARRAY_HEADER + dictionarySize;
+			if (lookup != null)
+				size += 32L * lookup.size();
+			return size;
+		}
+		Object getObject(int row) { return dictionary.get(codes[row]); }
+	}
+
+	/** java.util.Date kept as milliseconds, nulls in a bitmap and subclasses kept apart */
+	static class DateColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private long[] millis = new long[0];
+		private final BooleanColumn nulls = new BooleanColumn();
+		private HashMap<Integer, java.util.Date> others;
+
+		void add(int row, Object buffer)
+		{
+			if (row >= millis.length) millis = Arrays.copyOf(millis, grow(millis.length, row));
+			java.util.Date value = ((java.util.Date[]) buffer)[0];
+			nulls.add(row, new boolean[]{ value == null });
+			if (value != null && value.getClass() == java.util.Date.class)
+			{
+				millis[row] = value.getTime();
+			}
+			else if (value != null)
+			{
+				if (others == null)
+					others = new HashMap<Integer, java.util.Date>();
+				others.put(row, value);
+			}
+		}
+		void trimToSize(int rows)
+		{
+			millis = Arrays.copyOf(millis, rows);
+			nulls.trimToSize(rows);
+		}
+		long getSize()
+		{
+			return ARRAY_HEADER + 8L * millis.length + nulls.getSize() + (others == null ? 0 : 64L * others.size());
+		}
+		Object getObject(int row)
+		{
+			if (nulls.getBoolean(row))
+				return null;
+			if (others != null && others.containsKey(row))
+				return others.get(row);
+			return new java.util.Date(millis[row]);
+		}
+	}
+
+	static class ObjectColumn extends Column
+	{
+		private static final long serialVersionUID = 1L;
+		private Object[] values = new Object[0];
+		private long valuesSize;
+
+		void add(int row, Object buffer)
+		{
+			if (row >= values.length) values = Arrays.copyOf(values, grow(values.length, row));
+			Object value = ((Object[]) buffer)[0];
+			values[row] = value;
+			valuesSize += estimateSize(value);
+		}
+		void trimToSize(int rows) { values = Arrays.copyOf(values, rows); }
+		long getSize() { return ARRAY_HEADER + (long) REFERENCE * values.length + valuesSize; }
+		long getLong(int row) { return ((Number) values[row]).longValue(); }
+		double getDouble(int row) { return ((Number) values[row]).doubleValue(); }
+		Object getObject(int row) { return values[row]; }
+
+		private static long estimateSize(Object value)
+		{
+			if (value == null)
+				return 0;
+			if (value instanceof byte[])
+				return ARRAY_HEADER + ((byte[]) value).length;
+			if (value instanceof String)
+				return stringSize((String) value);
+			if (value instanceof BigDecimal)
+				return OBJECT_HEADER + 24 + ((BigDecimal) value).unscaledValue().bitLength() / 8;
+			return OBJECT_HEADER + 16;
+		}
+	}
+}
@@ -3,12 +3,13 @@ package com.genexus.db;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.genexus.*;
 import com.genexus.db.driver.DataSource;
@@ -20,23 +21,28 @@ import com.genexus.performance.DataStoreProviderInfo;
 import com.genexus.performance.DataStoreProviderJMX;
 import com.genexus.performance.DataStoreProvidersJMX;
 import com.genexus.performance.SentenceInfo;
+import com.genexus.performance.SentenceMetrics;
 
 public class DataStoreProvider extends DataStoreProviderBase implements
 		IDataStoreProvider {
 	protected ILocalDataStoreHelper helper;
 
 	// JMX Properties
-	private static AtomicLong sentenceCount = new AtomicLong(0);
-	private static AtomicLong sentenceSelectCount = new AtomicLong(0);
-	private static AtomicLong sentenceUpdateCount = new AtomicLong(0);
-	private static AtomicLong sentenceDeleteCount = new AtomicLong(0);
-	private static AtomicLong sentenceInsertCount = new AtomicLong(0);
-	private static AtomicLong sentenceCallCount = new AtomicLong(0);
-	private static AtomicLong sentenceDirectSQLCount = new AtomicLong(0);
+	private static LongAdder sentenceCount = new LongAdder();
+	private static LongAdder sentenceSelectCount = new LongAdder();
+	private static LongAdder sentenceUpdateCount = new LongAdder();
+	private static LongAdder sentenceDeleteCount = new LongAdder();
+	private static LongAdder sentenceInsertCount = new LongAdder();
+	private static LongAdder sentenceCallCount = new LongAdder();
+	private static LongAdder sentenceDirectSQLCount = new LongAdder();
 	private static ConcurrentHashMap<String, DataStoreProviderInfo> dataStoreProviders = new ConcurrentHashMap<String, DataStoreProviderInfo>();
 
 	private static AtomicBoolean firstTime = new AtomicBoolean(true);
 
+	private final DataStoreProviderInfo dsInfo;
+	private final boolean sentenceMetrics;
+	private SentenceInfo[] sentenceInfos;
+
 	public DataStoreProvider(ModelContext context, int remoteHandle, ILocalDataStoreHelper helper, Object[] buffers)
 	{
 		super(context, remoteHandle);
@@ -55,6 +61,8 @@ public class DataStoreProvider extends DataStoreProviderBase implements
 
 		//JMX
 		addDataStoreProviderInfo(helper.getClass().getName());
+		dsInfo = getDataStoreProviderInfo(helper.getClass().getName());
+		sentenceMetrics = Application.isJMXEnabled() || SentenceMetrics.isEnabled();
 
 	}
 
@@ -116,6 +124,35 @@ public class DataStoreProvider extends DataStoreProviderBase implements
                     }
                 } while (context.globals.Gx_eop ==DefaultExceptionErrorHandler.ERROPT_RETRY);
 
+                flushBatchesIfFull(cursorIdx);
+	}
+
+	private int batchFlushRecords = -1;
+	private long batchFlushBytes;
+
+	/** Si los batch pendientes de la conexion pasan los limites de BATCH_FLUSH_RECORDS o BATCH_FLUSH_KB
+	 *  se ejecutan todos juntos sin esperar a llenar cada uno o al commit.
+	 */
+	private void flushBatchesIfFull(int cursorIdx)
+	{
+		if (batchFlushRecords == -1)
+		{
+			Preferences preferences = Preferences.getDefaultPreferences();
+			batchFlushRecords = preferences.getBATCH_FLUSH_RECORDS();
+			batchFlushBytes = preferences.getBATCH_FLUSH_KB() * 1024L;
+		}
+		if (batchFlushRecords == 0 && batchFlushBytes == 0)
+			return;
+		try
+		{
+			GXConnection con = Application.getConnectionManager(context).getConnection(context, remoteHandle, helper.getDataStoreName(), false, true);
+			if (con.isBatchFull(batchFlushRecords, batchFlushBytes))
+				con.flushPendingBatchCursors();
+		}
+		catch (SQLException e)
+		{
+			DefaultExceptionErrorHandler.handleSQLError(errorHandler, e, context, remoteHandle, helper, cursors[cursorIdx]);
+		}
 	}
 	public void initializeBatch(int cursorIdx, int batchSize, Object instance, String method)
 	{
@@ -214,10 +251,12 @@ public class DataStoreProvider extends DataStoreProviderBase implements
 		
 
 		//JMX Counter
-		if (Application.isJMXEnabled())
+		SentenceInfo sInfo = null;
+		long beginExecuteNanos = 0;
+		if (sentenceMetrics)
 		{
-			beginExecute = new Date();
-			incSentencesCount(helper.getClass().getName(), cursor);
+			sInfo = incSentencesCount(cursorIdx, cursor);
+			beginExecuteNanos = System.nanoTime();
 		}
                 int retryCount=0;
                 DataSource ds = getDataSourceNoException();
@@ -398,8 +437,8 @@ public class DataStoreProvider extends DataStoreProviderBase implements
 		dynConstraints = null;
 
 		//JMX Counter
-		if (Application.isJMXEnabled())
-			endExecute(helper.getClass().getName(), cursor);
+		if (sInfo != null)
+			endExecute(sInfo, beginExecuteNanos);
 	}
 	
 		private void setParameters(int cursorIdx, Object[] parms, Cursor cursor,
@@ -506,7 +545,7 @@ public class DataStoreProvider extends DataStoreProviderBase implements
 					if(cacheValue != null && cacheValue[cursorIdx] != null)
 					{ // Si llegamos al final del resultSet, y estabamos cacheando, metemos
 					  // el CacheValue al cache
-						CacheFactory.getInstance().set(CacheFactory.CACHE_DB, cacheValue[cursorIdx].getKey().toString(),  cacheValue[cursorIdx]);
+						CacheFactory.set(CacheFactory.CACHE_DB, cacheValue[cursorIdx].getKey(), cacheValue[cursorIdx], cacheValue[cursorIdx].getExpiryTimeSeconds());
 					}
 				}
 			}
@@ -559,8 +598,8 @@ public class DataStoreProvider extends DataStoreProviderBase implements
 																					// CacheValue
 																					// al
 																					// cache
-					CacheFactory.getInstance().set(CacheFactory.CACHE_DB,
-							cacheValue[cursorIdx].getKey().toString(),
+					CacheFactory.set(CacheFactory.CACHE_DB,
+							cacheValue[cursorIdx].getKey(),
 							cacheValue[cursorIdx],
 							cacheValue[cursorIdx].getExpiryTimeSeconds());
 					cacheValue[cursorIdx] = null;
@@ -709,97 +748,92 @@ public class DataStoreProvider extends DataStoreProviderBase implements
 		((UserInformation)DBConnectionManager.getInstance().getUserInformation(remoteHandle)).setLastObjectExecuted(getHelper().getClass().getName());
 	}
 
-	void incSentencesCount(String key, Cursor cursor)
+	/** La sentencia y su tipo se resuelven una vez por cursor, no en cada ejecucion */
+	private SentenceInfo getSentenceInfo(int cursorIdx, Cursor cursor)
 	{
-
-		DataStoreProviderInfo dsInfo = getDataStoreProviderInfo(key);
-		dsInfo.incSentenceCount();
-		SentenceInfo sInfo;
-		if (cursor.dynStatement) {
-			sInfo = dsInfo.addSentenceInfo(key + "_" + cursor.mCursorId, key
-					+ "_" + cursor.mCursorId + "_" + cursor.mSQLSentence);
-		} else {
-			sInfo = dsInfo.addSentenceInfo(key + "_" + cursor.mCursorId,
-					cursor.mSQLSentence);
+		if (sentenceInfos == null)
+			sentenceInfos = new SentenceInfo[cursors.length];
+		SentenceInfo sInfo = sentenceInfos[cursorIdx];
+		if (sInfo == null)
+		{
+			sInfo = dsInfo.getCursorSentenceInfo(cursor.mCursorId);
+			if (sInfo == null)
+			{
+				String sqlSentence = cursor.dynStatement ? dsInfo.getName() + "_" + cursor.mCursorId + "_" + cursor.mSQLSentence : cursor.mSQLSentence;
+				sInfo = dsInfo.addCursorSentenceInfo(cursor.mCursorId, sqlSentence, sentenceKind(cursor));
+			}
+			sentenceInfos[cursorIdx] = sInfo;
 		}
-		sInfo.incSentenceCount();
+		return sInfo;
+	}
 
-		String sqlSnt = cursor.mSQLSentence;
-		sentenceCount.incrementAndGet();
+	private static int sentenceKind(Cursor cursor)
+	{
+		if (cursor instanceof DirectStatement)
+			return SentenceInfo.KIND_DIRECT_SQL;
+		if (cursor instanceof CallCursor)
+			return SentenceInfo.KIND_CALL;
+		if (cursor.dynStatement)
+			return SentenceInfo.KIND_SELECT;
+		return SentenceInfo.kindOf(cursor.mSQLSentence);
+	}
 
-		while (true) {
-			if (cursor instanceof DirectStatement) {
-				sentenceDirectSQLCount.incrementAndGet();
-				dsInfo.incSentenceDirectSQLCount();
-				break;
-			}
-			if (cursor instanceof CallCursor) {
-				sentenceCallCount.incrementAndGet();
-				dsInfo.incSentenceCallCount();
-				break;
-			}
-			if (cursor.dynStatement
-					|| sqlSnt.toUpperCase().startsWith("SELECT")) {
-				sentenceSelectCount.incrementAndGet();
-				dsInfo.incSentenceSelectCount();
-				break;
-			}
-			if (sqlSnt.toUpperCase().startsWith("UPDATE")) {
-				sentenceUpdateCount.incrementAndGet();
-				dsInfo.incSentenceUpdateCount();
-				break;
-			}
-			if (sqlSnt.toUpperCase().startsWith("DELETE")) {
-				sentenceDeleteCount.incrementAndGet();
-				dsInfo.incSentenceDeleteCount();
-				break;
-			}
-			if (sqlSnt.toUpperCase().startsWith("INSERT")) {
-				sentenceInsertCount.incrementAndGet();
-				dsInfo.incSentenceInsertCount();
-				break;
-			}
-			break;
+	SentenceInfo incSentencesCount(int cursorIdx, Cursor cursor)
+	{
+		SentenceInfo sInfo = getSentenceInfo(cursorIdx, cursor);
+		sInfo.incSentenceCount();
+		dsInfo.incSentenceCount(sInfo.getKind());
+		sentenceCount.increment();
+		switch (sInfo.getKind())
+		{
+			case SentenceInfo.KIND_SELECT: sentenceSelectCount.increment(); break;
+			case SentenceInfo.KIND_UPDATE: sentenceUpdateCount.increment(); break;
+			case SentenceInfo.KIND_DELETE: sentenceDeleteCount.increment(); break;
+			case SentenceInfo.KIND_INSERT: sentenceInsertCount.increment(); break;
+			case SentenceInfo.KIND_CALL: sentenceCallCount.increment(); break;
+			case SentenceInfo.KIND_DIRECT_SQL: sentenceDirectSQLCount.increment(); break;
+			default: break;
 		}
+		return sInfo;
 	}
 
-	protected void endExecute(String key, Cursor cursor) {
-		if (con != null)
+	protected void endExecute(SentenceInfo sInfo, long beginExecuteNanos) {
+		if (con != null && Application.isJMXEnabled())
 			con.setFinishExecute(true);
 
-		DataStoreProviderInfo dsInfo = getDataStoreProviderInfo(key);
-		SentenceInfo sInfo = dsInfo.getSentenceInfo(key + "_"
-				+ cursor.mCursorId);
-		sInfo.setTimeExecute((System.currentTimeMillis() - this.beginExecute
-				.getTime()));
+		sInfo.setTimeExecuteNanos(System.nanoTime() - beginExecuteNanos);
+	}
+
+	public static Collection<DataStoreProviderInfo> getDataStoreProviderInfos() {
+		return dataStoreProviders.values();
 	}
 
 	public static long getSentenceCount() {
-		return sentenceCount.get();
+		return sentenceCount.sum();
 	}
 
 	public static long getSentenceSelectCount() {
-		return sentenceSelectCount.get();
+		return sentenceSelectCount.sum();
 	}
 
 	public static long getSentenceUpdateCount() {
-		return sentenceUpdateCount.get();
+		return sentenceUpdateCount.sum();
 	}
 
 	public static long getSentenceDeleteCount() {
-		return sentenceDeleteCount.get();
+		return sentenceDeleteCount.sum();
 	}
 
 	public static long getSentenceInsertCount() {
-		return sentenceInsertCount.get();
+		return sentenceInsertCount.sum();
 	}
 
 	public static long getSentenceCallCount() {
-		return sentenceCallCount.get();
+		return sentenceCallCount.sum();
 	}
 
 	public static long getSentenceDirectSQLCount() {
-		return sentenceDirectSQLCount.get();
+		return sentenceDirectSQLCount.sum();
 	}
 
 	public static void dumpTxt() {
@@ -811,13 +845,13 @@ public class DataStoreProvider extends DataStoreProviderBase implements
 									+ ".log", true));
 			out.println("DataStoreProviders Information");
 			out.println("");
-			out.println("Number of sentences : " + sentenceCount.get());
-			out.println("Number of select sentences : " + sentenceSelectCount.get());
-			out.println("Number of update sentences : " + sentenceUpdateCount.get());
-			out.println("Number of delete sentences : " + sentenceDeleteCount.get());
-			out.println("Number of insert sentences : " + sentenceInsertCount.get());
-			out.println("Number of CALL sentences : " + sentenceCallCount.get());
-			out.println("Number of direct SQL sentences : " + sentenceDirectSQLCount.get());
+			out.println("Number of sentences : " + sentenceCount.sum());
+			out.println("Number of select sentences : " + sentenceSelectCount.sum());
+			out.println("Number of update sentences : " + sentenceUpdateCount.sum());
+			out.println("Number of delete sentences : " + sentenceDeleteCount.sum());
+			out.println("Number of insert sentences : " + sentenceInsertCount.sum());
+			out.println("Number of CALL sentences : " + sentenceCallCount.sum());
+			out.println("Number of direct SQL sentences : " + sentenceDirectSQLCount.sum());
 			out.println("");
 			out.println("");
 			for (Enumeration en = dataStoreProviders.elements(); en.hasMoreElements(); )
@@ -840,17 +874,17 @@ public class DataStoreProvider extends DataStoreProviderBase implements
 		com.genexus.xml.XMLWriter writer = new com.genexus.xml.XMLWriter();
 		writer.xmlStart(fileName);
 		writer.writeStartElement("DataStoreProviders_Information");
-		writer.writeElement("Total_SQLStatementCount", sentenceCount.get());
+		writer.writeElement("Total_SQLStatementCount", sentenceCount.sum());
 		writer.writeElement("Select_SQLStatementCount",
-				sentenceSelectCount.get());
+				sentenceSelectCount.sum());
 		writer.writeElement("Update_SQLStatementCount",
-				sentenceUpdateCount.get());
+				sentenceUpdateCount.sum());
 		writer.writeElement("Delete_SQLStatementCount",
-				sentenceDeleteCount.get());
+				sentenceDeleteCount.sum());
 		writer.writeElement("Insert_SQLStatementCount",
-				sentenceInsertCount.get());
-		writer.writeElement("StoredProcedureCount", sentenceCallCount.get());
-		writer.writeElement("SQLCommandCount", sentenceDirectSQLCount.get());
+				sentenceInsertCount.sum());
+		writer.writeElement("StoredProcedureCount", sentenceCallCount.sum());
+		writer.writeElement("SQLCommandCount", sentenceDirectSQLCount.sum());
 		for (Enumeration<DataStoreProviderInfo> en = dataStoreProviders
 				.elements(); en.hasMoreElements();) {
 			DataStoreProviderInfo dsInfo = (DataStoreProviderInfo) en
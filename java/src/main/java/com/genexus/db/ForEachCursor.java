@@ -11,7 +11,9 @@ import com.genexus.DebugFlag;
 import com.genexus.Preferences;
 import com.genexus.common.classes.AbstractDataSource;
 import com.genexus.common.classes.AbstractDataStoreProviderBase;
+import com.genexus.db.driver.AdaptiveFetchSize;
 import com.genexus.db.driver.DataSource;
+import com.genexus.db.driver.GXDBMS;
 import com.genexus.db.driver.GXDBDebug;
 import com.genexus.db.driver.GXResultSet;
 
@@ -32,6 +34,8 @@ public class ForEachCursor extends Cursor implements IForEachCursor
 	private boolean isCachingEnabled;
 	private int fetchSize;
 	private final Object syncResultSet = new Object();
+	private boolean isAdaptiveFetchEnabled;
+	private int maxFetchSize;
 
 	public ForEachCursor(String cursorId, String sqlSentence, boolean currentOf, int errMask, boolean hold, IDataStoreHelper parent, int cacheableLevel, boolean isForFirst)
 	{
@@ -44,6 +48,7 @@ public class ForEachCursor extends Cursor implements IForEachCursor
 		if (com.genexus.ClientContext.getModelContext() != null)
 		{
 			isCachingEnabled = Preferences.getDefaultPreferences().getCACHING()|| CacheFactory.getForceHighestTimetoLive();
+			isAdaptiveFetchEnabled = Preferences.getDefaultPreferences().getADAPTIVE_FETCH_SIZE();
 		}
 		else
 		{
@@ -134,10 +139,10 @@ public class ForEachCursor extends Cursor implements IForEachCursor
 				connectionProvider.cacheIterator = new java.util.Enumeration[connectionProvider.cursors.length];
 			}
 			CacheKey ckey = new CacheKey(sentence[0], params);
-			CacheValue cacheValue = CacheFactory.getInstance().<CacheValue>get(CacheFactory.CACHE_DB, ckey.toString(), CacheValue.class);
+			CacheValue cacheValue = CacheFactory.get(CacheFactory.CACHE_DB, ckey, CacheValue.class);
 			Enumeration cacheIterator = null;
 			
-			if (cacheValue!=null && ckey.equals(cacheValue.getKey())) //Chequeo extra por probabilidad de colision en algoritmo de encriptado SHA1
+			if (cacheValue!=null && ckey.equals(cacheValue.getKey())) //Chequeo extra por probabilidad de colision en el hash de la key
 				cacheIterator = cacheValue.getIterator();
 			
 			connectionProvider.cacheIterator[cursorNum] = cacheIterator;
@@ -157,13 +162,24 @@ public class ForEachCursor extends Cursor implements IForEachCursor
 		}
 
 		mPreparedStatement = SentenceProvider.getPreparedStatement(connectionProvider, mCursorId, sentence[0], currentOf);
-		if (fetchSize != 0)
+		GXDBMS dbms = ds.dbms;
+		maxFetchSize = (isAdaptiveFetchEnabled && dbms != null) ? dbms.getMaxFetchSize() : 0;
+		if (maxFetchSize > 0)
+		{ // El fetch size se fija antes del execute porque algunos drivers (postgresql) deciden ahi si traen todo el resultado
+			mPreparedStatement.setFetchSize(getInitialFetchSize());
+		}
+		else if (fetchSize != 0)
 		{
 			mPreparedStatement.setFetchSize(fetchSize);
 		}
 		return hasValues;
 	}
 	
+	private int getInitialFetchSize()
+	{
+		return Math.min(maxFetchSize, fetchSize != 0 ? fetchSize : AdaptiveFetchSize.INITIAL_FETCH_SIZE);
+	}
+
 	private Object [] getParams(byte [] hasValues, Object [] parms)
 	{
 				Object[] parmsNew = new Object[parms.length + hasValues.length];
@@ -181,6 +197,10 @@ public class ForEachCursor extends Cursor implements IForEachCursor
 			return;
 		}
 		GXResultSet newSet = (GXResultSet) mPreparedStatement.executeQuery(hold);
+		if (maxFetchSize > 0)
+		{
+			newSet.setAdaptiveFetchSize(getInitialFetchSize(), maxFetchSize);
+		}
 		synchronized (syncResultSet) {
 			rslt = newSet;
 		}
@@ -1,43 +1,53 @@
 package com.genexus.db;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.genexus.Application;
 import com.genexus.CommonUtil;
-import com.genexus.ICacheService2;
+import com.genexus.ICacheService3;
 import com.genexus.Preferences;
 import com.genexus.management.CacheItemJMX;
 import com.genexus.management.CacheJMX;
-import com.genexus.util.DoubleLinkedQueue;
 
 
-public class InProcessCache implements ICacheService2
+public class InProcessCache implements ICacheService3, CacheEvictionPolicy.EvictionListener
 {
 	protected long cacheStorageSize;
-	protected long currentSize;
-	protected int cacheDrops;
+	protected final LongAdder currentSize = new LongAdder();
+	protected final LongAdder cacheDrops = new LongAdder();
 	protected boolean cacheEnabled;
-	protected DoubleLinkedQueue lru = new DoubleLinkedQueue();
+	protected volatile CacheEvictionPolicy evictionPolicy;
 
 	private static final boolean DEBUG = com.genexus.DebugFlag.DEBUG;
-	private ConcurrentHashMap<String, CacheValue> cache = new ConcurrentHashMap<String, CacheValue>();
-	private Object lockObject = new Object();
+	private ConcurrentHashMap<Object, CacheValue> cache = new ConcurrentHashMap<Object, CacheValue>();
+	// Keys binarias de cada cacheid, para que clearCache no recorra todo el cache
+	private final ConcurrentHashMap<String, Set<Object>> keysByCacheId = new ConcurrentHashMap<String, Set<Object>>();
 
 	public InProcessCache()
 	{
 		Preferences prefs = Preferences.getDefaultPreferences();
 
-		cacheStorageSize = prefs.getCACHE_STORAGE_SIZE() * 1024;
 		cacheEnabled = prefs.getCACHING();
+		setCacheStorageSize(prefs.getCACHE_STORAGE_SIZE() * 1024);
 
 		//JMX Enabled
 		if (Application.isJMXEnabled())
 			CacheJMX.CreateCacheJMX(this);
 	}
 
+	/** Cache local con un tamaño maximo en bytes, usado como primer nivel de un NearCache.
+	 *  Siempre habilitado y sin MBean propio, lo publica el NearCache.
+	 */
+	public InProcessCache(long cacheStorageSize)
+	{
+		cacheEnabled = true;
+		setCacheStorageSize(cacheStorageSize);
+	}
+
 	public boolean isEnabled()
 	{
 		return cacheEnabled;
@@ -48,14 +58,31 @@ public class InProcessCache implements ICacheService2
 		cacheEnabled = value;
 	}
 
-	public ConcurrentHashMap<String, CacheValue> getCache()
+	public ConcurrentHashMap<Object, CacheValue> getCache()
 	{
 		return cache;
 	}
 
-	public void setCacheStorageSize(long cacheStorageSize)
+	public synchronized void setCacheStorageSize(long cacheStorageSize)
 	{
 		this.cacheStorageSize = cacheStorageSize;
+		if (cacheStorageSize <= 0)
+		{
+			evictionPolicy = null;
+		}
+		else if (evictionPolicy != null)
+		{
+			evictionPolicy.setMaximum(cacheStorageSize);
+		}
+		else
+		{
+			CacheEvictionPolicy policy = new CacheEvictionPolicy(cacheStorageSize, this);
+			for (Map.Entry<Object, CacheValue> entry : cache.entrySet())
+			{
+				policy.recordInsert(entry.getKey(), entry.getValue());
+			}
+			evictionPolicy = policy;
+		}
 	}
 
 	public long getCacheStorageSize()
@@ -65,12 +92,12 @@ public class InProcessCache implements ICacheService2
 
 	public long getCacheCurrentSize()
 	{
-		return currentSize;
+		return currentSize.sum();
 	}
 
 	public int getCacheDrops()
 	{
-		return cacheDrops;
+		return cacheDrops.intValue();
 	}
 
 	public <T> T get(String cacheid, String key, Class<T> type)
@@ -88,15 +115,40 @@ public class InProcessCache implements ICacheService2
 		return values;
 	}
 
-	@SuppressWarnings("unchecked")
+	/** Las entradas guardadas por CacheKey usan la key binaria directamente en el mapa,
+	 *  sin el prefijo del cacheid, por eso se verifica el cacheid guardado en el value
+	 */
+	public <T> T get(String cacheid, CacheKey key, Class<T> type)
+	{
+		CacheValue value = cache.get(key);
+		if(value != null && !cacheid.equals(value.getCacheId()))
+		{
+			return null;
+		}
+		return get(key, value, type);
+	}
+
+	public <T> List<T> getAll(String cacheid, CacheKey[] keys, Class<T> type)
+	{
+		List<T> values = new ArrayList<T>(keys.length);
+		for (CacheKey key : keys) {
+			values.add(get(cacheid, key, type));
+		}
+		return values;
+	}
+
 	private <T> T get(String key, Class<T> type)
 	{
 		if(DEBUG)
 		{
 			getStatsFor(key).hits++;
 		}
-		CacheValue value = cache.get(key);
+		return get(key, cache.get(key), type);
+	}
 
+	@SuppressWarnings("unchecked")
+	private <T> T get(Object key, CacheValue value, Class<T> type)
+	{
 		if(value == null)
 		{
 			return null;
@@ -111,13 +163,14 @@ public class InProcessCache implements ICacheService2
 			else
 			{
 				// If cache limit
-				if (cacheStorageSize != 0) {
-					lru.moveToStart(value); // Muevo el item al comienzo de la LRU
+				CacheEvictionPolicy policy = evictionPolicy;
+				if (policy != null) {
+					policy.recordAccess(key); // Registro el acceso, la LRU se actualiza en diferido
 				}
-				value.incHits(); //TODO: this is not thread safe, we can miss hits for a value.
+				value.incHits();
 				if(DEBUG)
 				{
-					getStatsFor(key).hitsAfterFullLoaded++;
+					getStatsFor(value).hitsAfterFullLoaded++;
 				}
 	
 				if ( type.isInstance(value) ) {
@@ -137,23 +190,44 @@ public class InProcessCache implements ICacheService2
 			CacheJMX.DestroyCacheJMX();
 	}
 	
-	public void clearKey(String key, CacheValue value) {
-		if (value!=null)
+	public void clearKey(Object key, CacheValue value) {
+		if (value!=null && cache.remove(key, value))
 		{
+			unindex(key, value);
 			if(DEBUG)
 			{
 				getStatsFor(value).removeFromStats(value);
 			}
-			if (cacheStorageSize != 0) {
-				synchronized (lockObject) {
-					lru.remove(value);
-					currentSize -= value.getSize();
-				}
+			currentSize.add(-value.getSize());
+			CacheEvictionPolicy policy = evictionPolicy;
+			if (policy != null) {
+				policy.recordRemoval(key, value);
+			}
+			//JMX Remove
+			if (Application.isJMXEnabled())
+				CacheItemJMX.DestroyCacheItemJMX(value);
+		}
+	}
+
+	public boolean isMapped(Object key, CacheValue value) {
+		return cache.get(key) == value;
+	}
+
+	/** Invocado por la politica de desalojo cuando el cache excede CACHE_STORAGE_SIZE
+	 */
+	public void onEviction(Object key, CacheValue value) {
+		if (cache.remove(key, value))
+		{
+			unindex(key, value);
+			currentSize.add(-value.getSize());
+			cacheDrops.increment();
+			if(DEBUG)
+			{
+				getStatsFor(value).removeFromStats(value);
 			}
 			//JMX Remove
 			if (Application.isJMXEnabled())
 				CacheItemJMX.DestroyCacheItemJMX(value);
-			cache.remove(key);
 		}
 	}
 	
@@ -191,6 +265,21 @@ public class InProcessCache implements ICacheService2
 		}	
 	}
 
+	public <T> void set(String cacheid, CacheKey key, T value, int expirationSeconds)
+	{
+		CacheValue cvalue;
+		if (value instanceof CacheValue)
+			cvalue = (CacheValue)value;
+		else
+		{
+			cvalue = new CacheValue(key.getKey(), key.getParameters());
+			cvalue.addItem(value);
+			cvalue.setExpiryTime(expirationSeconds);
+		}
+		cvalue.setCacheId(cacheid);
+		add(key, cvalue);
+	}
+
 	public <T> void set(String cacheid, String key, T value) {
 		set(getKey(cacheid, key), value, Preferences.TTL_NO_EXPIRY);		
 	}
@@ -214,15 +303,63 @@ public class InProcessCache implements ICacheService2
 	}
 
 	public void clear(String cacheid, String key) {
-		cache.remove(getKey(cacheid, key));
+		clearKey(getKey(cacheid, key));
 	}
 
 	public void clearCache(String cacheid) {
 		set(cacheid,Long.valueOf(CommonUtil.now().getTime()));
+		Set<Object> keys = keysByCacheId.remove(cacheid);
+		if (keys != null) {
+			for (Object key : keys) {
+				CacheValue value = cache.get(key);
+				if (value != null && cacheid.equals(value.getCacheId())) {
+					clearKey(key, value);
+				}
+			}
+		}
 	}
 
 	public void clearAllCaches() {
-		cache.clear();
+		CacheEvictionPolicy policy = evictionPolicy;
+		if (policy != null) {
+			policy.clear();
+		}
+		// El indice se vacia antes, una key que quede en el sin entrada en el cache no molesta
+		keysByCacheId.clear();
+		for (Map.Entry<Object, CacheValue> entry : cache.entrySet()) {
+			if (cache.remove(entry.getKey(), entry.getValue())) {
+				currentSize.add(-entry.getValue().getSize());
+			}
+		}
+	}
+
+	private void index(Object key, CacheValue value)
+	{
+		String cacheid = value.getCacheId();
+		if (key instanceof CacheKey && cacheid != null)
+		{
+			Set<Object> keys = keysByCacheId.get(cacheid);
+			if (keys == null)
+			{
+				Set<Object> newKeys = ConcurrentHashMap.newKeySet();
+				keys = keysByCacheId.putIfAbsent(cacheid, newKeys);
+				if (keys == null)
+					keys = newKeys;
+			}
+			keys.add(key);
+		}
+	}
+
+	private void unindex(Object key, CacheValue value)
+	{
+		String cacheid = value.getCacheId();
+		if (key instanceof CacheKey && cacheid != null)
+		{
+			Set<Object> keys = keysByCacheId.get(cacheid);
+			// Si otro thread la volvio a agregar mientras se borraba, queda en el indice
+			if (keys != null && keys.remove(key) && cache.containsKey(key))
+				keys.add(key);
+		}
 	}
 	
 	private Long getKeyPrefix(String cacheid)
@@ -254,81 +391,45 @@ public class InProcessCache implements ICacheService2
 	}
 	/** Agrega un cacheValue al cache
 	 */
-	private void add(String key, CacheValue value)
+	private void add(Object key, CacheValue value)
 	{
 		//JMX Enabled
 		if (Application.isJMXEnabled())
 			CacheItemJMX.CreateCacheItemJMX(value);
 
+		value.trimToSize();
 		value.setTimestamp();
-		cache.put(key, value);
+		CacheValue previous = cache.put(key, value);
+		index(key, value);
 
-		synchronized (lockObject) {
-			if(DEBUG)
-			{
-				getStatsFor(value).addToStats(value);
-				getStatsFor(value).TTL = value.getExpiryTimeMilliseconds();
-			}
-			currentSize += value.getSize();
+		if(DEBUG)
+		{
+			getStatsFor(value).addToStats(value);
+			getStatsFor(value).TTL = value.getExpiryTimeMilliseconds();
 		}
-		// Si el tamaño del cache excede el CacheMaximumSize debemos eliminar los mas viejos
-		ensureCacheSize();
-		if (cacheStorageSize != 0) {
-			lru.insert(value); // Agreo el item en la LRU
+		currentSize.add(value.getSize());
+		if (previous != null && previous != value)
+		{
+			currentSize.add(-previous.getSize());
+			//JMX Remove
+			if (Application.isJMXEnabled())
+				CacheItemJMX.DestroyCacheItemJMX(previous);
 		}
-
-	}
-
-	private void ensureCacheSize() {
-		if (cacheStorageSize > 0) {
-			synchronized (lockObject) {
-				while (currentSize > cacheStorageSize)
-					{
-						CacheValue item = (CacheValue)lru.takeFromEnd();
-						if(item == null)
-						{
-							break;
-						}
-						currentSize -= item.getSize();
-
-						//JMX Remove
-						if (Application.isJMXEnabled())
-							CacheItemJMX.DestroyCacheItemJMX(item);
-
-						cache.remove(item.getKey().getKey());
-						cacheDrops++;
-						if(DEBUG)
-						{
-							getStatsFor(item).removeFromStats(item);
-						}
-					}	
-			}
+		// Si el tamaño del cache excede el CacheMaximumSize la politica elimina los menos usados
+		CacheEvictionPolicy policy = evictionPolicy;
+		if (policy != null) {
+			policy.recordInsert(key, value);
 		}
-	
 	}
 
 	public void removeExpiredEntries()
 	{
-		for(Enumeration<CacheValue> enum1 = cache.elements(); enum1.hasMoreElements();)
+		for(Map.Entry<Object, CacheValue> entry : cache.entrySet())
 		{
-			CacheValue value = (CacheValue)enum1.nextElement();
+			CacheValue value = entry.getValue();
 			if(value.hasExpired())
 			{
-				if(DEBUG)
-				{
-					String key = value.getKey().getKey();
-					getStatsFor(value).removeFromStats(value);
-				}
-				if (cacheStorageSize != 0) {
-					lru.remove(value);
-				}
-				currentSize -= value.getSize();
-
-				//JMX Remove
-				if (Application.isJMXEnabled())
-					CacheItemJMX.DestroyCacheItemJMX(value);
-
-				cache.remove(value.getKey().getKey());
+				clearKey(entry.getKey(), value);
 			}
 		}
 	}
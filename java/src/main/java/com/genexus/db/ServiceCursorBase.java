@@ -132,10 +132,10 @@ public class ServiceCursorBase extends Cursor
                 connectionProvider.cacheIterator = new java.util.Enumeration[connectionProvider.cursors.length];
             }
             CacheKey ckey = new CacheKey(sentence, params);
-            CacheValue cacheValue = CacheFactory.getInstance().<CacheValue>get(CacheFactory.CACHE_DB, ckey.toString(), CacheValue.class);
+            CacheValue cacheValue = CacheFactory.get(CacheFactory.CACHE_DB, ckey, CacheValue.class);
             Enumeration cacheIterator = null;
 
-            if(cacheValue != null && ckey.equals(cacheValue.getKey())) //Chequeo extra por probabilidad de colision en algoritmo de encriptado SHA1
+            if(cacheValue != null && ckey.equals(cacheValue.getKey())) //Chequeo extra por probabilidad de colision en el hash de la key
             {
                 cacheIterator = cacheValue.getIterator();
             }
@@ -0,0 +1,63 @@
+package com.genexus.db.driver;
+
+/**
+ * Fetch size de un GXResultSet que se ajusta segun las filas leidas.
+ * <p>
+ * Cada vez que el programa termina de consumir un bloque de filas se calcula el tamaño de
+ * fila promedio. Si el bloque se consumio rapido se duplica el fetch size, para hacer menos
+ * round trips, sin pasar de TARGET_FETCH_BYTES por bloque ni del maximo del dbms. Si se
+ * consumio lento el cuello de botella es el programa y solo se achica si las filas son anchas.
+ */
+public final class AdaptiveFetchSize
+{
+	public static final int INITIAL_FETCH_SIZE = 100;
+	static final long TARGET_FETCH_BYTES = 4 * 1024 * 1024;
+	private static final long SLOW_BLOCK_NANOS = 1000L * 1000 * 1000;
+
+	private final int maxFetchSize;
+	private int fetchSize;
+	private int rowsInBlock;
+	private long bytesInBlock;
+	private long blockStart;
+
+	AdaptiveFetchSize(int initialFetchSize, int maxFetchSize)
+	{
+		this.maxFetchSize = Math.max(1, maxFetchSize);
+		this.fetchSize = Math.max(1, Math.min(initialFetchSize, this.maxFetchSize));
+		this.blockStart = System.nanoTime();
+	}
+
+	int getFetchSize()
+	{
+		return fetchSize;
+	}
+
+	/**
+	 * Registra una fila leida de 'rowBytes' bytes.
+	 * @return el nuevo fetch size si hay que cambiarlo, 0 si no
+	 */
+	int rowFetched(long rowBytes)
+	{
+		rowsInBlock++;
+		bytesInBlock += rowBytes;
+		if	(rowsInBlock < fetchSize)
+			return 0;
+
+		long now = System.nanoTime();
+		long averageRowBytes = Math.max(1, bytesInBlock / rowsInBlock);
+		int bySize = (int) Math.max(1, Math.min(maxFetchSize, TARGET_FETCH_BYTES / averageRowBytes));
+		int next = fetchSize;
+		if	(now - blockStart < SLOW_BLOCK_NANOS)
+			next = Math.min(bySize, fetchSize * 2);
+		else if	(bySize < fetchSize)
+			next = bySize;
+
+		rowsInBlock = 0;
+		bytesInBlock = 0;
+		blockStart = now;
+		if	(next == fetchSize)
+			return 0;
+		fetchSize = next;
+		return next;
+	}
+}
@@ -4,15 +4,37 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.genexus.*;
 import com.genexus.db.DBConnectionManager;
 import com.genexus.db.UserInformation;
 import com.genexus.management.ConnectionPoolJMX;
 
+/**
+ * Pool de conexiones de un usuario de un DataSource.
+ * <p>
+ * La busqueda de una conexion libre no toma ningun lock: la lista de conexiones es un
+ * CopyOnWriteArrayList (solo cambia al crear o descartar conexiones) y las conexiones sticky
+ * se reservan con un compareAndSet sobre el estado 'inAssignment'. Cada thread prueba primero
+ * la ultima conexion que obtuvo. Los threads que no encuentran conexion esperan en orden de
+ * llegada sobre un lock justo hasta que alguna conexion cambia de estado. El cierre de las
+ * conexiones con error y el reciclado por tiempo lo hace un thread de mantenimiento.
+ * La busqueda y los cambios de la lista toman el read lock de poolGate, que solo se bloquea
+ * mientras corre runWithLock o disconnect.
+ */
 public abstract class ConnectionPool
 {
 	protected static final boolean DEBUG       = DebugFlag.DEBUG;
@@ -20,18 +42,20 @@ public abstract class ConnectionPool
 	protected static final int RECYCLE_BY_IDLE           = 2;
 
 	private final long WAIT_TIMEOUT = 30000;
+	private static final long HOUSEKEEPING_PERIOD = 60000;
+	private static final long MIN_HOUSEKEEPING_PERIOD = 1000;
 
 	protected DataSource dataSource;
-	protected Vector<GXConnection>  pool;
+	protected CopyOnWriteArrayList<GXConnection>  pool;
 	protected String  user;
 	protected String  password;
-	protected int 	  maxPoolSize;
+	protected volatile int maxPoolSize;
 	protected boolean unlimitedSize;
 	protected String  poolName;
 	protected boolean recycleConnections;
 	protected int recycleConnectionsType;
 	protected long 	  recycleConnectionsTime;
-	private int brokenConnections;
+	private final AtomicInteger brokenConnections = new AtomicInteger();
 
 	abstract GXConnection createConnection(ModelContext context, int handle) throws SQLException;
 	abstract GXConnection getSameConnection(int handle, boolean sticky);
@@ -41,32 +65,51 @@ public abstract class ConnectionPool
 	abstract boolean isEnabled();
 
 	protected PoolDBConnectionState constate;
-	private Object poolLock = new Object();
+	private final ReentrantReadWriteLock poolGate = new ReentrantReadWriteLock();
 	private PrintStream out;
+
+	// Cantidad de conexiones en el pool o en creacion, acota el tamaño sin tomar un lock
+	private final AtomicInteger reservedSize = new AtomicInteger();
+	private final ThreadLocal<GXConnection> lastConnection = new ThreadLocal<GXConnection>();
+
+	// Espera de conexiones: statusVersion cambia con cada statusChanged, asi un thread que
+	// no encontro conexion no se queda esperando si el estado cambio mientras buscaba
+	private final AtomicLong statusVersion = new AtomicLong();
+	private final AtomicInteger waitingThreads = new AtomicInteger();
+	private final ReentrantLock waitLock = new ReentrantLock(true);
+	private final Condition statusChangedCondition = waitLock.newCondition();
+
+	private static ScheduledExecutorService housekeeper;
+	private ScheduledFuture<?> housekeeping;
 	
 	//JMX properties
-	int numberConnectionsCreated = 0;
-	int numberConnectionsRecycled = 0;
-	int numberConnectionsDeleted = 0;
-	int numberRequest = 0;
-	long timeFirstRequest;
-	java.util.Date timeLastRequest;
-	int numberUsersWaits = 0;
-	int numberUsersWaiting = 0;
-	Hashtable<Integer, Long> timeStartUserWait = new Hashtable<>();
-	long maxTimeUserWait;
-	float averageUserWaitingTime;
+	final AtomicInteger numberConnectionsCreated = new AtomicInteger();
+	final AtomicInteger numberConnectionsRecycled = new AtomicInteger();
+	final AtomicInteger numberConnectionsDeleted = new AtomicInteger();
+	final AtomicInteger numberRequest = new AtomicInteger();
+	volatile long timeFirstRequest;
+	volatile java.util.Date timeLastRequest;
+	final AtomicInteger numberUsersWaits = new AtomicInteger();
+	final AtomicInteger numberUsersWaiting = new AtomicInteger();
+	final AtomicLong maxTimeUserWait = new AtomicLong();
+	final AtomicLong totalUserWaitingTime = new AtomicLong();
 	ConnectionPoolJMX connectionPoolJMX;
 	long UserMaxTimeWaitingBeforeNotif = 30000;
 	boolean enableNotifications = true;
+	// Tiempo maximo de espera de una conexion en milisegundos, 0 espera sin limite
+	volatile long checkoutTimeout;
+	final AtomicInteger numberCheckoutTimeouts = new AtomicInteger();
 	
 	ConnectionPool(DataSource dataSource, String user, String password)
 	{
-		pool = new Vector<GXConnection>();
+		pool = new CopyOnWriteArrayList<GXConnection>();
 		this.dataSource = dataSource;
 		this.user 	    = user;
 		this.password   = password;
 		constate = new PoolDBConnectionState();
+		Preferences preferences = Preferences.getDefaultPreferences();
+		if	(preferences != null)
+			checkoutTimeout = Math.max(0, preferences.getPOOL_CHECKOUT_TIMEOUT()) * 1000L;
 		
 		//Enable JMX
 		if (Application.isJMXEnabled())
@@ -87,8 +130,9 @@ public abstract class ConnectionPool
 				for (int i = 0; i < maxPoolSize; i++)
 				{
 					GXConnection con = createConnection(null, -1);
-					pool.addElement(con);
-					numberConnectionsCreated ++;
+					reservedSize.incrementAndGet();
+					pool.add(con);
+					numberConnectionsCreated.incrementAndGet();
 
 				}
 			}
@@ -99,6 +143,65 @@ public abstract class ConnectionPool
 		}
 	}
 
+	/** Programa la revision periodica de conexiones con error o para reciclar */
+	void scheduleHousekeeping()
+	{
+		long period = HOUSEKEEPING_PERIOD;
+		if (recycleConnections && recycleConnectionsTime > 0)
+			period = Math.max(MIN_HOUSEKEEPING_PERIOD, Math.min(period, recycleConnectionsTime / 2));
+		housekeeping = getHousekeeper().scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					housekeep();
+				}
+				catch (RuntimeException e)
+				{
+					System.err.println("Error checking " + poolName + " connections " + e.toString());
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized ScheduledExecutorService getHousekeeper()
+	{
+		if (housekeeper == null)
+		{
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "GXConnectionPoolHousekeeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.setRemoveOnCancelPolicy(true);
+			housekeeper = executor;
+		}
+		return housekeeper;
+	}
+
+	void housekeep()
+	{
+		for (GXConnection con : pool)
+		{
+			if	(con.getError())
+			{
+				disconnectBrokenConnection(con);
+			}
+			else if	(!con.getPoolState().getInAssignment() && isAvailable(con, 0) && mustRecycle(con, isReadOnly()))
+			{
+				if	(DEBUG)
+					log(con.getHandle(), "Dropping " + poolName + " by timeout connection " + con.hashCode());
+
+				dropUnusedConnection(con);
+			}
+		}
+	}
+
 	boolean mustRecycle(GXConnection con, boolean readOnly)
 	{
 		return 	recycleConnections && con.getPoolState().isRecyclable(readOnly) &&
@@ -108,185 +211,291 @@ public abstract class ConnectionPool
 
 	GXConnection getPoolConnection(int handle, boolean sticky)
 	{
-		synchronized(poolLock)
-		{
 		GXConnection con = getSameConnection(handle, sticky);
 		if	(con != null)
 			return con;
 
-			
-		for (int idx = 0; idx < pool.size(); )
+		// La ultima conexion que uso este thread suele estar libre
+		GXConnection last = lastConnection.get();
+		if	(last != null)
 		{
-			con = (GXConnection) pool.elementAt(idx);
-
-			if	(con.getError())
+			if	(pool.contains(last))
 			{
-					disconnectBrokenConnection(con);
-				continue;
+				con = takeConnection(last, handle, sticky);
+				if	(con != null)
+					return con;
+			}
+			else
+			{
+				lastConnection.remove();
 			}
+		}
 
-			if	(!con.getPoolState().getInAssignment() && isAvailable(con, handle))
+		for (GXConnection candidate : pool)
+		{
+			if	(candidate == last)
+				continue;
+			con = takeConnection(candidate, handle, sticky);
+			if	(con != null)
 			{
-				if	(mustRecycle(con, isReadOnly()))
-				{
-					if	(DEBUG)
-						log(con.getHandle(), "Dropping " + poolName + " by timeout connection " + con.hashCode());
+				lastConnection.set(con);
+				return con;
+			}
+		}
 
-						dropUnusedConnection(con);
-					continue;
-				}
-				else
-				{
-					if	(DEBUG)
-						log(handle, "Reusing connection " + con.hashCode());
+		return null;
+	}
 
-					if	(sticky)
-					{
-						con.getPoolState().setInAssignment(true);
-						if (!constate.hasConnection(handle, con))
-							constate.addConnection(handle, con);
+	private GXConnection takeConnection(GXConnection con, int handle, boolean sticky)
+	{
+		if	(con.getError())
+		{
+			disconnectBrokenConnection(con);
+			return null;
+		}
 
-						con.setHandle(handle);
-					}
+		ConnectionPoolState state = con.getPoolState();
+		if	(state.getInAssignment() || !isAvailable(con, handle))
+			return null;
 
-					return con;
-				}
+		if	(mustRecycle(con, isReadOnly()))
+		{
+			if	(DEBUG)
+				log(con.getHandle(), "Dropping " + poolName + " by timeout connection " + con.hashCode());
+
+			dropUnusedConnection(con);
+			return null;
+		}
+
+		if	(sticky)
+		{
+			if	(!state.tryAssign())
+				return null; // La tomo otro thread
+
+			if	(!isAvailable(con, handle))
+			{ // Cambio el estado entre el chequeo y la asignacion
+				state.setInAssignment(false);
+				return null;
 			}
-			idx++;
+			if (!constate.hasConnection(handle, con))
+				constate.addConnection(handle, con);
+
+			con.setHandle(handle);
+		}
+
+		if	(DEBUG)
+			log(handle, "Reusing connection " + con.hashCode());
+
+		return con;
+	}
+
+	private GXConnection createPoolConnection(ModelContext context, int handle, boolean sticky) throws SQLException
+	{
+		int size;
+		do
+		{
+			size = reservedSize.get();
+			if	(!unlimitedSize && size >= maxPoolSize)
+				return null;
+		}
+		while (!reservedSize.compareAndSet(size, size + 1));
+
+		GXConnection con = null;
+		try
+		{
+			con = createConnection(context, handle);
 		}
+		finally
+		{
+			if	(con == null)
+			{
+				reservedSize.decrementAndGet();
+				statusChanged(null);
+			}
 		}
 
-		return null;
+		if	(sticky)
+		{ // Se asigna antes de publicarla para que ningun otro thread la tome
+			con.getPoolState().setInAssignment(true);
+
+			con.setHandle(handle);
+			constate.addConnection(handle, con);
+		}
+		pool.add(con);
+		numberConnectionsCreated.incrementAndGet();
+		return con;
 	}
 
 	Connection checkOut(ModelContext context, int handle, boolean sticky) throws SQLException
 	{
-		if (numberRequest == 0)
+		if (numberRequest.getAndIncrement() == 0)
 			timeFirstRequest = System.currentTimeMillis();
-		numberRequest ++;
 		timeLastRequest = new java.util.Date();
 		
-		boolean firstTimeWaiting = true;
+		long timeStartUserWait = 0;
 		
 		GXConnection con = null;
 		//dump();
 
 		while (con == null)
 		{
-			synchronized (poolLock)
+			long version = statusVersion.get();
+			poolGate.readLock().lock();
+			try
 			{
 				con = getPoolConnection(handle, sticky);
 
-				if	(con == null && (unlimitedSize || pool.size() < maxPoolSize))
+				if	(con == null)
 				{
-					con = createConnection(context, handle);
-					if	(con != null)
-					{
-						pool.addElement(con);
-						numberConnectionsCreated ++;
-						if	(sticky)
-						{
-							con.getPoolState().setInAssignment(true);
-
-							con.setHandle(handle);
-							constate.addConnection(handle, con);
-						}
-					}
+					con = createPoolConnection(context, handle, sticky);
 				}
+			}
+			finally
+			{
+				poolGate.readLock().unlock();
+			}
 
-				if	(con == null)
+			if	(con == null)
+			{
+				if (Application.isJMXEnabled() && enableNotifications)
+					connectionPoolJMX.PoolIsFull();
+				((UserInformation)DBConnectionManager.getInstance().getUserInformation(handle)).setWaitingConnection(true);
+				if	(DEBUG)
+					log(handle, "Waiting for connection " + PrivateUtilities.getCurrentThreadId() + " unlimited " + unlimitedSize + " poolSize " + pool.size() + " maxPoolSize " + maxPoolSize);
+
+				if (timeStartUserWait == 0)
 				{
-					if (Application.isJMXEnabled() && enableNotifications)
-						connectionPoolJMX.PoolIsFull();
-					((UserInformation)DBConnectionManager.getInstance().getUserInformation(handle)).setWaitingConnection(true);
-					if	(DEBUG)
-						log(handle, "Waiting for connection " + PrivateUtilities.getCurrentThreadId() + " unlimited " + unlimitedSize + " poolSize " + pool.size() + " maxPoolSize " + maxPoolSize);
+					numberUsersWaits.incrementAndGet();
+					numberUsersWaiting.incrementAndGet();
+					timeStartUserWait = System.currentTimeMillis();
+				}
+				else
+				{
+					if (Application.isJMXEnabled())
+						if ((UserMaxTimeWaitingBeforeNotif < (System.currentTimeMillis() - timeStartUserWait)) && enableNotifications)
+							connectionPoolJMX.UserWaitingForLongTime();
+				}
 
-					if (firstTimeWaiting)
-					{
-						numberUsersWaits ++;
-						numberUsersWaiting ++;
-						timeStartUserWait.put(new Integer(handle), new Long(System.currentTimeMillis()));
-						firstTimeWaiting = false;
-					}
-					else
-					{
-						if (Application.isJMXEnabled())
-							if ((UserMaxTimeWaitingBeforeNotif < (System.currentTimeMillis() - (timeStartUserWait.get(new Integer(handle))).longValue())) && enableNotifications)
-								connectionPoolJMX.UserWaitingForLongTime();
-					}
-					notified = false;
-					while (!notified)
+				long timeout = checkoutTimeout;
+				long wait = WAIT_TIMEOUT;
+				if	(timeout > 0)
+				{
+					long userWait = System.currentTimeMillis() - timeStartUserWait;
+					if	(userWait >= timeout)
 					{
-						try
-						{
-							poolLock.wait(WAIT_TIMEOUT);
-						}
-						catch (InterruptedException e)
-						{
-						}
-
-						if	(!notified)
-						{
-							if	(DEBUG)
-								log(handle, "Still waiting for connection " + PrivateUtilities.getCurrentThreadId());
-						}
+						numberCheckoutTimeouts.incrementAndGet();
+						numberUsersWaiting.decrementAndGet();
+						((UserInformation)DBConnectionManager.getInstance().getUserInformation(handle)).setWaitingConnection(false);
+						if	(DEBUG)
+							log(handle, "Timeout waiting for connection " + PrivateUtilities.getCurrentThreadId());
+						throw new SQLException("Timeout waiting for a connection of " + poolName + " of datasource " + dataSource.getName() + " after " + userWait + " ms (pool size " + maxPoolSize + ")", "08001");
 					}
-
-					if	(DEBUG)
-						log(handle, "Stopped waiting for connection " + PrivateUtilities.getCurrentThreadId());
-					
+					wait = Math.min(wait, timeout - userWait);
 				}
 
-				if	(con != null)
-				{
-					con.setHandle(handle);
-					
-					// Esto va aca para que el PoolState quede 'igual' que al asignarlo.
-					if	(DEBUG)
-						log(con, handle, "Assigning connection to handle");
-				}
+				waitStatusChanged(version, handle, wait);
+
+				if	(DEBUG)
+					log(handle, "Stopped waiting for connection " + PrivateUtilities.getCurrentThreadId());
 			}
 		}
+
+		con.setHandle(handle);
+
+		// Esto va aca para que el PoolState quede 'igual' que al asignarlo.
+		if	(DEBUG)
+			log(con, handle, "Assigning connection to handle");
 		
-		if (!firstTimeWaiting)
+		if (timeStartUserWait != 0)
 		{
-			long userWait = System.currentTimeMillis() - (timeStartUserWait.get(new Integer(handle))).longValue();
-			timeStartUserWait.remove(new Integer(handle));
-			averageUserWaitingTime = (averageUserWaitingTime + userWait) / numberUsersWaits; 
-			if (userWait > maxTimeUserWait)
-				maxTimeUserWait = userWait;
-			numberUsersWaiting --;		
+			long userWait = System.currentTimeMillis() - timeStartUserWait;
+			totalUserWaitingTime.addAndGet(userWait);
+			long max;
+			while (userWait > (max = maxTimeUserWait.get()) && !maxTimeUserWait.compareAndSet(max, userWait));
+			numberUsersWaiting.decrementAndGet();
 		}
 		((UserInformation)DBConnectionManager.getInstance().getUserInformation(handle)).setWaitingConnection(false);
 		return con;
 	}
 
-	boolean notified = false;
+	/** Espera, en orden de llegada, a que alguna conexion cambie de estado desde 'version' o pase 'timeout' */
+	private void waitStatusChanged(long version, int handle, long timeout)
+	{
+		waitLock.lock();
+		try
+		{
+			waitingThreads.incrementAndGet();
+			while (statusVersion.get() == version)
+			{
+				try
+				{
+					if	(!statusChangedCondition.await(timeout, TimeUnit.MILLISECONDS))
+					{
+						if	(DEBUG)
+							log(handle, "Still waiting for connection " + PrivateUtilities.getCurrentThreadId());
+						return;
+					}
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+		}
+		finally
+		{
+			waitingThreads.decrementAndGet();
+			waitLock.unlock();
+		}
+	}
+
 	void statusChanged(ConnectionPoolState state)
 	{
-		synchronized (poolLock)
+		statusVersion.incrementAndGet();
+		if	(waitingThreads.get() > 0)
+		{
+			waitLock.lock();
+			try
+			{
+				statusChangedCondition.signalAll();
+			}
+			finally
+			{
+				waitLock.unlock();
+			}
+		}
+	}
+
+	private boolean removeFromPool(GXConnection con)
+	{
+		boolean removed;
+		poolGate.readLock().lock();
+		try
+		{
+			removed = pool.remove(con);
+			if	(removed)
+				reservedSize.decrementAndGet();
+		}
+		finally
 		{
-			notified = true;
-			poolLock.notifyAll();
+			poolGate.readLock().unlock();
 		}
+		if	(removed)
+			statusChanged(null);
+		return removed;
 	}
 
 	public Enumeration<GXConnection> getConnections()
 	{
-		return pool.elements();
+		return Collections.enumeration(pool);
 	}
 
 	public GXConnection getConnectionById(int id)
 	{
 		// Esto se usa para el utilitario de administracion. Obviamente no es
 		// muy eficiente, pero no importa mucho dado que no se ejecuta mucho.
-		synchronized(poolLock)
-		{
-		for (int i = 0 ; i < pool.size(); i++)
-			if	( ((GXConnection) pool.elementAt(i)).getId() == id)
-				return (GXConnection) pool.elementAt(i);
-		}
+		for (GXConnection con : pool)
+			if	(con.getId() == id)
+				return con;
 
 		return null;
 	}
@@ -295,68 +504,81 @@ public abstract class ConnectionPool
 	{
 		// Esto se usa para el utilitario de administracion. Obviamente no es
 		// muy eficiente, pero no importa mucho dado que no se ejecuta mucho.
-		synchronized(poolLock)
+		for (GXConnection con : pool)
 		{
-			for (int i = 0 ; i < pool.size(); )
+			if	(con.getId() == id && removeFromPool(con))
 			{
-				GXConnection con = (GXConnection) pool.elementAt(i);
-				if	( con.getId() == id)
-				{
-					pool.removeElementAt(i);
-					con.close();
-					numberConnectionsDeleted ++;
-					continue;
-				}
-				i++;
+				con.close();
+				numberConnectionsDeleted.incrementAndGet();
 			}
 		}
 	}
 
-	private void disconnectBrokenConnection(GXConnection con)
+	private void disconnectBrokenConnection(final GXConnection con)
 	{
-		try
+		// Solo el thread que la saca del pool la cierra
+		if	(!removeFromPool(con))
+			return;
+
+		log(con, 0 ,"Disconnecting connection with error");
+		numberConnectionsDeleted.incrementAndGet();
+		brokenConnections.incrementAndGet();
+		getHousekeeper().execute(new Runnable()
 		{
-			log(con, 0 ,"Disconnecting connection with error");
-			synchronized(poolLock)
+			public void run()
 			{
-				pool.removeElement(con);
-				numberConnectionsDeleted ++;
+				try
+				{
+				 	con.closeWithError();
+				}
+				catch (SQLException e)
+				{
+					System.err.println("Error closing connection " + con);
+				}
 			}
-		 	con.closeWithError();
-		}
-		catch (SQLException e)
-		{
-			System.err.println("Error closing connection " + con);
-		}
-
-		brokenConnections ++;
+		});
 	}
 
 	public int getBrokenConnectionCount()
 	{
-		return brokenConnections;
+		return brokenConnections.get();
 	}
 
 	private void dropUnusedConnection(GXConnection con)
 	{
-		synchronized(poolLock)
+		// Se reserva antes de sacarla para que ningun thread la tome mientras tanto
+		if	(!con.getPoolState().tryAssign())
+			return;
+		if	(removeFromPool(con))
+		{
+			numberConnectionsRecycled.incrementAndGet();
+			getHousekeeper().execute(new ConnecionCloseRunnable(con));
+		}
+		else
 		{
-			pool.removeElement(con);
-			numberConnectionsRecycled ++;
+			con.getPoolState().setInAssignment(false);
 		}
-		Thread connecionCloseThread = new Thread(new ConnecionCloseRunnable(con));
-		connecionCloseThread.start();
 	}
 
 	void disconnect() throws SQLException
 	{
-		synchronized(poolLock)
+		poolGate.writeLock().lock();
+		try
 		{
-			for (int idx = 0; idx < pool.size(); idx ++)
+			if	(housekeeping != null)
+			{
+				housekeeping.cancel(false);
+				housekeeping = null;
+			}
+			for (GXConnection con : pool)
 			{
-				((GXConnection) pool.elementAt(idx)).close();
+				if	(removeFromPool(con))
+					con.close();
 			}
-			pool = new Vector<GXConnection>();
+		}
+		finally
+		{
+			poolGate.writeLock().unlock();
 		}
 	}
 
@@ -410,16 +632,13 @@ public abstract class ConnectionPool
 			out.println("Size 	  : max " + maxPoolSize + " current " + pool.size() + " unlimited "+ unlimitedSize);
 			out.println("Recycle   : " + recycleConnections + " time " + recycleConnectionsTime);
 
-			synchronized(poolLock)
+			int i = 0;
+			for (GXConnection con : pool)
 			{
-				for (int i = 0; i < pool.size(); i++)
-				{
-					GXConnection con = (GXConnection) pool.elementAt(i);
-					ConnectionPoolState state = con.getPoolState();
+				ConnectionPoolState state = con.getPoolState();
 
-					out.println(i + " " + con.hashCode() + " oc " + state.getOpenCursors() + " uc " + state.getUserCount() + " uncomm " + state.getUncommitedChanges() + " assign " + state.getInAssignment());
-					con.dump(out);
-				}
+				out.println(i++ + " " + con.hashCode() + " oc " + state.getOpenCursors() + " uc " + state.getUserCount() + " uncomm " + state.getUncommitedChanges() + " assign " + state.getInAssignment());
+				con.dump(out);
 			}
 
 			constate.dump(out);
@@ -453,9 +672,8 @@ public abstract class ConnectionPool
 			writer.writeElement("MaxUserWaitTime", getMaxUserWaitingTime());
 			writer.writeElement("AverageUserWaitTime", getAverageUserWaitingTime());															
 			
-			for (int i = 0; i < pool.size(); i++)
+			for (GXConnection con : pool)
 			{
-				GXConnection con = (GXConnection) pool.elementAt(i);
 				con.dump(writer);
 			}
 			
@@ -478,12 +696,8 @@ public abstract class ConnectionPool
 	{
 		if (unlimitedSize || maxPoolSize <= this.maxPoolSize)
 			return;
-		synchronized(poolLock)
-		{
-			this.maxPoolSize = maxPoolSize;
-			notified = true;
-			poolLock.notifyAll();
-		}
+		this.maxPoolSize = maxPoolSize;
+		statusChanged(null);
 	}
 	
 	public boolean getUnlimitedSize()
@@ -498,11 +712,9 @@ public abstract class ConnectionPool
 	
 	public int getFreeConnectionCount()
 	{
-		GXConnection con = null;
 		int freeConnections = 0;
-		for (int idx = 0; idx < pool.size(); idx++)
+		for (GXConnection con : pool)
 		{
-			con = (GXConnection) pool.elementAt(idx);
 			if (isAvailableJMX(con))
 				freeConnections ++;
 		}
@@ -511,27 +723,27 @@ public abstract class ConnectionPool
 	
 	public int getNumberConnectionsCreated()
 	{
-		return numberConnectionsCreated;
+		return numberConnectionsCreated.get();
 	}
 	
 	public int getNumberConnectionsRecycled()
 	{
-		return numberConnectionsRecycled;
+		return numberConnectionsRecycled.get();
 	}
 	
 	public int getNumberConnectionsDeleted()
 	{
-		return numberConnectionsDeleted;
+		return numberConnectionsDeleted.get();
 	}
 	
 	public int getNumberRequest()
 	{
-		return numberRequest;
+		return numberRequest.get();
 	}
 	
 	public float getAverageNumberRequest()
 	{
-		return numberRequest / ((System.currentTimeMillis() - timeFirstRequest) / 1000);
+		return numberRequest.get() / ((System.currentTimeMillis() - timeFirstRequest) / 1000);
 	}
 
 	public java.util.Date getTimeLastRequest()
@@ -541,22 +753,23 @@ public abstract class ConnectionPool
 	
 	public int getNumberUsersWaits()
 	{
-		return numberUsersWaits;
+		return numberUsersWaits.get();
 	}
 	
 	public int getNumberUsersWaiting()
 	{
-		return numberUsersWaiting;
+		return numberUsersWaiting.get();
 	}
 	
 	public long getMaxUserWaitingTime()
 	{
-		return maxTimeUserWait;
+		return maxTimeUserWait.get();
 	}
 	
 	public float getAverageUserWaitingTime()
 	{
-		return averageUserWaitingTime;
+		int waits = numberUsersWaits.get();
+		return waits == 0 ? 0 : (float) totalUserWaitingTime.get() / waits;
 	}
 	
 	public long getUserMaxTimeWaitingBeforeNotif()
@@ -569,6 +782,21 @@ public abstract class ConnectionPool
 		UserMaxTimeWaitingBeforeNotif = value;
 	}
 	
+	public long getCheckoutTimeout()
+	{
+		return checkoutTimeout;
+	}
+	
+	public void setCheckoutTimeout(long value)
+	{
+		checkoutTimeout = Math.max(0, value);
+	}
+	
+	public int getNumberCheckoutTimeouts()
+	{
+		return numberCheckoutTimeouts.get();
+	}
+	
 	public boolean getEnableNotifications()
 	{
 		return enableNotifications;
@@ -586,29 +814,20 @@ public abstract class ConnectionPool
 	
 	public void PoolRecycle()
 	{
-		GXConnection con = null;
-		
-		synchronized(poolLock)
+		for (GXConnection con : pool)
 		{
-			int poolSize = pool.size();
-			for (int idx = 0; idx < poolSize;)
+			if	(con.getError())
 			{
-				con = (GXConnection) pool.elementAt(0);
-
-				if	(con.getError())
-				{
-						disconnectBrokenConnection(con);
-						continue;
-				}
+				disconnectBrokenConnection(con);
+				continue;
+			}
 
-				if	(!con.getPoolState().getInAssignment() && isAvailable(con, 0))
-				{
-					if	(DEBUG)
-						log(con.getHandle(), "Dropping " + poolName + " by JMX Operation; connection " + con.hashCode());
+			if	(!con.getPoolState().getInAssignment() && isAvailable(con, 0))
+			{
+				if	(DEBUG)
+					log(con.getHandle(), "Dropping " + poolName + " by JMX Operation; connection " + con.hashCode());
 
-					dropUnusedConnection(con);
-				}
-				idx++;
+				dropUnusedConnection(con);
 			}
 		}
 	}
@@ -617,13 +836,18 @@ public abstract class ConnectionPool
 	{
 		this.connectionPoolJMX = connectionPoolJMX;
 	}
+	/** Ejecuta el runnable sin que se entreguen, creen ni quiten conexiones; devolverlas al pool no se bloquea */
 	public void runWithLock(Runnable runnable) {
-		synchronized (poolLock) {
+		poolGate.writeLock().lock();
+		try {
 			runnable.run();
 		}
+		finally {
+			poolGate.writeLock().unlock();
+		}
 	}
 	public void removeElement(GXConnection con) {
-		pool.removeElement(con);
+		removeFromPool(con);
 	}
 	
 	public class ConnecionCloseRunnable implements Runnable
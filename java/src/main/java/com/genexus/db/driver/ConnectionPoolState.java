@@ -1,5 +1,6 @@
 package com.genexus.db.driver;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -9,12 +10,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class ConnectionPoolState
 {
 	private GXConnection con;
-	private volatile boolean inAssignment;
+	private final AtomicBoolean inAssignment = new AtomicBoolean(false);
 	private volatile boolean uncommitedChanges;
 	private AtomicInteger 	 userCount = new AtomicInteger(0);
 
 	private Object commitedChangesLock = new Object();
-	private Object inAssignmentLock    = new Object();
 
 	ConnectionPoolState(GXConnection con)
 	{
@@ -63,10 +63,7 @@ public class ConnectionPoolState
 
 	public void setInAssignment(boolean inAssignment)
 	{	
-		synchronized (inAssignmentLock)
-		{
-			this.inAssignment = inAssignment;
-		}
+		this.inAssignment.set(inAssignment);
 
 		if	(!inAssignment)
 		{
@@ -76,10 +73,13 @@ public class ConnectionPoolState
 
 	public boolean getInAssignment()
 	{
-		synchronized (inAssignmentLock)
-		{
-			return inAssignment;
-		}
+		return inAssignment.get();
+	}
+
+	/** Reserva la conexion si no estaba asignada; true si este thread la reservo */
+	boolean tryAssign()
+	{
+		return inAssignment.compareAndSet(false, true);
 	}
 
 	void closeCursor()
@@ -133,6 +133,6 @@ public class ConnectionPoolState
 
 	public String toString()
 	{
-		return "Cursors : " + getOpenCursors() + " | Users: " + userCount + " | Uncommited " + uncommitedChanges + " | Assignment " + inAssignment;
+		return "Cursors : " + getOpenCursors() + " | Users: " + userCount + " | Uncommited " + uncommitedChanges + " | Assignment " + inAssignment.get();
 	}
 }
@@ -8,9 +8,11 @@ package com.genexus.db.driver;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Stack;
-
-import org.apache.commons.collections4.map.LinkedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.genexus.DebugFlag;
 
@@ -23,10 +25,15 @@ import com.genexus.DebugFlag;
 public class FreeStatementList {
 
 	/***
-	 * A sequence of sql statements strings with a list of Statements for each string sentence. Be aware this list is not threa safe
-	 * so we MUST use objectLock to ensure right concurrency
+	 * For each sql statement string (or cursor id for batch statements) the free Statements, the most recently
+	 * released first. Lookups do not take any lock.
+	 */
+	private ConcurrentHashMap<String, ConcurrentLinkedDeque<FreeStatement>> freeCache;
+	/***
+	 * Every free Statement in release order, the least recently used first. Entries taken by a get stay
+	 * here until the next purge.
 	 */
-	private LinkedMap<String, StatementList> freeCache;
+	private ConcurrentLinkedQueue<FreeStatement> lruQueue;
 	/***
 	 * the underline connection
 	 */
@@ -34,133 +41,215 @@ public class FreeStatementList {
 	/***
 	 * The number of Statements for all lists
 	 */
-	private int statementCount;
-	private Object objectLock = new Object();
+	private AtomicInteger statementCount = new AtomicInteger();
+	private AtomicInteger takenInQueue = new AtomicInteger();
 	private static final boolean DEBUG       = DebugFlag.DEBUG;
 
 	FreeStatementList(int maxSize, GXConnection jdbcConnection)
 	{
-		freeCache = new LinkedMap<>(maxSize);
+		freeCache = new ConcurrentHashMap<>(Math.max(16, maxSize));
+		lruQueue = new ConcurrentLinkedQueue<>();
 		this.jdbcConnection = jdbcConnection;
-		this.statementCount = 0;
 	}
 
 	int size()
 	{
-		synchronized (objectLock) {
-			return statementCount;
-		}
+		return statementCount.get();
 	}
 
   
 	void add(GXPreparedStatement stmt)
 	{
 		String sqlStatement = stmt.getCacheId(jdbcConnection);
-		synchronized (objectLock) {
-			StatementList sl = freeCache.get(sqlStatement);
-			boolean firstsql=false;
+		ConcurrentLinkedDeque<FreeStatement> sl = freeCache.get(sqlStatement);
+		if (sl == null)
+		{
+			ConcurrentLinkedDeque<FreeStatement> newList = new ConcurrentLinkedDeque<>();
+			sl = freeCache.putIfAbsent(sqlStatement, newList);
 			if (sl == null)
-			{
-				firstsql = true;
-				sl = new StatementList();
-				freeCache.put(sqlStatement, sl);
-			}
-			if (!stmt.isBatch() || firstsql)
-			{
-				sl.push(stmt);
-				statementCount++;
-			}		
+				sl = newList;
+		}
+		// Only one free batch statement per cursor
+		if (!stmt.isBatch() || sl.isEmpty())
+		{
+			FreeStatement entry = new FreeStatement(stmt);
+			statementCount.incrementAndGet();
+			sl.push(entry);
+			lruQueue.add(entry);
+			purgeTaken();
 		}
 	}
 	
 	void remove(GXPreparedStatement stmt)
 	{
 		String sqlStatement = stmt.getCacheId(jdbcConnection);
-		synchronized (objectLock) {
-			StatementList sl = freeCache.get(sqlStatement);
-			if (sl != null) {
-				statementCount -= sl.size();
-		        freeCache.remove(sqlStatement);
+		ConcurrentLinkedDeque<FreeStatement> sl = freeCache.remove(sqlStatement);
+		if (sl != null)
+		{
+			for (FreeStatement entry : sl)
+			{
+				if (entry.take())
+				{
+					takenInQueue.incrementAndGet();
+					if (entry.stmt != stmt)
+						closeStatement(entry.stmt);
+				}
 			}
 		}
 	}
 
+	/***
+	 * Closes the least recently used free Statement. Batch statements with pending records are skipped.
+	 * @return false if there is no Statement that can be closed
+	 */
 	boolean removeOlder()
 	{
-		// First remove from the cache and after close the statements to reduce the lock time
-		StatementList statementList = null;
-		synchronized (objectLock) {
-			// Asume que el size de freeCache > 0.
-			statementList = freeCache.get(freeCache.firstKey());
-			if (statementList.firstElement().isBatch() && statementList.firstElement().getRecordCount() > 0)
+		ArrayList<FreeStatement> skipped = new ArrayList<>();
+		try
+		{
+			FreeStatement entry;
+			while ((entry = lruQueue.poll()) != null)
 			{
-				if (freeCache.size() == 1)
-					return false;
-				statementList = freeCache.get(freeCache.get(1));
+				if (!entry.take())
+				{
+					takenInQueue.decrementAndGet();
+					continue;
+				}
+				if (entry.stmt.isBatch() && entry.stmt.getRecordCount() > 0)
+				{
+					entry.release();
+					skipped.add(entry);
+					continue;
+				}
+				String sqlStatement = entry.stmt.getCacheId(jdbcConnection);
+				ConcurrentLinkedDeque<FreeStatement> sl = freeCache.get(sqlStatement);
+				if (sl != null)
+				{
+					sl.remove(entry);
+					if (sl.isEmpty())
+						freeCache.remove(sqlStatement, sl);
+				}
+				closeStatement(entry.stmt);
+				return true;
 			}
-			freeCache.remove(statementList.peek().getCacheId(jdbcConnection));
-			statementCount -= statementList.size();
+			return false;
 		}
-		statementList.popAndCloseStatements();
-		return true;
-	}
-	private GXPreparedStatement popSentence(StatementList sl)
-	{
-		synchronized (objectLock) {
-			GXPreparedStatement stmt = sl.pop();
-			statementCount --;
-			if (sl.size() == 0)
+		finally
+		{
+			// Keep the skipped ones as the oldest candidates
+			for (FreeStatement entry : skipped)
 			{
-	            freeCache.remove(stmt.getCacheId(jdbcConnection));
+				lruQueue.add(entry);
 			}
-			return stmt;	
 		}
 	}
 
 	GXPreparedStatement get(String sqlSentence)
 	{
-		synchronized (objectLock) {
-			StatementList sl = freeCache.get(sqlSentence);
-			return (sl == null? null : popSentence(sl));
+		ConcurrentLinkedDeque<FreeStatement> sl = freeCache.get(sqlSentence);
+		if (sl == null)
+			return null;
+		FreeStatement entry;
+		while ((entry = sl.poll()) != null)
+		{
+			if (entry.take())
+			{
+				// The entry is left in lruQueue and purged later
+				takenInQueue.incrementAndGet();
+				return entry.stmt;
+			}
 		}
+		return null;
 	}
 
 	void closeAll() throws SQLException
 	{
-		ArrayList<StatementList> lists = new ArrayList<StatementList>();
-		synchronized (objectLock) {
-			for (Iterator i = freeCache.values().iterator(); i.hasNext();)
+		ArrayList<GXPreparedStatement> stmts = new ArrayList<GXPreparedStatement>();
+		for (Iterator<ConcurrentLinkedDeque<FreeStatement>> i = freeCache.values().iterator(); i.hasNext();)
+		{
+			for (FreeStatement entry : i.next())
 			{
-				lists.add((StatementList) i.next());
+				if (entry.take())
+					stmts.add(entry.stmt);
 			}
-			freeCache.clear();
-			statementCount = 0;		
+			i.remove();
 		}
-		for (StatementList list : lists) {
-			list.popAndCloseStatements();
+		lruQueue.clear();
+		takenInQueue.set(0);
+		for (GXPreparedStatement stmt : stmts) {
+			closeStatement(stmt);
 		}
-
 	}
 
-	class StatementList extends Stack<GXPreparedStatement>
+	/***
+	 * Drops the taken entries from lruQueue once they outnumber the free ones
+	 */
+	private void purgeTaken()
 	{
-		void popAndCloseStatements() {
-			while (!isEmpty())
+		int taken = takenInQueue.get();
+		if (taken > 16 && taken > statementCount.get() && takenInQueue.compareAndSet(taken, 0))
+		{
+			int removed = 0;
+			for (Iterator<FreeStatement> i = lruQueue.iterator(); i.hasNext();)
 			{
-				GXPreparedStatement stmt = pop();
-				try
-				{
-					stmt.close();
-					if	(DEBUG)
-						jdbcConnection.log(GXDBDebug.LOG_MED, "GX: Dropping older cursor free " + stmt.getSqlStatement());
-				}
-				catch (SQLException e)
+				if (i.next().isTaken())
 				{
-					if	(DEBUG)
-						jdbcConnection.log(GXDBDebug.LOG_MED, "GX: Cannot close cursor " + stmt.getSqlStatement());
+					i.remove();
+					removed++;
 				}
 			}
+			takenInQueue.addAndGet(taken - removed);
+		}
+	}
+
+	private void closeStatement(GXPreparedStatement stmt)
+	{
+		try
+		{
+			stmt.close();
+			if	(DEBUG)
+				jdbcConnection.log(GXDBDebug.LOG_MED, "GX: Dropping older cursor free " + stmt.getSqlStatement());
+		}
+		catch (SQLException e)
+		{
+			if	(DEBUG)
+				jdbcConnection.log(GXDBDebug.LOG_MED, "GX: Cannot close cursor " + stmt.getSqlStatement());
+		}
+	}
+
+	/***
+	 * A free Statement. It is in its sql list and in lruQueue, whoever takes it first (a get, an eviction
+	 * or a close) owns it.
+	 */
+	class FreeStatement
+	{
+		final GXPreparedStatement stmt;
+		private final AtomicBoolean taken = new AtomicBoolean();
+
+		FreeStatement(GXPreparedStatement stmt)
+		{
+			this.stmt = stmt;
+		}
+
+		boolean take()
+		{
+			if (taken.compareAndSet(false, true))
+			{
+				statementCount.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+		void release()
+		{
+			statementCount.incrementAndGet();
+			taken.set(false);
+		}
 
+		boolean isTaken()
+		{
+			return taken.get();
 		}
 	}
 }
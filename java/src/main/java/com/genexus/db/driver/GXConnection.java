@@ -1034,6 +1034,34 @@ public void rollback() throws SQLException
 		if (toRemove.size()>0)
 			batchUpdateStmts.removeAll(toRemove);
 	}
+	/**
+	 * Indica si los registros pendientes de todos los batch de la conexion llegan a alguno
+	 * de los limites (0 es sin limite)
+	 */
+	public boolean isBatchFull(int maxRecords, long maxBytes) {
+		int records = 0;
+		long bytes = 0;
+		for (int i = 0; i < batchUpdateStmts.size(); i++) {
+			BatchUpdateCursor cursor = (BatchUpdateCursor) batchUpdateStmts.get(i);
+			if (cursor.pendingRecords()) {
+				records += cursor.getPendingRecordCount();
+				bytes += cursor.getPendingBytes();
+			}
+		}
+		return (maxRecords > 0 && records >= maxRecords) || (maxBytes > 0 && bytes >= maxBytes);
+	}
+	/**
+	 * Ejecuta los batch con registros pendientes sin esperar al commit, en el orden en que se
+	 * registraron. Los cursores siguen registrados para el commit.
+	 */
+	public void flushPendingBatchCursors() throws SQLException{
+		log(GXDBDebug.LOG_MIN, "Flushing " + batchUpdateStmts.size() + " batch Stmts with pending updates");
+		for (int i = 0; i < batchUpdateStmts.size(); i++) {
+			BatchUpdateCursor cursor = (BatchUpdateCursor) batchUpdateStmts.get(i);
+			if (cursor.pendingRecords())
+				cursor.beforeCommitEvent();
+		}
+	}
 	public void flushAllBatchCursors() throws SQLException{
 		log(GXDBDebug.LOG_MIN, "Scanning " + batchUpdateStmts.size() + " batch Stmts with pending updates");
 		for (int i = 0; i < batchUpdateStmts.size(); i++) {
@@ -1631,6 +1659,26 @@ public void rollback() throws SQLException
 		return preparedStatementPool.getUsedCursorsJMX();
 	}
 
+	public long getStatementCacheHits()
+	{
+		return preparedStatementPool instanceof PreparedStatementCache ? ((PreparedStatementCache) preparedStatementPool).getHits() : 0;
+	}
+
+	public long getStatementCacheMisses()
+	{
+		return preparedStatementPool instanceof PreparedStatementCache ? ((PreparedStatementCache) preparedStatementPool).getMisses() : 0;
+	}
+
+	public long getStatementCacheEvictions()
+	{
+		return preparedStatementPool instanceof PreparedStatementCache ? ((PreparedStatementCache) preparedStatementPool).getEvictions() : 0;
+	}
+
+	public int getFreeStatementCount()
+	{
+		return preparedStatementPool instanceof PreparedStatementCache ? ((PreparedStatementCache) preparedStatementPool).getFreeStatementCount() : 0;
+	}
+
 	public String getSentenceLastRequest()
 	{
 		return sentenceLastRequest;
@@ -57,6 +57,9 @@ public interface GXDBMS
 	
 	int getId();
         int getLockRetryCount(int lockRetryCount, int waitRecord);
+
+	/** Maximo fetch size al ajustarlo segun las filas leidas, 0 si no se ajusta */
+	int getMaxFetchSize();
 }
 
 
@@ -180,4 +180,9 @@ public class GXDBMSaccess implements GXDBMS
 	{
 		return false;
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
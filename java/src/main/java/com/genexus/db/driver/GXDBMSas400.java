@@ -319,6 +319,11 @@ public class GXDBMSas400 implements GXDBMS
 	{
 		return (e.getSQLState() == "08S01");
 	}	
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
 
 
@@ -224,4 +224,9 @@ public class GXDBMScloudscape implements GXDBMS
 	{
 		return false;
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
@@ -186,6 +186,11 @@ public class GXDBMSdb2 implements GXDBMS
 	{
 		return (e.getSQLState() == "08S01");
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
 
 
@@ -216,6 +216,11 @@ public class GXDBMShana implements GXDBMS
 	{
 		return (e.getSQLState() == "08S01");
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
 
 
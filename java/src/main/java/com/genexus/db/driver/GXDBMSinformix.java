@@ -303,6 +303,11 @@ autocommit=true is supported for use with such databases.
 	{
 		return (e.getErrorCode() == -79716);
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
 
 
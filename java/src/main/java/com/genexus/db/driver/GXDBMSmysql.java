@@ -7,6 +7,8 @@ import java.sql.SQLException;
 import java.util.Date;
 
 import com.genexus.CommonUtil;
+import com.genexus.ModelContext;
+import com.genexus.Preferences;
 
 public class GXDBMSmysql implements GXDBMS
 {
@@ -119,6 +121,14 @@ public class GXDBMSmysql implements GXDBMS
 		{
 			props.put("relaxAutoCommit", "true" +  dataSource.jdbcAS400Lib);
 		}
+		// Los batch de insert se envian como un INSERT ... VALUES (...),(...)
+		if	(useMultiRowInsert() && !props.containsKey("rewriteBatchedStatements"))
+			props.put("rewriteBatchedStatements", "true");
+	}
+
+	private static boolean useMultiRowInsert()
+	{
+		return ModelContext.getModelContext() != null && Preferences.getDefaultPreferences().getBATCH_MULTIROW_INSERT();
 	}
 
 	public void onConnection(GXConnection con) throws SQLException
@@ -225,6 +235,11 @@ public class GXDBMSmysql implements GXDBMS
 	{
 		return (e.getSQLState() == "08S01");
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
 
 
@@ -243,4 +243,9 @@ public class GXDBMSoracle7 implements GXDBMS
 	{
 		return (e.getErrorCode() == 17002);
 	}
+
+	public int getMaxFetchSize()
+	{
+		return 5000;
+	}
 }
@@ -7,6 +7,8 @@ import java.sql.SQLException;
 import java.util.Date;
 
 import com.genexus.CommonUtil;
+import com.genexus.ModelContext;
+import com.genexus.Preferences;
 
 public class GXDBMSpostgresql implements GXDBMS
 {
@@ -131,6 +133,14 @@ public class GXDBMSpostgresql implements GXDBMS
 
 	public void setConnectionProperties(java.util.Properties props)
 	{
+		// Los batch de insert se envian como un INSERT ... VALUES (...),(...)
+		if	(useMultiRowInsert() && !props.containsKey("reWriteBatchedInserts"))
+			props.put("reWriteBatchedInserts", "true");
+	}
+
+	private static boolean useMultiRowInsert()
+	{
+		return ModelContext.getModelContext() != null && Preferences.getDefaultPreferences().getBATCH_MULTIROW_INSERT();
 	}
 
 	public void onConnection(GXConnection con) throws SQLException
@@ -249,4 +259,9 @@ public class GXDBMSpostgresql implements GXDBMS
 	{
 		return (e.getSQLState() == "08006");
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 10000;
+	}
 }
@@ -220,4 +220,9 @@ public class GXDBMSservice implements GXDBMS
     {
         return e.getErrorCode() == ServiceError.CONNECTION_CLOSED.getCode();
     }		        
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
@@ -178,4 +178,9 @@ public class GXDBMSsqlite implements GXDBMS
 	{
 		return false;
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
@@ -247,4 +247,9 @@ public class GXDBMSsqlserver implements GXDBMS
 	{
 		return (e.getSQLState() == "08S01");
 	}		
+
+	public int getMaxFetchSize()
+	{
+		return 0;
+	}
 }
@@ -1,13 +1,11 @@
 package com.genexus.db.driver;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.math.BigDecimal;
 import java.sql.Array;
 import java.sql.Blob;
@@ -44,6 +42,7 @@ public final class GXResultSet implements ResultSet, com.genexus.db.IFieldGetter
 	private int handle;
 	private ConnectionPool pool;
 	private long resultRegBytes;
+	private AdaptiveFetchSize adaptiveFetchSize;
 
 	public GXResultSet(ResultSet result, Statement stmt, GXConnection con, int handle)
 	{
@@ -79,6 +78,16 @@ public final class GXResultSet implements ResultSet, com.genexus.db.IFieldGetter
 	// -- Funciones que deberian ser llamadas desde los programas generados
 	public boolean next() throws SQLException
 	{
+		if	(adaptiveFetchSize != null)
+		{
+			int fetchSize = adaptiveFetchSize.rowFetched(resultRegBytes);
+			if	(fetchSize != 0)
+			{
+				if	(DEBUG)
+					log(GXDBDebug.LOG_MAX, "setFetchSize : " + fetchSize);
+				result.setFetchSize(fetchSize);
+			}
+		}
 		resultRegBytes = 0;
 
 		if	(DEBUG)
@@ -140,6 +149,16 @@ public final class GXResultSet implements ResultSet, com.genexus.db.IFieldGetter
 		return resultRegBytes;
 	}
 
+	/**
+	 * Ajusta el fetch size segun el largo de las filas leidas y lo rapido que se consumen,
+	 * empezando en 'initialFetchSize' y sin pasar de 'maxFetchSize'.
+	 */
+	public void setAdaptiveFetchSize(int initialFetchSize, int maxFetchSize) throws SQLException
+	{
+		adaptiveFetchSize = new AdaptiveFetchSize(initialFetchSize, maxFetchSize);
+		result.setFetchSize(adaptiveFetchSize.getFetchSize());
+	}
+
 	public String getLongVarchar(int columnIndex) throws SQLException
 	{
 		String value;
@@ -972,30 +991,30 @@ public final class GXResultSet implements ResultSet, com.genexus.db.IFieldGetter
 				if (!path.exists())
 					path.mkdirs();
 			}
-			ByteArrayOutputStream os = new ByteArrayOutputStream();
-			OutputStream destination = new BufferedOutputStream(os);
-			byte[] buffer = new byte[4096];
-			int bytes_read;
-
-			destination.write(xbuffer, 0, 1);
+			//Los bytes leidos para saber si el BLOB es vacio se devuelven delante del resto del stream,
+			//que va directo al archivo o al storage provider sin cargarse entero en memoria.
+			byte[] probe;
 			if (con.getDBMS() instanceof GXDBMSoracle7)
+				probe = new byte[] { xbuffer[0], (byte) secondByte };
+			else
+				probe = new byte[] { xbuffer[0] };
+			InputStream is = new SequenceInputStream(new ByteArrayInputStream(probe), source);
+			GXFile gxFile = new GXFile(fileName, ResourceAccessControlList.Private);
+			try
 			{
-				destination.write(secondByte);
+				gxFile.create(is);
 			}
-
-			while (true)
+			finally
 			{
-		    	bytes_read = source.read(buffer);
-			    if (bytes_read == -1)
-			    	break;
-				destination.write(buffer, 0, bytes_read);
+				source.close();
+			}
+			//create no propaga los errores de lectura del stream; un archivo truncado no se devuelve.
+			//ErrCode 1 (el archivo ya existe) no leyo el stream y se mantiene como antes.
+			if (gxFile.getErrCode() != 0 && gxFile.getErrCode() != 1)
+			{
+				gxFile.delete();
+				throw new SQLException("Can't read BLOB field into " + fileName + ": " + gxFile.getErrDescription());
 			}
-			source.close();
-			destination.close();
-
-			InputStream is = new ByteArrayInputStream(os.toByteArray());
-			GXFile gxFile = new GXFile(fileName, ResourceAccessControlList.Private);
-		  	gxFile.create(is);
 			
 			fileName = gxFile.getFilePath();
 			
@@ -17,6 +17,7 @@ public interface IConnectionPool
 	public void disconnect(int handle) throws SQLException;
 	public void disconnect() throws SQLException;
 	public void flushBuffers(int handle, java.lang.Object o) throws SQLException;
+	/** Ejecuta el runnable mientras ningun thread obtiene, crea o quita conexiones del pool */
 	public void runWithLock(Runnable runnable);
 	public void removeElement(GXConnection con);
 }
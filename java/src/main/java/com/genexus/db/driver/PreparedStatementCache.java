@@ -10,6 +10,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.genexus.DebugFlag;
 import com.genexus.db.DBConnectionManager;
@@ -18,8 +19,10 @@ import com.genexus.db.UserInformation;
 /**
  * @author aaguiar
  *
- * To change the template for this generated type comment go to
- * Window>Preferences>Java>Code Generation>Code and Comments
+ * Cache de statements de una conexion. Los statements libres se buscan sin lock por sentencia
+ * (o por cursor en los batch) y se mantienen hasta maxSize statements entre libres y en uso; al
+ * pasarse se cierra el libre que hace mas tiempo no se usa. Los que estan en uso nunca se cierran,
+ * si todos estan en uso el cache queda excedido hasta que se liberen.
  */
 public class PreparedStatementCache implements IPreparedStatementCache {
 
@@ -29,13 +32,16 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 	private ConcurrentHashMap<GXPreparedStatement, Boolean> usedCache;	
 
 	public FreeStatementList freeStatementList;
-	private Object objectLock = new Object();
 
 	private GXConnection jdbcConnection;
 
 	private int maxSize;
 	private boolean unlimitedSize;
 
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
 	PreparedStatementCache(int maxSize, GXConnection jdbcConnection)
 	{
 		this.freeStatementList = new FreeStatementList(maxSize, jdbcConnection);
@@ -57,9 +63,7 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 
 	public int getUsedCursors()
 	{
-		synchronized (objectLock) {
-			return usedCache.size();
-		}
+		return usedCache.size();
 	}
 	
 	public int getUsedCursorsJMX()
@@ -86,7 +90,7 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 		return stmt;
 	}
 
-	public synchronized PreparedStatement getStatement(int handle, String index, String sqlSentence, boolean currentOf, boolean callable, boolean batch) throws SQLException
+	public PreparedStatement getStatement(int handle, String index, String sqlSentence, boolean currentOf, boolean callable, boolean batch) throws SQLException
 	{
 		if (handle != -1 && !index.equals("_ConnectionID_"))
 			((UserInformation)DBConnectionManager.getInstance().getUserInformation(handle)).setLastSQL(index + " " + sqlSentence);
@@ -102,26 +106,16 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 		// Si no existe el statement en la lista de frees
 		if (out == null)
 		{
-			if (!unlimitedSize && (freeStatementList.size() + usedCache.size()) >= maxSize)
-			{
-				// Si no hay free quiere decir que estamos tope. En ese caso agrandamos el pool
-				if	(freeStatementList.size() == 0)
-				{
-					maxSize ++;
-					if	(DEBUG)
-						jdbcConnection.log(GXDBDebug.LOG_MED, "Expanding prepared statement pool to " +  maxSize);
-				}
-				else
-				{
-					if (!freeStatementList.removeOlder())
-						maxSize ++;
-				}
-			}
+			misses.increment();
+			// Se hace lugar para el nuevo; si no hay free quiere decir que estan todos en uso
+			// y el cache queda excedido hasta que se liberen
+			evictOverflow(1);
 
 			out = createStatement(handle, index, sqlSentence, currentOf, callable);
 		}
 		else
 		{
+			hits.increment();
 			if	(DEBUG)
 				jdbcConnection.log(GXDBDebug.LOG_MED, "Reusing cursor " + index + " free " + freeStatementList.size() + " used " + usedCache.size() + " - " + sqlSentence);
 		}
@@ -131,10 +125,55 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 		return out;
 	}
 
+	/**
+	 * Cierra los statements libres que hacen mas tiempo no se usan hasta que, contando
+	 * 'reserved' statements a crear, no se pase de maxSize.
+	 */
+	private void evictOverflow(int reserved)
+	{
+		if (unlimitedSize)
+			return;
+		while (freeStatementList.size() > 0 && (freeStatementList.size() + usedCache.size() + reserved) > maxSize)
+		{
+			if (!freeStatementList.removeOlder())
+			{
+				if	(DEBUG)
+					jdbcConnection.log(GXDBDebug.LOG_MED, "Prepared statement pool over its maximum size " +  maxSize);
+				return;
+			}
+			evictions.increment();
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.sum();
+	}
+
+	public int getFreeStatementCount()
+	{
+		return freeStatementList.size();
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
 	/**
 	 * Hace un drop de todos los cursores preparados del pool de cursores.
 	 */
-	public synchronized void dropAllCursors()
+	public void dropAllCursors()
 	{
 		if	(DEBUG)
 			jdbcConnection.log(GXDBDebug.LOG_MED, "Dropping all cursors. Used :" + usedCache.size() + " free " + freeStatementList.size());
@@ -163,20 +202,18 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 		usedCache.clear();
 	}
 
-    public synchronized void freeAllCursors()
+    public void freeAllCursors()
     {
       for (Iterator i = usedCache.keySet().iterator(); i.hasNext(); )
       {
         GXPreparedStatement stmt = ((GXPreparedStatement) i.next());
         setNotInUse(stmt);
       }
-
-      usedCache.clear();
     }
 
 	/** Elimina un cursor (lo cierra y lo saca de la lista de prepared statements)
 	 */	
-	public synchronized void dropCursor(GXPreparedStatement stmt)
+	public void dropCursor(GXPreparedStatement stmt)
 	{
 		if(stmt == null)return;
 		try
@@ -191,7 +228,7 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 	/**
 	 * Marca un cursor como "Not in use", de modo que pueda ser reutilizado.
 	 */
-	public synchronized void setNotInUse(GXPreparedStatement stmt)
+	public void setNotInUse(GXPreparedStatement stmt)
 	{
 		// Puede venir en null si se llama desde un supplier que nunca
 		// abri� el cursor.
@@ -200,8 +237,12 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 		{
 			try
 			{
-				usedCache.remove(stmt);
-				freeStatementList.add(stmt);
+				// Solo el primero que lo libera lo pasa a la lista de free
+				if	(usedCache.remove(stmt) != null)
+				{
+					freeStatementList.add(stmt);
+					evictOverflow(0);
+				}
 			}
 			catch (Throwable t)
 			{
@@ -210,8 +251,9 @@ public class PreparedStatementCache implements IPreparedStatementCache {
 		}
 	}
 
-	public synchronized void dump(java.io.PrintStream out)
+	public void dump(java.io.PrintStream out)
 	{
+		out.println("Statement cache: hits " + getHits() + " misses " + getMisses() + " evictions " + getEvictions() + " free " + freeStatementList.size() + " max " + maxSize);
 		out.println("Used statements");
 		for (Iterator i = usedCache.keySet().iterator(); i.hasNext(); )
 		{
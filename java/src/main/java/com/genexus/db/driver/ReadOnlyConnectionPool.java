@@ -25,6 +25,7 @@ final class ReadOnlyConnectionPool extends ConnectionPool
 		}
 		poolName	  = "R/O Pool";
 		createPoolStartup();
+		scheduleHousekeeping();
 	}
 
 	boolean useSameConnectionForSameHandle()
@@ -30,6 +30,7 @@ final class ReadWriteConnectionPool extends ConnectionPool
 		poolName	  = "Pool";
 
 		createPoolStartup();
+		scheduleHousekeeping();
 	}
 
 	boolean useSameConnectionForSameHandle()
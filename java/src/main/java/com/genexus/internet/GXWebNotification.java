@@ -112,6 +112,56 @@ public class GXWebNotification {
         broadcastImpl(message);           
     }
 	
+    /** Envia el mensaje solo a los clientes suscriptos al grupo */
+    public void broadcastToGroup(String group, GXXMLSerializable message)
+    {
+		broadcastToGroup(group, message.toJSonString());
+    }
+
+	public void broadcastToGroup(String group, String message)
+    {
+        if (ws != null)
+		{
+			ws.broadcastToGroup(group.trim(), message);
+			setError((short)0);
+		}
+		else
+			setError((short)1);
+    }
+
+	/** Suscribe al cliente actual al grupo, hasta que se cierre su ultima sesion */
+	public void subscribe(String group)
+	{
+		subscribe(_ctx.getClientId(), group);
+	}
+
+	public void subscribe(String clientId, String group)
+	{
+        if (ws != null)
+		{
+			ws.subscribe(clientId.trim(), group.trim());
+			setError((short)0);
+		}
+		else
+			setError((short)1);
+	}
+
+	public void unsubscribe(String group)
+	{
+		unsubscribe(_ctx.getClientId(), group);
+	}
+
+	public void unsubscribe(String clientId, String group)
+	{
+        if (ws != null)
+		{
+			ws.unsubscribe(clientId.trim(), group.trim());
+			setError((short)0);
+		}
+		else
+			setError((short)1);
+	}
+	
 	private void broadcastImpl(String message)
     {                	
         if (ws != null)
@@ -1,7 +1,8 @@
 package com.genexus.internet.websocket;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
 
 import json.org.json.JSONObject;
@@ -9,18 +10,41 @@ import json.org.json.JSONObject;
 import com.genexus.Application;
 import com.genexus.GXutil;
 import com.genexus.ModelContext;
+import com.genexus.Preferences;
 import com.genexus.db.DynamicExecute;
+import com.genexus.diagnostics.core.ILogger;
+import com.genexus.diagnostics.core.LogManager;
+import com.genexus.management.WebSocketJMX;
 import com.genexus.util.GXService;
 import com.genexus.util.GXServices;
 import com.genexus.xml.GXXMLSerializable;
 import com.genexus.websocket.ISession;
 
+/**
+ * Los mensajes se envian con el endpoint asincronico: cada sesion tiene una cola de salida de a lo sumo
+ * WEBNOTIFICATIONS_MAX_QUEUE_SIZE mensajes y un cliente lento no demora a los demas. Cuando la cola de un
+ * cliente esta llena se aplica WEBNOTIFICATIONS_SLOW_CLIENT_POLICY: DROP descarta el mensaje para esa sesion
+ * y DISCONNECT ademas la cierra. send espera el resultado del envio, broadcast no.
+ */
 public class GXWebSocketCommon {
 
+	private static final ILogger logger = LogManager.getLogger(GXWebSocketCommon.class);
+
+	/** Lo que espera send el envio, como el timeout por defecto de los envios bloqueantes de Tomcat */
+	private static final long SEND_TIMEOUT = 20000L;
+
 	private static String[] handlerCache = new String[HandlerType.values().length];
 	
 	private static GXWebSocketSessionCollection wsClients = new GXWebSocketSessionCollection();
 
+	private static volatile int maxQueueSize;
+	private static volatile boolean disconnectSlowClients;
+
+	static {
+		if (Application.isJMXEnabled())
+			WebSocketJMX.createWebSocketJMX(wsClients);
+	}
+
 	private ConcurrentHashMap<Integer, GXWebSocketSession> sessions = new ConcurrentHashMap<Integer, GXWebSocketSession>();
 
 	public enum HandlerType {
@@ -30,6 +54,7 @@ public class GXWebSocketCommon {
 	public void closedSession(GXWebSocketSession session)
 	{				
 		wsClients.remove(session);
+		session.discardQueued();
 	}
 
 	protected void OnOpenCommon (ISession session) {
@@ -133,23 +158,37 @@ public class GXWebSocketCommon {
 		SendResponseType result = SendResponseType.SessionNotFound;
 		List<GXWebSocketSession> list = wsClients.getById(clientId);
 		if (list != null){
-			for (GXWebSocketSession session : list){
-				result = sendMessage( session,message);
+			List<GXWebSocketSession> clientSessions = copySessions(list);
+			// Se encola en todas las sesiones del cliente y despues se espera cada envio
+			List<GXWebSocketMessage> messages = new ArrayList<GXWebSocketMessage>(clientSessions.size());
+			List<SendResponseType> results = new ArrayList<SendResponseType>(clientSessions.size());
+			List<GXWebSocketSession> slow = new ArrayList<GXWebSocketSession>();
+			for (GXWebSocketSession session : clientSessions){
+				GXWebSocketMessage msg = new GXWebSocketMessage(message, true);
+				results.add(queueMessage(session, msg, slow));
+				messages.add(msg);
+			}
+			closeSlowClients(slow);
+			for (int i = 0; i < messages.size(); i++){
+				result = results.get(i);
+				if (result == SendResponseType.OK)
+					result = awaitMessage(messages.get(i));
 			}
 		}		
 		return result;
 	}
 
-	private SendResponseType sendMessage( GXWebSocketSession session, String message) {
+	private SendResponseType queueMessage( GXWebSocketSession session, GXWebSocketMessage message, List<GXWebSocketSession> slow) {
 		SendResponseType result = SendResponseType.SessionInvalid;
 		if (session != null ){
 			if (session.getSession().isOpen()){
-				try {
-					session.getSession().sendEndPointText(message);
-					result = SendResponseType.OK;					
-				} catch (IOException e) {	
+				if (session.queue(message, getMaxQueueSize())) {
+					result = SendResponseType.OK;
+				} else {
 					result = SendResponseType.SendFailed;
-					System.out.println("GXWebSocket - sendMessage failed. " + e.getMessage());
+					message.completed(false);
+					if (disconnectSlowClients)
+						slow.add(session);
 				}
 			}
 			else
@@ -165,11 +204,73 @@ public class GXWebSocketCommon {
 		return result;
 	}
 
-	
+	private SendResponseType awaitMessage(GXWebSocketMessage message) {
+		try {
+			if (message.await(SEND_TIMEOUT))
+				return SendResponseType.OK;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return SendResponseType.SendFailed;
+	}
+
+	/** Se cierran despues de recorrer las listas, el cierre puede sacar la sesion de su lista */
+	private void closeSlowClients(List<GXWebSocketSession> slow) {
+		for (GXWebSocketSession session : slow) {
+			logger.warn("GXWebSocket - closing slow client " + session.getId());
+			session.close();
+		}
+	}
+
+	/** El mensaje se arma una vez y se encola en cada sesion sin esperar los envios */
 	protected void broadcastCommon(String message) {
-		for ( GXWebSocketSession session : wsClients.getAll() ) {		    		   
-		    sendMessage(session,message);
-		}	
+		GXWebSocketMessage msg = new GXWebSocketMessage(message, false);
+		List<GXWebSocketSession> slow = new ArrayList<GXWebSocketSession>();
+		for ( List<GXWebSocketSession> list : wsClients.getSessionLists() ) {
+			for ( GXWebSocketSession session : copySessions(list) ) {
+				queueMessage(session, msg, slow);
+			}
+		}
+		closeSlowClients(slow);
+	}
+
+	/** Como broadcastCommon, solo a los clientes suscriptos al grupo */
+	protected void broadcastToGroupCommon(String group, String message) {
+		GXWebSocketMessage msg = new GXWebSocketMessage(message, false);
+		List<GXWebSocketSession> slow = new ArrayList<GXWebSocketSession>();
+		for ( String clientId : wsClients.getGroup(group) ) {
+			List<GXWebSocketSession> list = wsClients.getById(clientId);
+			if (list == null)
+				continue;
+			for ( GXWebSocketSession session : copySessions(list) ) {
+				queueMessage(session, msg, slow);
+			}
+		}
+		closeSlowClients(slow);
+	}
+
+	/** Copia las sesiones de un cliente con la lista bloqueada, para encolar sin bloquear a quien abre o cierra sesiones */
+	private static List<GXWebSocketSession> copySessions(List<GXWebSocketSession> list) {
+		synchronized (list) {
+			return new ArrayList<GXWebSocketSession>(list);
+		}
+	}
+
+	protected void subscribeCommon(String clientId, String group) {
+		wsClients.subscribe(clientId, group);
+	}
+
+	protected void unsubscribeCommon(String clientId, String group) {
+		wsClients.unsubscribe(clientId, group);
+	}
+
+	private static int getMaxQueueSize() {
+		if (maxQueueSize == 0) {
+			Preferences preferences = Preferences.getDefaultPreferences();
+			disconnectSlowClients = preferences.getWEBNOTIFICATIONS_SLOW_CLIENT_POLICY().trim().toUpperCase(Locale.ENGLISH).equals("DISCONNECT");
+			maxQueueSize = Math.max(1, preferences.getWEBNOTIFICATIONS_MAX_QUEUE_SIZE());
+		}
+		return maxQueueSize;
 	}
 
 	public boolean start() {
@@ -0,0 +1,38 @@
+package com.genexus.internet.websocket;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** Mensaje en las colas de salida de las sesiones. En un broadcast todas las sesiones comparten la misma instancia */
+final class GXWebSocketMessage {
+	private final String text;
+	private final long queuedAt = System.nanoTime();
+	private final CountDownLatch done;
+	private volatile boolean sent;
+
+	/** waitable si el que lo envia espera el resultado con await */
+	GXWebSocketMessage(String text, boolean waitable) {
+		this.text = text;
+		this.done = waitable ? new CountDownLatch(1) : null;
+	}
+
+	String getText() {
+		return text;
+	}
+
+	long getQueuedAt() {
+		return queuedAt;
+	}
+
+	void completed(boolean sent) {
+		if (done != null) {
+			this.sent = sent;
+			done.countDown();
+		}
+	}
+
+	/** True si se envio antes de timeoutMillis */
+	boolean await(long timeoutMillis) throws InterruptedException {
+		return done.await(timeoutMillis, TimeUnit.MILLISECONDS) && sent;
+	}
+}
@@ -1,11 +1,35 @@
 package com.genexus.internet.websocket;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.genexus.diagnostics.core.ILogger;
+import com.genexus.diagnostics.core.LogManager;
+import com.genexus.performance.LatencyHistogram;
+import com.genexus.websocket.ISendHandler;
 import com.genexus.websocket.ISession;
 
 public class GXWebSocketSession{
 	
+	private static final ILogger logger = LogManager.getLogger(GXWebSocketSession.class);
+
+	/** Tiempo desde que se encola cada mensaje hasta que se envia bien, de todas las sesiones */
+	static final LatencyHistogram sendLatencies = new LatencyHistogram();
+	static final AtomicLong totalSent = new AtomicLong();
+	static final AtomicLong totalFailed = new AtomicLong();
+	static final AtomicLong totalDropped = new AtomicLong();
+	static final AtomicLong totalLatency = new AtomicLong();
+
 	private String id;
 	private ISession session;
+	private final ArrayDeque<GXWebSocketMessage> outbound = new ArrayDeque<GXWebSocketMessage>();
+	private boolean sending;
+	private long sentMessages;
+	private long failedMessages;
+	private long droppedMessages;
+	private long sessionLatency;
+	private long maxLatency;
 	
 	public String getId(){
 		return id;
@@ -21,4 +45,152 @@ public class GXWebSocketSession{
 	public boolean equals(Object obj){
 		return ((GXWebSocketSession)obj).session.equals(this.session);		
 	}
+
+	/**
+	 * Encola el mensaje para enviarlo con el endpoint asincronico, de a uno por sesion como pide JSR 356.
+	 * Devuelve false sin encolarlo si ya hay maxQueueSize mensajes esperando
+	 */
+	boolean queue(GXWebSocketMessage message, int maxQueueSize) {
+		synchronized (outbound) {
+			if (outbound.size() >= maxQueueSize) {
+				droppedMessages++;
+				totalDropped.incrementAndGet();
+				return false;
+			}
+			outbound.add(message);
+			if (sending)
+				return true;
+			sending = true;
+		}
+		sendNext();
+		return true;
+	}
+
+	/** Descarta los mensajes que esperaban, al cerrarse la sesion */
+	void discardQueued() {
+		synchronized (outbound) {
+			for (GXWebSocketMessage message : outbound) {
+				droppedMessages++;
+				totalDropped.incrementAndGet();
+				message.completed(false);
+			}
+			outbound.clear();
+		}
+	}
+
+	void close() {
+		try {
+			session.close();
+		} catch (IOException e) {
+			logger.warn("GXWebSocket - close failed. " + e.getMessage());
+		}
+	}
+
+	/** Envia los mensajes encolados. Si el envio termina dentro de sendEndPointTextAsync sigue en el loop, sin recursion */
+	private void sendNext() {
+		for (;;) {
+			GXWebSocketMessage message;
+			synchronized (outbound) {
+				message = outbound.poll();
+				if (message == null) {
+					sending = false;
+					return;
+				}
+			}
+			Send send = new Send(message);
+			try {
+				session.sendEndPointTextAsync(message.getText(), send);
+			} catch (RuntimeException e) {
+				send.onResult(e);
+			}
+			if (!send.returned())
+				return;
+		}
+	}
+
+	/** Solo los envios que terminan bien cuentan como enviados y para la latencia */
+	private void sent(GXWebSocketMessage message, Throwable exception) {
+		if (exception != null) {
+			totalFailed.incrementAndGet();
+			synchronized (outbound) {
+				failedMessages++;
+			}
+			logger.warn("GXWebSocket - sendMessage failed. " + exception.getMessage());
+			message.completed(false);
+			return;
+		}
+		long latency = System.nanoTime() - message.getQueuedAt();
+		sendLatencies.recordNanos(latency);
+		totalSent.incrementAndGet();
+		totalLatency.addAndGet(latency);
+		synchronized (outbound) {
+			sentMessages++;
+			sessionLatency += latency;
+			maxLatency = Math.max(maxLatency, latency);
+		}
+		message.completed(true);
+	}
+
+	int getQueuedMessages() {
+		synchronized (outbound) {
+			return outbound.size();
+		}
+	}
+
+	long getSentMessages() {
+		synchronized (outbound) {
+			return sentMessages;
+		}
+	}
+
+	long getFailedMessages() {
+		synchronized (outbound) {
+			return failedMessages;
+		}
+	}
+
+	long getDroppedMessages() {
+		synchronized (outbound) {
+			return droppedMessages;
+		}
+	}
+
+	/** Milisegundos promedio desde que se encola un mensaje hasta que se envia */
+	float getAverageSendLatency() {
+		synchronized (outbound) {
+			return sentMessages == 0 ? 0 : sessionLatency / 1000000f / sentMessages;
+		}
+	}
+
+	float getMaxSendLatency() {
+		synchronized (outbound) {
+			return maxLatency / 1000000f;
+		}
+	}
+
+	private class Send implements ISendHandler {
+		private final GXWebSocketMessage message;
+		private boolean inCall = true;
+		private boolean completed;
+
+		Send(GXWebSocketMessage message) {
+			this.message = message;
+		}
+
+		public void onResult(Throwable exception) {
+			sent(message, exception);
+			synchronized (this) {
+				completed = true;
+				if (inCall)
+					return;
+			}
+			sendNext();
+		}
+
+		/** Marca que volvio sendEndPointTextAsync, true si el envio ya habia terminado y sigue el que llamo */
+		synchronized boolean returned() {
+			inCall = false;
+			return completed;
+		}
+	}
 }
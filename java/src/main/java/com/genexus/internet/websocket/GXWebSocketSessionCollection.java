@@ -1,12 +1,18 @@
 package com.genexus.internet.websocket;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.genexus.performance.LatencyHistogram;
+
 public class GXWebSocketSessionCollection {
 	private ConcurrentHashMap<String, List<GXWebSocketSession>> clients = new ConcurrentHashMap<String, List<GXWebSocketSession>>();	
+	/** Clientes suscriptos a cada grupo; un cliente sale de sus grupos cuando se cierra su ultima sesion */
+	private ConcurrentHashMap<String, Set<String>> groups = new ConcurrentHashMap<String, Set<String>>();
 	
 	public void put(GXWebSocketSession ws){
 		String key = ws.getId();
@@ -23,8 +29,11 @@ public class GXWebSocketSessionCollection {
 		Boolean removed = false;
 		if (clients.containsKey(key)){
 			removed = clients.get(key).remove(ws);
-			if (removed && clients.get(key).size() == 0)
+			if (removed && clients.get(key).size() == 0) {
 				clients.remove(key);
+				for (Set<String> group : groups.values())
+					group.remove(key);
+			}
 		}
 		//System.out.println("Removed websocket" + key + " - " + clients.get(key).size()  );
 		return removed;
@@ -38,11 +47,79 @@ public class GXWebSocketSessionCollection {
 	public List<GXWebSocketSession> getAll(){
 		List<GXWebSocketSession> allWS = new ArrayList<GXWebSocketSession>();
 		for (List<GXWebSocketSession> list : clients.values()){
-			for (GXWebSocketSession s : list){
-				allWS.add(s);
+			synchronized (list){
+				allWS.addAll(list);
 			}
 		}
 		return allWS;
 	}
-	
+
+	/** Listas de sesiones de cada cliente, sin copiarlas; se recorren sincronizando cada lista */
+	Collection<List<GXWebSocketSession>> getSessionLists(){
+		return clients.values();
+	}
+
+	public void subscribe(String clientId, String group){
+		Set<String> clientIds = groups.get(group);
+		if (clientIds == null){
+			Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			clientIds = groups.putIfAbsent(group, created);
+			if (clientIds == null)
+				clientIds = created;
+		}
+		clientIds.add(clientId);
+	}
+
+	public void unsubscribe(String clientId, String group){
+		Set<String> clientIds = groups.get(group);
+		if (clientIds != null)
+			clientIds.remove(clientId);
+	}
+
+	public int getQueuedMessages(){
+		int queued = 0;
+		for (GXWebSocketSession s : getAll())
+			queued += s.getQueuedMessages();
+		return queued;
+	}
+
+	/** Mensajes enviados desde que arranco la aplicacion, por todas las sesiones */
+	public long getSentMessages(){
+		return GXWebSocketSession.totalSent.get();
+	}
+
+	public long getFailedMessages(){
+		return GXWebSocketSession.totalFailed.get();
+	}
+
+	public long getDroppedMessages(){
+		return GXWebSocketSession.totalDropped.get();
+	}
+
+	/** Milisegundos promedio desde que se encola un mensaje hasta que se envia */
+	public float getAverageSendLatency(){
+		long sent = GXWebSocketSession.totalSent.get();
+		return sent == 0 ? 0 : GXWebSocketSession.totalLatency.get() / 1000000f / sent;
+	}
+
+	public LatencyHistogram getSendLatencies(){
+		return GXWebSocketSession.sendLatencies;
+	}
+
+	/** Una linea por sesion abierta con su cola y la latencia de sus envios */
+	public List<String> getSessionSendLatencies(){
+		List<String> latencies = new ArrayList<String>();
+		for (GXWebSocketSession s : getAll())
+			latencies.add(s.getId() + " queued=" + s.getQueuedMessages() + " sent=" + s.getSentMessages() + " failed=" + s.getFailedMessages() + " dropped=" + s.getDroppedMessages()
+				+ " avg=" + s.getAverageSendLatency() + "ms max=" + s.getMaxSendLatency() + "ms");
+		return latencies;
+	}
+
+	/** Clientes suscriptos al grupo */
+	public Collection<String> getGroup(String group){
+		Set<String> clientIds = groups.get(group);
+		if (clientIds == null)
+			return Collections.emptySet();
+		return clientIds;
+	}
 }
@@ -4,5 +4,8 @@ public interface IGXWebSocketAsync {
 		boolean start();
        SendResponseType send(String clientId, String message);
        void broadcast(String message);	   	 
+       void broadcastToGroup(String group, String message);
+       void subscribe(String clientId, String group);
+       void unsubscribe(String clientId, String group);
 }
 
@@ -5,12 +5,15 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import com.genexus.CacheFactory;
 import com.genexus.Preferences;
+import com.genexus.cache.NearCache;
+import com.genexus.cache.StorageUrlCache;
 import com.genexus.db.CacheValue;
 import com.genexus.db.InProcessCache;
 
 public class CacheJMX implements CacheJMXMBean{
 	
 	private InProcessCache resultCache;
+	private NearCache nearCache;
 	
 
   public CacheJMX(InProcessCache resultCache)
@@ -18,6 +21,12 @@ public class CacheJMX implements CacheJMXMBean{
     this.resultCache = resultCache;
   }
 
+  public CacheJMX(NearCache nearCache)
+  {
+    this.resultCache = nearCache.getLocal();
+    this.nearCache = nearCache;
+  }
+
   static public void CreateCacheJMX(InProcessCache resultCache)
   {
     try
@@ -30,6 +39,18 @@ public class CacheJMX implements CacheJMXMBean{
     }
   }
   
+  static public void CreateCacheJMX(NearCache nearCache)
+  {
+    try
+    {
+      MBeanUtils.createMBean(nearCache);
+    }
+    catch(Exception e)
+    {
+      System.err.println("Cannot register Cache MBean."+e.toString());
+    }
+  }
+  
   static public void DestroyCacheJMX()
   {
     try
@@ -52,6 +73,58 @@ public class CacheJMX implements CacheJMXMBean{
 	  return resultCache.getCacheCurrentSize();
   }
   
+  public int getDrops()
+  {
+	  return resultCache.getCacheDrops();
+  }
+  
+  public long getLocalHits()
+  {
+	  return nearCache == null ? 0 : nearCache.getLocalStats().getHits();
+  }
+  
+  public long getLocalMisses()
+  {
+	  return nearCache == null ? 0 : nearCache.getLocalStats().getMisses();
+  }
+  
+  public double getLocalAverageLatency()
+  {
+	  return nearCache == null ? 0 : nearCache.getLocalStats().getAverageLatency();
+  }
+  
+  public long getRemoteHits()
+  {
+	  return nearCache == null ? 0 : nearCache.getRemoteStats().getHits();
+  }
+  
+  public long getRemoteMisses()
+  {
+	  return nearCache == null ? 0 : nearCache.getRemoteStats().getMisses();
+  }
+  
+  public double getRemoteAverageLatency()
+  {
+	  return nearCache == null ? 0 : nearCache.getRemoteStats().getAverageLatency();
+  }
+
+  public long getStorageUrlHits()
+  {
+	  return StorageUrlCache.getStats().getHits();
+  }
+
+  public long getStorageUrlMisses()
+  {
+	  return StorageUrlCache.getStats().getMisses();
+  }
+
+  public double getStorageUrlHitRatio()
+  {
+	  long hits = getStorageUrlHits();
+	  long total = hits + getStorageUrlMisses();
+	  return total == 0 ? 0 : (double) hits / total;
+  }
+  
   public boolean getEnabled()
   {
 	  return resultCache.isEnabled();
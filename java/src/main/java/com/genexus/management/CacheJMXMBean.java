@@ -4,6 +4,16 @@ public interface CacheJMXMBean
 {
   long getStorageSize();
   long getCurrentSize();
+  int getDrops();
+  long getLocalHits();
+  long getLocalMisses();
+  double getLocalAverageLatency();
+  long getRemoteHits();
+  long getRemoteMisses();
+  double getRemoteAverageLatency();
+  long getStorageUrlHits();
+  long getStorageUrlMisses();
+  double getStorageUrlHitRatio();
   boolean getEnabled();
   void setEnabled(boolean value);
   int [] getTimeToLive();
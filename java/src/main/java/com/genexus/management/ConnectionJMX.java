@@ -86,6 +86,26 @@ public class ConnectionJMX implements ConnectionJMXMBean{
 	{
 		return connection.getUncommitedChanges();
 	}
+
+	public long getStatementCacheHits()
+	{
+		return connection.getStatementCacheHits();
+	}
+
+	public long getStatementCacheMisses()
+	{
+		return connection.getStatementCacheMisses();
+	}
+
+	public long getStatementCacheEvictions()
+	{
+		return connection.getStatementCacheEvictions();
+	}
+
+	public int getFreeStatementCount()
+	{
+		return connection.getFreeStatementCount();
+	}
 	
 	public int getRequestCount()
 	{
@@ -14,6 +14,10 @@ public interface ConnectionJMXMBean
 	boolean getAvailable();
 	int getOpenCursorCount();
 	boolean getUncommitedChanges();
+	long getStatementCacheHits();
+	long getStatementCacheMisses();
+	long getStatementCacheEvictions();
+	int getFreeStatementCount();
 	int getRequestCount();
 	Date getLastSQLStatementTime();
 	String getLastSQLStatement();
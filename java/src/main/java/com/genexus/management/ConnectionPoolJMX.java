@@ -116,6 +116,21 @@ public class ConnectionPoolJMX extends NotificationBroadcasterSupport implements
 		connectionPool.setUserMaxTimeWaitingBeforeNotif(value);
 	}	
 	
+	public long getCheckoutTimeout()
+	{
+		return connectionPool.getCheckoutTimeout();
+	}
+	
+	public void setCheckoutTimeout(long value)
+	{
+		connectionPool.setCheckoutTimeout(value);
+	}
+	
+	public int getCheckoutTimeoutCount()
+	{
+		return connectionPool.getNumberCheckoutTimeouts();
+	}
+	
 	public void dumpPoolInformation()
 	{
 		connectionPool.dumpPoolInformation();
@@ -21,6 +21,9 @@ public interface ConnectionPoolJMXMBean
 	void setNotificationEnabled(boolean value);
 	long getBeforeNotificationWaitTime();
 	void setBeforeNotificationWaitTime(long value);	
+	long getCheckoutTimeout();
+	void setCheckoutTimeout(long value);
+	int getCheckoutTimeoutCount();
 	
 	void dumpPoolInformation();
 	void Recycle();
@@ -9,6 +9,7 @@ import javax.management.MBeanServerFactory;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
+import com.genexus.cache.NearCache;
 import com.genexus.db.CacheValue;
 import com.genexus.db.InProcessCache;
 import com.genexus.db.LocalUserInformation;
@@ -17,9 +18,13 @@ import com.genexus.db.ServerUserInformation;
 import com.genexus.db.driver.ConnectionPool;
 import com.genexus.db.driver.DataSource;
 import com.genexus.db.driver.GXConnection;
+import com.genexus.diagnostics.core.ILogger;
+import com.genexus.diagnostics.core.LogManager;
+import com.genexus.util.SubmitThreadPool;
 
 public class MBeanUtils {
 	
+	private static final ILogger logger = LogManager.getLogger(MBeanUtils.class);
 	private static MBeanServer mbs = null;	
 	private static Vector<ObjectName> registeredObjects = new Vector<ObjectName>();
 	
@@ -152,6 +157,36 @@ public class MBeanUtils {
       registerBean(mbean, "com.genexus.management:type=InProcessCache");
   }  
   
+  public static void createMBean(NearCache cache)
+  {
+    MBeanServer mbs = getMBeanServer();
+	if (mbs == null)
+		return;	
+
+      CacheJMX mbean = new CacheJMX(cache);
+      registerBean(mbean, "com.genexus.management:type=NearCache");
+  }  
+  
+  public static void createMBean(SubmitThreadPool pool)
+  {
+    MBeanServer mbs = getMBeanServer();
+	if (mbs == null)
+		return;
+
+      SubmitThreadPoolJMX mbean = new SubmitThreadPoolJMX(pool);
+      registerBean(mbean, "com.genexus.management:type=SubmitThreadPool");
+  }
+
+  /** Registra un MBean de un modulo que no se conoce aqui, como gxsearch */
+  public static void createMBean(Object mbean, String name)
+  {
+    MBeanServer mbs = getMBeanServer();
+	if (mbs == null)
+		return;
+
+      registerBean(mbean, name);
+  }
+
   public static void createMBean(CacheValue cacheValue)
   {
     MBeanServer mbs = getMBeanServer();
@@ -269,6 +304,25 @@ public class MBeanUtils {
     }
   }  
   
+  public static void destroyMBeanSubmitThreadPool()
+  {
+    MBeanServer mbs = getMBeanServer();
+	if (mbs == null)
+		return;
+
+    try
+    {
+      ObjectName name = new ObjectName("com.genexus.management:type=SubmitThreadPool");
+	  registeredObjects.removeElement(name);
+
+      mbs.unregisterMBean(name);
+    }
+    catch(javax.management.MalformedObjectNameException | javax.management.InstanceNotFoundException | javax.management.MBeanRegistrationException e)
+    {
+      logger.error("Cannot unregister SubmitThreadPool MBean", e);
+    }
+  }
+
   public static void destroyMBean(CacheValue cacheValue)
   {
     MBeanServer mbs = getMBeanServer();
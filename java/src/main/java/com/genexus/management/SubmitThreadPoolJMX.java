@@ -0,0 +1,102 @@
+package com.genexus.management;
+
+import com.genexus.util.SubmitThreadPool;
+
+public class SubmitThreadPoolJMX implements SubmitThreadPoolJMXMBean{
+
+	private SubmitThreadPool pool;
+
+  public SubmitThreadPoolJMX(SubmitThreadPool pool)
+  {
+    this.pool = pool;
+  }
+
+  static public void CreateSubmitThreadPoolJMX(SubmitThreadPool pool)
+  {
+    try
+    {
+      MBeanUtils.createMBean(pool);
+    }
+    catch(Exception e)
+    {
+      System.err.println("Cannot register SubmitThreadPool MBean."+e.toString());
+    }
+  }
+
+  static public void DestroySubmitThreadPoolJMX()
+  {
+    try
+    {
+      MBeanUtils.destroyMBeanSubmitThreadPool();
+    }
+    catch(Exception e)
+    {
+      System.err.println("Cannot destroy SubmitThreadPool MBean."+e.toString());
+    }
+  }
+
+  public int getPoolSize()
+  {
+	  return pool.getPoolSize();
+  }
+
+  public int getQueueSize()
+  {
+	  return pool.getQueueSize();
+  }
+
+  public String getRejectionPolicy()
+  {
+	  return pool.getRejectionPolicy();
+  }
+
+  public boolean getVirtualThreads()
+  {
+	  return pool.isVirtualThreads();
+  }
+
+  public int getQueueDepth()
+  {
+	  return pool.getQueueDepth();
+  }
+
+  public int getRunningSubmits()
+  {
+	  return pool.getRunningCount();
+  }
+
+  public int getRemainingSubmits()
+  {
+	  return SubmitThreadPool.getRemainingSubmits();
+  }
+
+  public long getCompletedSubmits()
+  {
+	  return pool.getCompletedCount();
+  }
+
+  public long getRejectedSubmits()
+  {
+	  return pool.getRejectedCount();
+  }
+
+  public float getAverageWaitTime()
+  {
+	  return pool.getAverageWaitTime();
+  }
+
+  public float getP99WaitTime()
+  {
+	  return pool.getWaitTimes().getValueAtPercentile(99) / 1000f;
+  }
+
+  public float getAverageRunTime()
+  {
+	  return pool.getAverageRunTime();
+  }
+
+  public float getP99RunTime()
+  {
+	  return pool.getRunTimes().getValueAtPercentile(99) / 1000f;
+  }
+}
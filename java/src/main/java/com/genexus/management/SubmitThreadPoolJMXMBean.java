@@ -0,0 +1,18 @@
+package com.genexus.management;
+
+public interface SubmitThreadPoolJMXMBean
+{
+  int getPoolSize();
+  int getQueueSize();
+  String getRejectionPolicy();
+  boolean getVirtualThreads();
+  int getQueueDepth();
+  int getRunningSubmits();
+  int getRemainingSubmits();
+  long getCompletedSubmits();
+  long getRejectedSubmits();
+  float getAverageWaitTime();
+  float getP99WaitTime();
+  float getAverageRunTime();
+  float getP99RunTime();
+}
@@ -0,0 +1,68 @@
+package com.genexus.management;
+
+import java.util.List;
+
+import com.genexus.internet.websocket.GXWebSocketSessionCollection;
+
+public class WebSocketJMX implements WebSocketJMXMBean{
+
+	private GXWebSocketSessionCollection sessions;
+
+  public WebSocketJMX(GXWebSocketSessionCollection sessions)
+  {
+    this.sessions = sessions;
+  }
+
+  static public void createWebSocketJMX(GXWebSocketSessionCollection sessions)
+  {
+    try
+    {
+      MBeanUtils.createMBean(new WebSocketJMX(sessions), "com.genexus.management:type=WebSocket");
+    }
+    catch(Exception e)
+    {
+      System.err.println("Cannot register WebSocket MBean."+e.toString());
+    }
+  }
+
+  public int getSessions()
+  {
+	  return sessions.getAll().size();
+  }
+
+  public int getQueuedMessages()
+  {
+	  return sessions.getQueuedMessages();
+  }
+
+  public long getSentMessages()
+  {
+	  return sessions.getSentMessages();
+  }
+
+  public long getFailedMessages()
+  {
+	  return sessions.getFailedMessages();
+  }
+
+  public long getDroppedMessages()
+  {
+	  return sessions.getDroppedMessages();
+  }
+
+  public float getAverageSendLatency()
+  {
+	  return sessions.getAverageSendLatency();
+  }
+
+  public float getP99SendLatency()
+  {
+	  return sessions.getSendLatencies().getValueAtPercentile(99) / 1000f;
+  }
+
+  public String[] getSessionSendLatencies()
+  {
+	  List<String> latencies = sessions.getSessionSendLatencies();
+	  return latencies.toArray(new String[latencies.size()]);
+  }
+}
@@ -0,0 +1,13 @@
+package com.genexus.management;
+
+public interface WebSocketJMXMBean
+{
+  int getSessions();
+  int getQueuedMessages();
+  long getSentMessages();
+  long getFailedMessages();
+  long getDroppedMessages();
+  float getAverageSendLatency();
+  float getP99SendLatency();
+  String[] getSessionSendLatencies();
+}
@@ -1,21 +1,23 @@
 package com.genexus.performance;
 
 import java.io.PrintStream;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.genexus.Application;
 
 public class DataStoreProviderInfo
 {
-	private long sentenceCount;
-	private long sentenceSelectCount;
-	private long sentenceUpdateCount;
-	private long sentenceDeleteCount;
-	private long sentenceInsertCount;
-	private long sentenceCallCount;	
-	private long sentenceDirectSQLCount;
-	private Hashtable<String, SentenceInfo> sentenceInfo = new Hashtable<>();
+	private final LongAdder sentenceCount = new LongAdder();
+	private final LongAdder sentenceSelectCount = new LongAdder();
+	private final LongAdder sentenceUpdateCount = new LongAdder();
+	private final LongAdder sentenceDeleteCount = new LongAdder();
+	private final LongAdder sentenceInsertCount = new LongAdder();
+	private final LongAdder sentenceCallCount = new LongAdder();
+	private final LongAdder sentenceDirectSQLCount = new LongAdder();
+	private ConcurrentHashMap<String, SentenceInfo> sentenceInfo = new ConcurrentHashMap<>();
+	private ConcurrentHashMap<String, SentenceInfo> cursorSentenceInfo = new ConcurrentHashMap<>();
 	
 	private String name;
 	
@@ -31,89 +33,104 @@ public class DataStoreProviderInfo
     
   public long getSentenceCount()
   {
-	  return sentenceCount;
+	  return sentenceCount.sum();
   }
   
   public void incSentenceCount()
   {
-	  sentenceCount ++;
+	  sentenceCount.increment();
   }
   
   public long getSentenceSelectCount()
   {
-	  return sentenceSelectCount;
+	  return sentenceSelectCount.sum();
   }
   
   public void incSentenceSelectCount()
   {
-	  sentenceSelectCount ++;
+	  sentenceSelectCount.increment();
   }  
   
   public long getSentenceUpdateCount()
   {
-	  return sentenceUpdateCount;
+	  return sentenceUpdateCount.sum();
   }
   
   public void incSentenceUpdateCount()
   {
-	  sentenceUpdateCount ++;
+	  sentenceUpdateCount.increment();
   }  
   
   public long getSentenceDeleteCount()
   {
-	  return sentenceDeleteCount;
+	  return sentenceDeleteCount.sum();
   }
   
   public void incSentenceDeleteCount()
   {
-	  sentenceDeleteCount ++;
+	  sentenceDeleteCount.increment();
   }  
   
   public long getSentenceInsertCount()
   {
-	  return sentenceInsertCount;
+	  return sentenceInsertCount.sum();
   }
   
   public void incSentenceInsertCount()
   {
-	  sentenceInsertCount ++;
+	  sentenceInsertCount.increment();
   }  
   
   public long getSentenceCallCount()
   {
-	  return sentenceCallCount;
+	  return sentenceCallCount.sum();
   }  
   
   public void incSentenceCallCount()
   {
-	  sentenceCallCount ++;
+	  sentenceCallCount.increment();
   }  
   
   public long getSentenceDirectSQLCount()
   {
-	  return sentenceDirectSQLCount;
+	  return sentenceDirectSQLCount.sum();
   }
   
   public void incSentenceDirectSQLCount()
   {
-	  sentenceDirectSQLCount ++;
+	  sentenceDirectSQLCount.increment();
   }  
 	
+  /** Cuenta una ejecucion en el total y en el contador de su tipo de sentencia */
+  public void incSentenceCount(int kind)
+  {
+	  sentenceCount.increment();
+	  switch (kind)
+	  {
+		  case SentenceInfo.KIND_SELECT: sentenceSelectCount.increment(); break;
+		  case SentenceInfo.KIND_UPDATE: sentenceUpdateCount.increment(); break;
+		  case SentenceInfo.KIND_DELETE: sentenceDeleteCount.increment(); break;
+		  case SentenceInfo.KIND_INSERT: sentenceInsertCount.increment(); break;
+		  case SentenceInfo.KIND_CALL: sentenceCallCount.increment(); break;
+		  case SentenceInfo.KIND_DIRECT_SQL: sentenceDirectSQLCount.increment(); break;
+		  default: break;
+	  }
+  }
+
   public void dump(PrintStream out)
   {
 	  out.println("\tDataStoreProvider : " + name);
-	  out.println("\tNumber of sentences : " + sentenceCount);
-	  out.println("\tNumber of select sentences : " + sentenceSelectCount);
-	  out.println("\tNumber of update sentences : " + sentenceUpdateCount);
-	  out.println("\tNumber of delete sentences : " + sentenceDeleteCount);
-	  out.println("\tNumber of insert sentences : " + sentenceInsertCount);
-	  out.println("\tNumber of CALL sentences : " + sentenceCallCount);
-	  out.println("\tNumber of direct SQL sentences : " + sentenceDirectSQLCount);
+	  out.println("\tNumber of sentences : " + sentenceCount.sum());
+	  out.println("\tNumber of select sentences : " + sentenceSelectCount.sum());
+	  out.println("\tNumber of update sentences : " + sentenceUpdateCount.sum());
+	  out.println("\tNumber of delete sentences : " + sentenceDeleteCount.sum());
+	  out.println("\tNumber of insert sentences : " + sentenceInsertCount.sum());
+	  out.println("\tNumber of CALL sentences : " + sentenceCallCount.sum());
+	  out.println("\tNumber of direct SQL sentences : " + sentenceDirectSQLCount.sum());
 	  out.println("");
 	  out.println("");
-	  for (Enumeration en = sentenceInfo.elements(); en.hasMoreElements(); )
+	  for (SentenceInfo sInfo : sentenceInfo.values())
 	  {
-			SentenceInfo sInfo = (SentenceInfo) en.nextElement();
 			sInfo.dump(out);
 			out.println("");
 			out.println("");			
@@ -124,16 +141,15 @@ public class DataStoreProviderInfo
   {
 	  writer.writeStartElement("DataStoreProvider");
 	  writer.writeAttribute("Name", name);
-	  writer.writeElement("Total_SQLStatementCount", sentenceCount);
-	  writer.writeElement("Select_SQLStatementCount", sentenceSelectCount);
-	  writer.writeElement("Update_SQLStatementCount", sentenceUpdateCount);			
-	  writer.writeElement("Delete_SQLStatementCount", sentenceDeleteCount);			
-	  writer.writeElement("Insert_SQLStatementCount", sentenceInsertCount);
-	  writer.writeElement("StoredProcedureCount", sentenceCallCount);		
-	  writer.writeElement("SQLCommandCount", sentenceDirectSQLCount);	  
-	  for (Enumeration en = sentenceInfo.elements(); en.hasMoreElements(); )
+	  writer.writeElement("Total_SQLStatementCount", sentenceCount.sum());
+	  writer.writeElement("Select_SQLStatementCount", sentenceSelectCount.sum());
+	  writer.writeElement("Update_SQLStatementCount", sentenceUpdateCount.sum());			
+	  writer.writeElement("Delete_SQLStatementCount", sentenceDeleteCount.sum());			
+	  writer.writeElement("Insert_SQLStatementCount", sentenceInsertCount.sum());
+	  writer.writeElement("StoredProcedureCount", sentenceCallCount.sum());		
+	  writer.writeElement("SQLCommandCount", sentenceDirectSQLCount.sum());	  
+	  for (SentenceInfo sInfo : sentenceInfo.values())
 	  {
-			SentenceInfo sInfo = (SentenceInfo) en.nextElement();
 			sInfo.dump(writer);
 	  }	  
 	  writer.writeEndElement();
@@ -141,20 +157,46 @@ public class DataStoreProviderInfo
   
   public SentenceInfo addSentenceInfo(String key, String sqlSentence)
   {
-	  if (!sentenceInfo.containsKey(key))
+	  return addSentenceInfo(key, sqlSentence, SentenceInfo.kindOf(sqlSentence));
+  }
+
+  public SentenceInfo addSentenceInfo(String key, String sqlSentence, int kind)
+  {
+	  SentenceInfo sInfo = sentenceInfo.get(key);
+	  if (sInfo == null)
 	  {
-		  SentenceInfo sInfo = new SentenceInfo(sqlSentence);
-		  sentenceInfo.put(key, sInfo);
+		  SentenceInfo sInfoPrev = sentenceInfo.putIfAbsent(key, new SentenceInfo(key, sqlSentence, kind));
+		  if (sInfoPrev != null)
+			  return sInfoPrev;
+		  sInfo = sentenceInfo.get(key);
 		  if (Application.isJMXEnabled())
 		  {
 				  SentenceJMX.CreateSentenceJMX(this, key);
 		  }
 	  }
-	  return sentenceInfo.get(key);
+	  return sInfo;
   }	
 	
   public SentenceInfo getSentenceInfo(String key)
   {
 	  return sentenceInfo.get(key);
   }  
+
+  /** Sentencia del cursor, sin armar la key con el nombre del DataStoreProvider */
+  public SentenceInfo getCursorSentenceInfo(String cursorId)
+  {
+	  return cursorSentenceInfo.get(cursorId);
+  }
+
+  public SentenceInfo addCursorSentenceInfo(String cursorId, String sqlSentence, int kind)
+  {
+	  SentenceInfo sInfo = addSentenceInfo(name + "_" + cursorId, sqlSentence, kind);
+	  SentenceInfo sInfoPrev = cursorSentenceInfo.putIfAbsent(cursorId, sInfo);
+	  return sInfoPrev != null ? sInfoPrev : sInfo;
+  }
+
+  public Collection<SentenceInfo> getSentenceInfos()
+  {
+	  return sentenceInfo.values();
+  }
 }
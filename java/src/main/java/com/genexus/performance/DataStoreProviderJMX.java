@@ -2,6 +2,12 @@ package com.genexus.performance;
 
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.genexus.CommonUtil;
 import com.genexus.db.DataStoreProvider;
@@ -62,6 +68,31 @@ public class DataStoreProviderJMX implements DataStoreProviderJMXMBean{
 	  return dataStoreProvider.getSentenceDirectSQLCount();
   }
 	
+  /** Sentencias ordenadas por p99, la mas lenta primero */
+  public String[] getSlowestSQLStatements()
+  {
+	  List<SentenceInfo> sentences = new ArrayList<SentenceInfo>(dataStoreProvider.getSentenceInfos());
+	  final Map<SentenceInfo, Float> p99BySentence = new HashMap<SentenceInfo, Float>();
+	  for (SentenceInfo sInfo : sentences)
+	  {
+		  p99BySentence.put(sInfo, sInfo.getP99TimeExecute());
+	  }
+	  Collections.sort(sentences, new Comparator<SentenceInfo>()
+	  {
+		  public int compare(SentenceInfo s1, SentenceInfo s2)
+		  {
+			  return Float.compare(p99BySentence.get(s2), p99BySentence.get(s1));
+		  }
+	  });
+	  String[] result = new String[sentences.size()];
+	  for (int i = 0; i < result.length; i++)
+	  {
+		  SentenceInfo sInfo = sentences.get(i);
+		  result[i] = sInfo.getId() + " count=" + sInfo.getSentenceCount() + " p50=" + sInfo.getP50TimeExecute() + "ms p99=" + p99BySentence.get(sInfo) + "ms p999=" + sInfo.getP999TimeExecute() + "ms";
+	  }
+	  return result;
+  }
+
   public void dumpTxt()
   {
 	  try
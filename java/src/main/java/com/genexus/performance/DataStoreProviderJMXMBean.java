@@ -9,6 +9,7 @@ public interface DataStoreProviderJMXMBean
 	long getInsertSQLStatementCount();	
 	long getStoredProcedureCount();
 	long getSQLCommandCount();
+	String[] getSlowestSQLStatements();
 	
 	void dumpDataStoreInformation();
 }
@@ -0,0 +1,95 @@
+package com.genexus.performance;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ * <p>
+ * Values are kept in microseconds. Every power of two is split in {@link #SUB_BUCKETS}
+ * linear buckets, so a percentile is off by at most 1/16 of its value. Values above
+ * {@link #MAX_VALUE} microseconds (about 35 minutes) are counted in the last bucket.
+ * Recording is a single atomic increment, so it can be done on every execution.
+ */
+public final class LatencyHistogram
+{
+	private static final int SUB_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BITS;
+	static final long MAX_VALUE = (1L << 31) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+
+	/** Records a duration measured with System.nanoTime */
+	public void recordNanos(long nanos)
+	{
+		record(nanos / 1000);
+	}
+
+	/** Records a duration in microseconds */
+	public void record(long micros)
+	{
+		counts.incrementAndGet(indexOf(Math.max(0, Math.min(micros, MAX_VALUE))));
+	}
+
+	static int indexOf(long value)
+	{
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + sub;
+	}
+
+	/** Highest value that falls in the bucket */
+	static long highestValueAt(int index)
+	{
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	public long getCount()
+	{
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++)
+		{
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Value in microseconds at or below which the given percentage of the recorded values fall.
+	 * @param percentile between 0 and 100, for example 99.9
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++)
+		{
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+		long accumulated = 0;
+		for (int i = 0; i < snapshot.length; i++)
+		{
+			accumulated += snapshot[i];
+			if (accumulated >= target)
+				return highestValueAt(i);
+		}
+		return highestValueAt(snapshot.length - 1);
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < counts.length(); i++)
+		{
+			counts.set(i, 0);
+		}
+	}
+}
@@ -2,127 +2,221 @@ package com.genexus.performance;
 
 import java.io.PrintStream;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.genexus.Application;
 
 public class SentenceInfo
 {
-	private long sentenceCount;  
-	private String sqlSentence;
-	private Date timeLastExecute;
-	private long totalTimeExecute;
-	private float averageTimeExecute;
-	private long worstTimeExecute;
-	private long bestTimeExecute;
-	private long maxTimeForNotification = 10000;
-	private boolean enableNotifications = true;
-	
+	public static final int KIND_OTHER = 0;
+	public static final int KIND_SELECT = 1;
+	public static final int KIND_UPDATE = 2;
+	public static final int KIND_DELETE = 3;
+	public static final int KIND_INSERT = 4;
+	public static final int KIND_CALL = 5;
+	public static final int KIND_DIRECT_SQL = 6;
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private final String id;
+	private final String sqlSentence;
+	private final int kind;
+	private final LongAdder sentenceCount = new LongAdder();
+	private final LongAdder totalTimeExecute = new LongAdder();
+	private final AtomicLong worstTimeExecute = new AtomicLong();
+	private final AtomicLong bestTimeExecute = new AtomicLong(Long.MAX_VALUE);
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	private volatile long timeLastExecute;
+	private volatile long maxTimeForNotification = 10000;
+	private volatile boolean enableNotifications = true;
+
 	public SentenceJMX sentenceJMX = null;
-	
+
 	public SentenceInfo(String sqlSentence)
 	{
+		this(null, sqlSentence, kindOf(sqlSentence));
+	}
+
+	public SentenceInfo(String id, String sqlSentence, int kind)
+	{
+		this.id = id;
 		this.sqlSentence = sqlSentence;
-	}	
-	
+		this.kind = kind;
+	}
+
+	/** Tipo de sentencia segun su primera palabra, se calcula una sola vez por sentencia */
+	public static int kindOf(String sqlSentence)
+	{
+		if (sqlSentence == null)
+			return KIND_OTHER;
+		int start = 0;
+		while (start < sqlSentence.length() && Character.isWhitespace(sqlSentence.charAt(start)))
+			start++;
+		if (sqlSentence.regionMatches(true, start, "SELECT", 0, 6))
+			return KIND_SELECT;
+		if (sqlSentence.regionMatches(true, start, "UPDATE", 0, 6))
+			return KIND_UPDATE;
+		if (sqlSentence.regionMatches(true, start, "DELETE", 0, 6))
+			return KIND_DELETE;
+		if (sqlSentence.regionMatches(true, start, "INSERT", 0, 6))
+			return KIND_INSERT;
+		return KIND_OTHER;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public int getKind()
+	{
+		return kind;
+	}
+
 	public long getSentenceCount()
 	{
-		return sentenceCount;
+		return sentenceCount.sum();
 	}
-  
+
 	public void incSentenceCount()
 	{
-		sentenceCount ++;
-		timeLastExecute = new Date();
-	}	
-	
+		sentenceCount.increment();
+		timeLastExecute = System.currentTimeMillis();
+	}
+
 	public String getSQLSentence()
 	{
 		return sqlSentence;
 	}
-	
+
 	public Date getTimeLastExecute()
 	{
-		return timeLastExecute;
+		long last = timeLastExecute;
+		return last == 0 ? null : new Date(last);
 	}
-	
+
 	public long getTotalTimeExecute()
 	{
-		return totalTimeExecute;
+		return totalTimeExecute.sum() / NANOS_PER_MILLI;
 	}
-	
+
 	public float getAverageTimeExecute()
 	{
-		return averageTimeExecute;
+		long count = sentenceCount.sum();
+		return count == 0 ? 0 : (float) totalTimeExecute.sum() / NANOS_PER_MILLI / count;
 	}
-	
+
 	public long getWorstTimeExecute()
 	{
-		return worstTimeExecute;
+		return worstTimeExecute.get() / NANOS_PER_MILLI;
 	}
-	
+
 	public long getBestTimeExecute()
 	{
-		return bestTimeExecute;
+		long best = bestTimeExecute.get();
+		return best == Long.MAX_VALUE ? 0 : best / NANOS_PER_MILLI;
+	}
+
+	/** Tiempo en milisegundos por debajo del cual termina el porcentaje dado de las ejecuciones */
+	public float getPercentileTimeExecute(double percentile)
+	{
+		return histogram.getValueAtPercentile(percentile) / 1000f;
+	}
+
+	public float getP50TimeExecute()
+	{
+		return getPercentileTimeExecute(50);
+	}
+
+	public float getP99TimeExecute()
+	{
+		return getPercentileTimeExecute(99);
 	}
-	
+
+	public float getP999TimeExecute()
+	{
+		return getPercentileTimeExecute(99.9);
+	}
+
+	public LatencyHistogram getHistogram()
+	{
+		return histogram;
+	}
+
 	public long getMaxTimeForNotification()
 	{
 		return maxTimeForNotification;
 	}
-	
+
 	public void setMaxTimeForNotification(long value)
 	{
 		maxTimeForNotification = value;
-	}	
-	
+	}
+
 	public boolean getEnableNotifications()
 	{
 		return enableNotifications;
 	}
-	
+
 	public void setEnableNotifications(boolean value)
 	{
 		enableNotifications = value;
-	}		
-	
+	}
+
 	public void dump(PrintStream out)
 	{
 		out.println("\t\tSQL sentence : " + sqlSentence);
-		out.println("\t\tNumber of executions : " + sentenceCount);
-		out.println("\t\tLast time executed : " + timeLastExecute);
-		out.println("\t\tTotal time : " + totalTimeExecute);		
-		out.println("\t\tAverage time : " + averageTimeExecute);
-		out.println("\t\tWorst time : " + worstTimeExecute);
-		out.println("\t\tBest time : " + bestTimeExecute);						
-	}
-	
+		out.println("\t\tNumber of executions : " + getSentenceCount());
+		out.println("\t\tLast time executed : " + getTimeLastExecute());
+		out.println("\t\tTotal time : " + getTotalTimeExecute());
+		out.println("\t\tAverage time : " + getAverageTimeExecute());
+		out.println("\t\tWorst time : " + getWorstTimeExecute());
+		out.println("\t\tBest time : " + getBestTimeExecute());
+		out.println("\t\tp50 time : " + getP50TimeExecute());
+		out.println("\t\tp99 time : " + getP99TimeExecute());
+		out.println("\t\tp999 time : " + getP999TimeExecute());
+	}
+
 	public void dump(com.genexus.xml.XMLWriter writer)
 	{
 		writer.writeStartElement("SQLStatement");
 		writer.writeStartElement("SQLStatement");
 			writer.writeCData(sqlSentence);
 		writer.writeEndElement();
-		writer.writeElement("Count",sentenceCount);
-		writer.writeElement("LastExecute",timeLastExecute.toString());
-		writer.writeElement("TotalTime",totalTimeExecute);
-		writer.writeElement("AverageTime",averageTimeExecute);
-		writer.writeElement("WorstTime",worstTimeExecute);
-		writer.writeElement("BestTime",bestTimeExecute);
+		writer.writeElement("Count",getSentenceCount());
+		writer.writeElement("LastExecute",String.valueOf(getTimeLastExecute()));
+		writer.writeElement("TotalTime",getTotalTimeExecute());
+		writer.writeElement("AverageTime",getAverageTimeExecute());
+		writer.writeElement("WorstTime",getWorstTimeExecute());
+		writer.writeElement("BestTime",getBestTimeExecute());
+		writer.writeElement("P50Time",getP50TimeExecute());
+		writer.writeElement("P99Time",getP99TimeExecute());
+		writer.writeElement("P999Time",getP999TimeExecute());
 		writer.writeEndElement();
 	}
-	
+
+	/** Registra una ejecucion de time milisegundos */
 	public void setTimeExecute(long time)
 	{
-		if (Application.isJMXEnabled())
-			if (time > maxTimeForNotification && enableNotifications)
+		setTimeExecuteNanos(time * NANOS_PER_MILLI);
+	}
+
+	/** Registra una ejecucion medida con System.nanoTime */
+	public void setTimeExecuteNanos(long nanos)
+	{
+		if (Application.isJMXEnabled() && sentenceJMX != null)
+			if (nanos > maxTimeForNotification * NANOS_PER_MILLI && enableNotifications)
 			{
 					sentenceJMX.SentencePoorPerformance();
 			}
-		totalTimeExecute = totalTimeExecute + time;
-		averageTimeExecute = totalTimeExecute / sentenceCount;
-		if (time > worstTimeExecute)
-			worstTimeExecute = time;
-		if (time < bestTimeExecute || bestTimeExecute == 0)
-			bestTimeExecute = time;
-	}
- }
\ No newline at end of file
+		totalTimeExecute.add(nanos);
+		histogram.recordNanos(nanos);
+		long worst = worstTimeExecute.get();
+		while (nanos > worst && !worstTimeExecute.compareAndSet(worst, nanos))
+			worst = worstTimeExecute.get();
+		long best = bestTimeExecute.get();
+		while (nanos < best && !bestTimeExecute.compareAndSet(best, nanos))
+			best = bestTimeExecute.get();
+	}
+ }
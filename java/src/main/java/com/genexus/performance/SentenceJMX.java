@@ -64,6 +64,21 @@ public class SentenceJMX extends NotificationBroadcasterSupport implements Sente
   {
 	  return sentenceInfo.getBestTimeExecute();
   } 
+
+  public float getP50Time()
+  {
+	  return sentenceInfo.getP50TimeExecute();
+  }
+
+  public float getP99Time()
+  {
+	  return sentenceInfo.getP99TimeExecute();
+  }
+
+  public float getP999Time()
+  {
+	  return sentenceInfo.getP999TimeExecute();
+  }
   
   public long getBeforeNotificationWaitTime()
   {
@@ -11,6 +11,9 @@ public interface SentenceJMXMBean
 	float getAverageTime();
 	long getWorstTime();
 	long getBestTime();
+	float getP50Time();
+	float getP99Time();
+	float getP999Time();
 	boolean getNotificationEnabled();
 	void setNotificationEnabled(boolean value);	
 	long getBeforeNotificationWaitTime();
@@ -0,0 +1,133 @@
+package com.genexus.performance;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.genexus.ClientContext;
+import com.genexus.Preferences;
+import com.genexus.db.DataStoreProvider;
+import com.genexus.diagnostics.core.ILogger;
+import com.genexus.diagnostics.core.LogManager;
+
+/**
+ * Switch and exporter registry of the SQL sentence metrics kept by {@link DataStoreProvider}.
+ * <p>
+ * The metrics are on when JMX is enabled, when the SENTENCE_METRICS preference is set or when
+ * a {@link SentenceMetricsExporter} is registered. The exporters published as services are
+ * loaded on the first check, not when the class loads.
+ */
+public final class SentenceMetrics
+{
+	public static final int DEFAULT_EXPORT_INTERVAL = 60;
+
+	private static final ILogger logger = LogManager.getLogger(SentenceMetrics.class);
+	private static final List<SentenceMetricsExporter> exporters = new CopyOnWriteArrayList<SentenceMetricsExporter>();
+	private static volatile Boolean enabledByPreference;
+	private static ScheduledExecutorService scheduler;
+	private static volatile boolean servicesLoaded;
+
+	private SentenceMetrics()
+	{
+	}
+
+	private static void loadServices()
+	{
+		if (servicesLoaded)
+			return;
+		synchronized (SentenceMetrics.class)
+		{
+			if (servicesLoaded)
+				return;
+			servicesLoaded = true;
+		}
+		try
+		{
+			for (SentenceMetricsExporter exporter : ServiceLoader.load(SentenceMetricsExporter.class))
+			{
+				register(exporter);
+			}
+		}
+		catch (Throwable e)
+		{
+			logger.error("Cannot load SentenceMetricsExporter services", e);
+		}
+	}
+
+	public static boolean isEnabled()
+	{
+		loadServices();
+		if (!exporters.isEmpty())
+			return true;
+		Boolean enabled = enabledByPreference;
+		if (enabled == null)
+		{
+			if (ClientContext.getModelContext() == null)
+				return false;
+			enabled = Preferences.getDefaultPreferences().getSENTENCE_METRICS();
+			enabledByPreference = enabled;
+		}
+		return enabled.booleanValue();
+	}
+
+	public static void register(SentenceMetricsExporter exporter)
+	{
+		exporters.add(exporter);
+		startExporting();
+	}
+
+	public static void unregister(SentenceMetricsExporter exporter)
+	{
+		exporters.remove(exporter);
+	}
+
+	/** Publishes the current metrics to every registered exporter */
+	public static void export()
+	{
+		for (SentenceMetricsExporter exporter : exporters)
+		{
+			try
+			{
+				exporter.export(DataStoreProvider.getDataStoreProviderInfos());
+			}
+			catch (RuntimeException e)
+			{
+				logger.error("Error exporting sentence metrics", e);
+			}
+		}
+	}
+
+	private static synchronized void startExporting()
+	{
+		if (scheduler != null)
+			return;
+		int interval = DEFAULT_EXPORT_INTERVAL;
+		if (ClientContext.getModelContext() != null)
+		{
+			interval = Preferences.getDefaultPreferences().getSENTENCE_METRICS_EXPORT_INTERVAL();
+			if (interval <= 0)
+				interval = DEFAULT_EXPORT_INTERVAL;
+		}
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "GXSentenceMetricsExporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				export();
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+		scheduler = executor;
+	}
+}
@@ -0,0 +1,20 @@
+package com.genexus.performance;
+
+import java.util.Collection;
+
+/**
+ * Publishes the SQL sentence metrics to an external monitoring system.
+ * <p>
+ * Implementations are found with {@link java.util.ServiceLoader}, listing them in
+ * META-INF/services/com.genexus.performance.SentenceMetricsExporter, or registered with
+ * {@link SentenceMetrics#register(SentenceMetricsExporter)}. Having an exporter turns the
+ * sentence metrics on even when JMX is disabled.
+ */
+public interface SentenceMetricsExporter
+{
+	/**
+	 * Called every SENTENCE_METRICS_EXPORT_INTERVAL seconds from a background thread.
+	 * The counters keep growing between calls, they are never reset.
+	 */
+	void export(Collection<DataStoreProviderInfo> dataStoreProviders);
+}
@@ -35,6 +35,7 @@ public class GXSmartCacheProvider implements IExtensionGXSmartCacheProvider {
 			if (isEnabled())
 			{
 				getUpdatedTables().<Date>set(CacheFactory.CACHE_SD, FORCED_INVALIDATE, CommonUtil.now(false,false));
+				CacheFactory.invalidateTables(null);
 			}
 		}
 		
@@ -51,7 +52,10 @@ public class GXSmartCacheProvider implements IExtensionGXSmartCacheProvider {
 		public void invalidate(String item)
 		{
 			if (isEnabled()) 
+			{
 				getUpdatedTables().clear(CacheFactory.CACHE_SD, normalizeKey(item));
+				CacheFactory.invalidateTables(new String[]{item});
+			}
 		}
 		public void recordUpdates(int handle)
 		{
@@ -70,6 +74,7 @@ public class GXSmartCacheProvider implements IExtensionGXSmartCacheProvider {
 							updTables.<Date>set(CacheFactory.CACHE_SD, tbl, dt);
 						}
 					}
+					CacheFactory.invalidateTables(tablesUpdatedInUTLHandle.toArray(new String[tablesUpdatedInUTLHandle.size()]));
 					tablesUpdatedInUTL.remove(handle);
 				}
 			}
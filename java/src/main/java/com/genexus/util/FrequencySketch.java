@@ -0,0 +1,124 @@
+package com.genexus.util;
+
+/**
+ * Count-Min sketch with 4-bit counters, used as the TinyLFU admission filter.
+ * Each long of the table holds sixteen counters. When the number of increments reaches
+ * ten times the table length every counter is halved, so the estimate follows recent usage.
+ * Not thread safe, callers must hold an external lock.
+ */
+public class FrequencySketch
+{
+	private static final long[] SEEDS = {
+		0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int size;
+
+	public FrequencySketch(int expectedEntries)
+	{
+		ensureCapacity(expectedEntries);
+	}
+
+	/**
+	 * Grows the table when the expected number of entries exceeds its length.
+	 * The old table is replicated on every slice of the new one, so an index computed with
+	 * the wider mask still finds the counters accumulated so far.
+	 */
+	public void ensureCapacity(int expectedEntries)
+	{
+		int capacity = ceilingPowerOfTwo(Math.min(Math.max(expectedEntries, 16), MAX_CAPACITY));
+		if (table != null && table.length >= capacity)
+		{
+			return;
+		}
+		long[] newTable = new long[capacity];
+		if (table != null)
+		{
+			for (int offset = 0; offset < capacity; offset += table.length)
+			{
+				System.arraycopy(table, 0, newTable, offset, table.length);
+			}
+		}
+		table = newTable;
+		tableMask = table.length - 1;
+		sampleSize = 10 * table.length;
+	}
+
+	/** Returns the estimated frequency (0 to 15) of the item */
+	public int frequency(Object item)
+	{
+		int hash = spread(item.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++)
+		{
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/** Increments the estimated frequency of the item */
+	public void increment(Object item)
+	{
+		int hash = spread(item.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++)
+		{
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && (++size == sampleSize))
+		{
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int counter)
+	{
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		if ((table[index] & mask) != mask)
+		{
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	private void reset()
+	{
+		int count = 0;
+		for (int i = 0; i < table.length; i++)
+		{
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+
+	private int indexOf(int item, int i)
+	{
+		long hash = (item + SEEDS[i]) * SEEDS[i];
+		hash += (hash >>> 32);
+		return ((int) hash) & tableMask;
+	}
+
+	private static int spread(int x)
+	{
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private static int ceilingPowerOfTwo(int x)
+	{
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+}
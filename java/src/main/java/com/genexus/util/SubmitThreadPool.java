@@ -1,82 +1,284 @@
 package com.genexus.util;
-import java.util.Vector;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.genexus.*;
+import com.genexus.diagnostics.core.ILogger;
+import com.genexus.diagnostics.core.LogManager;
+import com.genexus.management.SubmitThreadPoolJMX;
+import com.genexus.performance.LatencyHistogram;
 
+/**
+ * Ejecuta los submits de procedimientos en un executor.
+ * <p>
+ * La cantidad de submits pendientes esta acotada por SUBMIT_QUEUE_SIZE; cuando se llena se aplica
+ * SUBMIT_REJECTION_POLICY: BLOCK espera lugar, CALLER_RUNS ejecuta el submit en el thread que lo hizo
+ * y ABORT lo rechaza con una RejectedExecutionException.
+ * Con BLOCK, un submit hecho desde un submit que esta corriendo no espera: se ejecuta en el mismo thread
+ * como con CALLER_RUNS, porque si todos los threads del pool esperaran lugar nadie liberaria ninguno.
+ * Con SUBMIT_VIRTUAL_THREADS en una JVM 21 o superior cada submit corre en su propio virtual thread.
+ * SUBMIT_MAX_CONCURRENCY_&lt;procedimiento&gt; (o SUBMIT_MAX_CONCURRENCY para todos) limita cuantos submits
+ * de un mismo procedimiento corren a la vez, los demas esperan su turno sin ocupar un thread.
+ */
 public class SubmitThreadPool
 {
+	private static final ILogger logger = LogManager.getLogger(SubmitThreadPool.class);
+
 	public static final String SUBMIT_THREAD = "SubmitThread-";
-	private static SubmitThread [] threadPool = null;
-	private static Vector<Object[]> submitQueue = new Vector<>();
-	private static int poolId = -1;
+	public static final String POLICY_BLOCK = "BLOCK";
+	public static final String POLICY_CALLER_RUNS = "CALLER_RUNS";
+	public static final String POLICY_ABORT = "ABORT";
+
+	private static volatile SubmitThreadPool pool;
+	// Marca los threads que estan ejecutando un submit, para detectar los submits anidados
+	private static final ThreadLocal<Boolean> runningSubmit = new ThreadLocal<Boolean>();
 	private static int remainingSubmits = 0;
-	private static GXParameterPacker parameterPacker;
 
-	public synchronized static void submit(final ISubmitteable proc, final int id, final Object []submitParms, final ModelContext ctx)
+	private final ExecutorService executor;
+	private final int poolSize;
+	private final boolean virtualThreads;
+	private final Semaphore slots;
+	private final int queueSize;
+	private final String rejectionPolicy;
+	private final int defaultMaxConcurrency;
+	private final Preferences preferences;
+	private final ConcurrentHashMap<Class<?>, ProcedureGate> gates = new ConcurrentHashMap<Class<?>, ProcedureGate>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+	private final LongAdder totalRunNanos = new LongAdder();
+	private final LatencyHistogram waitTimes = new LatencyHistogram();
+	private final LatencyHistogram runTimes = new LatencyHistogram();
+
+	private SubmitThreadPool(Preferences preferences)
+	{
+		this(preferences.getSUBMIT_POOL_SIZE(), preferences.getSUBMIT_QUEUE_SIZE(), preferences.getSUBMIT_REJECTION_POLICY(),
+			preferences.getSUBMIT_MAX_CONCURRENCY(), preferences.getSUBMIT_VIRTUAL_THREADS(), preferences);
+	}
+
+	/** preferences se usa para el limite de cada procedimiento, si es null todos usan defaultMaxConcurrency */
+	SubmitThreadPool(int poolSize, int queueSize, String rejectionPolicy, int defaultMaxConcurrency, boolean virtualThreads, Preferences preferences)
 	{
-		if(threadPool == null)
-		{ // Si el pool todav�a no fue creado
-			threadPool = new SubmitThread[Preferences.getDefaultPreferences().getSUBMIT_POOL_SIZE()];
-			parameterPacker = new GXParameterPacker();
+		this.poolSize = poolSize;
+		this.queueSize = Math.max(1, queueSize);
+		this.rejectionPolicy = rejectionPolicy.trim().toUpperCase(Locale.ENGLISH);
+		this.defaultMaxConcurrency = defaultMaxConcurrency;
+		this.preferences = preferences;
+		ExecutorService virtual = virtualThreads ? createVirtualExecutor() : null;
+		this.virtualThreads = virtual != null;
+		if (this.virtualThreads)
+		{
+			executor = virtual;
+			slots = new Semaphore(this.queueSize);
+		}
+		else
+		{
+			// Si en la preference se puso 0 como cantidad del poolSize esto se considera como 'unlimited'
+			// En ese caso levantamos un thread por cada submit
+			executor = createPlatformExecutor(poolSize);
+			slots = new Semaphore(poolSize == 0 ? this.queueSize : poolSize + this.queueSize);
 		}
+	}
 
-		SubmitThreadPool.incRemainingSubmits();
-		if(threadPool.length == 0)
-		{ // Si en la preference se puso 0 como cantidad del poolSize esto se considera como 'unlimited'
-		  // En ese caso levantamos un thread por cada submit y no utilizamos el pool
-			new Thread(new Runnable()
+	private static ExecutorService createPlatformExecutor(int size)
+	{
+		final AtomicInteger count = new AtomicInteger();
+		ThreadFactory factory = new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				return new Thread(r, SUBMIT_THREAD + count.getAndIncrement());
+			}
+		};
+		ThreadPoolExecutor executor;
+		if (size == 0)
+			executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), factory);
+		else
+		{
+			// La cola del executor no necesita limite, la cantidad de submits pendientes la acota el semaforo slots
+			executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	/** Executor de un virtual thread por tarea, o null si la JVM no tiene virtual threads (anterior a 21) */
+	private static ExecutorService createVirtualExecutor()
+	{
+		try
+		{
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, SUBMIT_THREAD, 0L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			Method perTask = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) perTask.invoke(null, factory);
+		}
+		catch (Exception e)
+		{
+			logger.warn("Virtual threads are not available, SUBMIT_VIRTUAL_THREADS is ignored");
+			return null;
+		}
+	}
+
+	private static SubmitThreadPool getPool()
+	{
+		SubmitThreadPool current = pool;
+		if (current == null)
+		{
+			synchronized (SubmitThreadPool.class)
 			{
-				public void run()
-				{
-					if (ctx.threadModelContext.get() == null)
-						ctx.threadModelContext.set(ctx);
-					proc.submit(id, submitParms, ctx);
-					SubmitThreadPool.decRemainingSubmits();
+				current = pool;
+				if (current == null)
+				{ // Si el pool todavia no fue creado
+					current = new SubmitThreadPool(Preferences.getDefaultPreferences());
+					pool = current;
+					if (Application.isJMXEnabled())
+						SubmitThreadPoolJMX.CreateSubmitThreadPoolJMX(current);
 				}
-			}, SUBMIT_THREAD + id).start();
-			return;
+			}
 		}
+		return current;
+	}
 
-		// Debo serializar los parametros porque si x ej un parametro era un SDT se debe mantener
+	public static void submit(final ISubmitteable proc, final int id, final Object []submitParms, final ModelContext ctx)
+	{
+		// Debo copiar los parametros porque si x ej un parametro era un SDT se debe mantener
 		// exacto el estado dado que el submit puede que se ejecute mucho mas adelante!, incluso
 		// aunque se ejecute en el momento, para el caso de sdts el caller puede aun cambiar algun
 		// dato y tampoco queremos eso
-		parameterPacker.reset();
-		parameterPacker.writeObject(submitParms);
-
-		// Ahora busco un thread libre
-		for(int i = 0; i < threadPool.length; i++)
-		{
-			if(threadPool[i] == null)
-			{ // Si nunca se ha utilizado este thread, debo crearlo
-				threadPool[i] = new SubmitThread(i);
-				threadPool[i].start();
-
-				// @HACK: al levantar al thread, debo esperar hasta que llegue al wait
-				// porque sino se puede perder el primer notify() (y en efecto era lo que pasaba)
-				while(!threadPool[i].isInitialized())
-				{
-					try
-					{
-						Thread.sleep(100);
-					}catch(InterruptedException e){ ; }
-				}
-			}
+		getPool().execute(proc, id, GXParameterSnapshot.copy(submitParms), ctx);
+	}
 
-			synchronized(threadPool[i])
+	void execute(ISubmitteable proc, int id, Object []submitParms, ModelContext ctx)
+	{
+		SubmitTask task = new SubmitTask(proc, id, submitParms, ctx);
+		if (!slots.tryAcquire())
+		{
+			if (POLICY_CALLER_RUNS.equals(rejectionPolicy) || (!POLICY_ABORT.equals(rejectionPolicy) && runningSubmit.get() != null))
 			{
-				if(threadPool[i].inUse())
-				{ // Si el thread esta en uso, sigo buscando
-					continue;
-				}
-				threadPool[i].setProc(proc, id, (Object[])new GXParameterUnpacker(parameterPacker.toByteArray()).readObject(), ctx);
-				threadPool[i].notify();
+				runInCaller(task);
 				return;
 			}
+			if (POLICY_ABORT.equals(rejectionPolicy))
+			{
+				rejected.increment();
+				throw new RejectedExecutionException("Submit queue is full (" + queueSize + " pending submits)");
+			}
+			try
+			{
+				slots.acquire();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				rejected.increment();
+				throw new RejectedExecutionException("Interrupted while waiting for a submit slot", e);
+			}
 		}
 
-		// Si llego aqui es porque tengo utilizados todos los thread, asi que encolo el submit
-		submitQueue.addElement(new Object[]{proc, new Integer(id), parameterPacker.toByteArray()});
+		SubmitThreadPool.incRemainingSubmits();
+		queued.incrementAndGet();
+		task.owner = this;
+		task.gate = gateFor(task.proc);
+		if (task.gate.enter(task))
+		{
+			dispatch(task);
+		}
+		// Si no, el submit queda esperando en el gate hasta que termine otro del mismo procedimiento
+	}
+
+	private void dispatch(SubmitTask task)
+	{
+		try
+		{
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e)
+		{ // El pool fue destruido mientras el submit esperaba
+			rejected.increment();
+			queued.decrementAndGet();
+			finish(task);
+			logger.error("Submit " + task.id + " discarded, the submit pool was shut down", e);
+		}
+	}
+
+	private void runInCaller(SubmitTask task)
+	{
+		SubmitThreadPool.incRemainingSubmits();
+		ProcedureGate gate = gateFor(task.proc);
+		try
+		{
+			gate.enterBlocking();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			rejected.increment();
+			SubmitThreadPool.decRemainingSubmits();
+			throw new RejectedExecutionException("Interrupted while waiting to run submit " + task.id, e);
+		}
+		queued.incrementAndGet();
+		task.owner = this;
+		task.callerRuns = true;
+		task.gate = gate;
+		task.run();
+	}
+
+	private ProcedureGate gateFor(ISubmitteable proc)
+	{
+		Class<?> procClass = proc.getClass();
+		ProcedureGate gate = gates.get(procClass);
+		if (gate == null)
+		{
+			int limit = preferences == null ? defaultMaxConcurrency : preferences.getSUBMIT_MAX_CONCURRENCY(procClass.getSimpleName(), defaultMaxConcurrency);
+			gate = new ProcedureGate(limit);
+			ProcedureGate existing = gates.putIfAbsent(procClass, gate);
+			if (existing != null)
+				gate = existing;
+		}
+		return gate;
+	}
+
+	private void finish(SubmitTask task)
+	{
+		SubmitTask next = task.gate.exit();
+		if (next != null)
+			dispatch(next);
+		if (!task.callerRuns)
+			slots.release();
+		SubmitThreadPool.decRemainingSubmits();
+	}
+
+	private void started(long waitNanos)
+	{
+		queued.decrementAndGet();
+		running.incrementAndGet();
+		totalWaitNanos.add(waitNanos);
+		waitTimes.recordNanos(waitNanos);
+	}
+
+	private void ended(long runNanos)
+	{
+		running.decrementAndGet();
+		completed.increment();
+		totalRunNanos.add(runNanos);
+		runTimes.recordNanos(runNanos);
 	}
 
 	protected synchronized static void incRemainingSubmits()
@@ -87,10 +289,10 @@ public class SubmitThreadPool
 	protected synchronized static void decRemainingSubmits()
 	{
 		remainingSubmits--;
-		SubmitThreadPool.class.notify();
+		SubmitThreadPool.class.notifyAll();
 	}
 
-	public static int getRemainingSubmits()
+	public synchronized static int getRemainingSubmits()
 	{
 		return remainingSubmits;
 	}
@@ -117,128 +319,176 @@ public class SubmitThreadPool
 
 	public synchronized static void destroyPool()
 	{
-		if(threadPool != null)
+		if(pool != null)
 		{
-			for(int i = 0; i < threadPool.length; i++)
-			{
-				if(threadPool[i] != null)
-				{
-					synchronized(threadPool[i])
-					{
-						threadPool[i].setExit();
-						threadPool[i].notify();
-						threadPool[i] = null;
-					}
-				}
-			}
+			pool.shutdown();
+			if (Application.isJMXEnabled())
+				SubmitThreadPoolJMX.DestroySubmitThreadPoolJMX();
 		}
-		threadPool = null;
+		pool = null;
 	}
 
-	protected synchronized static Object [] getNextSubmit()
+	void shutdown()
 	{
-		if(submitQueue.size() > 0)
-		{
-			Object [] nextSubmit = submitQueue.firstElement();
-			submitQueue.removeElement(nextSubmit);
-			return nextSubmit;
-		}
-		return null;
+		executor.shutdown();
 	}
-}
 
-class SubmitThread extends Thread
-{
-	private boolean exit = false;
-	private Object threadLock;
-	private boolean inUse = false;
-	private ISubmitteable proc;
-	private int submitId;
-	private Object [] submitParms;
-	private boolean initialized = false;
-	private ModelContext context;
+	/** Pool actual, null si todavia no se hizo ningun submit */
+	public static SubmitThreadPool getInstance()
+	{
+		return pool;
+	}
+
+	public int getPoolSize()
+	{
+		return poolSize;
+	}
+
+	public int getQueueSize()
+	{
+		return queueSize;
+	}
+
+	public String getRejectionPolicy()
+	{
+		return rejectionPolicy;
+	}
+
+	public boolean isVirtualThreads()
+	{
+		return virtualThreads;
+	}
+
+	/** Submits aceptados que todavia no empezaron a ejecutarse */
+	public int getQueueDepth()
+	{
+		return queued.get();
+	}
 
-	public SubmitThread(int index)
+	public int getRunningCount()
 	{
-		super(SubmitThreadPool.SUBMIT_THREAD + index);
+		return running.get();
 	}
 
-	public void run()
+	public long getCompletedCount()
 	{
+		return completed.sum();
+	}
 
-		synchronized(this)
+	public long getRejectedCount()
+	{
+		return rejected.sum();
+	}
+
+	/** Tiempo promedio en milisegundos que un submit espera antes de empezar */
+	public float getAverageWaitTime()
+	{
+		long count = completed.sum() + running.get();
+		return count == 0 ? 0 : totalWaitNanos.sum() / 1000000f / count;
+	}
+
+	/** Tiempo promedio de ejecucion de un submit en milisegundos */
+	public float getAverageRunTime()
+	{
+		long count = completed.sum();
+		return count == 0 ? 0 : totalRunNanos.sum() / 1000000f / count;
+	}
+
+	public LatencyHistogram getWaitTimes()
+	{
+		return waitTimes;
+	}
+
+	public LatencyHistogram getRunTimes()
+	{
+		return runTimes;
+	}
+
+	private static class SubmitTask implements Runnable
+	{
+		final ISubmitteable proc;
+		final int id;
+		final Object [] submitParms;
+		final ModelContext context;
+		final long submitted = System.nanoTime();
+		SubmitThreadPool owner;
+		ProcedureGate gate;
+		boolean callerRuns;
+
+		SubmitTask(ISubmitteable proc, int id, Object [] submitParms, ModelContext context)
 		{
-			initialized = true;
+			this.proc = proc;
+			this.id = id;
+			this.submitParms = submitParms;
+			this.context = context;
 		}
-		while(!exit)
-		{
-			synchronized(this)
-			{
-				if(!inUse)
-				{
-					try
-					{
-						this.wait();
-					}catch(InterruptedException e) { ; }
-					if(exit)
-					{
-						break;
-					}
-				}
-			}
 
-			// Ejecuto el submit
+		public void run()
+		{
+			long start = System.nanoTime();
+			owner.started(start - submitted);
+			Boolean outer = runningSubmit.get();
+			runningSubmit.set(Boolean.TRUE);
 			try
 			{
 				if (context.threadModelContext.get() == null)
 					context.threadModelContext.set(context);
-				proc.submit(submitId, submitParms, context);
+				proc.submit(id, submitParms, context);
 			}catch(Throwable e)
 			{
-				e.printStackTrace();
+				logger.error("Submit " + id + " of " + proc.getClass().getName() + " failed", e);
 			}
-
-			proc = null;
-			submitParms = null;
-			SubmitThreadPool.decRemainingSubmits();
-
-			// Veo si hay un nuevo submit para ejecutar
-			Object [] nextSubmit = SubmitThreadPool.getNextSubmit();
-			synchronized(this)
-			{ // Aqui debo sincronizar pues se setea la variable inUse
-				if(nextSubmit != null)
-				{
-					setProc((ISubmitteable)nextSubmit[0], ((Integer)nextSubmit[1]).intValue(), (Object[])new GXParameterUnpacker((byte[])nextSubmit[2]).readObject(), context);
-				}
-				else
-				{
-					inUse = false;
-				}
+			finally
+			{
+				if (outer == null)
+					runningSubmit.remove();
+				owner.ended(System.nanoTime() - start);
+				owner.finish(this);
 			}
 		}
 	}
 
-	public synchronized boolean inUse()
+	/** Limita cuantos submits de un procedimiento corren a la vez, 0 es sin limite */
+	private static class ProcedureGate
 	{
-		return inUse;
-	}
+		private final int limit;
+		private int running;
+		private final ArrayDeque<SubmitTask> waiting = new ArrayDeque<SubmitTask>();
 
-	public synchronized void setProc(ISubmitteable proc, int submitId, Object [] submitParms, ModelContext ctx)
-	{
-		this.context = ctx;
-		this.proc = proc;
-		this.submitId = submitId;
-		this.submitParms = submitParms;
-		inUse = true;
-	}
+		ProcedureGate(int limit)
+		{
+			this.limit = limit;
+		}
 
-	public synchronized void setExit()
-	{
-		this.exit = true;
-	}
+		/** true si el submit puede ejecutarse ya, si no queda en espera */
+		synchronized boolean enter(SubmitTask task)
+		{
+			if (limit <= 0 || running < limit)
+			{
+				running++;
+				return true;
+			}
+			waiting.add(task);
+			return false;
+		}
 
-	public synchronized boolean isInitialized()
-	{
-		return initialized;
+		synchronized void enterBlocking() throws InterruptedException
+		{
+			while (limit > 0 && running >= limit)
+				wait();
+			running++;
+		}
+
+		/** Siguiente submit en espera, que hereda el lugar del que termino, o null si no hay */
+		synchronized SubmitTask exit()
+		{
+			SubmitTask next = waiting.poll();
+			if (next == null)
+			{
+				running--;
+				notifyAll();
+			}
+			return next;
+		}
 	}
 }
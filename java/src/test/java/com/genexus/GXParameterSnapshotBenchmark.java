@@ -0,0 +1,58 @@
+package com.genexus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+
+import com.genexus.specific.java.Connect;
+
+/**
+ * Compares {@link GXParameterSnapshot#copy(Object[])} with the pack/unpack round trip submits
+ * used before, for scalar only parameters and for parameters that include a collection.
+ * Run it with the test classpath: java com.genexus.GXParameterSnapshotBenchmark [iterations]
+ */
+public class GXParameterSnapshotBenchmark {
+
+	public static void main(String[] args) {
+		Connect.init();
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+
+		Object[] scalars = new Object[]{"customer", 42, new BigDecimal("1234.56"), new Date(), true};
+		ArrayList<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 50; i++)
+			lines.add("line " + i);
+		Object[] withCollection = new Object[]{"customer", 42, lines};
+
+		for (int round = 0; round < 3; round++) {
+			report("scalars", iterations, scalars);
+			report("collection", iterations, withCollection);
+		}
+	}
+
+	private static void report(String name, int iterations, Object[] parms) {
+		long packed = time(iterations, parms, true);
+		long snapshot = time(iterations, parms, false);
+		System.out.println(String.format("%-10s pack/unpack %8.2f us  snapshot %8.2f us  speedup %5.1fx",
+			name, packed / 1000.0 / iterations, snapshot / 1000.0 / iterations, (double) packed / snapshot));
+	}
+
+	private static long time(int iterations, Object[] parms, boolean roundTrip) {
+		int sink = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			Object[] copy;
+			if (roundTrip) {
+				GXParameterPacker packer = new GXParameterPacker();
+				packer.writeObject(parms);
+				copy = (Object[]) new GXParameterUnpacker(packer.toByteArray()).readObject();
+			}
+			else
+				copy = GXParameterSnapshot.copy(parms);
+			sink += copy.length;
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sink == 0)
+			System.out.println();
+		return elapsed;
+	}
+}
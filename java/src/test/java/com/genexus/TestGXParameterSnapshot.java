@@ -0,0 +1,52 @@
+package com.genexus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestGXParameterSnapshot {
+
+	@Test
+	public void testImmutableParametersArePassedThrough() {
+		String text = "customer";
+		BigDecimal amount = new BigDecimal("12.50");
+		Object[] parms = new Object[]{text, 7, amount, true, null};
+
+		Object[] copy = GXParameterSnapshot.copy(parms);
+
+		Assert.assertNotSame(parms, copy);
+		Assert.assertSame(text, copy[0]);
+		Assert.assertSame(parms[1], copy[1]);
+		Assert.assertSame(amount, copy[2]);
+		Assert.assertNull(copy[4]);
+	}
+
+	@Test
+	public void testMutableParametersAreCopied() {
+		Date date = new Date(0);
+		int[] codes = new int[]{1, 2, 3};
+		ArrayList<String> lines = new ArrayList<String>();
+		lines.add("first");
+		Object[] copy = GXParameterSnapshot.copy(new Object[]{date, codes, lines});
+
+		date.setTime(1000);
+		codes[0] = 9;
+		lines.add("second");
+
+		Assert.assertEquals(0, ((Date) copy[0]).getTime());
+		Assert.assertArrayEquals(new int[]{1, 2, 3}, (int[]) copy[1]);
+		Assert.assertEquals(1, ((ArrayList<?>) copy[2]).size());
+	}
+
+	@Test
+	public void testSharedReferencesStayShared() {
+		ArrayList<String> lines = new ArrayList<String>();
+		Object[] copy = GXParameterSnapshot.copy(new Object[]{lines, "x", lines});
+
+		Assert.assertNotSame(lines, copy[0]);
+		Assert.assertSame(copy[0], copy[2]);
+	}
+}
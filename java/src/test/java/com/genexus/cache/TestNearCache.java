@@ -0,0 +1,138 @@
+package com.genexus.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.genexus.ICacheService2;
+import com.genexus.db.CacheKey;
+import com.genexus.db.CacheValue;
+
+public class TestNearCache {
+
+	/** In-memory stand-in for a remote provider that counts the round trips */
+	static class MemoryRemote implements ICacheService2 {
+		final ConcurrentHashMap<String, Object> data = new ConcurrentHashMap<String, Object>();
+		int gets;
+
+		public boolean containtsKey(String cacheid, String key) {
+			return data.containsKey(cacheid + key);
+		}
+		public <T> T get(String cacheid, String key, Class<T> type) {
+			gets++;
+			return type.cast(data.get(cacheid + key));
+		}
+		public <T> void set(String cacheid, String key, T value) {
+			data.put(cacheid + key, value);
+		}
+		public <T> void set(String cacheid, String key, T value, int duration) {
+			data.put(cacheid + key, value);
+		}
+		public void clear(String cacheid, String key) {
+			data.remove(cacheid + key);
+		}
+		public void clearCache(String cacheid) {
+			data.clear();
+		}
+		public void clearKey(String key) {
+			data.remove(key);
+		}
+		public void clearAllCaches() {
+			data.clear();
+		}
+		public <T> List<T> getAll(String cacheid, String[] keys, Class<T> type) {
+			List<T> values = new ArrayList<T>();
+			for (String key : keys)
+				values.add(get(cacheid, key, type));
+			return values;
+		}
+		public <T> void setAll(String cacheid, String[] keys, T[] values, int expirationSeconds) {
+			for (int i = 0; i < keys.length; i++)
+				set(cacheid, keys[i], values[i]);
+		}
+	}
+
+	private static CacheValue result(String sentence) {
+		CacheValue value = new CacheValue(sentence, new Object[]{1});
+		value.setExpiryTime(300);
+		return value;
+	}
+
+	@Test
+	public void testLocalHitAvoidsRemote() {
+		MemoryRemote remote = new MemoryRemote();
+		CacheValue value = result("SELECT CustomerName FROM Customer WHERE CustomerId = ?");
+		remote.set("DB", value.getKey().toString(), value);
+		NearCache cache = new NearCache(remote, 1024 * 1024, 60, new String[]{"DB"});
+
+		for (int i = 0; i < 10; i++)
+			Assert.assertNotNull(cache.get("DB", value.getKey(), CacheValue.class));
+		Assert.assertEquals(1, remote.gets);
+		Assert.assertEquals(1, cache.getRemoteStats().getHits());
+		Assert.assertEquals(9, cache.getLocalStats().getHits());
+		Assert.assertEquals(1, cache.getLocalStats().getMisses());
+		Assert.assertTrue(cache.get("DB", value.getKey(), CacheValue.class).getExpiryTimeSeconds() <= 60);
+	}
+
+	@Test
+	public void testLocalCopyKeepsCallerValue() {
+		MemoryRemote remote = new MemoryRemote();
+		NearCache cache = new NearCache(remote, 1024 * 1024, 60, new String[]{"DB"});
+		CacheValue value = result("SELECT CustomerName FROM Customer WHERE CustomerId = ?");
+		value.setTimestamp();
+		long timestamp = value.getTimestamp();
+		cache.set("DB", value.getKey(), value, 300);
+
+		Assert.assertEquals(300, value.getExpiryTimeSeconds());
+		Assert.assertEquals(timestamp, value.getTimestamp());
+		Assert.assertSame(value, remote.data.get("DB" + value.getKey().toString()));
+		CacheValue local = cache.get("DB", value.getKey(), CacheValue.class);
+		Assert.assertNotSame(value, local);
+		Assert.assertEquals(60, local.getExpiryTimeSeconds());
+	}
+
+	@Test
+	public void testTableUpdateInvalidatesLocal() {
+		MemoryRemote remote = new MemoryRemote();
+		NearCache cache = new NearCache(remote, 1024 * 1024, 60, new String[]{"DB"});
+		CacheValue customers = result("SELECT CustomerName FROM Customer WHERE CustomerId = ?");
+		CacheValue invoices = result("SELECT InvoiceDate FROM Invoice WHERE InvoiceId = ?");
+		cache.set("DB", customers.getKey(), customers, 300);
+		cache.set("DB", invoices.getKey(), invoices, 300);
+
+		cache.invalidateTables(new String[]{"customer"});
+		CacheKey customerKey = new CacheKey(customers.getKey().getKey(), new Object[]{1});
+		Assert.assertNotNull(cache.get("DB", customerKey, CacheValue.class));
+		Assert.assertEquals(1, remote.gets);
+		Assert.assertNotNull(cache.get("DB", invoices.getKey(), CacheValue.class));
+		Assert.assertEquals(1, remote.gets);
+	}
+
+	@Test
+	public void testUpdateOnOtherNodeInvalidatesLocal() {
+		MemoryRemote remote = new MemoryRemote();
+		NearCache node1 = new NearCache(remote, 1024 * 1024, 60, new String[]{"DB"}, 0);
+		NearCache node2 = new NearCache(remote, 1024 * 1024, 60, new String[]{"DB"}, 0);
+		CacheValue customers = result("SELECT CustomerName FROM Customer WHERE CustomerId = ?");
+		node1.set("DB", customers.getKey(), customers, 300);
+		Assert.assertNotNull(node1.get("DB", customers.getKey(), CacheValue.class));
+
+		CacheValue updated = result("SELECT CustomerName FROM Customer WHERE CustomerId = ?");
+		remote.set("DB", updated.getKey().toString(), updated);
+		node2.invalidateTables(new String[]{"customer"});
+		Assert.assertSame(updated, node1.get("DB", customers.getKey(), CacheValue.class));
+	}
+
+	@Test
+	public void testOtherCacheIdsAreNotKeptLocally() {
+		MemoryRemote remote = new MemoryRemote();
+		NearCache cache = new NearCache(remote, 1024 * 1024, 60, new String[]{"DB"});
+		cache.set("SD", "customer", "value");
+		Assert.assertEquals("value", cache.get("SD", "customer", String.class));
+		Assert.assertEquals("value", cache.get("SD", "customer", String.class));
+		Assert.assertEquals(2, remote.gets);
+	}
+}
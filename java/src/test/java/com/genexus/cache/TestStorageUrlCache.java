@@ -0,0 +1,62 @@
+package com.genexus.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStorageUrlCache {
+
+	@Test
+	public void testCachedPerAclAndExpiration() {
+		StorageUrlCache cache = new StorageUrlCache(300, 0, 100);
+		cache.put("images/a.png", "Private", 10, "https://signed/a?1", 10, cache.version("images/a.png"));
+
+		Assert.assertEquals("https://signed/a?1", cache.get("images/a.png", "Private", 10));
+		Assert.assertNull(cache.get("images/a.png", "Private", 20));
+		Assert.assertNull(cache.get("images/a.png", "PublicRead", 10));
+	}
+
+	@Test
+	public void testInvalidateDropsEveryUrlOfTheObject() {
+		StorageUrlCache cache = new StorageUrlCache(300, 60, 100);
+		cache.put("images/a.png", "Private", 10, "https://signed/a?1", 10, cache.version("images/a.png"));
+		cache.put("images/a.png", "PublicRead", 10, "https://public/a", 0, cache.version("images/a.png"));
+		cache.invalidate("images/a.png");
+
+		Assert.assertNull(cache.get("images/a.png", "Private", 10));
+		Assert.assertNull(cache.get("images/a.png", "PublicRead", 10));
+	}
+
+	@Test
+	public void testMissingObjectsOnlyWhenEnabled() {
+		RuntimeException notFound = new RuntimeException("Not Found");
+		StorageUrlCache disabled = new StorageUrlCache(300, 0, 100);
+		disabled.putMissing("images/b.png", notFound, disabled.version("images/b.png"));
+		Assert.assertNull(disabled.getMissing("images/b.png"));
+
+		StorageUrlCache enabled = new StorageUrlCache(300, 60, 100);
+		enabled.putMissing("images/b.png", notFound, enabled.version("images/b.png"));
+		Assert.assertSame(notFound, enabled.getMissing("images/b.png"));
+		enabled.put("images/b.png", "Private", 10, "https://signed/b?1", 10, enabled.version("images/b.png"));
+		Assert.assertNull(enabled.getMissing("images/b.png"));
+	}
+
+	@Test
+	public void testPutReadBeforeInvalidateIsIgnored() {
+		StorageUrlCache cache = new StorageUrlCache(300, 60, 100);
+		long version = cache.version("images/c.png");
+		cache.invalidate("images/c.png");
+		cache.put("images/c.png", "Private", 10, "https://signed/c?1", 10, version);
+		cache.putMissing("images/c.png", new RuntimeException("Not Found"), version);
+
+		Assert.assertNull(cache.get("images/c.png", "Private", 10));
+		Assert.assertNull(cache.getMissing("images/c.png"));
+	}
+
+	@Test
+	public void testDisabledCacheRecordsNoMisses() {
+		StorageUrlCache cache = new StorageUrlCache(0, 0, 100);
+		long misses = StorageUrlCache.getStats().getMisses();
+		Assert.assertNull(cache.get("images/d.png", "Private", 10));
+		Assert.assertEquals(misses, StorageUrlCache.getStats().getMisses());
+	}
+}
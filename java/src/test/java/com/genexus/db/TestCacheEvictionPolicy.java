@@ -0,0 +1,143 @@
+package com.genexus.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCacheEvictionPolicy {
+
+	@Test
+	public void testSizeBound(){
+		final ConcurrentHashMap<String, CacheValue> map = new ConcurrentHashMap<String, CacheValue>();
+		final AtomicLong size = new AtomicLong();
+		CacheEvictionPolicy policy = new CacheEvictionPolicy(1000, new CacheEvictionPolicy.EvictionListener() {
+			public void onEviction(Object key, CacheValue value) {
+				if (map.remove(key, value))
+					size.addAndGet(-value.getSize());
+			}
+			public boolean isMapped(Object key, CacheValue value) {
+				return map.get(key) == value;
+			}
+		});
+		for (int i = 0; i < 500; i++) {
+			String key = "key" + i;
+			CacheValue value = new CacheValue("0123456789", null);
+			map.put(key, value);
+			size.addAndGet(value.getSize());
+			policy.recordInsert(key, value);
+		}
+		Assert.assertTrue(size.get() <= 1000);
+		Assert.assertEquals(size.get(), policy.getWeightedSize());
+		Assert.assertEquals(100, map.size());
+	}
+
+	@Test
+	public void testStaleInsertIsIgnored(){
+		final ConcurrentHashMap<String, CacheValue> map = new ConcurrentHashMap<String, CacheValue>();
+		final AtomicLong size = new AtomicLong();
+		CacheEvictionPolicy policy = new CacheEvictionPolicy(1000, new CacheEvictionPolicy.EvictionListener() {
+			public void onEviction(Object key, CacheValue value) {
+				if (map.remove(key, value))
+					size.addAndGet(-value.getSize());
+			}
+			public boolean isMapped(Object key, CacheValue value) {
+				return map.get(key) == value;
+			}
+		});
+		// Two puts of the same key whose inserts reach the policy in the opposite order
+		CacheValue stale = new CacheValue("0123456789", null);
+		CacheValue live = new CacheValue("0123456789", null);
+		map.put("key", live);
+		size.addAndGet(live.getSize());
+		policy.recordInsert("key", live);
+		policy.recordInsert("key", stale);
+		for (int i = 0; i < 500; i++) {
+			String key = "other" + i;
+			CacheValue value = new CacheValue("0123456789", null);
+			map.put(key, value);
+			size.addAndGet(value.getSize());
+			policy.recordInsert(key, value);
+		}
+		Assert.assertFalse(map.containsKey("key"));
+		Assert.assertEquals(size.get(), policy.getWeightedSize());
+	}
+
+	@Test
+	public void testFrequentEntriesSurvive(){
+		final ConcurrentHashMap<String, CacheValue> map = new ConcurrentHashMap<String, CacheValue>();
+		CacheEvictionPolicy policy = new CacheEvictionPolicy(1000, new CacheEvictionPolicy.EvictionListener() {
+			public void onEviction(Object key, CacheValue value) {
+				map.remove(key, value);
+			}
+			public boolean isMapped(Object key, CacheValue value) {
+				return map.get(key) == value;
+			}
+		});
+		for (int i = 0; i < 50; i++) {
+			String key = "hot" + i;
+			CacheValue value = new CacheValue("0123456789", null);
+			map.put(key, value);
+			policy.recordInsert(key, value);
+			for (int j = 0; j < 10; j++)
+				policy.recordAccess(key);
+		}
+		for (int i = 0; i < 5000; i++) {
+			String key = "scan" + i;
+			CacheValue value = new CacheValue("0123456789", null);
+			map.put(key, value);
+			policy.recordInsert(key, value);
+			// Each hot entry is read once every 150 inserts, a plain LRU of 100 entries would drop them
+			if (i % 3 == 0)
+				policy.recordAccess("hot" + ((i / 3) % 50));
+		}
+		int hot = 0;
+		for (int i = 0; i < 50; i++) {
+			if (map.containsKey("hot" + i))
+				hot++;
+		}
+		Assert.assertTrue("hot entries evicted by a scan: " + hot, hot >= 40);
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException{
+		final ConcurrentHashMap<String, CacheValue> map = new ConcurrentHashMap<String, CacheValue>();
+		final AtomicLong size = new AtomicLong();
+		final CacheEvictionPolicy policy = new CacheEvictionPolicy(5000, new CacheEvictionPolicy.EvictionListener() {
+			public void onEviction(Object key, CacheValue value) {
+				if (map.remove(key, value))
+					size.addAndGet(-value.getSize());
+			}
+			public boolean isMapped(Object key, CacheValue value) {
+				return map.get(key) == value;
+			}
+		});
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						String key = "key" + ((i * 31 + seed) % 2000);
+						if (map.containsKey(key)) {
+							policy.recordAccess(key);
+						}
+						else {
+							CacheValue value = new CacheValue("0123456789", null);
+							if (map.putIfAbsent(key, value) == null) {
+								size.addAndGet(value.getSize());
+								policy.recordInsert(key, value);
+							}
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertTrue(policy.getWeightedSize() <= 5000);
+		Assert.assertEquals(size.get(), policy.getWeightedSize());
+	}
+}
@@ -0,0 +1,52 @@
+package com.genexus.db;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCacheKey {
+
+	@Test
+	public void testEqualKeys(){
+		Date date = new Date(1600000000000L);
+		CacheKey key1 = new CacheKey("SELECT * FROM T WHERE A = ? AND B = ?", new Object[]{ Short.valueOf((short)5), "abc", date, new BigDecimal("1.50") });
+		CacheKey key2 = new CacheKey("SELECT * FROM T WHERE A = ? AND B = ?", new Object[]{ Integer.valueOf(5), "abc", Long.valueOf(date.getTime()), new BigDecimal("1.5") });
+		Assert.assertEquals(key1, key2);
+		Assert.assertEquals(key1.hashCode(), key2.hashCode());
+		Assert.assertEquals(key1.toHashString(), key2.toHashString());
+		Assert.assertEquals(32, key1.toHashString().length());
+	}
+
+	@Test
+	public void testDifferentKeys(){
+		CacheKey key = new CacheKey("SELECT * FROM T WHERE A = ?", new Object[]{ "ab", "c" });
+		Assert.assertFalse(key.equals(new CacheKey("SELECT * FROM T WHERE A = ?", new Object[]{ "a", "bc" })));
+		Assert.assertFalse(key.equals(new CacheKey("SELECT * FROM T WHERE B = ?", new Object[]{ "ab", "c" })));
+		Assert.assertFalse(key.equals(new CacheKey("SELECT * FROM T WHERE A = ?", null)));
+		Assert.assertFalse(key.equals(new CacheKey("SELECT * FROM T WHERE A = ?", new Object[]{ new byte[]{ 1, 2 }, "c" })));
+		Assert.assertFalse(new CacheKey("S", new Object[]{ new byte[]{ 1, 2 } }).equals(new CacheKey("S", new Object[]{ new byte[]{ 1, 3 } })));
+		Assert.assertTrue(new CacheKey("S", new Object[]{ new byte[]{ 1, 2 } }).equals(new CacheKey("S", new Object[]{ new byte[]{ 1, 2 } })));
+	}
+
+	@Test
+	public void testDecimalsHashByValue(){
+		CacheKey key1 = new CacheKey("S", new Object[]{ new BigDecimal("100"), new BigDecimal("-12.5"), new BigDecimal("0.00") });
+		CacheKey key2 = new CacheKey("S", new Object[]{ new BigDecimal("1E+2"), new BigDecimal("-12.500"), BigDecimal.ZERO });
+		Assert.assertEquals(key1, key2);
+		Assert.assertEquals(key1.toHashString(), key2.toHashString());
+		CacheKey key3 = new CacheKey("S", new Object[]{ new BigDecimal("100"), new BigDecimal("-12.6"), BigDecimal.ZERO });
+		Assert.assertFalse(key1.toHashString().equals(key3.toHashString()));
+	}
+
+	@Test
+	public void testSentenceIgnoresCase(){
+		CacheKey key1 = new CacheKey("SELECT * FROM T WHERE A = ?", new Object[]{ "abc" });
+		CacheKey key2 = new CacheKey("select * from t where a = ?", new Object[]{ "abc" });
+		Assert.assertEquals(key1, key2);
+		Assert.assertEquals(key1.hashCode(), key2.hashCode());
+		Assert.assertEquals(key1.toHashString(), key2.toHashString());
+		Assert.assertFalse(key1.equals(new CacheKey("SELECT * FROM T WHERE A = ?", new Object[]{ "ABC" })));
+	}
+}
@@ -0,0 +1,59 @@
+package com.genexus.db;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Enumeration;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestColumnarResultSet {
+
+	private static Object[] row(int id, boolean idNull, String name, long amount, BigDecimal price, java.util.Date date) {
+		return new Object[]{ new int[]{id}, new boolean[]{idNull}, new String[]{name}, new long[]{amount}, new BigDecimal[]{price}, new java.util.Date[]{date} };
+	}
+
+	@Test
+	public void testRowsMatchBuffers() throws SQLException {
+		CacheValue value = new CacheValue("SELECT id, name, amount, price, date FROM t", null);
+		value.setColumnarStorage(true);
+		java.util.Date date = new java.util.Date(1000000L);
+		for (int i = 0; i < 100; i++) {
+			value.addItem(row(i, i % 10 == 0, "name" + (i % 3), i * 1000L, new BigDecimal(i + ".5"), date), 0);
+		}
+		value.trimToSize();
+		Assert.assertEquals(100, value.getCantItems());
+
+		Enumeration rows = value.getIterator();
+		int i = 0;
+		while (rows.hasMoreElements()) {
+			IFieldGetter getter = (IFieldGetter) rows.nextElement();
+			getter.resetWasNullHits();
+			Assert.assertEquals(i, getter.getInt(1));
+			Assert.assertEquals(i % 10 == 0, getter.wasNull());
+			Assert.assertEquals("name" + (i % 3), getter.getVarchar(2));
+			Assert.assertEquals(i * 1000L, getter.getLong(3));
+			Assert.assertEquals(new BigDecimal(i + ".5"), getter.getBigDecimal(4, 1));
+			Assert.assertEquals(date, getter.getGXDate(5));
+			Assert.assertEquals(i, getter.getInt(1));
+			i++;
+		}
+		Assert.assertEquals(100, i);
+	}
+
+	@Test
+	public void testSizeIsSmallerThanRows() {
+		CacheValue columns = new CacheValue("SELECT", null);
+		columns.setColumnarStorage(true);
+		for (int i = 0; i < 1000; i++) {
+			Object[] buffers = row(i, false, "name" + (i % 3), i, BigDecimal.ONE, null);
+			columns.addItem(buffers, 40);
+		}
+		long before = columns.getSize();
+		columns.trimToSize();
+		Assert.assertTrue(columns.getSize() <= before);
+		// Row storage charges the fetched bytes plus a reference per buffer for every row
+		long rowSize = "SELECT".length() + 1000L * (40 + 8 * 6);
+		Assert.assertTrue(columns.getSize() < rowSize);
+	}
+}
@@ -0,0 +1,122 @@
+package com.genexus.internet.websocket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.genexus.specific.java.Connect;
+import com.genexus.websocket.ISendHandler;
+import com.genexus.websocket.ISession;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestGXWebSocketSession {
+
+	@Test
+	public void testOneSendInFlightAndBoundedQueue() throws Exception {
+		Connect.init();
+		FakeSession fake = new FakeSession("client=1", false);
+		GXWebSocketSession session = new GXWebSocketSession(fake);
+		GXWebSocketMessage first = new GXWebSocketMessage("1", true);
+		Assert.assertTrue(session.queue(first, 2));
+		Assert.assertTrue(session.queue(new GXWebSocketMessage("2", false), 2));
+		Assert.assertTrue(session.queue(new GXWebSocketMessage("3", false), 2));
+		Assert.assertFalse(session.queue(new GXWebSocketMessage("4", false), 2));
+		Assert.assertEquals(1, fake.inFlight.size());
+		Assert.assertEquals(2, session.getQueuedMessages());
+		Assert.assertEquals(1, session.getDroppedMessages());
+
+		fake.complete(null);
+		Assert.assertTrue(first.await(0));
+		fake.complete(new IOException("closed"));
+		fake.complete(null);
+		Assert.assertEquals(0, fake.inFlight.size());
+		Assert.assertEquals(2, session.getSentMessages());
+		Assert.assertEquals(1, session.getFailedMessages());
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("1");
+		expected.add("2");
+		expected.add("3");
+		Assert.assertEquals(expected, fake.sent);
+	}
+
+	@Test
+	public void testSendsCompletedInlineDoNotRecurse() throws Exception {
+		Connect.init();
+		FakeSession fake = new FakeSession("client=1", true);
+		final GXWebSocketSession session = new GXWebSocketSession(fake);
+		GXWebSocketMessage last = null;
+		for (int i = 0; i < 50000; i++) {
+			last = new GXWebSocketMessage(Integer.toString(i), true);
+			Assert.assertTrue(session.queue(last, 100000));
+		}
+		Assert.assertTrue(last.await(0));
+		Assert.assertEquals(50000, fake.sent.size());
+		Assert.assertEquals("49999", fake.sent.get(49999));
+	}
+
+	@Test
+	public void testGroupsAreLeftWhenTheLastSessionCloses() {
+		Connect.init();
+		GXWebSocketSessionCollection clients = new GXWebSocketSessionCollection();
+		GXWebSocketSession first = new GXWebSocketSession(new FakeSession("a", true));
+		GXWebSocketSession second = new GXWebSocketSession(new FakeSession("a", true));
+		clients.put(first);
+		clients.put(second);
+		clients.subscribe("a", "news");
+		clients.subscribe("b", "news");
+		Assert.assertTrue(clients.getGroup("news").contains("a"));
+		Assert.assertTrue(clients.getGroup("sports").isEmpty());
+
+		clients.remove(first);
+		Assert.assertTrue(clients.getGroup("news").contains("a"));
+		clients.remove(second);
+		Assert.assertFalse(clients.getGroup("news").contains("a"));
+		Assert.assertTrue(clients.getGroup("news").contains("b"));
+	}
+
+	private static class FakeSession implements ISession {
+		private final String queryString;
+		private final boolean completeInline;
+		final List<String> sent = new ArrayList<String>();
+		final List<ISendHandler> inFlight = new ArrayList<ISendHandler>();
+
+		FakeSession(String queryString, boolean completeInline) {
+			this.queryString = queryString;
+			this.completeInline = completeInline;
+		}
+
+		public Integer getHashCode() {
+			return new Integer(hashCode());
+		}
+
+		public String getQueryString() {
+			return queryString;
+		}
+
+		public boolean isOpen() {
+			return true;
+		}
+
+		public void sendEndPointText(String message) {
+			sent.add(message);
+		}
+
+		public void sendEndPointTextAsync(String message, ISendHandler handler) {
+			Assert.assertTrue("Only one send at a time", inFlight.isEmpty());
+			sent.add(message);
+			if (completeInline)
+				handler.onResult(null);
+			else
+				inFlight.add(handler);
+		}
+
+		void complete(Throwable exception) {
+			inFlight.remove(0).onResult(exception);
+		}
+
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package com.genexus.performance;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+	@Test
+	public void testPercentilesWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int micros = 1; micros <= 10000; micros++)
+			histogram.record(micros);
+
+		Assert.assertEquals(10000, histogram.getCount());
+		assertClose(5000, histogram.getValueAtPercentile(50));
+		assertClose(9900, histogram.getValueAtPercentile(99));
+		assertClose(9990, histogram.getValueAtPercentile(99.9));
+	}
+
+	@Test
+	public void testOutliersDoNotMoveMedian() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 999; i++)
+			histogram.recordNanos(200000);
+		histogram.recordNanos(60L * 60 * 1000 * 1000 * 1000);
+
+		assertClose(200, histogram.getValueAtPercentile(50));
+		assertClose(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testEmptyHistogram() {
+		Assert.assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+	}
+
+	private static void assertClose(long expected, long actual) {
+		Assert.assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected / LatencyHistogram.SUB_BUCKETS + 1);
+	}
+}
@@ -0,0 +1,70 @@
+package com.genexus.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+
+import com.genexus.CommonUtil;
+import com.genexus.specific.java.Connect;
+
+/**
+ * Compares CommonUtil.year/month/day/hour/minute/second with the SimpleDateFormat based
+ * extraction they replaced, checking that both return the same values, null date included.
+ * Run it with the test classpath: java com.genexus.util.GXDateFieldsBenchmark [dates]
+ */
+public class GXDateFieldsBenchmark {
+
+	public static void main(String[] args) {
+		Connect.init();
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		Date[] dates = new Date[count];
+		Random random = new Random(5);
+		for (int i = 0; i < count; i++)
+			dates[i] = i % 100 == 0 ? CommonUtil.nullDate() : new Date(random.nextLong() % 4000000000000L);
+
+		for (Date date : dates) {
+			if (legacy(date) != current(date))
+				throw new AssertionError("Different fields for " + date.getTime());
+		}
+
+		for (int round = 0; round < 3; round++) {
+			long legacyTime = time(dates, true);
+			long currentTime = time(dates, false);
+			System.out.println(String.format("SimpleDateFormat %8.1f ns/date  GXDateFields %8.1f ns/date  speedup %5.1fx",
+				(double) legacyTime / count, (double) currentTime / count, (double) legacyTime / currentTime));
+		}
+	}
+
+	private static long time(Date[] dates, boolean legacy) {
+		long sink = 0;
+		long start = System.nanoTime();
+		for (Date date : dates)
+			sink += legacy ? legacy(date) : current(date);
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42)
+			System.out.println();
+		return elapsed;
+	}
+
+	private static long current(Date date) {
+		return fields(CommonUtil.year(date), CommonUtil.month(date), CommonUtil.day(date),
+			CommonUtil.hour(date), CommonUtil.minute(date), CommonUtil.second(date));
+	}
+
+	private static long legacy(Date date) {
+		if (date.equals(CommonUtil.nullDate()))
+			return fields(0, 0, 0, parse("H", date), parse("m", date), parse("s", date));
+		return fields(parse("yyyy", date), parse("M", date), parse("d", date), parse("H", date), parse("m", date), parse("s", date));
+	}
+
+	private static int parse(String pattern, Date date) {
+		SimpleDateFormat format = new SimpleDateFormat(pattern);
+		format.setTimeZone(CommonUtil.defaultTimeZone);
+		return Integer.parseInt(format.format(date));
+	}
+
+	private static long fields(int year, int month, int day, int hour, int minute, int second) {
+		return ((((year * 13L + month) * 32 + day) * 24 + hour) * 60 + minute) * 60 + second;
+	}
+}
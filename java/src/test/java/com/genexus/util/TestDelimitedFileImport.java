@@ -0,0 +1,95 @@
+package com.genexus.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.genexus.specific.java.Connect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDelimitedFileImport {
+
+	private static final DelimitedFileImport.RecordParser<String> PARSER = new DelimitedFileImport.RecordParser<String>() {
+		public String parse(DelimitedFilesSafe record) {
+			double[] num = new double[1];
+			String[] str = new String[1];
+			StringBuilder result = new StringBuilder();
+			result.append(record.dfrgnum(num)).append(':').append(num[0]).append('|');
+			result.append(record.dfrgtxt(str)).append(':').append(str[0]).append('|');
+			result.append(record.dfrgtxt(str)).append(':').append(str[0]);
+			return result.toString();
+		}
+	};
+
+	@Test
+	public void testParallelMatchesSequential() throws Exception {
+		Connect.init();
+		File file = writeFile("UTF-8", new byte[0]);
+		try {
+			List<String> sequential = read(new DelimitedFileImport(file.getAbsolutePath(), ",", "\"", "UTF-8").setParallelism(1));
+			Assert.assertTrue(sequential.size() > 2000);
+			List<String> ordered = read(new DelimitedFileImport(file.getAbsolutePath(), ",", "\"", "UTF-8").setParallelism(4).setChunkSize(1000));
+			Assert.assertEquals(sequential, ordered);
+
+			List<String> unordered = read(new DelimitedFileImport(file.getAbsolutePath(), ",", "\"", "UTF-8").setParallelism(4).setChunkSize(1000).setOrdered(false));
+			Collections.sort(sequential);
+			Collections.sort(unordered);
+			Assert.assertEquals(sequential, unordered);
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testByteOrderMark() throws Exception {
+		Connect.init();
+		File file = writeFile("UTF-8", new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+		try {
+			List<String> sequential = read(new DelimitedFileImport(file.getAbsolutePath(), ",", "\"", "UTF-8 BOM").setParallelism(1));
+			Assert.assertEquals(sequential, read(new DelimitedFileImport(file.getAbsolutePath(), ",", "\"", "UTF-8 BOM").setChunkSize(500)));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	private static List<String> read(DelimitedFileImport fileImport) throws Exception {
+		final List<String> records = new ArrayList<String>();
+		long count = fileImport.run(PARSER, new DelimitedFileImport.RecordConsumer<String>() {
+			public void accept(String record) {
+				records.add(record);
+			}
+		});
+		Assert.assertEquals(records.size(), count);
+		return records;
+	}
+
+	private static File writeFile(String encoding, byte[] bom) throws IOException {
+		String[] texts = {"abc", "\"a,b\"", "\"multi\r\nline\"", "\"say \"\"hi\"\"\"", "", "\u00f1and\u00fa", "x\ry"};
+		String[] endings = {"\n", "\r\n", "\r"};
+		Random random = new Random(7);
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			content.append(random.nextInt(100000) - 50000).append('.').append(random.nextInt(100)).append(',');
+			content.append(texts[random.nextInt(texts.length)]).append(',');
+			content.append(texts[random.nextInt(texts.length)]);
+			content.append(endings[random.nextInt(endings.length)]);
+		}
+		File file = File.createTempFile("gximport", ".txt");
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(bom);
+			output.write(content.toString().getBytes(encoding));
+		}
+		finally {
+			output.close();
+		}
+		return file;
+	}
+}
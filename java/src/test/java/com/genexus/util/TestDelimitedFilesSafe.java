@@ -0,0 +1,196 @@
+package com.genexus.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.FileInputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import com.genexus.CommonUtil;
+import com.genexus.specific.java.Connect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDelimitedFilesSafe {
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		Connect.init();
+		File file = File.createTempFile("gxdelimited", ".txt");
+		try {
+			Calendar calendar = GregorianCalendar.getInstance();
+			calendar.clear();
+			calendar.set(1999, 9, 15);
+			Date date = calendar.getTime();
+
+			DelimitedFilesSafe writer = new DelimitedFilesSafe();
+			Assert.assertEquals(0, writer.dfwopen(file.getAbsolutePath(), ",", "\"", 0, "UTF-8"));
+			writer.dfwpnum(10);
+			writer.dfwptxt("Pepe, \"el\" primero", 0);
+			writer.dfwpnum(-1030.567, 2);
+			writer.dfwpdate(date, "dmy", "/");
+			writer.dfwnext();
+			writer.dfwpnum(-0.0, 0);
+			writer.dfwptxt("Luis", 6);
+			writer.dfwpnum(1e15, 0);
+			writer.dfwpdate(CommonUtil.nullDate(), "ymd", "-");
+			writer.dfwnext();
+			writer.dfwclose();
+
+			DelimitedFilesSafe reader = new DelimitedFilesSafe();
+			Assert.assertEquals(0, reader.dfropen(file.getAbsolutePath(), 100, ",", "\"", "UTF-8"));
+			double[] num = new double[1];
+			BigDecimal[] dec = new BigDecimal[1];
+			String[] str = new String[1];
+			Date[] dates = new Date[1];
+
+			Assert.assertEquals(0, reader.dfrnext());
+			Assert.assertEquals(0, reader.dfrgnum(num));
+			Assert.assertEquals(10, num[0], 0);
+			Assert.assertEquals(0, reader.dfrgtxt(str));
+			Assert.assertEquals("Pepe, \"el\" primero", str[0]);
+			Assert.assertEquals(0, reader.dfrgnum(dec));
+			Assert.assertEquals(new BigDecimal("-1030.57"), dec[0]);
+			Assert.assertEquals(0, reader.dfrgdate(dates, "dmy", "/"));
+			assertDate(dates[0], 1999, 9, 15);
+
+			Assert.assertEquals(0, reader.dfrnext());
+			Assert.assertEquals(0, reader.dfrgnum(num));
+			Assert.assertEquals(0, num[0], 0);
+			Assert.assertEquals(0, reader.dfrgtxt(str));
+			Assert.assertEquals("Luis  ", str[0]);
+			Assert.assertEquals(0, reader.dfrgnum(num));
+			Assert.assertEquals(1e15, num[0], 0);
+			Assert.assertEquals(0, reader.dfrgdate(dates));
+			Assert.assertEquals(CommonUtil.nullDate(), dates[0]);
+
+			Assert.assertEquals(-4, reader.dfrnext());
+			reader.dfrclose();
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReadFields() throws IOException {
+		Connect.init();
+		StringBuilder longField = new StringBuilder();
+		for (int i = 0; i < 100000; i++)
+			longField.append((char) ('a' + i % 26));
+		File file = write("1.25,,abc,2020-02-29\r\n"
+			+ "-7,x,,bad\r"
+			+ "3e2,12345678901234567890," + longField + ",2020-13-01\n"
+			+ "4,\"a,b\",last,\n"
+			+ "5");
+		try {
+			DelimitedFilesSafe reader = new DelimitedFilesSafe();
+			Assert.assertEquals(0, reader.dfropen(file.getAbsolutePath(), 200000, ",", "\"", "UTF-8"));
+			double[] num = new double[1];
+			BigDecimal[] dec = new BigDecimal[1];
+			String[] str = new String[1];
+			Date[] dates = new Date[1];
+
+			Assert.assertEquals(0, reader.dfrnext());
+			Assert.assertEquals(0, reader.dfrgnum(dec));
+			Assert.assertEquals(new BigDecimal("1.25"), dec[0]);
+			Assert.assertEquals(0, reader.dfrgtxt(str));
+			Assert.assertEquals("", str[0]);
+			Assert.assertEquals(0, reader.dfrgtxt(str));
+			Assert.assertEquals("abc", str[0]);
+			Assert.assertEquals(0, reader.dfrgdate(dates));
+			assertDate(dates[0], 120, 1, 29);
+
+			Assert.assertEquals(0, reader.dfrnext());
+			Assert.assertEquals(0, reader.dfrgnum(num));
+			Assert.assertEquals(-7, num[0], 0);
+			Assert.assertEquals(-5, reader.dfrgnum(num));
+			Assert.assertEquals(0, num[0], 0);
+			Assert.assertEquals(0, reader.dfrgtxt(str));
+			Assert.assertEquals("", str[0]);
+			Assert.assertEquals(-5, reader.dfrgdate(dates));
+
+			Assert.assertEquals(0, reader.dfrnext());
+			Assert.assertEquals(0, reader.dfrgnum(num));
+			Assert.assertEquals(300, num[0], 0);
+			Assert.assertEquals(0, reader.dfrgnum(dec));
+			Assert.assertEquals(new BigDecimal("12345678901234567890"), dec[0]);
+			Assert.assertEquals(0, reader.dfrgtxt(str, 200000));
+			Assert.assertEquals(longField.toString(), str[0]);
+			Assert.assertEquals(-7, reader.dfrgdate(dates));
+
+			Assert.assertEquals(0, reader.dfrnext());
+			Assert.assertEquals(0, reader.dfrgnum(num));
+			Assert.assertEquals(0, reader.dfrgtxt(str));
+			Assert.assertEquals("a,b", str[0]);
+			Assert.assertEquals(0, reader.dfrgtxt(str));
+			Assert.assertEquals("last", str[0]);
+			Assert.assertEquals(0, reader.dfrgtxt(str));
+			Assert.assertEquals("", str[0]);
+
+			Assert.assertEquals(0, reader.dfrnext());
+			Assert.assertEquals(0, reader.dfrgnum(num));
+			Assert.assertEquals(5, num[0], 0);
+			Assert.assertEquals(-4, reader.dfrnext());
+			reader.dfrclose();
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testMappedFileReader() throws IOException {
+		String content = "caf\u00e9,\u00f1and\u00fa,\u20ac\r\nline 2\n";
+		File file = write(content);
+		try {
+			Charset utf8 = Charset.forName("UTF-8");
+			Assert.assertEquals(readAll(new InputStreamReader(new FileInputStream(file), utf8)), readAll(new MappedFileReader(file, utf8)));
+			Assert.assertEquals(content, readAll(new MappedFileReader(file, utf8)));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	private static File write(String content) throws IOException {
+		File file = File.createTempFile("gxdelimited", ".txt");
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(content.getBytes("UTF-8"));
+		}
+		finally {
+			output.close();
+		}
+		return file;
+	}
+
+	private static String readAll(Reader reader) throws IOException {
+		try {
+			StringBuilder result = new StringBuilder();
+			char[] buffer = new char[3];
+			int read;
+			while ((read = reader.read(buffer, 0, buffer.length)) != -1)
+				result.append(buffer, 0, read);
+			return result.toString();
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/** dfrgdate builds the date with calendar.set(year - 1900, month - 1, day), and dfwpdate writes year + 1900 */
+	private static void assertDate(Date date, int year, int month, int day) {
+		Calendar calendar = GregorianCalendar.getInstance();
+		calendar.setTime(date);
+		Assert.assertEquals(year, calendar.get(Calendar.YEAR));
+		Assert.assertEquals(month, calendar.get(Calendar.MONTH));
+		Assert.assertEquals(day, calendar.get(Calendar.DAY_OF_MONTH));
+	}
+}
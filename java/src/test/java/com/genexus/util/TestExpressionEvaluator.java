@@ -0,0 +1,103 @@
+package com.genexus.util;
+
+import java.math.BigDecimal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestExpressionEvaluator {
+
+	private static final String[] EXPRESSIONS = {
+		"1+2*3", "2*3+1", "2-3*4+5", "1 - 2 - 3", "(1+2)*3", "-3+2", "+4", "!0", "!(1=2)", "--2",
+		"10/4", "10/0", "1/0+5", "x/(y-3)", "7/3*3",
+		"()", "( )", "(1+2", "1+", "1 2", "2'a'", "5 % 2", "1abc", ".5*2", "1..2",
+		"abs(-2.5)", "int(3.7)", "frac(3.75)", "sqrt(16)", "sqrt(-1)", "ln(0)", "log(2.718281828)", "exp(1)",
+		"acos(2)", "acos(0.5)", "asin(1)", "atan(1)", "sin(PI/2)", "cos(0)", "tan(0)", "round(2.5)", "trunc(2.9)", "floor(-2.5)",
+		"pow(2,10)", "max(3, 7)", "min(x, y)", "pow(2)", "min(3)", "int(rnd())", "abs('a')", "int(s)",
+		"PI*2", "x+y", "x*2", "z", "w", "unknown + 1", "x+unknown", "s + 'def'",
+		"'abc' + 'def'", "'abc' = 'abc'", "'a' - 'b'", "'abc' != 'abd'", "'abc' > 'abd'", "'a' and 1",
+		"3 >= 2", "3 <= 2", "3 <> 3", "3 == 3", "3 > 2 + 1", "1 = 1 and 2 = 2", "1 = 2 or 2 = 2", "1 && 0", "1 || 0", "0 and 1/0",
+		"iif(x > 1, 10, 20)", "iif(x > 1 and y < 5, 10, 20)", "iif((x > 1) or (y > 5), 10, 20)", "iif(x > 1, iif(y > 1, 1, 2), 3)",
+		"iif(iif(x > 1, 1, 0) = 1 and y > 1, 5, 6)", "iif(c, 1, 0)", "iif(d = 1 and y > 1, 5, 6)", "iif(1,2)", "iif(s, 1, 2)",
+		"iif(x/0 > 1, 1, 2)", "iif(x > 1, 1/0, 2) + 1",
+	};
+
+	@Test
+	public void testCompiledMatchesInterpreter() {
+		for (String expression : EXPRESSIONS) {
+			assertSameOutcome(expression, false);
+			assertSameOutcome(expression, true);
+		}
+	}
+
+	@Test
+	public void testVariablesAreReadOnEachEvaluation() {
+		ExpressionEvaluator evaluator = new ExpressionEvaluator(null, 0, "x=2");
+		evaluator.setExpression("x*10+1");
+		Assert.assertEquals(new BigDecimal(21), evaluator.evaluate());
+		evaluator.getVariables().set("x", "5");
+		Assert.assertEquals(new BigDecimal(51), evaluator.evaluate());
+		evaluator.getVariables().set("x", "y+1");
+		evaluator.getVariables().set("y", "1");
+		Assert.assertEquals(new BigDecimal(21), evaluator.evaluate());
+	}
+
+	@Test
+	public void testErrorsAreResetBetweenEvaluations() {
+		ExpressionEvaluator evaluator = new ExpressionEvaluator(null, 0, "x=0");
+		evaluator.setExpression("10/x");
+		evaluator.evaluate();
+		Assert.assertEquals(4, evaluator.getErrCode());
+		Assert.assertEquals("Division by zero", evaluator.getErrDescription());
+		evaluator.getVariables().set("x", "4");
+		Assert.assertEquals(0, new BigDecimal("2.5").compareTo(evaluator.evaluate()));
+		Assert.assertEquals(0, evaluator.getErrCode());
+	}
+
+	@Test
+	public void testEachEvaluationThrowsItsOwnException() {
+		RuntimeException first = evaluateFailure("1+");
+		RuntimeException second = evaluateFailure("1+");
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(first.getClass(), second.getClass());
+		Assert.assertEquals(first.getMessage(), second.getMessage());
+	}
+
+	private static RuntimeException evaluateFailure(String expression) {
+		ExpressionEvaluator evaluator = new ExpressionEvaluator(null, 0, "");
+		evaluator.setExpression(expression);
+		try {
+			evaluator.evaluate();
+		}
+		catch (RuntimeException e) {
+			return e;
+		}
+		Assert.fail(expression + " did not fail");
+		return null;
+	}
+
+	private static void assertSameOutcome(String expression, boolean throwExceptions) {
+		String interpreted = evaluate(expression, throwExceptions, false);
+		Assert.assertEquals(expression, interpreted, evaluate(expression, throwExceptions, true));
+		// The second time the expression is already compiled
+		Assert.assertEquals(expression, interpreted, evaluate(expression, throwExceptions, true));
+	}
+
+	private static String evaluate(String expression, boolean throwExceptions, boolean compiled) {
+		ExpressionEvaluator evaluator = new ExpressionEvaluator(null, 0, "x=2;y=3");
+		evaluator.getVariables().set("s", "'abc'");
+		evaluator.getVariables().set("c", "x > 1 and y > 1");
+		evaluator.getVariables().set("d", "iif(x > 1, 1, 0)");
+		evaluator.getVariables().set("w", "");
+		evaluator.setThrowExceptions(throwExceptions);
+		evaluator.useCompiledExpressions = compiled;
+		evaluator.setExpression(expression);
+		try {
+			BigDecimal value = evaluator.evaluate();
+			return value + "|" + evaluator.getErrCode() + "|" + evaluator.getErrDescription();
+		}
+		catch (RuntimeException e) {
+			return e.getClass().getName() + ": " + e.getMessage();
+		}
+	}
+}
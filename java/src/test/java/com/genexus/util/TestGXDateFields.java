@@ -0,0 +1,115 @@
+package com.genexus.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestGXDateFields {
+
+	private static final String[] ZONES = {"UTC", "America/Montevideo", "America/Sao_Paulo", "Europe/London",
+		"Asia/Kolkata", "Australia/Lord_Howe", "America/New_York", "Africa/Windhoek", "GMT-03:00"};
+
+	/** Between 1583 and 2300, also covers years after the last transition of the offsets table */
+	private static final long FROM = -12212553600000L;
+	private static final long TO = 10413792000000L;
+
+	@Test
+	public void testFieldsMatchSimpleDateFormat() {
+		Random random = new Random(17);
+		for (String zone : ZONES) {
+			TimeZone tz = TimeZone.getTimeZone(zone);
+			for (int i = 0; i < 20000; i++) {
+				long time = FROM + (long) (random.nextDouble() * (TO - FROM));
+				assertFields(tz, time);
+			}
+		}
+	}
+
+	@Test
+	public void testFieldsAroundTransitions() {
+		TimeZone tz = TimeZone.getTimeZone("America/Montevideo");
+		Calendar cal = new GregorianCalendar(tz);
+		cal.clear();
+		cal.set(2000, 0, 1);
+		for (long time = cal.getTimeInMillis(); time < cal.getTimeInMillis() + 20L * 365 * 86400000L; time += 1800000L)
+			assertFields(tz, time);
+	}
+
+	@Test
+	public void testJulianDatesAreLeftToTheCaller() {
+		TimeZone tz = TimeZone.getTimeZone("UTC");
+		long julian = -62135758799651L;
+		Assert.assertEquals(GXDateFields.UNSUPPORTED, GXDateFields.year(tz, julian));
+		Assert.assertEquals(GXDateFields.UNSUPPORTED, GXDateFields.day(tz, julian));
+		Assert.assertEquals(format(tz, "H", julian), GXDateFields.hour(tz, julian));
+		Assert.assertEquals(format(tz, "m", julian), GXDateFields.minute(tz, julian));
+		Assert.assertEquals(format(tz, "S", julian), GXDateFields.millisecond(tz, julian));
+	}
+
+	@Test
+	public void testToTimeMatchesStrictCalendar() {
+		Random random = new Random(23);
+		for (String zone : ZONES) {
+			TimeZone tz = TimeZone.getTimeZone(zone);
+			for (int i = 0; i < 20000; i++) {
+				int year = 1583 + random.nextInt(600);
+				int month = 1 + random.nextInt(12);
+				int day = 1 + random.nextInt(31);
+				int hour = random.nextInt(24);
+				int minute = random.nextInt(60);
+				int second = random.nextInt(60);
+				long time = GXDateFields.toTime(tz, year, month, day, hour, minute, second);
+				Long expected = strictCalendar(tz, year, month, day, hour, minute, second);
+				if (expected == null)
+					Assert.assertEquals(GXDateFields.INVALID, time);
+				else if (time != GXDateFields.NOT_RESOLVED)
+					Assert.assertEquals(expected.longValue(), time);
+			}
+		}
+	}
+
+	@Test
+	public void testNonexistentMidnightIsInvalid() {
+		TimeZone tz = TimeZone.getTimeZone("America/Sao_Paulo");
+		Assert.assertNull(strictCalendar(tz, 2018, 11, 4, 0, 0, 0));
+		Assert.assertEquals(GXDateFields.INVALID, GXDateFields.toTime(tz, 2018, 11, 4, 0, 0, 0));
+		Assert.assertEquals(strictCalendar(tz, 2018, 11, 4, 1, 0, 0).longValue(), GXDateFields.toTime(tz, 2018, 11, 4, 1, 0, 0));
+		Assert.assertEquals(GXDateFields.INVALID, GXDateFields.toTime(tz, 2019, 2, 29, 10, 0, 0));
+	}
+
+	private static void assertFields(TimeZone tz, long time) {
+		String at = tz.getID() + " " + time;
+		Assert.assertEquals(at, format(tz, "yyyy", time), GXDateFields.year(tz, time));
+		Assert.assertEquals(at, format(tz, "M", time), GXDateFields.month(tz, time));
+		Assert.assertEquals(at, format(tz, "d", time), GXDateFields.day(tz, time));
+		Assert.assertEquals(at, format(tz, "H", time), GXDateFields.hour(tz, time));
+		Assert.assertEquals(at, format(tz, "m", time), GXDateFields.minute(tz, time));
+		Assert.assertEquals(at, format(tz, "s", time), GXDateFields.second(tz, time));
+		Assert.assertEquals(at, format(tz, "S", time), GXDateFields.millisecond(tz, time));
+	}
+
+	private static int format(TimeZone tz, String pattern, long time) {
+		SimpleDateFormat format = new SimpleDateFormat(pattern);
+		format.setTimeZone(tz);
+		return Integer.parseInt(format.format(new Date(time)));
+	}
+
+	private static Long strictCalendar(TimeZone tz, int year, int month, int day, int hour, int minute, int second) {
+		Calendar cal = new GregorianCalendar(tz);
+		cal.setLenient(false);
+		cal.clear();
+		cal.set(year, month - 1, day, hour, minute, second);
+		try {
+			return cal.getTimeInMillis();
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.genexus.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.genexus.ISubmitteable;
+import com.genexus.ModelContext;
+import com.genexus.specific.java.Connect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSubmitThreadPool {
+
+	private static final int NESTED = 3;
+
+	@Test
+	public void testNestedSubmitsDoNotBlock() throws InterruptedException {
+		Connect.init();
+		// One thread and one queued submit: the outer submit holds the thread and the first nested submit
+		// takes the queue, so the following ones must run in the outer submit's thread instead of waiting
+		final SubmitThreadPool pool = new SubmitThreadPool(1, 1, SubmitThreadPool.POLICY_BLOCK, 0, false, null);
+		final CountDownLatch done = new CountDownLatch(NESTED + 1);
+		final AtomicBoolean outerDone = new AtomicBoolean();
+		final AtomicInteger inCaller = new AtomicInteger();
+		try {
+			pool.execute(new TestProc() {
+				public void submit(int submitId, Object[] submitParms, ModelContext ctx) {
+					for (int i = 0; i < NESTED; i++) {
+						pool.execute(new TestProc() {
+							public void submit(int submitId, Object[] submitParms, ModelContext ctx) {
+								if (!outerDone.get())
+									inCaller.incrementAndGet();
+								done.countDown();
+							}
+						}, i + 1, null, null);
+					}
+					outerDone.set(true);
+					done.countDown();
+				}
+			}, 0, null, null);
+			Assert.assertTrue("Nested submits did not finish", done.await(10, TimeUnit.SECONDS));
+			Assert.assertEquals(NESTED - 1, inCaller.get());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	private static abstract class TestProc implements ISubmitteable {
+		public void submit(int submitId, Object[] submitParms) {
+		}
+
+		public void submitReorg(int submitId, Object[] submitParms) {
+		}
+	}
+}
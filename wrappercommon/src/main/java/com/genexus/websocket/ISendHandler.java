@@ -0,0 +1,6 @@
+package com.genexus.websocket;
+
+public interface ISendHandler {
+	/** Called when an asynchronous send ends, exception is null if the message was sent */
+	void onResult(Throwable exception);
+}
@@ -7,4 +7,6 @@ public interface ISession {
 	String getQueryString();
 	boolean isOpen();
 	void sendEndPointText(String message) throws IOException;
+	void sendEndPointTextAsync(String message, ISendHandler handler);
+	void close() throws IOException;
 }